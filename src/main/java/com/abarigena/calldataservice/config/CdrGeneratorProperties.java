@@ -0,0 +1,64 @@
+package com.abarigena.calldataservice.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Настройки генератора CDR-записей.
+ * Задаются в application.yml с префиксом {@code cdr.generator}.
+ */
+@ConfigurationProperties(prefix = "cdr.generator")
+public class CdrGeneratorProperties {
+
+    /**
+     * Начальное значение генератора случайных чисел.
+     * Если не задано, выбирается случайно при каждом запуске.
+     */
+    private Long seed;
+
+    /**
+     * Количество потоков, параллельно генерирующих записи.
+     */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Количество дней в одном шарде генерации.
+     */
+    private int daysPerShard = 7;
+
+    /**
+     * Размер пакета записей, передаваемого на сохранение.
+     */
+    private int batchSize = 500;
+
+    public Long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(Long seed) {
+        this.seed = seed;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getDaysPerShard() {
+        return daysPerShard;
+    }
+
+    public void setDaysPerShard(int daysPerShard) {
+        this.daysPerShard = daysPerShard;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+}
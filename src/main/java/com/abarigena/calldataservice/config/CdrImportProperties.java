@@ -0,0 +1,50 @@
+package com.abarigena.calldataservice.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Настройки импорта файлов CDR-записей.
+ * Задаются в application.yml с префиксом {@code cdr.import}.
+ */
+@ConfigurationProperties(prefix = "cdr.import")
+public class CdrImportProperties {
+
+    /**
+     * Размер пакета записей, передаваемого на сохранение.
+     */
+    private int batchSize = 1000;
+
+    /**
+     * Максимальное количество ошибок разбора, возвращаемых в результате импорта.
+     */
+    private int maxReportedErrors = 20;
+
+    /**
+     * Каталог, за которым следит импорт. Если не задан, наблюдение отключено.
+     */
+    private String watchDirectory;
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getMaxReportedErrors() {
+        return maxReportedErrors;
+    }
+
+    public void setMaxReportedErrors(int maxReportedErrors) {
+        this.maxReportedErrors = maxReportedErrors;
+    }
+
+    public String getWatchDirectory() {
+        return watchDirectory;
+    }
+
+    public void setWatchDirectory(String watchDirectory) {
+        this.watchDirectory = watchDirectory;
+    }
+}
@@ -0,0 +1,143 @@
+package com.abarigena.calldataservice.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Настройки генерации CDR-отчетов.
+ * Задаются в application.yml с префиксом {@code cdr.report}.
+ */
+@ConfigurationProperties(prefix = "cdr.report")
+public class CdrReportProperties {
+
+    /**
+     * Количество отчетов, генерируемых одновременно.
+     */
+    private int parallelism = 2;
+
+    /**
+     * Максимальное количество отчетов, ожидающих генерации. Запросы сверх очереди отклоняются.
+     */
+    private int queueCapacity = 100;
+
+    /**
+     * Сжимать ли отчеты в формате gzip, если в запросе это не указано.
+     */
+    private boolean compress;
+
+    /**
+     * Уровень сжатия gzip от 1 (быстрее) до 9 (меньше размер).
+     */
+    private int compressionLevel = 6;
+
+    /**
+     * Максимальное количество готовых отчетов в кеше повторных запросов.
+     */
+    private int cacheMaxEntries = 1000;
+
+    /**
+     * Максимальный суммарный размер готовых отчетов в кеше повторных запросов.
+     */
+    private DataSize cacheMaxSize = DataSize.ofGigabytes(1);
+
+    /**
+     * Количество месяцев длинного отчета, читаемых параллельно. Значение 1 отключает разбиение периода.
+     */
+    private int fetchParallelism = 4;
+
+    /**
+     * Размер буфера строк одного абонента при пакетной генерации отчетов.
+     */
+    private DataSize batchBufferSize = DataSize.ofKilobytes(16);
+
+    /**
+     * Максимальное количество буферов строк при пакетной генерации отчетов.
+     * Ограничивает память пакета значением {@code batchMaxBuffers * batchBufferSize} при любом количестве абонентов.
+     */
+    private int batchMaxBuffers = 1024;
+
+    /**
+     * Максимальное количество одновременно открытых файлов при пакетной генерации отчетов.
+     */
+    private int batchMaxOpenFiles = 64;
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public boolean isCompress() {
+        return compress;
+    }
+
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public int getCacheMaxEntries() {
+        return cacheMaxEntries;
+    }
+
+    public void setCacheMaxEntries(int cacheMaxEntries) {
+        this.cacheMaxEntries = cacheMaxEntries;
+    }
+
+    public DataSize getCacheMaxSize() {
+        return cacheMaxSize;
+    }
+
+    public void setCacheMaxSize(DataSize cacheMaxSize) {
+        this.cacheMaxSize = cacheMaxSize;
+    }
+
+    public DataSize getBatchBufferSize() {
+        return batchBufferSize;
+    }
+
+    public void setBatchBufferSize(DataSize batchBufferSize) {
+        this.batchBufferSize = batchBufferSize;
+    }
+
+    public int getBatchMaxBuffers() {
+        return batchMaxBuffers;
+    }
+
+    public void setBatchMaxBuffers(int batchMaxBuffers) {
+        this.batchMaxBuffers = batchMaxBuffers;
+    }
+
+    public int getBatchMaxOpenFiles() {
+        return batchMaxOpenFiles;
+    }
+
+    public void setBatchMaxOpenFiles(int batchMaxOpenFiles) {
+        this.batchMaxOpenFiles = batchMaxOpenFiles;
+    }
+
+    public int getFetchParallelism() {
+        return fetchParallelism;
+    }
+
+    public void setFetchParallelism(int fetchParallelism) {
+        this.fetchParallelism = fetchParallelism;
+    }
+}
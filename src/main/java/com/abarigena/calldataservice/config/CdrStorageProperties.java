@@ -0,0 +1,24 @@
+package com.abarigena.calldataservice.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Настройки хранения CDR-записей.
+ * Задаются в application.yml с префиксом {@code cdr.storage}.
+ */
+@ConfigurationProperties(prefix = "cdr.storage")
+public class CdrStorageProperties {
+
+    /**
+     * Количество записей, сохраняемых в одной транзакции при пакетной загрузке.
+     */
+    private int chunkSize = 1000;
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+}
@@ -0,0 +1,66 @@
+package com.abarigena.calldataservice.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Настройки формирования UDR-отчетов.
+ * Задаются в application.yml с префиксом {@code cdr.udr}.
+ */
+@ConfigurationProperties(prefix = "cdr.udr")
+public class CdrUdrProperties {
+
+    /**
+     * Количество частей периода, суммируемых параллельно при формировании UDR всех абонентов.
+     * По умолчанию - количество доступных процессоров.
+     */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Максимальное количество записей в кеше UDR-отчетов за завершившиеся месяцы.
+     */
+    private int cacheMaxEntries = 10_000;
+
+    /**
+     * Максимальный оценочный размер кеша UDR-отчетов в памяти.
+     */
+    private DataSize cacheMaxSize = DataSize.ofMegabytes(64);
+
+    /**
+     * Максимальное количество абонентов в суточном индексе UDR за произвольный период.
+     * Абонент занимает в индексе около 16 байт на каждые сутки между его первым и последним звонком.
+     */
+    private int indexMaxSubscribers = 10_000;
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getCacheMaxEntries() {
+        return cacheMaxEntries;
+    }
+
+    public void setCacheMaxEntries(int cacheMaxEntries) {
+        this.cacheMaxEntries = cacheMaxEntries;
+    }
+
+    public DataSize getCacheMaxSize() {
+        return cacheMaxSize;
+    }
+
+    public void setCacheMaxSize(DataSize cacheMaxSize) {
+        this.cacheMaxSize = cacheMaxSize;
+    }
+
+    public int getIndexMaxSubscribers() {
+        return indexMaxSubscribers;
+    }
+
+    public void setIndexMaxSubscribers(int indexMaxSubscribers) {
+        this.indexMaxSubscribers = indexMaxSubscribers;
+    }
+}
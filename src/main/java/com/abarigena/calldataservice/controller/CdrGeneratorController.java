@@ -1,19 +1,27 @@
 package com.abarigena.calldataservice.controller;
 
-import com.abarigena.calldataservice.service.CdrGeneratorService;
+import com.abarigena.calldataservice.dto.CdrGenerationRequest;
+import com.abarigena.calldataservice.dto.GenerationJobStatus;
+import com.abarigena.calldataservice.service.GenerationJobService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.UUID;
+
 /**
  * Контроллер для генерации CDR-записей.
- * Предоставляет REST API для инициирования процесса генерации CDR-записей.
+ * Предоставляет REST API для запуска фоновой генерации CDR-записей, отслеживания ее прогресса и отмены.
  */
 @RestController
 @RequestMapping("/api/cdr")
@@ -21,27 +29,51 @@ import org.springframework.web.bind.annotation.RestController;
 public class CdrGeneratorController {
     private static final Logger logger = LoggerFactory.getLogger(CdrGeneratorController.class);
 
-    private final CdrGeneratorService cdrGeneratorService;
+    private final GenerationJobService generationJobService;
 
     @Autowired
-    public CdrGeneratorController(CdrGeneratorService cdrGeneratorService) {
-        this.cdrGeneratorService = cdrGeneratorService;
+    public CdrGeneratorController(GenerationJobService generationJobService) {
+        this.generationJobService = generationJobService;
     }
 
     @Operation(
-            summary = "Генерация CDR-записей за год",
-            description = "Инициирует процесс генерации CDR-записей за весь год. Возвращает время выполнения операции."
+            summary = "Запуск генерации CDR-записей",
+            description = "Ставит в очередь фоновую генерацию CDR-записей. По умолчанию генерирует записи за весь год " +
+                    "для всех абонентов. Возвращает идентификатор задачи для отслеживания прогресса."
     )
     @PostMapping("/generate")
-    public ResponseEntity<?> generateCdr() {
+    public ResponseEntity<GenerationJobStatus> generateCdr(@RequestBody(required = false) CdrGenerationRequest request) {
         logger.info("Получен запрос на генерацию CDR-записей");
-        long startTime = System.currentTimeMillis();
-        cdrGeneratorService.generateYearCdrRecords();
-        long endTime = System.currentTimeMillis();
-        long executionTime = endTime - startTime;
 
-        logger.info("Завершена генерация CDR-записей. Время выполнения: {} мс", executionTime);
+        try {
+            GenerationJobStatus status = generationJobService.submit(
+                    request != null ? request : new CdrGenerationRequest());
+            logger.info("Задача генерации CDR-записей принята, jobId: {}", status.getJobId());
+            return ResponseEntity.accepted().body(status);
+        } catch (IllegalArgumentException e) {
+            logger.error("Некорректный запрос на генерацию CDR-записей: {}", e.getMessage());
+            GenerationJobStatus status = new GenerationJobStatus();
+            status.setErrorMessage(e.getMessage());
+            return ResponseEntity.badRequest().body(status);
+        }
+    }
+
+    @Operation(
+            summary = "Прогресс генерации CDR-записей",
+            description = "Возвращает количество сохраненных записей, скорость генерации и оценку оставшегося времени"
+    )
+    @GetMapping("/generate/{jobId}")
+    public ResponseEntity<GenerationJobStatus> getGenerationStatus(@PathVariable UUID jobId) {
+        return ResponseEntity.of(generationJobService.getStatus(jobId));
+    }
 
-        return ResponseEntity.ok().body("CDR генерация успешна. Заняло времени: " + (executionTime) + " мс");
+    @Operation(
+            summary = "Отмена генерации CDR-записей",
+            description = "Прерывает задачу генерации. Уже сохраненные записи остаются в базе данных"
+    )
+    @DeleteMapping("/generate/{jobId}")
+    public ResponseEntity<GenerationJobStatus> cancelGeneration(@PathVariable UUID jobId) {
+        logger.info("Получен запрос на отмену задачи генерации {}", jobId);
+        return ResponseEntity.of(generationJobService.cancel(jobId));
     }
 }
@@ -0,0 +1,66 @@
+package com.abarigena.calldataservice.controller;
+
+import com.abarigena.calldataservice.dto.CdrImportResult;
+import com.abarigena.calldataservice.service.CdrImportService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Контроллер для импорта CDR-записей.
+ * Принимает файл CDR-записей телом запроса и загружает его в базу данных потоково.
+ */
+@RestController
+@RequestMapping("/api/cdr/import")
+@Tag(name = "CDR Import", description = "API для импорта CDR-записей из файлов")
+public class CdrImportController {
+    private static final Logger logger = LoggerFactory.getLogger(CdrImportController.class);
+
+    private final CdrImportService cdrImportService;
+
+    @Autowired
+    public CdrImportController(CdrImportService cdrImportService) {
+        this.cdrImportService = cdrImportService;
+    }
+
+    /**
+     * Импортирует CDR-записи из тела запроса.
+     *
+     * @param name    название файла для логов (опционально)
+     * @param request HTTP-запрос с файлом в теле
+     * @return результат импорта
+     */
+    @Operation(
+            summary = "Импорт CDR-файла",
+            description = "Загружает CDR-записи в формате callType,caller,receiver,start,end из тела запроса. " +
+                    "Некорректные строки пропускаются и перечисляются в результате"
+    )
+    @PostMapping(consumes = {"text/csv", MediaType.TEXT_PLAIN_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<CdrImportResult> importCdr(@RequestParam(required = false, defaultValue = "upload") String name,
+                                                     HttpServletRequest request) {
+        logger.info("Получен запрос на импорт CDR-файла {}", name);
+
+        try (ReadableByteChannel channel = Channels.newChannel(request.getInputStream())) {
+            return ResponseEntity.ok(cdrImportService.importCdr(channel, name));
+        } catch (IOException e) {
+            logger.error("Ошибка при импорте CDR-файла {}: {}", name, e.getMessage());
+            CdrImportResult result = new CdrImportResult();
+            result.setSource(name);
+            result.getErrors().add(e.getMessage());
+            return ResponseEntity.badRequest().body(result);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.abarigena.calldataservice.controller;
+
+import com.abarigena.calldataservice.dto.CdrPartitionInfo;
+import com.abarigena.calldataservice.service.CdrPartitionService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * Контроллер для управления помесячными партициями CDR-записей.
+ */
+@RestController
+@RequestMapping("/api/cdr/partitions")
+@Tag(name = "CDR Partitions", description = "API для управления помесячными партициями CDR-записей")
+public class CdrPartitionController {
+    private static final Logger logger = LoggerFactory.getLogger(CdrPartitionController.class);
+
+    private final CdrPartitionService cdrPartitionService;
+
+    @Autowired
+    public CdrPartitionController(CdrPartitionService cdrPartitionService) {
+        this.cdrPartitionService = cdrPartitionService;
+    }
+
+    @Operation(
+            summary = "Список партиций CDR-записей",
+            description = "Возвращает непустые помесячные партиции и количество записей в каждой из них"
+    )
+    @GetMapping
+    public ResponseEntity<List<CdrPartitionInfo>> getPartitions() {
+        return ResponseEntity.ok(cdrPartitionService.getPartitions());
+    }
+
+    @Operation(
+            summary = "Удаление партиции CDR-записей",
+            description = "Удаляет все CDR-записи указанного месяца (формат yyyy-MM)"
+    )
+    @DeleteMapping("/{month}")
+    public ResponseEntity<CdrPartitionInfo> dropPartition(
+            @PathVariable @DateTimeFormat(pattern = "yyyy-MM") YearMonth month) {
+        logger.info("Получен запрос на удаление партиции CDR-записей {}", month);
+        return ResponseEntity.ok(cdrPartitionService.dropPartition(month));
+    }
+}
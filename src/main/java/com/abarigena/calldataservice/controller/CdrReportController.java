@@ -1,25 +1,55 @@
 package com.abarigena.calldataservice.controller;
 
+import com.abarigena.calldataservice.dto.CdrBatchReportRequest;
 import com.abarigena.calldataservice.dto.CdrReportResponse;
+import com.abarigena.calldataservice.dto.CdrReportStatus;
 import com.abarigena.calldataservice.dto.CdrReportsRequest;
+import com.abarigena.calldataservice.dto.ReportExecutorStats;
 import com.abarigena.calldataservice.dto.SimpleCdrReportRequest;
+import com.abarigena.calldataservice.service.CdrReportExecutor;
 import com.abarigena.calldataservice.service.CdrReportService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
 
 /**
  * REST-контроллер для работы с CDR-отчетами.
- * Предоставляет API для генерации отчетов.
+ * Предоставляет API для генерации отчетов, отслеживания их состояния и скачивания готовых файлов.
+ * При заполненной очереди генерации возвращает 429.
  */
 @RestController
 @RequestMapping("/api/cdr/reports")
@@ -28,11 +58,22 @@ public class CdrReportController {
 
     private static final Logger logger = LoggerFactory.getLogger(CdrReportController.class);
 
+    private static final String RETRY_AFTER_SECONDS = "5";
+    private static final String CSV_CONTENT_TYPE = "text/csv";
+    private static final String GZIP_CONTENT_TYPE = "application/gzip";
+    // Атрибуты запроса, через которые Tomcat отправляет файл системным вызовом sendfile
+    private static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
     private final CdrReportService cdrReportService;
+    private final CdrReportExecutor cdrReportExecutor;
 
     @Autowired
-    public CdrReportController(CdrReportService cdrReportService) {
+    public CdrReportController(CdrReportService cdrReportService, CdrReportExecutor cdrReportExecutor) {
         this.cdrReportService = cdrReportService;
+        this.cdrReportExecutor = cdrReportExecutor;
     }
 
     /**
@@ -49,15 +90,7 @@ public class CdrReportController {
     public ResponseEntity<CdrReportResponse> generateReport(@RequestBody CdrReportsRequest request) {
         logger.info("Получен запрос на генерацию CDR-отчета для абонента {}", request.getMsisdn());
 
-        CdrReportResponse response = cdrReportService.generateReport(request);
-
-        if ("ERROR".equals(response.getStatus())) {
-            logger.error("Ошибка при генерации отчета: {}", response.getErrorMessage());
-            return ResponseEntity.badRequest().body(response);
-        }
-
-        logger.info("Запрос на генерацию отчета принят, requestId: {}", response.getRequestId());
-        return ResponseEntity.ok(response);
+        return toResponseEntity(cdrReportService.generateReport(request));
     }
 
     /**
@@ -80,15 +113,217 @@ public class CdrReportController {
         fullRequest.setMsisdn(request.getMsisdn());
         fullRequest.setEndDate(LocalDateTime.now());
         fullRequest.setStartDate(LocalDateTime.now().minusDays(request.getPeriodInDays()));
+        fullRequest.setPriority(request.getPriority());
+        fullRequest.setCompress(request.getCompress());
+
+        return toResponseEntity(cdrReportService.generateReport(fullRequest));
+    }
+
+    /**
+     * Генерирует CDR-отчеты для пакета абонентов за указанный период одним проходом по CDR-записям.
+     *
+     * @param request Запрос на пакетную генерацию отчетов
+     * @return Ответ с UUID запроса и именем директории пакета
+     */
+    @Operation(
+            summary = "Пакетная генерация CDR-отчетов",
+            description = "Генерирует отчеты для списка абонентов (по умолчанию - для всех) за период, " +
+                    "читая звонки периода один раз. Отчет абонента скачивается через /{requestId}/file?msisdn="
+    )
+    @PostMapping("/batch")
+    public ResponseEntity<CdrReportResponse> generateBatchReport(@RequestBody CdrBatchReportRequest request) {
+        logger.info("Получен запрос на пакетную генерацию CDR-отчетов, абонентов: {}",
+                request.getMsisdns() != null && !request.getMsisdns().isEmpty() ? request.getMsisdns().size() : "все");
+
+        return toResponseEntity(cdrReportService.generateBatchReport(request));
+    }
 
-        CdrReportResponse response = cdrReportService.generateReport(fullRequest);
+    /**
+     * Синхронно выдает CDR-отчет в ответ, не сохраняя его в директорию отчетов.
+     * Отчет читается курсором из базы данных и передается по мере чтения.
+     *
+     * @param request        Запрос на генерацию отчета
+     * @param gzip           сжимать ли отчет; если не задан, определяется по заголовку {@code Accept-Encoding}
+     * @param acceptEncoding значение заголовка {@code Accept-Encoding}, если задано
+     * @return CSV-отчет или 400 с текстом ошибки, если не указан номер абонента
+     */
+    @Operation(
+            summary = "Потоковая выдача CDR-отчета",
+            description = "Пишет CSV-отчет за период прямо в ответ, без файла в директории отчетов. " +
+                    "Подходит для небольших и средних периодов, поддерживает сжатие gzip"
+    )
+    @PostMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> streamReport(
+            @RequestBody CdrReportsRequest request,
+            @RequestParam(required = false) Boolean gzip,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        logger.info("Получен запрос на потоковую выдачу CDR-отчета для абонента {}", request.getMsisdn());
 
+        if (request.getMsisdn() == null || request.getMsisdn().isEmpty()) {
+            logger.error("Не указан номер абонента для потоковой выдачи отчета");
+            byte[] message = "Не указан номер абонента".getBytes(StandardCharsets.UTF_8);
+            return ResponseEntity.badRequest()
+                    .contentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8))
+                    .body(output -> output.write(message));
+        }
+
+        boolean compress = gzip != null ? gzip : acceptEncoding != null && acceptEncoding.contains("gzip");
+        StreamingResponseBody body = output -> cdrReportService.streamReport(request, output, compress);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(CSV_CONTENT_TYPE))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(request.getMsisdn() + ".csv").build().toString());
+        if (compress) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+
+    /**
+     * Возвращает состояние задачи генерации отчета.
+     *
+     * @param requestId UUID запроса на генерацию отчета
+     * @return состояние задачи или 404, если задача не найдена
+     */
+    @Operation(
+            summary = "Состояние генерации CDR-отчета",
+            description = "Возвращает статус задачи (QUEUED, RUNNING, DONE, FAILED), количество строк, " +
+                    "размер файла и длительности ожидания и генерации"
+    )
+    @GetMapping("/{requestId}")
+    public ResponseEntity<CdrReportStatus> getReportStatus(@PathVariable UUID requestId) {
+        return ResponseEntity.of(cdrReportService.getStatus(requestId));
+    }
+
+    /**
+     * Отдает файл готового отчета. Поддерживает заголовок {@code Range} с одним диапазоном байтов.
+     * Если контейнер поддерживает sendfile (Tomcat с NIO-коннектором), файл передается в сокет
+     * без копирования через память приложения: контроллер только передает контейнеру путь и диапазон.
+     * Иначе файл копируется в ответ через {@link FileChannel#transferTo} и промежуточный буфер,
+     * не загружаясь в память целиком.
+     * Готовый файл не меняется, поэтому на условный запрос с совпадающим {@code ETag} возвращается 304.
+     *
+     * @param requestId  UUID запроса на генерацию отчета
+     * @param msisdn     номер абонента, если запрос - пакетная генерация отчетов
+     * @param range      значение заголовка {@code Range}, если задано
+     * @param webRequest запрос с условными заголовками
+     * @param request    HTTP-запрос, через атрибуты которого контейнеру передается файл для sendfile
+     * @param response   HTTP-ответ
+     * @throws IOException если произошла ошибка чтения файла или записи ответа
+     */
+    @Operation(
+            summary = "Скачивание CDR-отчета",
+            description = "Отдает CSV-файл завершенного отчета (gzip, если отчет сжат), для пакета - отчет абонента msisdn. " +
+                    "Поддерживает докачку через заголовок Range"
+    )
+    @GetMapping("/{requestId}/file")
+    public void downloadReport(@PathVariable UUID requestId,
+                               @RequestParam(required = false) String msisdn,
+                               @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+                               WebRequest webRequest,
+                               HttpServletRequest request,
+                               HttpServletResponse response) throws IOException {
+        Optional<Path> file = cdrReportService.getReportFile(requestId, msisdn);
+        if (file.isEmpty()) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+
+        long lastModified = Files.getLastModifiedTime(file.get()).toMillis();
+        // Файлы пакета отличаются только именем: у отчетов разных абонентов одного запроса свои версии
+        String eTag = "\"" + requestId + "-" + file.get().getFileName() + "-" + Files.size(file.get())
+                + "-" + lastModified + "\"";
+        if (webRequest.checkNotModified(eTag, lastModified)) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.get(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = 0;
+            long end = size - 1;
+            if (range != null) {
+                List<HttpRange> ranges;
+                try {
+                    ranges = HttpRange.parseRanges(range);
+                    if (ranges.size() == 1) {
+                        start = ranges.get(0).getRangeStart(size);
+                        end = ranges.get(0).getRangeEnd(size);
+                        if (start >= size || start > end) {
+                            throw new IllegalArgumentException("Диапазон за пределами файла: " + range);
+                        }
+                    }
+                } catch (IllegalArgumentException e) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                    response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    return;
+                }
+                // Несколько диапазонов не поддерживаются, в этом случае отдается весь файл
+                if (ranges.size() == 1) {
+                    response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+                }
+            }
+
+            long length = end - start + 1;
+            boolean compressed = file.get().getFileName().toString().endsWith(".gz");
+            response.setContentType(compressed ? GZIP_CONTENT_TYPE : CSV_CONTENT_TYPE);
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                    .filename(file.get().getFileName().toString()).build().toString());
+            response.setContentLengthLong(length);
+
+            if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE))) {
+                // Контейнер отправит файл сам после возврата из метода, конец диапазона не включается
+                request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, file.get().toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START_ATTRIBUTE, start);
+                request.setAttribute(SENDFILE_END_ATTRIBUTE, end + 1);
+                logger.debug("Файл отчета {} передается через sendfile, байты {}-{}",
+                        file.get().getFileName(), start, end);
+                return;
+            }
+
+            WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position <= end) {
+                long transferred = channel.transferTo(position, end - position + 1, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    /**
+     * Возвращает состояние пула генерации отчетов.
+     *
+     * @return размер очереди, количество выполняемых, завершенных и отклоненных отчетов
+     */
+    @Operation(
+            summary = "Состояние пула генерации отчетов",
+            description = "Возвращает глубину очереди, количество выполняемых, завершенных и отклоненных отчетов"
+    )
+    @GetMapping("/executor")
+    public ReportExecutorStats getExecutorStats() {
+        return cdrReportExecutor.getStats();
+    }
+
+    private ResponseEntity<CdrReportResponse> toResponseEntity(CdrReportResponse response) {
         if ("ERROR".equals(response.getStatus())) {
             logger.error("Ошибка при генерации отчета: {}", response.getErrorMessage());
             return ResponseEntity.badRequest().body(response);
         }
+        if ("REJECTED".equals(response.getStatus())) {
+            logger.warn("Запрос на генерацию отчета отклонен: {}", response.getErrorMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                    .body(response);
+        }
 
         logger.info("Запрос на генерацию отчета принят, requestId: {}", response.getRequestId());
-        return ResponseEntity.ok(response);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/cdr/reports/" + response.getRequestId()))
+                .body(response);
     }
 }
@@ -1,24 +1,43 @@
 package com.abarigena.calldataservice.controller;
 
+import com.abarigena.calldataservice.dto.CdrPartitionInfo;
+import com.abarigena.calldataservice.dto.UdrCacheStats;
+import com.abarigena.calldataservice.dto.UdrGranularity;
+import com.abarigena.calldataservice.dto.UdrRangeReport;
 import com.abarigena.calldataservice.dto.UdrReport;
+import com.abarigena.calldataservice.dto.UdrReportPage;
+import com.abarigena.calldataservice.service.CdrDataVersions;
 import com.abarigena.calldataservice.service.UdrService;
 import io.swagger.v3.oas.annotations.Operation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.util.List;
 
 /**
  * Контроллер для работы с UDR-отчетами.
  * Предоставляет REST API для получения отчетов по абонентам.
+ * Ответы с отчетами содержат заголовки {@code ETag} и {@code Last-Modified} по версии CDR-данных,
+ * которые выставляет {@link WebRequest#checkNotModified(String, long)}; на условный запрос
+ * с неизменившейся версией возвращается 304 без обращения к базе данных.
  */
 @RestController
 @RequestMapping("/api/udr")
 public class UdrController {
     private static final Logger logger = LoggerFactory.getLogger(UdrController.class);
+    private static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
 
     private final UdrService udrService;
 
@@ -30,10 +49,11 @@ public class UdrController {
     /**
      * Получение UDR-отчета для одного абонента
      *
-     * @param msisdn номер абонента
-     * @param year   год (опционально)
-     * @param month  месяц (опционально)
-     * @return UDR-отчет для абонента
+     * @param msisdn     номер абонента
+     * @param year       год (опционально)
+     * @param month      месяц (опционально)
+     * @param webRequest запрос с условными заголовками
+     * @return UDR-отчет для абонента или 304, если он не изменился
      */
     @Operation(
             summary = "Получение UDR-отчета для абонента",
@@ -43,22 +63,70 @@ public class UdrController {
     public ResponseEntity<UdrReport> getUdrForSubscriber(
             @PathVariable String msisdn,
             @RequestParam(required = false) Integer year,
-            @RequestParam(required = false) Integer month) {
+            @RequestParam(required = false) Integer month,
+            WebRequest webRequest) {
 
         logger.info("Получен запрос на UDR-отчет для абонента {}, год: {}, месяц: {}", msisdn, year, month);
 
+        CdrDataVersions.Version version = udrService.getUdrVersion(year, month);
+        if (webRequest.checkNotModified(version.eTag(), version.lastModified())) {
+            logger.debug("UDR-отчет для абонента {} не изменился", msisdn);
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+        }
+
         UdrReport report = udrService.getUdrForSubscriber(msisdn, year, month);
 
         logger.info("Отправлен UDR-отчет для абонента {}", msisdn);
         return ResponseEntity.ok(report);
     }
 
+    /**
+     * Получение UDR-отчета для одного абонента за произвольный период
+     *
+     * @param msisdn      номер абонента
+     * @param from        начало периода включительно
+     * @param to          окончание периода включительно
+     * @param granularity разбиение периода на интервалы
+     * @param webRequest  запрос с условными заголовками
+     * @return UDR-отчет абонента за период или 304, если он не изменился
+     */
+    @Operation(
+            summary = "Получение UDR-отчета для абонента за произвольный период",
+            description = "Возвращает суммарную длительность входящих и исходящих звонков абонента за период " +
+                    "и, если указано разбиение DAY или HOUR, длительность звонков за каждые сутки или час UTC"
+    )
+    @GetMapping("/subscriber/{msisdn}/range")
+    public ResponseEntity<UdrRangeReport> getUdrForSubscriberRange(
+            @PathVariable String msisdn,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "NONE") UdrGranularity granularity,
+            WebRequest webRequest) {
+
+        logger.info("Получен запрос на UDR-отчет для абонента {} за период с {} по {}", msisdn, from, to);
+
+        try {
+            CdrDataVersions.Version version = udrService.getUdrRangeVersion(from, to);
+            if (webRequest.checkNotModified(version.eTag(), version.lastModified())) {
+                logger.debug("UDR-отчет для абонента {} за период не изменился", msisdn);
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+            }
+            UdrRangeReport report = udrService.getUdrForSubscriberRange(msisdn, from, to, granularity);
+            logger.info("Отправлен UDR-отчет для абонента {} за период", msisdn);
+            return ResponseEntity.ok(report);
+        } catch (IllegalArgumentException e) {
+            logger.error("Некорректный запрос UDR-отчета за период: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     /**
      * Получение UDR-отчетов для всех абонентов за указанный месяц
      *
-     * @param year  год
-     * @param month месяц
-     * @return список UDR-отчетов для всех абонентов
+     * @param year       год
+     * @param month      месяц
+     * @param webRequest запрос с условными заголовками
+     * @return список UDR-отчетов для всех абонентов или 304, если он не изменился
      */
     @Operation(
             summary = "Получение UDR-отчетов для всех абонентов",
@@ -67,13 +135,146 @@ public class UdrController {
     @GetMapping("/subscribers")
     public ResponseEntity<List<UdrReport>> getAllUdrsByMonth(
             @RequestParam int year,
-            @RequestParam int month) {
+            @RequestParam int month,
+            WebRequest webRequest) {
 
         logger.info("Получен запрос на UDR-отчеты для всех абонентов за {}-{}", year, month);
 
+        CdrDataVersions.Version version = udrService.getAllUdrsVersion(year, month);
+        if (webRequest.checkNotModified(version.eTag(), version.lastModified())) {
+            logger.debug("UDR-отчеты для всех абонентов за {}-{} не изменились", year, month);
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+        }
+
         List<UdrReport> reports = udrService.getAllUdrsByMonth(year, month);
 
         logger.info("Отправлены UDR-отчеты для {} абонентов за {}-{}", reports.size(), year, month);
         return ResponseEntity.ok(reports);
     }
+
+    /**
+     * Получение страницы UDR-отчетов всех абонентов за указанный месяц
+     *
+     * @param year       год
+     * @param month      месяц
+     * @param after      номер последнего абонента предыдущей страницы (опционально)
+     * @param limit      количество отчетов на странице
+     * @param webRequest запрос с условными заголовками
+     * @return страница UDR-отчетов, упорядоченных по номеру абонента, или 304, если она не изменилась
+     */
+    @Operation(
+            summary = "Постраничное получение UDR-отчетов для всех абонентов",
+            description = "Возвращает страницу UDR-отчетов за указанный месяц, упорядоченных по номеру абонента. " +
+                    "Следующая страница запрашивается с параметром after, равным nextAfter текущей страницы"
+    )
+    @GetMapping("/subscribers/page")
+    public ResponseEntity<UdrReportPage> getUdrPageByMonth(
+            @RequestParam int year,
+            @RequestParam int month,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "1000") int limit,
+            WebRequest webRequest) {
+
+        logger.info("Получен запрос на страницу UDR-отчетов за {}-{} после абонента {}", year, month, after);
+
+        try {
+            CdrDataVersions.Version version = udrService.getAllUdrsVersion(year, month);
+            if (webRequest.checkNotModified(version.eTag(), version.lastModified())) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+            }
+            UdrReportPage page = udrService.getUdrPageByMonth(year, month, after, limit);
+            logger.info("Отправлена страница из {} UDR-отчетов за {}-{}", page.getReports().size(), year, month);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException | DateTimeException e) {
+            logger.error("Некорректный запрос страницы UDR-отчетов: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Потоковая выдача UDR-отчетов всех абонентов за указанный месяц в формате NDJSON
+     *
+     * @param year       год
+     * @param month      месяц
+     * @param webRequest запрос с условными заголовками
+     * @return поток UDR-отчетов, по одному JSON-объекту на строку, или 304, если отчеты не изменились
+     */
+    @Operation(
+            summary = "Потоковое получение UDR-отчетов для всех абонентов",
+            description = "Пишет UDR-отчеты всех абонентов за указанный месяц в ответ в формате NDJSON " +
+                    "по мере подсчета. Память сервера не зависит от количества абонентов"
+    )
+    @GetMapping("/subscribers/stream")
+    public ResponseEntity<StreamingResponseBody> streamAllUdrsByMonth(
+            @RequestParam int year,
+            @RequestParam int month,
+            WebRequest webRequest) {
+
+        logger.info("Получен запрос на потоковую выдачу UDR-отчетов для всех абонентов за {}-{}", year, month);
+
+        // Месяц проверяется до начала ответа: после отправки заголовков ошибку уже не вернуть
+        try {
+            YearMonth.of(year, month);
+        } catch (DateTimeException e) {
+            logger.error("Некорректный месяц для потоковой выдачи UDR-отчетов: {}", e.getMessage());
+            byte[] message = e.getMessage().getBytes(StandardCharsets.UTF_8);
+            return ResponseEntity.badRequest()
+                    .contentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8))
+                    .body(output -> output.write(message));
+        }
+
+        CdrDataVersions.Version version = udrService.getAllUdrsVersion(year, month);
+        if (webRequest.checkNotModified(version.eTag(), version.lastModified())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+        }
+
+        StreamingResponseBody body = output -> udrService.streamAllUdrsByMonth(year, month, output);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON_CONTENT_TYPE))
+                .body(body);
+    }
+
+    /**
+     * Пересчет помесячных итогов звонков по CDR-записям
+     *
+     * @param year  год (опционально)
+     * @param month месяц (опционально)
+     * @return пересчитанные месяцы с количеством учтенных CDR-записей
+     */
+    @Operation(
+            summary = "Пересчет помесячных итогов звонков",
+            description = "Пересчитывает итоги звонков абонентов, из которых читаются UDR-отчеты за месяц, " +
+                    "за указанный месяц или, если месяц не указан, за все месяцы"
+    )
+    @PostMapping("/monthly/rebuild")
+    public ResponseEntity<List<CdrPartitionInfo>> rebuildMonthlyTotals(
+            @RequestParam(required = false) Integer year,
+            @RequestParam(required = false) Integer month) {
+
+        logger.info("Получен запрос на пересчет помесячных итогов звонков, год: {}, месяц: {}", year, month);
+
+        try {
+            List<CdrPartitionInfo> rebuilt = udrService.rebuildMonthlyTotals(year, month);
+            logger.info("Пересчитаны итоги звонков за {} месяцев", rebuilt.size());
+            return ResponseEntity.ok(rebuilt);
+        } catch (DateTimeException e) {
+            logger.error("Некорректный месяц для пересчета итогов звонков: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Возвращает состояние кеша UDR-отчетов.
+     *
+     * @return количество и размер записей, счетчики попаданий, промахов, вытеснений и сбросов
+     */
+    @Operation(
+            summary = "Состояние кеша UDR-отчетов",
+            description = "Возвращает количество и размер записей кеша, а также счетчики попаданий, промахов, " +
+                    "вытеснений и сбросов после изменения CDR-записей"
+    )
+    @GetMapping("/cache")
+    public UdrCacheStats getCacheStats() {
+        return udrService.getCacheStats();
+    }
 }
@@ -0,0 +1,51 @@
+package com.abarigena.calldataservice.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * DTO для запроса на пакетную генерацию CDR-отчетов.
+ * Отчеты всех абонентов пакета формируются одним проходом по CDR-записям за период.
+ */
+@Schema(description = "Запрос на пакетную генерацию CDR-отчетов")
+public class CdrBatchReportRequest {
+    @Schema(description = "Номера абонентов пакета. По умолчанию - все абоненты")
+    private List<String> msisdns;
+    private ReportPriority priority = ReportPriority.NORMAL;
+    private LocalDateTime startDate;
+    private LocalDateTime endDate;
+
+    public List<String> getMsisdns() {
+        return msisdns;
+    }
+
+    public void setMsisdns(List<String> msisdns) {
+        this.msisdns = msisdns;
+    }
+
+    public ReportPriority getPriority() {
+        return priority;
+    }
+
+    public void setPriority(ReportPriority priority) {
+        this.priority = priority;
+    }
+
+    public LocalDateTime getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(LocalDateTime startDate) {
+        this.startDate = startDate;
+    }
+
+    public LocalDateTime getEndDate() {
+        return endDate;
+    }
+
+    public void setEndDate(LocalDateTime endDate) {
+        this.endDate = endDate;
+    }
+}
@@ -0,0 +1,68 @@
+package com.abarigena.calldataservice.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * DTO для запроса на генерацию CDR-записей.
+ * Все поля необязательны: по умолчанию генерируются записи за последний год для всех абонентов.
+ */
+@Schema(description = "Запрос на генерацию CDR-записей")
+public class CdrGenerationRequest {
+    @Schema(description = "Первый день периода генерации (включительно)", example = "2025-01-01")
+    private LocalDate startDate;
+
+    @Schema(description = "Последний день периода генерации (включительно)", example = "2025-12-31")
+    private LocalDate endDate;
+
+    @Schema(description = "Номера абонентов, для которых генерируются записи. По умолчанию - все абоненты")
+    private List<String> msisdns;
+
+    @Schema(description = "Добавить записи к существующим вместо полной перегенерации")
+    private boolean append;
+
+    @Schema(description = "Сгенерировать записи только за дни после самого позднего существующего звонка")
+    private boolean incremental;
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(LocalDate startDate) {
+        this.startDate = startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    public void setEndDate(LocalDate endDate) {
+        this.endDate = endDate;
+    }
+
+    public List<String> getMsisdns() {
+        return msisdns;
+    }
+
+    public void setMsisdns(List<String> msisdns) {
+        this.msisdns = msisdns;
+    }
+
+    public boolean isAppend() {
+        return append;
+    }
+
+    public void setAppend(boolean append) {
+        this.append = append;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+}
@@ -0,0 +1,61 @@
+package com.abarigena.calldataservice.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DTO с результатом импорта файла CDR-записей.
+ * Содержит количество загруженных и отклоненных строк и описание первых ошибок.
+ */
+@Schema(description = "Результат импорта CDR-записей")
+public class CdrImportResult {
+    private String source;
+    private long recordsImported;
+    private long recordsRejected;
+    private long durationMs;
+
+    @Schema(description = "Описание первых отклоненных строк")
+    private List<String> errors = new ArrayList<>();
+
+    public String getSource() {
+        return source;
+    }
+
+    public void setSource(String source) {
+        this.source = source;
+    }
+
+    public long getRecordsImported() {
+        return recordsImported;
+    }
+
+    public void setRecordsImported(long recordsImported) {
+        this.recordsImported = recordsImported;
+    }
+
+    public long getRecordsRejected() {
+        return recordsRejected;
+    }
+
+    public void setRecordsRejected(long recordsRejected) {
+        this.recordsRejected = recordsRejected;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public void setDurationMs(long durationMs) {
+        this.durationMs = durationMs;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<String> errors) {
+        this.errors = errors;
+    }
+}
@@ -0,0 +1,39 @@
+package com.abarigena.calldataservice.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * DTO с информацией о помесячной партиции CDR-записей.
+ */
+@Schema(description = "Помесячная партиция CDR-записей")
+public class CdrPartitionInfo {
+    @Schema(description = "Месяц партиции", example = "2025-01")
+    private String month;
+
+    @Schema(description = "Количество записей в партиции")
+    private long records;
+
+    public CdrPartitionInfo() {
+    }
+
+    public CdrPartitionInfo(String month, long records) {
+        this.month = month;
+        this.records = records;
+    }
+
+    public String getMonth() {
+        return month;
+    }
+
+    public void setMonth(String month) {
+        this.month = month;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public void setRecords(long records) {
+        this.records = records;
+    }
+}
@@ -28,6 +28,15 @@ public class CdrReportResponse {
         return new CdrReportResponse(requestId, "SUCCESS", fileName);
     }
 
+    /**
+     * Ответ на запрос, не принятый из-за заполненной очереди генерации отчетов.
+     */
+    public static CdrReportResponse rejected(UUID requestId, String errorMessage) {
+        CdrReportResponse response = new CdrReportResponse(requestId, "REJECTED", null);
+        response.setErrorMessage(errorMessage);
+        return response;
+    }
+
     public static CdrReportResponse error(UUID requestId, String errorMessage) {
         CdrReportResponse response = new CdrReportResponse(requestId, "ERROR", null);
         response.setErrorMessage(errorMessage);
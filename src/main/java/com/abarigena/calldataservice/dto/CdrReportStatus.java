@@ -0,0 +1,144 @@
+package com.abarigena.calldataservice.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * DTO с состоянием задачи генерации CDR-отчета.
+ */
+@Schema(description = "Состояние задачи генерации CDR-отчета")
+public class CdrReportStatus {
+    private UUID requestId;
+    private JobStatus status;
+    private String fileName;
+
+    @Schema(description = "Количество записанных строк отчета")
+    private long rowsWritten;
+
+    @Schema(description = "Сжат ли файл отчета в формате gzip")
+    private boolean compressed;
+
+    @Schema(description = "Размер файла отчета в байтах, после завершения")
+    private Long fileSize;
+
+    @Schema(description = "Размер отчета без сжатия в байтах, после завершения")
+    private Long uncompressedSize;
+
+    private LocalDateTime submittedAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+
+    @Schema(description = "Время ожидания в очереди, мс")
+    private Long queuedMillis;
+
+    @Schema(description = "Время генерации, мс")
+    private Long runMillis;
+
+    private String errorMessage;
+
+    public UUID getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(UUID requestId) {
+        this.requestId = requestId;
+    }
+
+    public JobStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(JobStatus status) {
+        this.status = status;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    public void setRowsWritten(long rowsWritten) {
+        this.rowsWritten = rowsWritten;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    public Long getUncompressedSize() {
+        return uncompressedSize;
+    }
+
+    public void setUncompressedSize(Long uncompressedSize) {
+        this.uncompressedSize = uncompressedSize;
+    }
+
+    public Long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(Long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public LocalDateTime getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public void setSubmittedAt(LocalDateTime submittedAt) {
+        this.submittedAt = submittedAt;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public Long getQueuedMillis() {
+        return queuedMillis;
+    }
+
+    public void setQueuedMillis(Long queuedMillis) {
+        this.queuedMillis = queuedMillis;
+    }
+
+    public Long getRunMillis() {
+        return runMillis;
+    }
+
+    public void setRunMillis(Long runMillis) {
+        this.runMillis = runMillis;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+}
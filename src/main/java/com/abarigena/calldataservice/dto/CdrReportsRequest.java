@@ -11,6 +11,10 @@ import java.time.LocalDateTime;
 @Schema(description = "Запрос на генерацию CDR-отчета")
 public class CdrReportsRequest {
     private String msisdn;
+    private ReportPriority priority = ReportPriority.NORMAL;
+
+    @Schema(description = "Сжимать ли отчет в формате gzip; если не задано, используется настройка cdr.report.compress")
+    private Boolean compress;
     private LocalDateTime startDate;
     private LocalDateTime endDate;
 
@@ -37,4 +41,20 @@ public class CdrReportsRequest {
     public void setEndDate(LocalDateTime endDate) {
         this.endDate = endDate;
     }
+
+    public ReportPriority getPriority() {
+        return priority;
+    }
+
+    public void setPriority(ReportPriority priority) {
+        this.priority = priority;
+    }
+
+    public Boolean getCompress() {
+        return compress;
+    }
+
+    public void setCompress(Boolean compress) {
+        this.compress = compress;
+    }
 }
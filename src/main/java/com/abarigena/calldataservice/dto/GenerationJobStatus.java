@@ -0,0 +1,102 @@
+package com.abarigena.calldataservice.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * DTO с состоянием задачи генерации CDR-записей.
+ * Содержит прогресс, скорость генерации и оценку оставшегося времени.
+ */
+@Schema(description = "Состояние задачи генерации CDR-записей")
+public class GenerationJobStatus {
+    private UUID jobId;
+    private JobStatus status;
+    private long recordsWritten;
+
+    @Schema(description = "Ожидаемое количество записей")
+    private long estimatedRecords;
+
+    @Schema(description = "Скорость сохранения, записей в секунду")
+    private double recordsPerSecond;
+
+    @Schema(description = "Оценка оставшегося времени в секундах")
+    private Long etaSeconds;
+
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private String errorMessage;
+
+    public UUID getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(UUID jobId) {
+        this.jobId = jobId;
+    }
+
+    public JobStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(JobStatus status) {
+        this.status = status;
+    }
+
+    public long getRecordsWritten() {
+        return recordsWritten;
+    }
+
+    public void setRecordsWritten(long recordsWritten) {
+        this.recordsWritten = recordsWritten;
+    }
+
+    public long getEstimatedRecords() {
+        return estimatedRecords;
+    }
+
+    public void setEstimatedRecords(long estimatedRecords) {
+        this.estimatedRecords = estimatedRecords;
+    }
+
+    public double getRecordsPerSecond() {
+        return recordsPerSecond;
+    }
+
+    public void setRecordsPerSecond(double recordsPerSecond) {
+        this.recordsPerSecond = recordsPerSecond;
+    }
+
+    public Long getEtaSeconds() {
+        return etaSeconds;
+    }
+
+    public void setEtaSeconds(Long etaSeconds) {
+        this.etaSeconds = etaSeconds;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+}
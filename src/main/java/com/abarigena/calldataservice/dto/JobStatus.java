@@ -0,0 +1,12 @@
+package com.abarigena.calldataservice.dto;
+
+/**
+ * Состояние фоновой задачи.
+ */
+public enum JobStatus {
+    QUEUED,
+    RUNNING,
+    DONE,
+    FAILED,
+    CANCELLED
+}
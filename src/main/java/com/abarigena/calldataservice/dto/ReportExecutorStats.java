@@ -0,0 +1,64 @@
+package com.abarigena.calldataservice.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * DTO с состоянием пула генерации CDR-отчетов.
+ */
+@Schema(description = "Состояние пула генерации CDR-отчетов")
+public class ReportExecutorStats {
+    private int parallelism;
+    private int queueCapacity;
+    private int queueDepth;
+    private int activeJobs;
+    private long completedJobs;
+    private long rejectedJobs;
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public void setQueueDepth(int queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    public int getActiveJobs() {
+        return activeJobs;
+    }
+
+    public void setActiveJobs(int activeJobs) {
+        this.activeJobs = activeJobs;
+    }
+
+    public long getCompletedJobs() {
+        return completedJobs;
+    }
+
+    public void setCompletedJobs(long completedJobs) {
+        this.completedJobs = completedJobs;
+    }
+
+    public long getRejectedJobs() {
+        return rejectedJobs;
+    }
+
+    public void setRejectedJobs(long rejectedJobs) {
+        this.rejectedJobs = rejectedJobs;
+    }
+}
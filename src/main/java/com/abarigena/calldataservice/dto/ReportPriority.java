@@ -0,0 +1,10 @@
+package com.abarigena.calldataservice.dto;
+
+/**
+ * Приоритет генерации отчета. Отчеты с более высоким приоритетом выбираются из очереди первыми.
+ */
+public enum ReportPriority {
+    LOW,
+    NORMAL,
+    HIGH
+}
@@ -9,6 +9,10 @@ import io.swagger.v3.oas.annotations.media.Schema;
 @Schema(description = "Упрощенный запрос на генерацию CDR-отчета")
 public class SimpleCdrReportRequest {
     private String msisdn;
+    private ReportPriority priority = ReportPriority.NORMAL;
+
+    @Schema(description = "Сжимать ли отчет в формате gzip; если не задано, используется настройка cdr.report.compress")
+    private Boolean compress;
     private int periodInDays;
 
     public String getMsisdn() {
@@ -26,4 +30,20 @@ public class SimpleCdrReportRequest {
     public void setPeriodInDays(int periodInDays) {
         this.periodInDays = periodInDays;
     }
+
+    public ReportPriority getPriority() {
+        return priority;
+    }
+
+    public void setPriority(ReportPriority priority) {
+        this.priority = priority;
+    }
+
+    public Boolean getCompress() {
+        return compress;
+    }
+
+    public void setCompress(Boolean compress) {
+        this.compress = compress;
+    }
 }
@@ -0,0 +1,10 @@
+package com.abarigena.calldataservice.dto;
+
+/**
+ * Разбиение UDR-отчета за период на интервалы: без разбиения, по суткам или по часам UTC.
+ */
+public enum UdrGranularity {
+    NONE,
+    DAY,
+    HOUR
+}
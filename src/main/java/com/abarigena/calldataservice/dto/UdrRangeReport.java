@@ -0,0 +1,126 @@
+package com.abarigena.calldataservice.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Класс DTO для UDR-отчета абонента за произвольный период.
+ * Содержит суммарную длительность входящих и исходящих звонков за период
+ * и, если запрошено разбиение, длительность звонков по интервалам периода.
+ */
+@Schema(description = "UDR-отчет абонента за произвольный период")
+public class UdrRangeReport {
+    private String msisdn;
+    private LocalDateTime startDate;
+    private LocalDateTime endDate;
+    private UdrReport.CallInfo incomingCall;
+    private UdrReport.CallInfo outcomingCall;
+
+    @Schema(description = "Длительность звонков по интервалам периода, null без разбиения")
+    private List<Bucket> buckets;
+
+    @Schema(description = "Длительность звонков за интервал периода")
+    public static class Bucket {
+        @Schema(description = "Начало интервала включительно", example = "2025-01-15T00:00:00")
+        private LocalDateTime startDate;
+
+        @Schema(description = "Окончание интервала включительно", example = "2025-01-15T23:59:59")
+        private LocalDateTime endDate;
+
+        private UdrReport.CallInfo incomingCall;
+        private UdrReport.CallInfo outcomingCall;
+
+        public Bucket() {
+        }
+
+        public Bucket(LocalDateTime startDate, LocalDateTime endDate,
+                      UdrReport.CallInfo incomingCall, UdrReport.CallInfo outcomingCall) {
+            this.startDate = startDate;
+            this.endDate = endDate;
+            this.incomingCall = incomingCall;
+            this.outcomingCall = outcomingCall;
+        }
+
+        public LocalDateTime getStartDate() {
+            return startDate;
+        }
+
+        public void setStartDate(LocalDateTime startDate) {
+            this.startDate = startDate;
+        }
+
+        public LocalDateTime getEndDate() {
+            return endDate;
+        }
+
+        public void setEndDate(LocalDateTime endDate) {
+            this.endDate = endDate;
+        }
+
+        public UdrReport.CallInfo getIncomingCall() {
+            return incomingCall;
+        }
+
+        public void setIncomingCall(UdrReport.CallInfo incomingCall) {
+            this.incomingCall = incomingCall;
+        }
+
+        public UdrReport.CallInfo getOutcomingCall() {
+            return outcomingCall;
+        }
+
+        public void setOutcomingCall(UdrReport.CallInfo outcomingCall) {
+            this.outcomingCall = outcomingCall;
+        }
+    }
+
+    public String getMsisdn() {
+        return msisdn;
+    }
+
+    public void setMsisdn(String msisdn) {
+        this.msisdn = msisdn;
+    }
+
+    public LocalDateTime getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(LocalDateTime startDate) {
+        this.startDate = startDate;
+    }
+
+    public LocalDateTime getEndDate() {
+        return endDate;
+    }
+
+    public void setEndDate(LocalDateTime endDate) {
+        this.endDate = endDate;
+    }
+
+    public UdrReport.CallInfo getIncomingCall() {
+        return incomingCall;
+    }
+
+    public void setIncomingCall(UdrReport.CallInfo incomingCall) {
+        this.incomingCall = incomingCall;
+    }
+
+    public UdrReport.CallInfo getOutcomingCall() {
+        return outcomingCall;
+    }
+
+    public void setOutcomingCall(UdrReport.CallInfo outcomingCall) {
+        this.outcomingCall = outcomingCall;
+    }
+
+    public List<Bucket> getBuckets() {
+        return buckets;
+    }
+
+    public void setBuckets(List<Bucket> buckets) {
+        this.buckets = buckets;
+    }
+}
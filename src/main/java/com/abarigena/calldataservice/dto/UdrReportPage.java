@@ -0,0 +1,43 @@
+package com.abarigena.calldataservice.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+/**
+ * Класс DTO для страницы UDR-отчетов всех абонентов.
+ * Страницы упорядочены по номеру абонента, следующая страница запрашивается по номеру последнего абонента текущей.
+ */
+@Schema(description = "Страница UDR-отчетов абонентов, упорядоченных по номеру")
+public class UdrReportPage {
+    @Schema(description = "UDR-отчеты абонентов страницы")
+    private List<UdrReport> reports;
+
+    @Schema(description = "Значение параметра after для следующей страницы, null на последней странице",
+            example = "79990000005")
+    private String nextAfter;
+
+    public UdrReportPage() {
+    }
+
+    public UdrReportPage(List<UdrReport> reports, String nextAfter) {
+        this.reports = reports;
+        this.nextAfter = nextAfter;
+    }
+
+    public List<UdrReport> getReports() {
+        return reports;
+    }
+
+    public void setReports(List<UdrReport> reports) {
+        this.reports = reports;
+    }
+
+    public String getNextAfter() {
+        return nextAfter;
+    }
+
+    public void setNextAfter(String nextAfter) {
+        this.nextAfter = nextAfter;
+    }
+}
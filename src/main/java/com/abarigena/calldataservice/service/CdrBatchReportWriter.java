@@ -0,0 +1,288 @@
+package com.abarigena.calldataservice.service;
+
+import com.abarigena.calldataservice.store.entity.CdrRecord;
+import com.abarigena.calldataservice.store.repository.CdrReportRow;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Писатель пакета CDR-отчетов: раскладывает звонки всех абонентов, прочитанные одним проходом по таблице,
+ * по отдельным файлам {@code <msisdn>.csv} в директории пакета.
+ * Исходящий звонок попадает в отчет звонящего, входящий - в отчет принимающего абонента,
+ * звонки абонентов вне пакета пропускаются.
+ * <p>
+ * Строки абонента копятся в буфере {@link CdrReportWriter}, а файл открывается только при сбросе буфера.
+ * Буферов не больше {@code maxBuffers}: когда буфер нужен новому абоненту, буфер абонента, которому
+ * дольше всего не писали, сбрасывается в его файл и переходит к новому абоненту. Поэтому память пакета -
+ * не больше {@code maxBuffers * bufferSize} байт при любом количестве абонентов.
+ * Одновременно открыто не больше {@code maxOpenFiles} файлов: при превышении закрывается файл,
+ * в который дольше всего не писали, и при следующем сбросе он открывается на дозапись.
+ * Экземпляр не потокобезопасен.
+ */
+public class CdrBatchReportWriter implements Closeable {
+    private static final String FILE_EXTENSION = ".csv";
+
+    private final Path directory;
+    private final long[] msisdns;
+    private final String[] fileNames;
+    private final int bufferSize;
+    private final int maxBuffers;
+    private final int maxOpenFiles;
+    private final boolean[] created;
+    // Буферы по номеру абонента в порядке последней записи
+    private final Map<Integer, SubscriberBuffer> buffers = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Integer, FileChannel> openFiles = new LinkedHashMap<>(16, 0.75f, true);
+    private long rowsWritten;
+    private long rowsSkipped;
+    private long filesOpened;
+
+    /**
+     * @param directory    директория пакета, должна существовать
+     * @param msisdns      номера абонентов пакета
+     * @param bufferSize   размер буфера строк одного абонента в байтах
+     * @param maxBuffers   максимальное количество буферов строк
+     * @param maxOpenFiles максимальное количество одновременно открытых файлов
+     * @throws IllegalArgumentException если номер абонента некорректен или параметры пула меньше допустимых
+     */
+    public CdrBatchReportWriter(Path directory, List<String> msisdns, int bufferSize, int maxBuffers,
+                                int maxOpenFiles) {
+        if (maxBuffers < 1) {
+            throw new IllegalArgumentException("Количество буферов пакета должно быть положительным");
+        }
+        if (maxOpenFiles < 1) {
+            throw new IllegalArgumentException("Количество открытых файлов пакета должно быть положительным");
+        }
+        if (bufferSize < CdrReportWriter.MAX_LINE_LENGTH) {
+            throw new IllegalArgumentException("Размер буфера отчета меньше длины строки: " + bufferSize);
+        }
+        this.directory = directory;
+        this.bufferSize = bufferSize;
+        this.maxBuffers = maxBuffers;
+        this.maxOpenFiles = maxOpenFiles;
+
+        // Номера сортируются как числа, чтобы абонента строки можно было найти двоичным поиском
+        this.msisdns = new long[msisdns.size()];
+        for (int i = 0; i < this.msisdns.length; i++) {
+            long value = CdrRecord.msisdnValue(msisdns.get(i));
+            if (value < 0) {
+                throw new IllegalArgumentException("Некорректный номер абонента: " + msisdns.get(i));
+            }
+            this.msisdns[i] = value;
+        }
+        Arrays.sort(this.msisdns);
+        this.fileNames = new String[this.msisdns.length];
+        for (int i = 0; i < this.msisdns.length; i++) {
+            if (i > 0 && this.msisdns[i] == this.msisdns[i - 1]) {
+                throw new IllegalArgumentException("Абонент указан в пакете несколько раз: " + this.msisdns[i]);
+            }
+            this.fileNames[i] = fileNameOf(this.msisdns[i]);
+        }
+        this.created = new boolean[this.msisdns.length];
+    }
+
+    /**
+     * @param msisdn числовое значение номера абонента
+     * @return имя файла отчета абонента в директории пакета
+     */
+    public static String fileNameOf(long msisdn) {
+        return msisdn + FILE_EXTENSION;
+    }
+
+    /**
+     * Записывает звонок в отчет абонента, к которому он относится.
+     *
+     * @param row звонок
+     * @return true, если звонок относится к абоненту пакета и записан
+     * @throws IOException если произошла ошибка записи
+     */
+    public boolean write(CdrReportRow row) throws IOException {
+        byte callType = row.getCallType();
+        long callerNumber = row.getCallerNumber();
+        long receiverNumber = row.getReceiverNumber();
+        long owner = callType == CdrRecord.OUTGOING ? callerNumber : receiverNumber;
+        int index = Arrays.binarySearch(msisdns, owner);
+        if (index < 0) {
+            rowsSkipped++;
+            return false;
+        }
+
+        acquireBuffer(index).writer.write(callType, callerNumber, receiverNumber, row.getStartTime(),
+                row.getDuration());
+        rowsWritten++;
+        return true;
+    }
+
+    /**
+     * @return количество записанных строк во всех отчетах пакета
+     */
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    /**
+     * @return количество пропущенных звонков абонентов вне пакета
+     */
+    public long getRowsSkipped() {
+        return rowsSkipped;
+    }
+
+    /**
+     * @return сколько раз открывались файлы пакета, включая повторные открытия после вытеснения из пула
+     */
+    public long getFilesOpened() {
+        return filesOpened;
+    }
+
+    /**
+     * @return количество выделенных буферов строк, не больше {@code maxBuffers}
+     */
+    public int getBufferCount() {
+        return buffers.size();
+    }
+
+    /**
+     * @return количество абонентов пакета
+     */
+    public int getSubscriberCount() {
+        return msisdns.length;
+    }
+
+    /**
+     * Сбрасывает буферы всех абонентов и закрывает файлы.
+     * Для абонентов без звонков за период создаются пустые отчеты.
+     *
+     * @throws IOException если произошла ошибка записи
+     */
+    @Override
+    public void close() throws IOException {
+        IOException error = null;
+        for (SubscriberBuffer buffer : buffers.values()) {
+            try {
+                buffer.writer.flush();
+            } catch (IOException e) {
+                error = error != null ? error : e;
+            }
+        }
+        buffers.clear();
+        for (int i = 0; i < created.length; i++) {
+            try {
+                if (!created[i]) {
+                    Files.write(directory.resolve(fileNames[i]), new byte[0]);
+                    created[i] = true;
+                }
+            } catch (IOException e) {
+                error = error != null ? error : e;
+            }
+        }
+        for (FileChannel channel : openFiles.values()) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                error = error != null ? error : e;
+            }
+        }
+        openFiles.clear();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Возвращает буфер абонента. Если буферов уже {@code maxBuffers}, забирает буфер абонента,
+     * которому дольше всего не писали, предварительно сбросив его строки в файл.
+     */
+    private SubscriberBuffer acquireBuffer(int index) throws IOException {
+        SubscriberBuffer buffer = buffers.get(index);
+        if (buffer != null) {
+            return buffer;
+        }
+        if (buffers.size() >= maxBuffers) {
+            Iterator<SubscriberBuffer> eldest = buffers.values().iterator();
+            buffer = eldest.next();
+            eldest.remove();
+            buffer.writer.flush();
+        } else {
+            buffer = new SubscriberBuffer();
+        }
+        buffer.channel.index = index;
+        buffers.put(index, buffer);
+        return buffer;
+    }
+
+    /**
+     * Возвращает открытый файл абонента, открывая его и при необходимости вытесняя из пула
+     * файл, в который дольше всего не писали.
+     */
+    private FileChannel acquire(int index) throws IOException {
+        FileChannel channel = openFiles.get(index);
+        if (channel != null) {
+            return channel;
+        }
+        if (openFiles.size() >= maxOpenFiles) {
+            Iterator<FileChannel> eldest = openFiles.values().iterator();
+            FileChannel evicted = eldest.next();
+            eldest.remove();
+            evicted.close();
+        }
+        // Первое открытие очищает файл прошлого запуска, повторные дописывают в конец
+        channel = created[index]
+                ? FileChannel.open(directory.resolve(fileNames[index]), StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)
+                : FileChannel.open(directory.resolve(fileNames[index]), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        created[index] = true;
+        filesOpened++;
+        openFiles.put(index, channel);
+        return channel;
+    }
+
+    /**
+     * Буфер строк, закрепленный за одним абонентом до передачи другому.
+     */
+    private class SubscriberBuffer {
+        private final SubscriberChannel channel = new SubscriberChannel();
+        private final CdrReportWriter writer = new CdrReportWriter(channel, bufferSize);
+    }
+
+    /**
+     * Канал отчета абонента буфера, который берет файл из пула только на время записи буфера.
+     */
+    private class SubscriberChannel implements WritableByteChannel {
+        private int index;
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            FileChannel channel = acquire(index);
+            int written = 0;
+            while (source.hasRemaining()) {
+                written += channel.write(source);
+            }
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            FileChannel channel = openFiles.remove(index);
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.abarigena.calldataservice.service;
+
+import com.abarigena.calldataservice.store.repository.CdrRecordsChangedEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Версии CDR-данных по месяцам для условных HTTP-запросов.
+ * Каждое изменение CDR-записей получает порядковый номер, и для каждого месяца запоминается
+ * номер и время последнего затронувшего его изменения. Версия месяца не требует обращения к базе данных.
+ * Номера изменений начинаются заново при каждом запуске, поэтому в версию входит идентификатор запуска:
+ * данные могли измениться, пока сервис был остановлен.
+ * Методы потокобезопасны.
+ */
+@Component
+public class CdrDataVersions {
+    // Изменение длиннее этого количества месяцев считается изменением всех месяцев
+    private static final int MAX_TRACKED_MONTHS = 1200;
+
+    private final String bootId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Integer, Change> months = new ConcurrentHashMap<>();
+    private final AtomicReference<Change> allMonths;
+    private final AtomicReference<Change> latest;
+
+    public CdrDataVersions() {
+        Change start = new Change(0, System.currentTimeMillis());
+        this.allMonths = new AtomicReference<>(start);
+        this.latest = new AtomicReference<>(start);
+    }
+
+    /**
+     * @return версия звонков месяца
+     * @throws java.time.DateTimeException если год или месяц некорректны
+     */
+    public Version forMonth(int year, int month) {
+        YearMonth yearMonth = YearMonth.of(year, month);
+        Change change = later(allMonths.get(), months.get(yearMonth.getYear() * 100 + yearMonth.getMonthValue()));
+        return new Version(bootId + "-" + change.sequence, change.timestamp);
+    }
+
+    /**
+     * @param startDate начало периода
+     * @param endDate   окончание периода
+     * @return версия звонков периода: меняется при изменении любого из его месяцев
+     */
+    public Version forPeriod(LocalDateTime startDate, LocalDateTime endDate) {
+        YearMonth from = YearMonth.from(startDate);
+        YearMonth to = YearMonth.from(endDate);
+        if (from.plusMonths(MAX_TRACKED_MONTHS).isBefore(to)) {
+            return forAllTime();
+        }
+        Change change = allMonths.get();
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            change = later(change, months.get(month.getYear() * 100 + month.getMonthValue()));
+        }
+        return new Version(bootId + "-" + change.sequence, change.timestamp);
+    }
+
+    /**
+     * @return версия всех звонков, меняется при любом изменении CDR-записей
+     */
+    public Version forAllTime() {
+        Change change = latest.get();
+        return new Version(bootId + "-" + change.sequence, change.timestamp);
+    }
+
+    /**
+     * Запоминает изменение месяцев, затронутых изменением CDR-записей.
+     * Вызывается после фиксации изменившей записи транзакции.
+     *
+     * @param event изменение CDR-записей
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCdrRecordsChanged(CdrRecordsChangedEvent event) {
+        Change change = new Change(sequence.incrementAndGet(), System.currentTimeMillis());
+        latest.accumulateAndGet(change, CdrDataVersions::later);
+
+        YearMonth from = toYearMonth(event.fromPartition());
+        YearMonth to = toYearMonth(event.toPartition());
+        if (from == null || to == null || from.plusMonths(MAX_TRACKED_MONTHS).isBefore(to)) {
+            allMonths.accumulateAndGet(change, CdrDataVersions::later);
+            return;
+        }
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            months.merge(month.getYear() * 100 + month.getMonthValue(), change, CdrDataVersions::later);
+        }
+    }
+
+    private static YearMonth toYearMonth(int partitionKey) {
+        int month = partitionKey % 100;
+        return partitionKey > 0 && month >= 1 && month <= 12 ? YearMonth.of(partitionKey / 100, month) : null;
+    }
+
+    private static Change later(Change first, Change second) {
+        return second == null || first.sequence >= second.sequence ? first : second;
+    }
+
+    private record Change(long sequence, long timestamp) {
+    }
+
+    /**
+     * Версия данных ответа.
+     *
+     * @param tag          значение, меняющееся при каждом изменении данных
+     * @param lastModified время последнего изменения данных в миллисекундах эпохи
+     */
+    public record Version(String tag, long lastModified) {
+
+        /**
+         * Добавляет к версии другой источник данных ответа.
+         *
+         * @param otherTag          версия источника
+         * @param otherLastModified время последнего изменения источника в миллисекундах эпохи
+         * @return версия, меняющаяся при изменении любого из источников
+         */
+        public Version and(long otherTag, long otherLastModified) {
+            return new Version(tag + "-" + otherTag, Math.max(lastModified, otherLastModified));
+        }
+
+        /**
+         * @return значение заголовка {@code ETag}
+         */
+        public String eTag() {
+            return "\"" + tag + "\"";
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.abarigena.calldataservice.service;
+
+import com.abarigena.calldataservice.dto.CdrImportResult;
+import com.abarigena.calldataservice.store.entity.CdrRecord;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Потоковый разборщик файлов CDR-записей в формате {@code callType,caller,receiver,start,end},
+ * в котором отчеты пишет {@link CdrReportService}.
+ * Читает канал в переиспользуемый буфер и разбирает поля прямо из байтов, без промежуточных строк
+ * и {@link java.time.format.DateTimeFormatter}. Номера и время сразу переводятся в числовое
+ * представление {@link CdrRecord}: время - в секунды эпохи UTC без создания объектов даты,
+ * доли секунды отбрасываются.
+ * Экземпляр не потокобезопасен и предназначен для разбора одного источника.
+ */
+public class CdrFileParser {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_MSISDN_DIGITS = 18;
+    private static final long SECONDS_PER_DAY = 86_400;
+    // Результат разбора некорректной даты и времени
+    private static final long INVALID_TIME = Long.MIN_VALUE;
+
+    private final int batchSize;
+    private final int maxReportedErrors;
+
+    public CdrFileParser(int batchSize, int maxReportedErrors) {
+        this.batchSize = Math.max(1, batchSize);
+        this.maxReportedErrors = maxReportedErrors;
+    }
+
+    /**
+     * Разбирает все строки канала и передает корректные записи пакетами.
+     *
+     * @param channel      источник данных
+     * @param batchHandler получатель пакетов записей; пакет не переиспользуется после передачи
+     * @return результат разбора без источника и длительности
+     * @throws IOException если произошла ошибка чтения
+     */
+    public CdrImportResult parse(ReadableByteChannel channel, Consumer<List<CdrRecord>> batchHandler) throws IOException {
+        ParseState state = new ParseState(batchHandler);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        boolean skippingLongLine = false;
+        boolean eof = false;
+
+        while (!eof) {
+            eof = channel.read(buffer) == -1;
+            buffer.flip();
+            int lineStart = 0;
+            int limit = buffer.limit();
+
+            for (int i = 0; i < limit; i++) {
+                if (buffer.get(i) == '\n') {
+                    state.lineNumber++;
+                    if (skippingLongLine) {
+                        skippingLongLine = false;
+                    } else {
+                        parseLine(buffer, lineStart, i, state);
+                    }
+                    lineStart = i + 1;
+                }
+            }
+
+            if (eof) {
+                if (lineStart < limit) {
+                    state.lineNumber++;
+                    if (!skippingLongLine) {
+                        parseLine(buffer, lineStart, limit, state);
+                    }
+                }
+            } else if (lineStart == 0 && limit == buffer.capacity()) {
+                // Строка не помещается в буфер: отклоняем ее и пропускаем до конца строки
+                if (!skippingLongLine) {
+                    state.reject(state.lineNumber + 1, "строка длиннее " + BUFFER_SIZE + " байт");
+                    skippingLongLine = true;
+                }
+                buffer.clear();
+                continue;
+            }
+            buffer.position(lineStart);
+            buffer.compact();
+        }
+
+        state.flush();
+        return state.result;
+    }
+
+    private void parseLine(ByteBuffer buffer, int from, int to, ParseState state) {
+        if (to > from && buffer.get(to - 1) == '\r') {
+            to--;
+        }
+        if (to == from) {
+            return;
+        }
+
+        int[] commas = state.commas;
+        int commaCount = 0;
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == ',') {
+                if (commaCount == commas.length) {
+                    commaCount++;
+                    break;
+                }
+                commas[commaCount++] = i;
+            }
+        }
+        if (commaCount != commas.length) {
+            state.reject(state.lineNumber, "ожидается 5 полей");
+            return;
+        }
+
+        byte callType = parseCallType(buffer, from, commas[0]);
+        if (callType == 0) {
+            state.reject(state.lineNumber, "неизвестный тип звонка");
+            return;
+        }
+        long callerNumber = parseMsisdn(buffer, commas[0] + 1, commas[1]);
+        long receiverNumber = parseMsisdn(buffer, commas[1] + 1, commas[2]);
+        if (callerNumber < 0 || receiverNumber < 0) {
+            state.reject(state.lineNumber, "некорректный номер абонента");
+            return;
+        }
+        if (callerNumber == receiverNumber) {
+            state.reject(state.lineNumber, "номера звонящего и принимающего совпадают");
+            return;
+        }
+        long startSecond = parseEpochSecond(buffer, commas[2] + 1, commas[3]);
+        long endSecond = parseEpochSecond(buffer, commas[3] + 1, to);
+        if (startSecond == INVALID_TIME || endSecond == INVALID_TIME) {
+            state.reject(state.lineNumber, "некорректная дата и время");
+            return;
+        }
+        long duration = endSecond - startSecond;
+        if (duration < 0) {
+            state.reject(state.lineNumber, "окончание звонка раньше его начала");
+            return;
+        }
+        if (duration > Integer.MAX_VALUE) {
+            state.reject(state.lineNumber, "слишком длинный звонок");
+            return;
+        }
+
+        CdrRecord record = new CdrRecord();
+        record.setCallTypeCode(callType);
+        record.setCallerMsisdn(callerNumber);
+        record.setReceiverMsisdn(receiverNumber);
+        record.setStartEpochSecond(startSecond);
+        record.setDurationSeconds((int) duration);
+        state.accept(record);
+    }
+
+    /**
+     * @return код типа звонка или 0, если тип неизвестен
+     */
+    private static byte parseCallType(ByteBuffer buffer, int from, int to) {
+        if (to - from != 2 || buffer.get(from) != '0') {
+            return 0;
+        }
+        return switch (buffer.get(from + 1)) {
+            case '1' -> CdrRecord.OUTGOING;
+            case '2' -> CdrRecord.INCOMING;
+            default -> 0;
+        };
+    }
+
+    /**
+     * Разбирает номер абонента: от 1 до 18 цифр без ведущего нуля.
+     *
+     * @return номер или -1, если поле не является номером
+     */
+    private static long parseMsisdn(ByteBuffer buffer, int from, int to) {
+        int length = to - from;
+        if (length < 1 || length > MAX_MSISDN_DIGITS || buffer.get(from) == '0') {
+            return -1;
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Разбирает дату и время в формате ISO_LOCAL_DATE_TIME: {@code yyyy-MM-ddTHH:mm[:ss[.fffffffff]]}
+     * и переводит их в секунды эпохи UTC прямо из цифр, без создания {@link java.time.LocalDateTime}.
+     * Доли секунды проверяются и отбрасываются, как в {@link CdrRecord#toEpochSecond}.
+     *
+     * @return секунды эпохи UTC или {@link #INVALID_TIME}, если поле не является датой и временем
+     */
+    private static long parseEpochSecond(ByteBuffer buffer, int from, int to) {
+        int length = to - from;
+        if (length < 16 || buffer.get(from + 4) != '-' || buffer.get(from + 7) != '-'
+                || buffer.get(from + 10) != 'T' || buffer.get(from + 13) != ':') {
+            return INVALID_TIME;
+        }
+        int year = digits(buffer, from, 4);
+        int month = digits(buffer, from + 5, 2);
+        int day = digits(buffer, from + 8, 2);
+        int hour = digits(buffer, from + 11, 2);
+        int minute = digits(buffer, from + 14, 2);
+        int second = 0;
+
+        if (length > 16) {
+            if (length < 19 || buffer.get(from + 16) != ':') {
+                return INVALID_TIME;
+            }
+            second = digits(buffer, from + 17, 2);
+            if (length > 19) {
+                int fractionDigits = length - 20;
+                if (buffer.get(from + 19) != '.' || fractionDigits < 1 || fractionDigits > 9
+                        || digits(buffer, from + 20, fractionDigits) < 0) {
+                    return INVALID_TIME;
+                }
+            }
+        }
+
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return INVALID_TIME;
+        }
+        return daysFromCivil(year, month, day) * SECONDS_PER_DAY + hour * 3600L + minute * 60L + second;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        if (month == 2) {
+            boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            return leap ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /**
+     * Номер дня от 1970-01-01 для даты пролептического григорианского календаря с годом от 0.
+     * Год считается с марта, чтобы високосный день был последним днем года.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097L + dayOfEra - 719_468;
+    }
+
+    /**
+     * @return число из {@code count} цифр или -1, если встретился другой символ
+     */
+    private static int digits(ByteBuffer buffer, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Состояние разбора одного источника.
+     */
+    private class ParseState {
+        private final Consumer<List<CdrRecord>> batchHandler;
+        private final CdrImportResult result = new CdrImportResult();
+        private final int[] commas = new int[4];
+        private List<CdrRecord> batch = new ArrayList<>(batchSize);
+        private long lineNumber;
+
+        ParseState(Consumer<List<CdrRecord>> batchHandler) {
+            this.batchHandler = batchHandler;
+        }
+
+        void accept(CdrRecord record) {
+            batch.add(record);
+            result.setRecordsImported(result.getRecordsImported() + 1);
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        void reject(long line, String reason) {
+            result.setRecordsRejected(result.getRecordsRejected() + 1);
+            if (result.getErrors().size() < maxReportedErrors) {
+                result.getErrors().add("Строка " + line + ": " + reason);
+            }
+        }
+
+        void flush() {
+            if (!batch.isEmpty()) {
+                batchHandler.accept(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+    }
+}
@@ -1,143 +1,265 @@
 package com.abarigena.calldataservice.service;
 
+import com.abarigena.calldataservice.config.CdrGeneratorProperties;
 import com.abarigena.calldataservice.store.entity.CdrRecord;
-import com.abarigena.calldataservice.store.entity.Subscriber;
+import com.abarigena.calldataservice.store.repository.CdrBulkWriter;
 import com.abarigena.calldataservice.store.repository.CdrRecordRepository;
-import com.abarigena.calldataservice.store.repository.SubscriberRepository;
+import com.abarigena.calldataservice.store.repository.CdrRecordsChangedEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDateTime;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Сервис для генерации CDR-записей.
  * Предоставляет функциональность для создания и сохранения CDR-записей за указанный период.
+ * Период делится на шарды по дням, которые генерируются параллельно; у каждого шарда
+ * свой {@link SplittableRandom}, поэтому при одинаковом seed набор записей воспроизводим.
  */
 @Service
 public class CdrGeneratorService {
     private static final Logger logger = LoggerFactory.getLogger(CdrGeneratorService.class);
 
+    private static final long SECONDS_PER_DAY = 86_400;
+
     private final CdrRecordRepository cdrRecordRepository;
-    private final SubscriberRepository subscriberRepository;
-    private final Random random = new Random();
+    private final CdrBulkWriter cdrBulkWriter;
+    private final SubscriberDirectory subscriberDirectory;
+    private final CdrGeneratorProperties properties;
+    private final ApplicationEventPublisher eventPublisher;
+    private final UdrRollupService udrRollupService;
 
     @Autowired
-    public CdrGeneratorService(CdrRecordRepository cdrRecordRepository, SubscriberRepository subscriberRepository) {
+    public CdrGeneratorService(CdrRecordRepository cdrRecordRepository, CdrBulkWriter cdrBulkWriter,
+                               SubscriberDirectory subscriberDirectory, CdrGeneratorProperties properties,
+                               ApplicationEventPublisher eventPublisher, UdrRollupService udrRollupService) {
         this.cdrRecordRepository = cdrRecordRepository;
-        this.subscriberRepository = subscriberRepository;
+        this.udrRollupService = udrRollupService;
+        this.eventPublisher = eventPublisher;
+        this.cdrBulkWriter = cdrBulkWriter;
+        this.subscriberDirectory = subscriberDirectory;
+        this.properties = properties;
     }
 
     /**
-     * Очистка существующих CDR-записей из базы данных
+     * Очистка существующих CDR-записей и помесячных итогов звонков из базы данных
      */
-    @Transactional
     public void clearCdrRecords() {
         logger.info("Начата очистка CDR-записей из базы данных");
-        cdrRecordRepository.deleteAll();
+        udrRollupService.truncate();
+        eventPublisher.publishEvent(CdrRecordsChangedEvent.all());
         logger.info("Завершена очистка CDR-записей из базы данных");
     }
 
     /**
-     * Генерация CDR-записей за год
+     * Определяет первый день, за который еще нет CDR-записей.
+     *
+     * @param defaultDay день, возвращаемый при отсутствии записей
+     * @return день, следующий за днем самого позднего звонка, или {@code defaultDay}
      */
-    @Transactional
-    public void generateYearCdrRecords() {
-        // Очистка существующих CDR-записей
-        logger.info("Начата генерация CDR-записей за год");
-        clearCdrRecords();
+    public LocalDate findFirstMissingDay(LocalDate defaultDay) {
+        return cdrRecordRepository.findLatestStartTime()
+                .map(latest -> latest.toLocalDate().plusDays(1))
+                .orElse(defaultDay);
+    }
 
-        List<Subscriber> subscribers = subscriberRepository.findAll();
+    /**
+     * Генерация CDR-записей за указанный период для указанных абонентов.
+     * Собеседники выбираются среди всех абонентов справочника.
+     *
+     * @param startDay первый день периода (включительно)
+     * @param endDay последний день периода (не включительно)
+     * @param subscribers номера абонентов, для которых генерируются записи
+     * @param progress приемник прогресса генерации
+     * @return общее количество сгенерированных записей
+     * @throws CancellationException если генерация была отменена
+     */
+    public long generateCdrRecords(LocalDate startDay, LocalDate endDay, List<String> subscribers,
+                                   GenerationProgress progress) {
         if (subscribers.isEmpty()) {
             logger.error("Ошибка генерации CDR-записей: пользователи не найдены");
             throw new IllegalStateException("Пользователи не найдены");
         }
         logger.info("Получен список из {} абонентов для генерации записей", subscribers.size());
+        logger.info("Период генерации CDR-записей: с {} по {}", startDay, endDay);
 
-        LocalDateTime startDate = LocalDateTime.now().minusYears(1);
-        LocalDateTime endDate = LocalDateTime.now();
-        logger.info("Период генерации CDR-записей: с {} по {}", startDate, endDate);
-
-        List<CdrRecord> recordsToSave = new ArrayList<>();
-        int totalRecordsGenerated = 0;
-
-        // Генерируем записи для каждого абонента в день
-        while (startDate.isBefore(endDate)) {
-            for (Subscriber subscriber : subscribers) {
-                int callsPerDay = random.nextInt(5) + 1; // 1-5 звонков в день
+        return generateInParallel(subscribers, startDay, endDay, progress);
+    }
 
-                for (int i = 0; i < callsPerDay; i++) {
-                    CdrRecord record = generateRandomCdrRecord(subscriber, startDate);
-                    recordsToSave.add(record);
-                    totalRecordsGenerated++;
+    /**
+     * Делит период на шарды по дням и генерирует их на ограниченном пуле потоков.
+     *
+     * @param subscribers абоненты, для которых генерируются записи
+     * @param startDay первый день периода (включительно)
+     * @param endDay последний день периода (не включительно)
+     * @param progress приемник прогресса генерации
+     * @return общее количество сгенерированных записей
+     */
+    private long generateInParallel(List<String> subscribers, LocalDate startDay, LocalDate endDay,
+                                    GenerationProgress progress) {
+        long seed = properties.getSeed() != null ? properties.getSeed() : System.nanoTime();
+        int daysPerShard = Math.max(1, properties.getDaysPerShard());
+        int parallelism = Math.max(1, properties.getParallelism());
+        logger.info("Генерация с seed={}, потоков: {}, дней в шарде: {}", seed, parallelism, daysPerShard);
 
-                    // Сохраняем пакетами для оптимизации
-                    if (recordsToSave.size() >= 100) {
-                        cdrRecordRepository.saveAll(recordsToSave);
-                        logger.debug("Сохранена пакетная партия из {} CDR-записей", recordsToSave.size());
-                        recordsToSave.clear();
-                    }
-                }
+        // Генераторы шардов выделяются из корневого последовательно, до запуска потоков,
+        // поэтому результат не зависит от порядка выполнения шардов
+        SplittableRandom rootRandom = new SplittableRandom(seed);
+        List<Callable<Long>> shards = new ArrayList<>();
+        for (LocalDate shardStart = startDay; shardStart.isBefore(endDay); shardStart = shardStart.plusDays(daysPerShard)) {
+            LocalDate shardEnd = shardStart.plusDays(daysPerShard);
+            if (shardEnd.isAfter(endDay)) {
+                shardEnd = endDay;
             }
-            startDate = startDate.plusDays(1);
+            shards.add(new GenerationShard(subscribers, shardStart, shardEnd, rootRandom.split(), progress));
         }
+        logger.debug("Период разбит на {} шардов", shards.size());
 
-        if (!recordsToSave.isEmpty()) {
-            cdrRecordRepository.saveAll(recordsToSave);
-            logger.debug("Сохранена финальная партия из {} CDR-записей", recordsToSave.size());
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, new GeneratorThreadFactory());
+        try {
+            long total = 0;
+            for (Future<Long> future : executor.invokeAll(shards)) {
+                total += future.get();
+            }
+            return total;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Генерация CDR-записей прервана", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancellationException cancellation) {
+                throw cancellation;
+            }
+            logger.error("Ошибка при генерации шарда CDR-записей: {}", e.getCause().getMessage());
+            throw new IllegalStateException("Ошибка при генерации CDR-записей", e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
-
-        logger.info("Завершена генерация CDR-записей за год. Всего сгенерировано {} записей", totalRecordsGenerated);
     }
 
     /**
      * Генерирует случайную CDR-запись для указанного абонента и даты.
      *
-     * @param subscriber абонент, для которого генерируется запись
+     * @param msisdn номер абонента, для которого генерируется запись
      * @param date дата, в которую должен быть совершен звонок
+     * @param random генератор случайных чисел шарда
      * @return созданная CDR-запись с заполненными полями
      */
-    private CdrRecord generateRandomCdrRecord(Subscriber subscriber, LocalDateTime date) {
+    private CdrRecord generateRandomCdrRecord(String msisdn, LocalDate date, SplittableRandom random) {
         CdrRecord cdrRecord = new CdrRecord();
 
-        String callType = random.nextBoolean() ? "01" : "02";
-        cdrRecord.setCallType(callType);
+        boolean outgoing = random.nextBoolean();
+        cdrRecord.setCallTypeCode(outgoing ? CdrRecord.OUTGOING : CdrRecord.INCOMING);
 
-        List<Subscriber> allSubscribers = subscriberRepository.findAll();
-        Subscriber otherSubscriber;
-        do {
-            otherSubscriber = allSubscribers.get(random.nextInt(allSubscribers.size()));
-        } while (otherSubscriber.getMsisdn().equals(subscriber.getMsisdn()));
+        long subscriberMsisdn = Long.parseLong(msisdn);
+        long otherMsisdn = Long.parseLong(subscriberDirectory.randomMsisdnExcluding(msisdn, random));
 
-        if ("01".equals(callType)) {
-            cdrRecord.setCallerNumber(subscriber.getMsisdn());
-            cdrRecord.setReceiverNumber(otherSubscriber.getMsisdn());
+        if (outgoing) {
+            cdrRecord.setCallerMsisdn(subscriberMsisdn);
+            cdrRecord.setReceiverMsisdn(otherMsisdn);
         } else {
-            cdrRecord.setCallerNumber(otherSubscriber.getMsisdn());
-            cdrRecord.setReceiverNumber(subscriber.getMsisdn());
+            cdrRecord.setCallerMsisdn(otherMsisdn);
+            cdrRecord.setReceiverMsisdn(subscriberMsisdn);
         }
 
         int hourOfDay = random.nextInt(24);
         int minuteOfHour = random.nextInt(60);
         int secondOfMinute = random.nextInt(60);
 
-        LocalDateTime callStartTime = date
-                .withHour(hourOfDay)
-                .withMinute(minuteOfHour)
-                .withSecond(secondOfMinute);
+        long callStartTime = date.toEpochDay() * SECONDS_PER_DAY
+                + hourOfDay * 3600L + minuteOfHour * 60L + secondOfMinute;
 
         // Генерация случайной продолжительности звонка (от 10 сек до 10 минут)
         int callDurationInSeconds = random.nextInt(600) + 10;
-        LocalDateTime callEndTime = callStartTime.plusSeconds(callDurationInSeconds);
 
-        cdrRecord.setStartTime(callStartTime);
-        cdrRecord.setEndTime(callEndTime);
+        cdrRecord.setStartEpochSecond(callStartTime);
+        cdrRecord.setDurationSeconds(callDurationInSeconds);
 
         return cdrRecord;
     }
+
+    /**
+     * Шард генерации: диапазон дней со своим генератором случайных чисел.
+     * Записи сохраняются через {@link CdrBulkWriter} пакетами по {@link CdrGeneratorProperties#getBatchSize()}.
+     */
+    private class GenerationShard implements Callable<Long> {
+        private final List<String> subscribers;
+        private final LocalDate startDay;
+        private final LocalDate endDay;
+        private final SplittableRandom random;
+        private final GenerationProgress progress;
+
+        GenerationShard(List<String> subscribers, LocalDate startDay, LocalDate endDay, SplittableRandom random,
+                        GenerationProgress progress) {
+            this.subscribers = subscribers;
+            this.startDay = startDay;
+            this.endDay = endDay;
+            this.random = random;
+            this.progress = progress;
+        }
+
+        @Override
+        public Long call() {
+            int batchSize = Math.max(1, properties.getBatchSize());
+            List<CdrRecord> recordsToSave = new ArrayList<>(batchSize);
+            long recordsGenerated = 0;
+
+            // Генерируем записи для каждого абонента в день
+            for (LocalDate day = startDay; day.isBefore(endDay); day = day.plusDays(1)) {
+                if (progress.isCancelled() || Thread.currentThread().isInterrupted()) {
+                    throw new CancellationException("Генерация CDR-записей отменена");
+                }
+                for (String msisdn : subscribers) {
+                    int callsPerDay = random.nextInt(5) + 1; // 1-5 звонков в день
+
+                    for (int i = 0; i < callsPerDay; i++) {
+                        recordsToSave.add(generateRandomCdrRecord(msisdn, day, random));
+                        recordsGenerated++;
+
+                        if (recordsToSave.size() >= batchSize) {
+                            cdrBulkWriter.write(recordsToSave);
+                            progress.onRecordsWritten(recordsToSave.size());
+                            logger.debug("Сохранена пакетная партия из {} CDR-записей", recordsToSave.size());
+                            recordsToSave = new ArrayList<>(batchSize);
+                        }
+                    }
+                }
+            }
+
+            if (!recordsToSave.isEmpty()) {
+                cdrBulkWriter.write(recordsToSave);
+                progress.onRecordsWritten(recordsToSave.size());
+                logger.debug("Сохранена финальная партия шарда из {} CDR-записей", recordsToSave.size());
+            }
+            logger.debug("Шард {} - {} сгенерировал {} записей", startDay, endDay, recordsGenerated);
+            return recordsGenerated;
+        }
+    }
+
+    /**
+     * Фабрика именованных потоков генератора.
+     */
+    private static class GeneratorThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "cdr-generator-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
@@ -0,0 +1,121 @@
+package com.abarigena.calldataservice.service;
+
+import com.abarigena.calldataservice.config.CdrImportProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Наблюдатель за каталогом входящих CDR-файлов.
+ * Импортирует каждый появившийся файл {@code *.csv} и перемещает его в подкаталог
+ * {@code processed} или, при ошибке чтения, в {@code failed}.
+ * Файлы должны появляться в каталоге атомарно, например перемещением из временного каталога.
+ * Включается настройкой {@code cdr.import.watch-directory}.
+ */
+@Component
+public class CdrImportDirectoryWatcher {
+    private static final Logger logger = LoggerFactory.getLogger(CdrImportDirectoryWatcher.class);
+
+    private static final String FILE_GLOB = "*.csv";
+
+    private final CdrImportService cdrImportService;
+    private final CdrImportProperties properties;
+
+    private WatchService watchService;
+    private Thread watchThread;
+
+    @Autowired
+    public CdrImportDirectoryWatcher(CdrImportService cdrImportService, CdrImportProperties properties) {
+        this.cdrImportService = cdrImportService;
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (properties.getWatchDirectory() == null || properties.getWatchDirectory().isBlank()) {
+            logger.info("Наблюдение за каталогом CDR-файлов отключено");
+            return;
+        }
+        Path directory = Paths.get(properties.getWatchDirectory());
+        Files.createDirectories(directory.resolve("processed"));
+        Files.createDirectories(directory.resolve("failed"));
+
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
+
+        watchThread = new Thread(() -> watch(directory), "cdr-import-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+        logger.info("Начато наблюдение за каталогом CDR-файлов: {}", directory.toAbsolutePath());
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+            watchThread.interrupt();
+        }
+    }
+
+    private void watch(Path directory) {
+        // Файлы, появившиеся до запуска наблюдения
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, FILE_GLOB)) {
+            for (Path file : files) {
+                importFile(directory, file);
+            }
+        } catch (IOException e) {
+            logger.error("Ошибка при чтении каталога CDR-файлов: {}", e.getMessage());
+        }
+
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        continue;
+                    }
+                    Path file = directory.resolve((Path) event.context());
+                    if (file.getFileName().toString().endsWith(".csv") && Files.isRegularFile(file)) {
+                        importFile(directory, file);
+                    }
+                }
+                if (!key.reset()) {
+                    logger.error("Каталог CDR-файлов больше недоступен: {}", directory);
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            logger.info("Наблюдение за каталогом CDR-файлов остановлено");
+        }
+    }
+
+    private void importFile(Path directory, Path file) {
+        String target = "processed";
+        try {
+            cdrImportService.importFile(file);
+        } catch (Exception e) {
+            target = "failed";
+            logger.error("Ошибка при импорте CDR-файла {}: {}", file, e.getMessage());
+        }
+        try {
+            Files.move(file, directory.resolve(target).resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.error("Не удалось переместить CDR-файл {}: {}", file, e.getMessage());
+        }
+    }
+}
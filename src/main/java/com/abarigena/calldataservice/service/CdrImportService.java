@@ -0,0 +1,68 @@
+package com.abarigena.calldataservice.service;
+
+import com.abarigena.calldataservice.config.CdrImportProperties;
+import com.abarigena.calldataservice.dto.CdrImportResult;
+import com.abarigena.calldataservice.store.repository.CdrBulkWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Сервис импорта CDR-записей из файлов.
+ * Разбирает данные потоково и передает пакеты записей на пакетную загрузку в базу данных.
+ */
+@Service
+public class CdrImportService {
+    private static final Logger logger = LoggerFactory.getLogger(CdrImportService.class);
+
+    private final CdrBulkWriter cdrBulkWriter;
+    private final CdrImportProperties properties;
+
+    @Autowired
+    public CdrImportService(CdrBulkWriter cdrBulkWriter, CdrImportProperties properties) {
+        this.cdrBulkWriter = cdrBulkWriter;
+        this.properties = properties;
+    }
+
+    /**
+     * Импортирует CDR-записи из канала.
+     *
+     * @param channel источник данных в формате {@code callType,caller,receiver,start,end}
+     * @param source  название источника для логов и результата
+     * @return результат импорта
+     * @throws IOException если произошла ошибка чтения
+     */
+    public CdrImportResult importCdr(ReadableByteChannel channel, String source) throws IOException {
+        logger.info("Начат импорт CDR-записей из {}", source);
+        long startTime = System.currentTimeMillis();
+
+        CdrFileParser parser = new CdrFileParser(properties.getBatchSize(), properties.getMaxReportedErrors());
+        CdrImportResult result = parser.parse(channel, cdrBulkWriter::write);
+        result.setSource(source);
+        result.setDurationMs(System.currentTimeMillis() - startTime);
+
+        logger.info("Завершен импорт CDR-записей из {}: загружено {}, отклонено {}, заняло {} мс",
+                source, result.getRecordsImported(), result.getRecordsRejected(), result.getDurationMs());
+        return result;
+    }
+
+    /**
+     * Импортирует CDR-записи из файла.
+     *
+     * @param file путь к файлу
+     * @return результат импорта
+     * @throws IOException если произошла ошибка чтения
+     */
+    public CdrImportResult importFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return importCdr(channel, file.getFileName().toString());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.abarigena.calldataservice.service;
+
+import com.abarigena.calldataservice.dto.CdrPartitionInfo;
+import com.abarigena.calldataservice.store.repository.CdrPartitionRange;
+import com.abarigena.calldataservice.store.repository.CdrRecordsChangedEvent;
+import com.abarigena.calldataservice.store.repository.CdrRecordRepository;
+import com.abarigena.calldataservice.store.repository.UdrMonthlyRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * Сервис управления помесячными партициями CDR-записей.
+ * Позволяет посмотреть заполненность партиций и удалить устаревший месяц целиком
+ * вместе с его помесячными итогами звонков.
+ */
+@Service
+public class CdrPartitionService {
+    private static final Logger logger = LoggerFactory.getLogger(CdrPartitionService.class);
+
+    private final CdrRecordRepository cdrRecordRepository;
+    private final UdrMonthlyRepository udrMonthlyRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    public CdrPartitionService(CdrRecordRepository cdrRecordRepository, UdrMonthlyRepository udrMonthlyRepository,
+                               ApplicationEventPublisher eventPublisher) {
+        this.cdrRecordRepository = cdrRecordRepository;
+        this.udrMonthlyRepository = udrMonthlyRepository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * @return непустые партиции в порядке возрастания месяца
+     */
+    public List<CdrPartitionInfo> getPartitions() {
+        return cdrRecordRepository.findPartitionSummaries().stream()
+                .map(summary -> new CdrPartitionInfo(
+                        CdrPartitionRange.monthOf(summary.getPartitionKey()).toString(), summary.getRecordCount()))
+                .toList();
+    }
+
+    /**
+     * Удаляет все CDR-записи месяца и итоги звонков месяца в одной транзакции.
+     *
+     * @param month месяц партиции
+     * @return информация об удаленной партиции с количеством удаленных записей
+     */
+    @Transactional
+    public CdrPartitionInfo dropPartition(YearMonth month) {
+        int partitionKey = CdrPartitionRange.partitionKeyOf(month);
+        int deleted = cdrRecordRepository.deletePartition(partitionKey);
+        udrMonthlyRepository.deletePartition(partitionKey);
+        if (deleted > 0) {
+            eventPublisher.publishEvent(CdrRecordsChangedEvent.of(partitionKey));
+        }
+        logger.info("Удалена партиция CDR-записей {}: {} записей", month, deleted);
+        return new CdrPartitionInfo(month.toString(), deleted);
+    }
+}
@@ -0,0 +1,107 @@
+package com.abarigena.calldataservice.service;
+
+import com.abarigena.calldataservice.store.repository.CdrPartitionRange;
+import com.abarigena.calldataservice.store.repository.CdrRecordsChangedEvent;
+
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Кеш готовых CDR-отчетов по содержимому запроса.
+ * Вытесняет давно не запрошенные отчеты, когда превышено количество записей или их суммарный размер.
+ * Кеш хранит только ссылки на отчеты: файлы вытесненных отчетов остаются в директории отчетов.
+ * Записи, период которых затронут изменением CDR-записей, удаляются из кеша.
+ * Методы потокобезопасны.
+ *
+ * @param <V> готовый отчет
+ */
+public class CdrReportCache<V> {
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    /**
+     * @param maxEntries максимальное количество отчетов в кеше
+     * @param maxBytes   максимальный суммарный размер отчетов в байтах
+     */
+    public CdrReportCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param key ключ отчета
+     * @return готовый отчет или {@code null}, если его нет в кеше
+     */
+    public synchronized V get(Key key) {
+        Entry<V> entry = entries.get(key);
+        return entry != null ? entry.value : null;
+    }
+
+    /**
+     * Сохраняет отчет и вытесняет самые давние отчеты сверх ограничений.
+     * Отчет больше допустимого суммарного размера не сохраняется.
+     *
+     * @param key   ключ отчета
+     * @param value готовый отчет
+     * @param bytes размер отчета в байтах
+     */
+    public synchronized void put(Key key, V value, long bytes) {
+        if (bytes > maxBytes || maxEntries <= 0) {
+            return;
+        }
+        Entry<V> previous = entries.put(key, new Entry<>(value, bytes));
+        if (previous != null) {
+            totalBytes -= previous.bytes;
+        }
+        totalBytes += bytes;
+
+        Iterator<Entry<V>> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries || totalBytes > maxBytes) {
+            totalBytes -= eldest.next().bytes;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Удаляет отчеты, период которых пересекается с измененными партициями.
+     *
+     * @param event изменение CDR-записей
+     * @return количество удаленных отчетов
+     */
+    public synchronized int invalidate(CdrRecordsChangedEvent event) {
+        int removed = 0;
+        Iterator<Map.Entry<Key, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Entry<V>> entry = iterator.next();
+            CdrPartitionRange range = CdrPartitionRange.of(entry.getKey().startDate(), entry.getKey().endDate());
+            if (event.affects(range.fromPartition(), range.toPartition())) {
+                totalBytes -= entry.getValue().bytes;
+                iterator.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Ключ отчета: параметры, от которых зависит его содержимое.
+     */
+    public record Key(String msisdn, LocalDateTime startDate, LocalDateTime endDate, boolean compressed) {
+    }
+
+    private record Entry<V>(V value, long bytes) {
+    }
+}
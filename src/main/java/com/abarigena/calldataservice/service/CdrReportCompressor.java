@@ -0,0 +1,149 @@
+package com.abarigena.calldataservice.service;
+
+import com.abarigena.calldataservice.config.CdrReportProperties;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Сжатие CDR-отчетов в формате gzip на лету.
+ * Экземпляры {@link Deflater} переиспользуются между отчетами, так как каждый из них
+ * выделяет заметный объем памяти вне кучи. Уровень сжатия задается настройкой
+ * {@code cdr.report.compression-level}.
+ */
+@Component
+public class CdrReportCompressor {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final int level;
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+
+    @Autowired
+    public CdrReportCompressor(CdrReportProperties properties) {
+        this.level = properties.getCompressionLevel();
+    }
+
+    /**
+     * Оборачивает канал сжатием gzip.
+     *
+     * @param target канал для сжатых данных; закрывается вместе с возвращенным каналом
+     * @return канал, сжимающий записываемые данные
+     * @throws IOException если не удалось записать заголовок gzip
+     */
+    public GzipChannel compress(WritableByteChannel target) throws IOException {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+        }
+        return new GzipChannel(target, deflater);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        Deflater deflater;
+        while ((deflater = deflaters.poll()) != null) {
+            deflater.end();
+        }
+    }
+
+    private void release(Deflater deflater) {
+        deflater.reset();
+        deflaters.offer(deflater);
+    }
+
+    /**
+     * Канал, сжимающий данные в формат gzip и считающий объем данных до и после сжатия.
+     * При закрытии дописывает окончание потока gzip и возвращает {@link Deflater} для повторного использования.
+     */
+    public class GzipChannel implements WritableByteChannel {
+        private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+        private final WritableByteChannel target;
+        private final Deflater deflater;
+        private final CRC32 crc = new CRC32();
+        private final ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE);
+        private long uncompressedBytes;
+        private long compressedBytes;
+        private boolean open = true;
+
+        private GzipChannel(WritableByteChannel target, Deflater deflater) throws IOException {
+            this.target = target;
+            this.deflater = deflater;
+            writeFully(ByteBuffer.wrap(HEADER));
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            int length = source.remaining();
+            crc.update(source.duplicate());
+            deflater.setInput(source);
+            while (!deflater.needsInput()) {
+                deflate();
+            }
+            uncompressedBytes += length;
+            return length;
+        }
+
+        /**
+         * @return объем данных до сжатия в байтах
+         */
+        public long getUncompressedBytes() {
+            return uncompressedBytes;
+        }
+
+        /**
+         * @return объем сжатых данных в байтах, включая заголовок и окончание gzip
+         */
+        public long getCompressedBytes() {
+            return compressedBytes;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!open) {
+                return;
+            }
+            open = false;
+            try {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflate();
+                }
+                ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+                trailer.putInt((int) crc.getValue()).putInt((int) uncompressedBytes).flip();
+                writeFully(trailer);
+            } finally {
+                release(deflater);
+                target.close();
+            }
+        }
+
+        private void deflate() throws IOException {
+            output.clear();
+            deflater.deflate(output);
+            output.flip();
+            writeFully(output);
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            compressedBytes += buffer.remaining();
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+        }
+    }
+}
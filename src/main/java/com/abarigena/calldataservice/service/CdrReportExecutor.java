@@ -0,0 +1,122 @@
+package com.abarigena.calldataservice.service;
+
+import com.abarigena.calldataservice.config.CdrReportProperties;
+import com.abarigena.calldataservice.dto.ReportExecutorStats;
+import com.abarigena.calldataservice.dto.ReportPriority;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Пул генерации CDR-отчетов.
+ * Отчеты выполняются в отдельных потоках, а не в общем {@link java.util.concurrent.ForkJoinPool},
+ * так как генерация блокируется на чтении базы данных и записи файла.
+ * Ожидающие отчеты выбираются по приоритету, при равном приоритете - в порядке поступления.
+ * Очередь ограничена настройкой {@code cdr.report.queue-capacity}; при заполненной очереди
+ * новые отчеты отклоняются с {@link RejectedExecutionException}.
+ */
+@Component
+public class CdrReportExecutor {
+
+    private final int parallelism;
+    private final int queueCapacity;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong rejectedJobs = new AtomicLong();
+
+    @Autowired
+    public CdrReportExecutor(CdrReportProperties properties) {
+        this.parallelism = Math.max(1, properties.getParallelism());
+        this.queueCapacity = Math.max(0, properties.getQueueCapacity());
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 0, TimeUnit.MILLISECONDS,
+                new BoundedPriorityQueue(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "cdr-report-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Ставит генерацию отчета в очередь.
+     *
+     * @param priority приоритет отчета
+     * @param task     генерация отчета
+     * @throws RejectedExecutionException если очередь заполнена или пул остановлен
+     */
+    public void execute(ReportPriority priority, Runnable task) {
+        try {
+            executor.execute(new PrioritizedTask(priority, sequence.getAndIncrement(), task));
+        } catch (RejectedExecutionException e) {
+            rejectedJobs.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * @return текущее состояние пула
+     */
+    public ReportExecutorStats getStats() {
+        ReportExecutorStats stats = new ReportExecutorStats();
+        stats.setParallelism(parallelism);
+        stats.setQueueCapacity(queueCapacity);
+        stats.setQueueDepth(executor.getQueue().size());
+        stats.setActiveJobs(executor.getActiveCount());
+        stats.setCompletedJobs(executor.getCompletedTaskCount());
+        stats.setRejectedJobs(rejectedJobs.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Задача с приоритетом и порядковым номером для упорядочивания в очереди.
+     */
+    private record PrioritizedTask(ReportPriority priority, long sequence, Runnable task)
+            implements Runnable, Comparable<PrioritizedTask> {
+
+        @Override
+        public void run() {
+            task.run();
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask other) {
+            int byPriority = other.priority.compareTo(priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * Очередь с приоритетом, не принимающая элементы сверх заданной емкости.
+     * {@link ThreadPoolExecutor} ставит задачи только через {@link #offer}, поэтому ограничения в нем достаточно.
+     */
+    private static class BoundedPriorityQueue extends PriorityBlockingQueue<Runnable> {
+        private final int capacity;
+
+        BoundedPriorityQueue(int capacity) {
+            this.capacity = capacity;
+        }
+
+        @Override
+        public synchronized boolean offer(Runnable task) {
+            return size() < capacity && super.offer(task);
+        }
+
+        @Override
+        public int remainingCapacity() {
+            return Math.max(0, capacity - size());
+        }
+    }
+}
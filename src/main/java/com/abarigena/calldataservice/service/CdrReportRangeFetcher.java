@@ -0,0 +1,211 @@
+package com.abarigena.calldataservice.service;
+
+import com.abarigena.calldataservice.config.CdrReportProperties;
+import com.abarigena.calldataservice.store.repository.CdrRecordRepository;
+import com.abarigena.calldataservice.store.repository.CdrReportRow;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Параллельное чтение звонков абонента за длинный период.
+ * Период разбивается на месячные диапазоны по границам партиций, диапазоны читаются одновременно
+ * в отдельных транзакциях только для чтения, а упорядоченные по времени части записываются
+ * в отчет по порядку месяцев, что дает общий порядок по времени начала звонка.
+ * Прочитанными или читаемыми одновременно бывают не больше {@code cdr.report.fetch-parallelism} месяцев
+ * одного отчета, включая записываемый, поэтому память отчета ограничена этим количеством месяцев
+ * звонков одного абонента.
+ * Каждый поток чтения занимает соединение с базой данных.
+ */
+@Component
+public class CdrReportRangeFetcher {
+
+    private final CdrRecordRepository cdrRecordRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int parallelism;
+    private final ThreadPoolExecutor executor;
+
+    @Autowired
+    public CdrReportRangeFetcher(CdrRecordRepository cdrRecordRepository, PlatformTransactionManager transactionManager,
+                                 CdrReportProperties properties) {
+        this.cdrRecordRepository = cdrRecordRepository;
+        this.parallelism = Math.max(1, properties.getFetchParallelism());
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "cdr-report-fetch-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Период разбивается, только если обе границы заданы и он затрагивает больше одного месяца:
+     * для открытого периода неизвестно, в каких месяцах есть звонки.
+     *
+     * @param startDate начало периода или {@code null}
+     * @param endDate   окончание периода или {@code null}
+     * @return true, если звонки периода читаются параллельно по месяцам
+     */
+    public boolean isSplit(LocalDateTime startDate, LocalDateTime endDate) {
+        return parallelism > 1 && startDate != null && endDate != null && !startDate.isAfter(endDate)
+                && monthStart(startDate).isBefore(monthStart(endDate));
+    }
+
+    /**
+     * Разбивает период на месячные диапазоны.
+     * Первый и последний диапазоны ограничены границами периода, остальные совпадают с месяцами.
+     *
+     * @param startDate начало периода включительно
+     * @param endDate   окончание периода включительно
+     * @return диапазоны {@code [начало, окончание]} в порядке времени
+     */
+    public static List<LocalDateTime[]> splitByMonth(LocalDateTime startDate, LocalDateTime endDate) {
+        List<LocalDateTime[]> ranges = new ArrayList<>();
+        LocalDateTime rangeStart = startDate;
+        LocalDateTime nextMonth = monthStart(startDate).plusMonths(1);
+        while (!nextMonth.isAfter(endDate)) {
+            // Время звонков хранится с точностью до секунды, поэтому диапазон заканчивается последней секундой месяца
+            ranges.add(new LocalDateTime[]{rangeStart, nextMonth.minusSeconds(1)});
+            rangeStart = nextMonth;
+            nextMonth = nextMonth.plusMonths(1);
+        }
+        ranges.add(new LocalDateTime[]{rangeStart, endDate});
+        return ranges;
+    }
+
+    /**
+     * Читает звонки абонента за период параллельно по месяцам и записывает их в отчет в порядке времени начала.
+     *
+     * @param msisdn    номер абонента
+     * @param startDate начало периода включительно
+     * @param endDate   окончание периода включительно
+     * @param writer    писатель отчета
+     * @param progress  получает количество записанных строк после каждого месяца или {@code null}
+     * @return количество записанных строк
+     * @throws IOException если произошла ошибка записи или чтение было прервано
+     */
+    public long writeRows(String msisdn, LocalDateTime startDate, LocalDateTime endDate, CdrReportWriter writer,
+                          LongConsumer progress) throws IOException {
+        List<LocalDateTime[]> ranges = splitByMonth(startDate, endDate);
+        Deque<Future<Chunk>> pending = new ArrayDeque<>();
+        int next = 0;
+        try {
+            while (next < ranges.size() && pending.size() < parallelism) {
+                pending.add(submit(msisdn, ranges.get(next++)));
+            }
+            while (!pending.isEmpty()) {
+                Chunk chunk = await(pending.poll());
+                // Пока месяц записывается в отчет, остальные уже читаются; следующий месяц ставится в очередь
+                // только после записи, чтобы в памяти было не больше parallelism месяцев вместе с текущим
+                chunk.writeTo(writer);
+                if (next < ranges.size()) {
+                    pending.add(submit(msisdn, ranges.get(next++)));
+                }
+                if (progress != null) {
+                    progress.accept(writer.getRowsWritten());
+                }
+            }
+        } finally {
+            for (Future<Chunk> future : pending) {
+                future.cancel(true);
+            }
+        }
+        return writer.getRowsWritten();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private Future<Chunk> submit(String msisdn, LocalDateTime[] range) {
+        return executor.submit(() -> readOnlyTransaction.execute(status -> {
+            Chunk chunk = new Chunk();
+            try (Stream<CdrReportRow> rows = cdrRecordRepository.streamReportRowsByMsisdnAndPeriod(
+                    msisdn, range[0], range[1])) {
+                Iterator<CdrReportRow> iterator = rows.iterator();
+                while (iterator.hasNext()) {
+                    chunk.add(iterator.next());
+                }
+            }
+            return chunk;
+        }));
+    }
+
+    private static Chunk await(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Чтение звонков отчета прервано");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static LocalDateTime monthStart(LocalDateTime time) {
+        return time.toLocalDate().withDayOfMonth(1).atStartOfDay();
+    }
+
+    /**
+     * Звонки одного месяца в примитивных массивах, без объектов на каждую строку.
+     */
+    private static class Chunk {
+        private byte[] callTypes = new byte[64];
+        private long[] callerNumbers = new long[64];
+        private long[] receiverNumbers = new long[64];
+        private long[] startTimes = new long[64];
+        private int[] durations = new int[64];
+        private int size;
+
+        void add(CdrReportRow row) {
+            if (size == callTypes.length) {
+                int capacity = size * 2;
+                callTypes = Arrays.copyOf(callTypes, capacity);
+                callerNumbers = Arrays.copyOf(callerNumbers, capacity);
+                receiverNumbers = Arrays.copyOf(receiverNumbers, capacity);
+                startTimes = Arrays.copyOf(startTimes, capacity);
+                durations = Arrays.copyOf(durations, capacity);
+            }
+            callTypes[size] = row.getCallType();
+            callerNumbers[size] = row.getCallerNumber();
+            receiverNumbers[size] = row.getReceiverNumber();
+            startTimes[size] = row.getStartTime();
+            durations[size] = row.getDuration();
+            size++;
+        }
+
+        void writeTo(CdrReportWriter writer) throws IOException {
+            for (int i = 0; i < size; i++) {
+                writer.write(callTypes[i], callerNumbers[i], receiverNumbers[i], startTimes[i], durations[i]);
+            }
+        }
+    }
+}
@@ -1,38 +1,88 @@
 package com.abarigena.calldataservice.service;
 
+import com.abarigena.calldataservice.config.CdrReportProperties;
+import com.abarigena.calldataservice.dto.CdrBatchReportRequest;
 import com.abarigena.calldataservice.dto.CdrReportResponse;
+import com.abarigena.calldataservice.dto.CdrReportStatus;
 import com.abarigena.calldataservice.dto.CdrReportsRequest;
+import com.abarigena.calldataservice.dto.JobStatus;
+import com.abarigena.calldataservice.dto.ReportPriority;
 import com.abarigena.calldataservice.store.entity.CdrRecord;
 import com.abarigena.calldataservice.store.repository.CdrRecordRepository;
+import com.abarigena.calldataservice.store.repository.CdrRecordsChangedEvent;
+import com.abarigena.calldataservice.store.repository.CdrReportRow;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.FileSystemUtils;
 
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 @Service
 public class CdrReportService {
 
     private static final Logger logger = LoggerFactory.getLogger(CdrReportService.class);
     private static final String REPORTS_DIRECTORY = "reports";
-    private static final DateTimeFormatter ISO_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+    private static final String BATCH_DIRECTORY_PREFIX = "batch_";
+    private static final int MAX_FINISHED_JOBS = 1000;
 
     private final CdrRecordRepository cdrRecordRepository;
+    private final SubscriberDirectory subscriberDirectory;
+    private final TransactionTemplate readOnlyTransaction;
+    private final CdrReportExecutor reportExecutor;
+    private final CdrReportCompressor reportCompressor;
+    private final CdrReportRangeFetcher rangeFetcher;
+    private final boolean compressByDefault;
+    private final int batchBufferSize;
+    private final int batchMaxBuffers;
+    private final int batchMaxOpenFiles;
+    private final Map<UUID, ReportJob> jobs = new ConcurrentHashMap<>();
+    private final Map<CdrReportCache.Key, ReportJob> inFlightJobs = new HashMap<>();
+    private final CdrReportCache<ReportJob> reportCache;
+    private final AtomicLong dataVersion = new AtomicLong();
 
     @Autowired
-    public CdrReportService(CdrRecordRepository cdrRecordRepository) {
+    public CdrReportService(CdrRecordRepository cdrRecordRepository, SubscriberDirectory subscriberDirectory,
+                            PlatformTransactionManager transactionManager, CdrReportExecutor reportExecutor,
+                            CdrReportCompressor reportCompressor, CdrReportRangeFetcher rangeFetcher,
+                            CdrReportProperties properties) {
         this.cdrRecordRepository = cdrRecordRepository;
+        this.subscriberDirectory = subscriberDirectory;
+        this.reportExecutor = reportExecutor;
+        this.reportCompressor = reportCompressor;
+        this.rangeFetcher = rangeFetcher;
+        this.compressByDefault = properties.isCompress();
+        this.batchBufferSize = Math.toIntExact(properties.getBatchBufferSize().toBytes());
+        this.batchMaxBuffers = properties.getBatchMaxBuffers();
+        this.batchMaxOpenFiles = properties.getBatchMaxOpenFiles();
+        this.reportCache = new CdrReportCache<>(properties.getCacheMaxEntries(), properties.getCacheMaxSize().toBytes());
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
         createReportsDirectory();
     }
 
@@ -52,10 +102,13 @@ public class CdrReportService {
     }
 
     /**
-     * Асинхронно генерирует CDR-отчет на основе запроса.
+     * Асинхронно генерирует CDR-отчет на основе запроса в пуле {@link CdrReportExecutor}.
+     * Ход генерации доступен через {@link #getStatus}, готовый файл - через {@link #getReportFile}.
+     * Запрос с теми же параметрами, что и у выполняемого отчета, присоединяется к нему,
+     * а готовый отчет за завершенный период возвращается из кеша без повторной генерации.
      *
      * @param request Запрос на генерацию отчета
-     * @return Ответ с UUID запроса и статусом выполнения
+     * @return Ответ с UUID запроса и статусом выполнения; статус {@code REJECTED}, если очередь отчетов заполнена
      */
     public CdrReportResponse generateReport(CdrReportsRequest request) {
         UUID requestId = UUID.randomUUID();
@@ -66,61 +119,414 @@ public class CdrReportService {
             return CdrReportResponse.error(requestId, "Не указан номер абонента");
         }
 
-        String fileName = msisdn + "_" + requestId + ".csv";
-        String filePath = REPORTS_DIRECTORY + File.separator + fileName;
+        boolean compress = request.getCompress() != null ? request.getCompress() : compressByDefault;
+        CdrReportCache.Key key = new CdrReportCache.Key(msisdn, request.getStartDate(), request.getEndDate(), compress);
+        purgeFinishedJobs();
 
-        // Асинхронно генерируем отчет
-        CompletableFuture.runAsync(() -> {
+        synchronized (inFlightJobs) {
+            ReportJob cached = reportCache.get(key);
+            if (cached != null && Files.exists(cached.file)) {
+                jobs.putIfAbsent(cached.id, cached);
+                logger.info("Отчет для абонента {} взят из кеша, requestId: {}", msisdn, cached.id);
+                return CdrReportResponse.success(cached.id, cached.fileName);
+            }
+            ReportJob running = inFlightJobs.get(key);
+            if (running != null) {
+                logger.info("Запрос присоединен к выполняемому отчету {}", running.id);
+                return CdrReportResponse.success(running.id, running.fileName);
+            }
+
+            String fileName = msisdn + "_" + requestId + (compress ? ".csv.gz" : ".csv");
+            ReportJob job = new ReportJob(requestId, fileName, compress);
+            jobs.put(requestId, job);
+            inFlightJobs.put(key, job);
+
+            ReportPriority priority = request.getPriority() != null ? request.getPriority() : ReportPriority.NORMAL;
             try {
-                generateCdrReport(request, filePath);
-                logger.info("Отчет успешно сгенерирован: {}", filePath);
-            } catch (Exception e) {
-                logger.error("Ошибка при генерации отчета: {}", e.getMessage());
+                reportExecutor.execute(priority, () -> run(job, request, key));
+            } catch (RejectedExecutionException e) {
+                jobs.remove(requestId);
+                inFlightJobs.remove(key);
+                logger.warn("Очередь генерации отчетов заполнена, запрос {} отклонен", requestId);
+                return CdrReportResponse.rejected(requestId, "Очередь генерации отчетов заполнена, повторите запрос позже");
+            }
+            return CdrReportResponse.success(requestId, fileName);
+        }
+    }
+
+    /**
+     * Асинхронно генерирует CDR-отчеты для пакета абонентов в пуле {@link CdrReportExecutor}.
+     * Звонки за период читаются одним проходом по таблице в порядке времени начала
+     * и раскладываются по файлам {@code <msisdn>.csv} в директории пакета,
+     * поэтому время генерации близко ко времени одного чтения периода, а не к N запросам по абонентам.
+     * Отчет абонента доступен через {@link #getReportFile(UUID, String)}.
+     *
+     * @param request Запрос на пакетную генерацию отчетов; без списка абонентов отчеты формируются для всех
+     * @return Ответ с UUID запроса и именем директории пакета; статус {@code REJECTED}, если очередь отчетов заполнена
+     */
+    public CdrReportResponse generateBatchReport(CdrBatchReportRequest request) {
+        UUID requestId = UUID.randomUUID();
+
+        List<String> msisdns;
+        if (request.getMsisdns() == null || request.getMsisdns().isEmpty()) {
+            msisdns = subscriberDirectory.getMsisdns();
+        } else {
+            for (String msisdn : request.getMsisdns()) {
+                if (!subscriberDirectory.contains(msisdn)) {
+                    logger.error("Абонент {} не найден для пакетной генерации отчетов", msisdn);
+                    return CdrReportResponse.error(requestId, "Абонент не найден: " + msisdn);
+                }
             }
-        });
+            msisdns = request.getMsisdns().stream().distinct().toList();
+        }
+        if (msisdns.isEmpty()) {
+            logger.error("Нет абонентов для пакетной генерации отчетов");
+            return CdrReportResponse.error(requestId, "Нет абонентов для генерации отчетов");
+        }
+
+        purgeFinishedJobs();
+        String directoryName = BATCH_DIRECTORY_PREFIX + requestId;
+        ReportJob job = new ReportJob(requestId, directoryName, false, true);
+        jobs.put(requestId, job);
+
+        ReportPriority priority = request.getPriority() != null ? request.getPriority() : ReportPriority.NORMAL;
+        try {
+            reportExecutor.execute(priority, () -> runBatch(job, request, msisdns));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(requestId);
+            logger.warn("Очередь генерации отчетов заполнена, пакетный запрос {} отклонен", requestId);
+            return CdrReportResponse.rejected(requestId, "Очередь генерации отчетов заполнена, повторите запрос позже");
+        }
+        logger.info("Пакетная генерация отчетов {} поставлена в очередь, абонентов: {}", requestId, msisdns.size());
+        return CdrReportResponse.success(requestId, directoryName);
+    }
+
+    /**
+     * Удаляет из кеша отчеты, период которых затронут изменением CDR-записей.
+     * Вызывается после фиксации изменившей записи транзакции.
+     *
+     * @param event изменение CDR-записей
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCdrRecordsChanged(CdrRecordsChangedEvent event) {
+        dataVersion.incrementAndGet();
+        int removed = reportCache.invalidate(event);
+        if (removed > 0) {
+            logger.info("Из кеша удалено {} отчетов после изменения партиций {}-{}",
+                    removed, event.fromPartition(), event.toPartition());
+        }
+    }
+
+    /**
+     * @param requestId UUID запроса на генерацию отчета
+     * @return состояние задачи генерации, если она существует
+     */
+    public Optional<CdrReportStatus> getStatus(UUID requestId) {
+        return Optional.ofNullable(jobs.get(requestId)).map(ReportJob::toStatus);
+    }
 
-        return CdrReportResponse.success(requestId, fileName);
+    /**
+     * @param requestId UUID запроса на генерацию отчета
+     * @return файл отчета, если генерация успешно завершена
+     */
+    public Optional<Path> getReportFile(UUID requestId) {
+        return getReportFile(requestId, null);
+    }
+
+    /**
+     * @param requestId UUID запроса на генерацию отчета или пакета отчетов
+     * @param msisdn    номер абонента пакета; для отдельного отчета не используется
+     * @return файл отчета, если генерация успешно завершена, а для пакета - если абонент входит в пакет
+     */
+    public Optional<Path> getReportFile(UUID requestId, String msisdn) {
+        ReportJob job = jobs.get(requestId);
+        if (job == null || job.status != JobStatus.DONE) {
+            return Optional.empty();
+        }
+        if (!job.batch) {
+            return Optional.of(job.file);
+        }
+        // Имя файла строится из числового номера, поэтому запрос не может выйти за директорию пакета
+        long value = CdrRecord.msisdnValue(msisdn);
+        if (value < 0) {
+            return Optional.empty();
+        }
+        Path file = job.file.resolve(CdrBatchReportWriter.fileNameOf(value));
+        return Files.isRegularFile(file) ? Optional.of(file) : Optional.empty();
+    }
+
+    /**
+     * Синхронно пишет CDR-отчет в поток, минуя файл в директории отчетов.
+     * Звонки читаются курсором и передаются по мере получения, поэтому память не зависит от размера отчета.
+     * Поток закрывается после записи.
+     *
+     * @param request Запрос на генерацию отчета
+     * @param output  Поток, в который пишется отчет в формате CSV
+     * @param gzip    сжимать ли отчет в формате gzip
+     * @return количество записанных строк
+     * @throws IOException если произошла ошибка при записи в поток
+     */
+    public long streamReport(CdrReportsRequest request, OutputStream output, boolean gzip) throws IOException {
+        logger.info("Начало потоковой выдачи отчета для абонента {} за период с {} по {}",
+                request.getMsisdn(), request.getStartDate(), request.getEndDate());
+
+        WritableByteChannel channel = Channels.newChannel(output);
+        WritableByteChannel target = gzip ? reportCompressor.compress(channel) : channel;
+        long written;
+        try (CdrReportWriter writer = new CdrReportWriter(target)) {
+            written = writeRows(request, writer, null);
+        }
+
+        logger.info("Потоковая выдача отчета завершена, записано {} записей", written);
+        return written;
+    }
+
+    private void run(ReportJob job, CdrReportsRequest request, CdrReportCache.Key key) {
+        job.start();
+        // Версия данных до чтения: отчет, при генерации которого данные изменились, не кешируется
+        long version = dataVersion.get();
+        try {
+            generateCdrReport(request, job);
+            job.finish(JobStatus.DONE, null);
+            logger.info("Отчет успешно сгенерирован: {}", job.file);
+            synchronized (inFlightJobs) {
+                inFlightJobs.remove(key);
+                if (isClosedPeriod(request) && dataVersion.get() == version) {
+                    reportCache.put(key, job, job.fileSize);
+                }
+            }
+        } catch (Exception e) {
+            synchronized (inFlightJobs) {
+                inFlightJobs.remove(key);
+            }
+            job.finish(JobStatus.FAILED, e.getMessage());
+            logger.error("Ошибка при генерации отчета: {}", e.getMessage());
+            try {
+                Files.deleteIfExists(job.file);
+            } catch (IOException deleteError) {
+                logger.error("Не удалось удалить неполный отчет {}: {}", job.file, deleteError.getMessage());
+            }
+        }
+    }
+
+    private void runBatch(ReportJob job, CdrBatchReportRequest request, List<String> msisdns) {
+        job.start();
+        logger.info("Начало пакетной генерации отчетов {} для {} абонентов за период с {} по {}",
+                job.id, msisdns.size(), request.getStartDate(), request.getEndDate());
+        try {
+            Files.createDirectories(job.file);
+            try {
+                readOnlyTransaction.executeWithoutResult(status -> writeBatch(request, msisdns, job));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            long size = 0;
+            try (Stream<Path> files = Files.list(job.file)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    size += Files.size(file);
+                }
+            }
+            job.fileSize = size;
+            job.uncompressedSize = size;
+            job.finish(JobStatus.DONE, null);
+            logger.info("Пакет отчетов успешно сгенерирован: {}, записано {} записей", job.file, job.rowsWritten);
+        } catch (Exception e) {
+            job.finish(JobStatus.FAILED, e.getMessage());
+            logger.error("Ошибка при пакетной генерации отчетов: {}", e.getMessage());
+            try {
+                FileSystemUtils.deleteRecursively(job.file);
+            } catch (IOException deleteError) {
+                logger.error("Не удалось удалить неполный пакет отчетов {}: {}", job.file, deleteError.getMessage());
+            }
+        }
+    }
+
+    private void writeBatch(CdrBatchReportRequest request, List<String> msisdns, ReportJob job) {
+        try (CdrBatchReportWriter writer = new CdrBatchReportWriter(job.file, msisdns, batchBufferSize,
+                batchMaxBuffers, batchMaxOpenFiles);
+             Stream<CdrReportRow> rows = cdrRecordRepository.streamReportRowsByPeriod(
+                     request.getStartDate(), request.getEndDate())) {
+            Iterator<CdrReportRow> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                if (writer.write(iterator.next())) {
+                    job.rowsWritten = writer.getRowsWritten();
+                }
+            }
+            logger.info("Пакет {}: пропущено {} звонков абонентов вне пакета, файлы открывались {} раз",
+                    job.id, writer.getRowsSkipped(), writer.getFilesOpened());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Кешируются только отчеты за завершенный период: звонки за текущий период еще могут появиться.
+     */
+    private static boolean isClosedPeriod(CdrReportsRequest request) {
+        return request.getEndDate() != null && request.getEndDate().isBefore(LocalDateTime.now());
     }
 
     /**
      * Генерирует CDR-отчет и сохраняет его в файл.
+     * Звонки читаются упорядоченным запросом в транзакции только для чтения
+     * и записываются в файл по мере получения, поэтому память не зависит от размера отчета.
+     * Период длиннее месяца читается параллельно по месяцам.
      *
-     * @param request  Запрос на генерацию отчета
-     * @param filePath Путь к файлу для сохранения отчета
+     * @param request Запрос на генерацию отчета
+     * @param job     Задача генерации, в которую записывается прогресс
      * @throws IOException если произошла ошибка при записи в файл
      */
-    private void generateCdrReport(CdrReportsRequest request, String filePath) throws IOException {
+    private void generateCdrReport(CdrReportsRequest request, ReportJob job) throws IOException {
         logger.info("Начало генерации отчета для абонента {} за период с {} по {}",
                 request.getMsisdn(), request.getStartDate(), request.getEndDate());
 
-        List<CdrRecord> cdrRecords = new ArrayList<>();
-
-        // Получаем все входящие звонки абонента за указанный период
-        List<CdrRecord> incomingCalls = cdrRecordRepository.findIncomingCallsByMsisdnAndPeriod(request.getMsisdn(),
-                request.getStartDate(), request.getEndDate());
-        cdrRecords.addAll(incomingCalls);
-
-        // Получаем все исходящие звонки абонента за указанный период
-        List<CdrRecord> outgoingCalls = cdrRecordRepository.findOutgoingCallsByMsisdnAndPeriod(
-                request.getMsisdn(), request.getStartDate(), request.getEndDate()
-        );
-        cdrRecords.addAll(outgoingCalls);
-
-        // Сортируем все звонки по времени начала
-        cdrRecords.sort((a,b) -> a.getStartTime().compareTo(b.getStartTime()));
-
-        try(FileWriter writer = new FileWriter(filePath)) {
-            for (CdrRecord cdrRecord : cdrRecords) {
-                String line = String.format("%s,%s,%s,%s,%s%n",
-                        cdrRecord.getCallType(),
-                        cdrRecord.getCallerNumber(),
-                        cdrRecord.getReceiverNumber(),
-                        cdrRecord.getStartTime().format(ISO_FORMATTER),
-                        cdrRecord.getEndTime().format(ISO_FORMATTER));
-                writer.write(line);
+        writeReport(request, job);
+        job.fileSize = Files.size(job.file);
+        if (!job.compressed) {
+            job.uncompressedSize = job.fileSize;
+        }
+
+        logger.info("Отчет успешно сгенерирован, записано {} записей", job.rowsWritten);
+    }
+
+    private void writeReport(CdrReportsRequest request, ReportJob job) throws IOException {
+        if (job.compressed) {
+            CdrReportCompressor.GzipChannel gzip = reportCompressor.compress(openReportFile(job.file));
+            try (CdrReportWriter writer = new CdrReportWriter(gzip)) {
+                writeRows(request, writer, job);
+            }
+            job.uncompressedSize = gzip.getUncompressedBytes();
+        } else {
+            try (CdrReportWriter writer = new CdrReportWriter(job.file)) {
+                writeRows(request, writer, job);
             }
         }
+    }
 
-        logger.info("Отчет успешно сгенерирован, записано {} записей", cdrRecords.size());
+    private static FileChannel openReportFile(Path file) throws IOException {
+        return FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Передает звонки отчета писателю. Период длиннее месяца читается параллельно по месяцам
+     * через {@link CdrReportRangeFetcher}, иначе звонки читаются курсором в транзакции только для чтения.
+     *
+     * @param job задача, в которую записывается прогресс, или {@code null}
+     * @return количество записанных строк
+     */
+    private long writeRows(CdrReportsRequest request, CdrReportWriter writer, ReportJob job) throws IOException {
+        if (rangeFetcher.isSplit(request.getStartDate(), request.getEndDate())) {
+            return rangeFetcher.writeRows(request.getMsisdn(), request.getStartDate(), request.getEndDate(), writer,
+                    job != null ? rows -> job.rowsWritten = rows : null);
+        }
+        try {
+            return readOnlyTransaction.execute(status -> {
+                try (Stream<CdrReportRow> rows = cdrRecordRepository.streamReportRowsByMsisdnAndPeriod(
+                        request.getMsisdn(), request.getStartDate(), request.getEndDate())) {
+                    Iterator<CdrReportRow> iterator = rows.iterator();
+                    while (iterator.hasNext()) {
+                        writer.write(iterator.next());
+                        if (job != null) {
+                            job.rowsWritten = writer.getRowsWritten();
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return writer.getRowsWritten();
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Удаляет из реестра самые старые завершенные задачи, чтобы он не рос бесконечно.
+     * Файлы отчетов при этом остаются в директории отчетов.
+     */
+    private void purgeFinishedJobs() {
+        List<ReportJob> finished = jobs.values().stream()
+                .filter(job -> job.finishedAt != null)
+                .sorted(Comparator.comparing(job -> job.finishedAt))
+                .toList();
+        for (int i = 0; i < finished.size() - MAX_FINISHED_JOBS; i++) {
+            jobs.remove(finished.get(i).id);
+        }
+    }
+
+    /**
+     * Задача генерации отчета и ее прогресс.
+     */
+    private static class ReportJob {
+        private final UUID id;
+        private final String fileName;
+        private final Path file;
+        private final boolean compressed;
+        private final boolean batch;
+        private final LocalDateTime submittedAt = LocalDateTime.now();
+        private final long submittedNanos = System.nanoTime();
+
+        private volatile JobStatus status = JobStatus.QUEUED;
+        private volatile long rowsWritten;
+        private volatile Long fileSize;
+        private volatile Long uncompressedSize;
+        private volatile LocalDateTime startedAt;
+        private volatile LocalDateTime finishedAt;
+        private volatile long startedNanos;
+        private volatile long finishedNanos;
+        private volatile String errorMessage;
+
+        ReportJob(UUID id, String fileName, boolean compressed) {
+            this(id, fileName, compressed, false);
+        }
+
+        /**
+         * @param batch true, если задача формирует пакет отчетов, а {@code fileName} - имя его директории
+         */
+        ReportJob(UUID id, String fileName, boolean compressed, boolean batch) {
+            this.id = id;
+            this.fileName = fileName;
+            this.compressed = compressed;
+            this.batch = batch;
+            this.file = Paths.get(REPORTS_DIRECTORY, fileName);
+        }
+
+        void start() {
+            startedNanos = System.nanoTime();
+            startedAt = LocalDateTime.now();
+            status = JobStatus.RUNNING;
+        }
+
+        void finish(JobStatus finalStatus, String message) {
+            finishedNanos = System.nanoTime();
+            finishedAt = LocalDateTime.now();
+            errorMessage = message;
+            status = finalStatus;
+        }
+
+        CdrReportStatus toStatus() {
+            CdrReportStatus result = new CdrReportStatus();
+            result.setRequestId(id);
+            result.setStatus(status);
+            result.setFileName(fileName);
+            result.setRowsWritten(rowsWritten);
+            result.setCompressed(compressed);
+            result.setFileSize(fileSize);
+            result.setUncompressedSize(uncompressedSize);
+            result.setSubmittedAt(submittedAt);
+            result.setStartedAt(startedAt);
+            result.setFinishedAt(finishedAt);
+            result.setErrorMessage(errorMessage);
+
+            long now = System.nanoTime();
+            if (startedAt != null) {
+                result.setQueuedMillis((startedNanos - submittedNanos) / 1_000_000);
+                result.setRunMillis(((finishedAt != null ? finishedNanos : now) - startedNanos) / 1_000_000);
+            } else {
+                result.setQueuedMillis((now - submittedNanos) / 1_000_000);
+            }
+            return result;
+        }
     }
 }
@@ -0,0 +1,222 @@
+package com.abarigena.calldataservice.service;
+
+import com.abarigena.calldataservice.store.entity.CdrRecord;
+import com.abarigena.calldataservice.store.repository.CdrReportRow;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Потоковый писатель CDR-отчета в формате {@code callType,caller,receiver,start,end},
+ * который читает {@link CdrFileParser}.
+ * Поля записываются прямо в переиспользуемый байтовый буфер без {@link String#format}
+ * и {@link DateTimeFormatter}; заполненный буфер сбрасывается в файл или другой канал.
+ * Время выводится так же, как {@link DateTimeFormatter#ISO_LOCAL_DATE_TIME}, с точностью до секунды.
+ * Экземпляр не потокобезопасен и предназначен для записи одного отчета.
+ */
+public class CdrReportWriter implements Closeable {
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Максимальная длина одной строки отчета в байтах и минимальный размер буфера писателя.
+     */
+    public static final int MAX_LINE_LENGTH = 128;
+    private static final int SECONDS_PER_DAY = 86_400;
+    private static final int DATE_LENGTH = 10; // yyyy-MM-dd
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final WritableByteChannel channel;
+    private final byte[] buffer;
+    private final ByteBuffer byteBuffer;
+    private int position;
+    private long rowsWritten;
+
+    // Дата последнего записанного времени: звонки отчета упорядочены, поэтому дата меняется редко
+    private long cachedEpochDay = Long.MIN_VALUE;
+    private final byte[] cachedDate = new byte[DATE_LENGTH];
+
+    /**
+     * Создает файл отчета или перезаписывает существующий.
+     *
+     * @param file файл отчета
+     * @throws IOException если файл не удалось открыть
+     */
+    public CdrReportWriter(Path file) throws IOException {
+        this(FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+    }
+
+    /**
+     * @param channel канал, в который пишется отчет; закрывается вместе с писателем
+     */
+    public CdrReportWriter(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param channel    канал, в который пишется отчет; закрывается вместе с писателем
+     * @param bufferSize размер буфера в байтах, не меньше {@link #MAX_LINE_LENGTH}
+     */
+    public CdrReportWriter(WritableByteChannel channel, int bufferSize) {
+        if (bufferSize < MAX_LINE_LENGTH) {
+            throw new IllegalArgumentException("Размер буфера отчета меньше длины строки: " + bufferSize);
+        }
+        this.channel = channel;
+        this.buffer = new byte[bufferSize];
+        this.byteBuffer = ByteBuffer.wrap(buffer);
+    }
+
+    /**
+     * Записывает строку отчета.
+     *
+     * @param row звонок
+     * @throws IOException если произошла ошибка записи
+     */
+    public void write(CdrReportRow row) throws IOException {
+        write(row.getCallType(), row.getCallerNumber(), row.getReceiverNumber(), row.getStartTime(), row.getDuration());
+    }
+
+    /**
+     * Записывает строку отчета.
+     *
+     * @param callType       код типа звонка
+     * @param callerNumber   номер звонящего абонента
+     * @param receiverNumber номер принимающего абонента
+     * @param startTime      время начала звонка в секундах эпохи UTC
+     * @param duration       длительность звонка в секундах
+     * @throws IOException если произошла ошибка записи
+     */
+    public void write(byte callType, long callerNumber, long receiverNumber, long startTime, int duration)
+            throws IOException {
+        if (buffer.length - position < MAX_LINE_LENGTH) {
+            flush();
+        }
+        buffer[position++] = '0';
+        buffer[position++] = callType == CdrRecord.OUTGOING ? (byte) '1' : (byte) '2';
+        buffer[position++] = ',';
+        appendLong(callerNumber);
+        buffer[position++] = ',';
+        appendLong(receiverNumber);
+        buffer[position++] = ',';
+        appendDateTime(startTime);
+        buffer[position++] = ',';
+        appendDateTime(startTime + duration);
+        for (byte b : LINE_SEPARATOR) {
+            buffer[position++] = b;
+        }
+        rowsWritten++;
+    }
+
+    /**
+     * @return количество записанных строк
+     */
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    /**
+     * Сбрасывает накопленные строки в канал.
+     *
+     * @throws IOException если произошла ошибка записи
+     */
+    public void flush() throws IOException {
+        byteBuffer.clear().limit(position);
+        while (byteBuffer.hasRemaining()) {
+            channel.write(byteBuffer);
+        }
+        position = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void appendLong(long value) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                appendAscii(Long.toString(value));
+                return;
+            }
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int end = position + digitCount(value);
+        int i = end;
+        do {
+            buffer[--i] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        position = end;
+    }
+
+    private static int digitCount(long value) {
+        int count = 1;
+        while (value >= 10) {
+            value /= 10;
+            count++;
+        }
+        return count;
+    }
+
+    private void appendDateTime(long epochSecond) {
+        long epochDay = Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+        int secondOfDay = (int) Math.floorMod(epochSecond, SECONDS_PER_DAY);
+        if (epochDay != cachedEpochDay && !cacheDate(epochDay)) {
+            // Год вне диапазона 0000-9999 выводится со знаком, как в ISO_LOCAL_DATE_TIME
+            appendAscii(CdrRecord.toLocalDateTime(epochSecond).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+            return;
+        }
+        System.arraycopy(cachedDate, 0, buffer, position, DATE_LENGTH);
+        position += DATE_LENGTH;
+        buffer[position++] = 'T';
+        appendTwoDigits(secondOfDay / 3600);
+        buffer[position++] = ':';
+        appendTwoDigits(secondOfDay / 60 % 60);
+        buffer[position++] = ':';
+        appendTwoDigits(secondOfDay % 60);
+    }
+
+    private boolean cacheDate(long epochDay) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        int year = date.getYear();
+        if (year < 0 || year > 9999) {
+            return false;
+        }
+        cachedDate[0] = (byte) ('0' + year / 1000);
+        cachedDate[1] = (byte) ('0' + year / 100 % 10);
+        cachedDate[2] = (byte) ('0' + year / 10 % 10);
+        cachedDate[3] = (byte) ('0' + year % 10);
+        cachedDate[4] = '-';
+        cachedDate[5] = (byte) ('0' + date.getMonthValue() / 10);
+        cachedDate[6] = (byte) ('0' + date.getMonthValue() % 10);
+        cachedDate[7] = '-';
+        cachedDate[8] = (byte) ('0' + date.getDayOfMonth() / 10);
+        cachedDate[9] = (byte) ('0' + date.getDayOfMonth() % 10);
+        cachedEpochDay = epochDay;
+        return true;
+    }
+
+    private void appendTwoDigits(int value) {
+        buffer[position++] = (byte) ('0' + value / 10);
+        buffer[position++] = (byte) ('0' + value % 10);
+    }
+
+    private void appendAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            buffer[position++] = (byte) value.charAt(i);
+        }
+    }
+}
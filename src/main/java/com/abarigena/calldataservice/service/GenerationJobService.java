@@ -0,0 +1,264 @@
+package com.abarigena.calldataservice.service;
+
+import com.abarigena.calldataservice.dto.CdrGenerationRequest;
+import com.abarigena.calldataservice.dto.GenerationJobStatus;
+import com.abarigena.calldataservice.dto.JobStatus;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Сервис фоновых задач генерации CDR-записей.
+ * Запускает генерацию вне HTTP-потока, отслеживает ее прогресс и позволяет отменить задачу.
+ * Задачи выполняются по одной, так как каждая из них может очищать таблицу CDR-записей.
+ * В инкрементальном режиме генерируются только дни после самого позднего существующего звонка.
+ */
+@Service
+public class GenerationJobService {
+    private static final Logger logger = LoggerFactory.getLogger(GenerationJobService.class);
+
+    private static final int MAX_FINISHED_JOBS = 100;
+    private static final double AVERAGE_CALLS_PER_DAY = 3.0; // 1-5 звонков в день
+
+    private final CdrGeneratorService cdrGeneratorService;
+    private final SubscriberDirectory subscriberDirectory;
+    private final Map<UUID, GenerationJob> jobs = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cdr-generation-job");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public GenerationJobService(CdrGeneratorService cdrGeneratorService, SubscriberDirectory subscriberDirectory) {
+        this.cdrGeneratorService = cdrGeneratorService;
+        this.subscriberDirectory = subscriberDirectory;
+    }
+
+    /**
+     * Ставит задачу генерации в очередь.
+     *
+     * @param request параметры генерации
+     * @return состояние созданной задачи
+     * @throws IllegalArgumentException если параметры генерации некорректны
+     */
+    public GenerationJobStatus submit(CdrGenerationRequest request) {
+        LocalDate endDay = request.getEndDate() != null ? request.getEndDate().plusDays(1) : LocalDate.now();
+        LocalDate startDay = request.getStartDate() != null ? request.getStartDate() : endDay.minusYears(1);
+        if (!startDay.isBefore(endDay)) {
+            throw new IllegalArgumentException("Дата начала периода не может быть позже даты окончания");
+        }
+        List<String> subscribers = resolveSubscribers(request.getMsisdns());
+        // Без append и incremental таблица очищается целиком, что удалило бы звонки остальных абонентов
+        if (request.getMsisdns() != null && !request.getMsisdns().isEmpty()
+                && !request.isAppend() && !request.isIncremental()) {
+            throw new IllegalArgumentException(
+                    "Генерация для части абонентов возможна только в режиме append или incremental");
+        }
+
+        purgeFinishedJobs();
+        GenerationJob job = new GenerationJob(UUID.randomUUID(), estimateRecords(startDay, endDay, subscribers));
+        jobs.put(job.id, job);
+        job.future = executor.submit(() ->
+                run(job, startDay, endDay, subscribers, request.isAppend(), request.isIncremental()));
+
+        logger.info("Задача генерации {} поставлена в очередь: с {} по {}, абонентов: {}",
+                job.id, startDay, endDay.minusDays(1), subscribers.size());
+        return job.toStatus();
+    }
+
+    /**
+     * @param jobId идентификатор задачи
+     * @return состояние задачи, если она существует
+     */
+    public Optional<GenerationJobStatus> getStatus(UUID jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(GenerationJob::toStatus);
+    }
+
+    /**
+     * Отменяет задачу генерации. Уже сохраненные записи остаются в базе данных.
+     *
+     * @param jobId идентификатор задачи
+     * @return состояние задачи после отмены, если она существует
+     */
+    public Optional<GenerationJobStatus> cancel(UUID jobId) {
+        GenerationJob job = jobs.get(jobId);
+        if (job == null) {
+            return Optional.empty();
+        }
+        job.cancelled = true;
+        if (job.status == JobStatus.QUEUED && job.future.cancel(false)) {
+            job.finish(JobStatus.CANCELLED, null);
+        }
+        logger.info("Запрошена отмена задачи генерации {}", jobId);
+        return Optional.of(job.toStatus());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobs.values().forEach(job -> job.cancelled = true);
+        executor.shutdownNow();
+    }
+
+    private void run(GenerationJob job, LocalDate startDay, LocalDate endDay, List<String> subscribers,
+                     boolean append, boolean incremental) {
+        if (job.cancelled) {
+            job.finish(JobStatus.CANCELLED, null);
+            return;
+        }
+        job.start();
+        try {
+            LocalDate fromDay = startDay;
+            if (incremental) {
+                // Начало определяется при запуске, так как задачи перед ней могли изменить данные
+                LocalDate firstMissingDay = cdrGeneratorService.findFirstMissingDay(startDay);
+                if (firstMissingDay.isAfter(fromDay)) {
+                    fromDay = firstMissingDay;
+                }
+                job.estimatedRecords = estimateRecords(fromDay, endDay, subscribers);
+                logger.info("Инкрементальная генерация {}: недостающие дни с {}", job.id, fromDay);
+            } else if (!append) {
+                cdrGeneratorService.clearCdrRecords();
+            }
+            if (!fromDay.isBefore(endDay)) {
+                job.finish(JobStatus.DONE, null);
+                logger.info("Задача генерации {} завершена: недостающих дней нет", job.id);
+                return;
+            }
+
+            long generated = cdrGeneratorService.generateCdrRecords(fromDay, endDay, subscribers, job);
+            job.finish(JobStatus.DONE, null);
+            logger.info("Задача генерации {} завершена, сгенерировано {} записей", job.id, generated);
+        } catch (CancellationException e) {
+            job.finish(JobStatus.CANCELLED, null);
+            logger.info("Задача генерации {} отменена, сохранено {} записей", job.id, job.recordsWritten.get());
+        } catch (Exception e) {
+            if (job.cancelled) {
+                job.finish(JobStatus.CANCELLED, null);
+                logger.info("Задача генерации {} отменена, сохранено {} записей", job.id, job.recordsWritten.get());
+            } else {
+                job.finish(JobStatus.FAILED, e.getMessage());
+                logger.error("Ошибка при выполнении задачи генерации {}: {}", job.id, e.getMessage());
+            }
+        }
+    }
+
+    private static long estimateRecords(LocalDate startDay, LocalDate endDay, List<String> subscribers) {
+        long days = Math.max(0, ChronoUnit.DAYS.between(startDay, endDay));
+        return Math.round(days * subscribers.size() * AVERAGE_CALLS_PER_DAY);
+    }
+
+    private List<String> resolveSubscribers(List<String> msisdns) {
+        if (msisdns == null || msisdns.isEmpty()) {
+            return subscriberDirectory.getMsisdns();
+        }
+        for (String msisdn : msisdns) {
+            if (!subscriberDirectory.contains(msisdn)) {
+                throw new IllegalArgumentException("Абонент не найден: " + msisdn);
+            }
+        }
+        return msisdns.stream().distinct().sorted().toList();
+    }
+
+    /**
+     * Удаляет самые старые завершенные задачи, чтобы реестр не рос бесконечно.
+     */
+    private void purgeFinishedJobs() {
+        List<GenerationJob> finished = jobs.values().stream()
+                .filter(job -> job.finishedAt != null)
+                .sorted(Comparator.comparing(job -> job.finishedAt))
+                .toList();
+        for (int i = 0; i < finished.size() - MAX_FINISHED_JOBS; i++) {
+            jobs.remove(finished.get(i).id);
+        }
+    }
+
+    /**
+     * Задача генерации и ее прогресс.
+     */
+    private static class GenerationJob implements GenerationProgress {
+        private final UUID id;
+        private final AtomicLong recordsWritten = new AtomicLong();
+
+        private volatile long estimatedRecords;
+        private volatile JobStatus status = JobStatus.QUEUED;
+        private volatile boolean cancelled;
+        private volatile Future<?> future;
+        private volatile LocalDateTime startedAt;
+        private volatile LocalDateTime finishedAt;
+        private volatile long startedNanos;
+        private volatile long finishedNanos;
+        private volatile String errorMessage;
+
+        GenerationJob(UUID id, long estimatedRecords) {
+            this.id = id;
+            this.estimatedRecords = estimatedRecords;
+        }
+
+        @Override
+        public void onRecordsWritten(int count) {
+            recordsWritten.addAndGet(count);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        void start() {
+            startedNanos = System.nanoTime();
+            startedAt = LocalDateTime.now();
+            status = JobStatus.RUNNING;
+        }
+
+        void finish(JobStatus finalStatus, String message) {
+            finishedNanos = System.nanoTime();
+            finishedAt = LocalDateTime.now();
+            errorMessage = message;
+            status = finalStatus;
+        }
+
+        GenerationJobStatus toStatus() {
+            JobStatus currentStatus = status;
+            long written = recordsWritten.get();
+
+            GenerationJobStatus result = new GenerationJobStatus();
+            result.setJobId(id);
+            result.setStatus(currentStatus);
+            result.setRecordsWritten(written);
+            result.setEstimatedRecords(estimatedRecords);
+            result.setStartedAt(startedAt);
+            result.setFinishedAt(finishedAt);
+            result.setErrorMessage(errorMessage);
+
+            if (startedAt != null) {
+                long endNanos = finishedAt != null ? finishedNanos : System.nanoTime();
+                double elapsedSeconds = (endNanos - startedNanos) / 1_000_000_000.0;
+                double recordsPerSecond = elapsedSeconds > 0 ? written / elapsedSeconds : 0;
+                result.setRecordsPerSecond(recordsPerSecond);
+                if (currentStatus == JobStatus.RUNNING && recordsPerSecond > 0) {
+                    long remaining = Math.max(0, estimatedRecords - written);
+                    result.setEtaSeconds(Math.round(remaining / recordsPerSecond));
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.abarigena.calldataservice.service;
+
+/**
+ * Приемник прогресса генерации CDR-записей.
+ * Позволяет отслеживать количество сохраненных записей и прерывать генерацию.
+ */
+public interface GenerationProgress {
+
+    /**
+     * Вызывается после сохранения очередного пакета записей.
+     * Может вызываться одновременно из нескольких потоков генерации.
+     *
+     * @param count количество сохраненных записей в пакете
+     */
+    void onRecordsWritten(int count);
+
+    /**
+     * @return true, если генерацию необходимо прервать
+     */
+    boolean isCancelled();
+}
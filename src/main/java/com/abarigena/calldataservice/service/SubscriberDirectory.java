@@ -0,0 +1,150 @@
+package com.abarigena.calldataservice.service;
+
+import com.abarigena.calldataservice.store.entity.Subscriber;
+import com.abarigena.calldataservice.store.repository.SubscriberRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Справочник абонентов в памяти.
+ * Загружает абонентов из базы данных один раз и хранит их номера в отсортированном массиве,
+ * что дает выбор случайного абонента за O(1) и поиск номера за O(log n) без обращений к базе.
+ * Должен обновляться через {@link #refresh()} при изменении списка абонентов.
+ */
+@Component
+public class SubscriberDirectory {
+    private static final Logger logger = LoggerFactory.getLogger(SubscriberDirectory.class);
+
+    private final SubscriberRepository subscriberRepository;
+    private volatile String[] msisdns;
+    private volatile long version;
+    private volatile long refreshedAt;
+
+    @Autowired
+    public SubscriberDirectory(SubscriberRepository subscriberRepository) {
+        this.subscriberRepository = subscriberRepository;
+    }
+
+    /**
+     * Перечитывает список абонентов из базы данных.
+     */
+    public synchronized void refresh() {
+        String[] loaded = subscriberRepository.findAll().stream()
+                .map(Subscriber::getMsisdn)
+                .sorted()
+                .toArray(String[]::new);
+        msisdns = loaded;
+        refreshedAt = System.currentTimeMillis();
+        version++;
+        logger.info("Справочник абонентов обновлен, загружено {} номеров", loaded.length);
+    }
+
+    /**
+     * @return номер загрузки справочника, увеличивается при каждом обновлении списка абонентов
+     */
+    public long getVersion() {
+        snapshot();
+        return version;
+    }
+
+    /**
+     * @return время последнего обновления списка абонентов в миллисекундах эпохи
+     */
+    public long getRefreshedAt() {
+        snapshot();
+        return refreshedAt;
+    }
+
+    /**
+     * @return количество абонентов
+     */
+    public int size() {
+        return snapshot().length;
+    }
+
+    /**
+     * @return неизменяемый список номеров всех абонентов, отсортированный по возрастанию
+     */
+    public List<String> getMsisdns() {
+        return Collections.unmodifiableList(Arrays.asList(snapshot()));
+    }
+
+    /**
+     * Возвращает страницу номеров, следующих за указанным номером в порядке сортировки.
+     * Указанный номер может отсутствовать в справочнике, например если абонент был удален между запросами страниц.
+     *
+     * @param after номер, после которого начинается страница, или {@code null} для первой страницы
+     * @param limit максимальное количество номеров страницы
+     * @return номера страницы в порядке возрастания
+     */
+    public List<String> getMsisdnsAfter(String after, int limit) {
+        String[] current = snapshot();
+        int from = 0;
+        if (after != null) {
+            int index = Arrays.binarySearch(current, after);
+            from = index >= 0 ? index + 1 : -index - 1;
+        }
+        int to = (int) Math.min(current.length, (long) from + limit);
+        return List.of(Arrays.copyOfRange(current, from, to));
+    }
+
+    /**
+     * Возвращает индекс абонента в отсортированном списке номеров.
+     *
+     * @param msisdn номер абонента
+     * @return индекс абонента или отрицательное число, если абонент не найден
+     */
+    public int indexOf(String msisdn) {
+        return Arrays.binarySearch(snapshot(), msisdn);
+    }
+
+    /**
+     * @return true, если абонент с указанным номером существует
+     */
+    public boolean contains(String msisdn) {
+        return msisdn != null && indexOf(msisdn) >= 0;
+    }
+
+    /**
+     * Выбирает случайного абонента, отличного от указанного.
+     *
+     * @param msisdn номер абонента, который не должен быть выбран
+     * @param random генератор случайных чисел вызывающего потока
+     * @return номер случайного абонента
+     */
+    public String randomMsisdnExcluding(String msisdn, SplittableRandom random) {
+        String[] current = snapshot();
+        int excluded = Arrays.binarySearch(current, msisdn);
+        int candidates = excluded >= 0 ? current.length - 1 : current.length;
+        if (candidates < 1) {
+            throw new IllegalStateException("Недостаточно абонентов для выбора собеседника");
+        }
+
+        // Выбираем среди остальных абонентов и сдвигаем индекс через исключенного
+        int index = random.nextInt(candidates);
+        if (excluded >= 0 && index >= excluded) {
+            index++;
+        }
+        return current[index];
+    }
+
+    private String[] snapshot() {
+        String[] current = msisdns;
+        if (current == null) {
+            synchronized (this) {
+                if (msisdns == null) {
+                    refresh();
+                }
+                current = msisdns;
+            }
+        }
+        return current;
+    }
+}
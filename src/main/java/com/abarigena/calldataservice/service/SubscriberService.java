@@ -20,10 +20,12 @@ public class SubscriberService {
     private static final Logger logger = LoggerFactory.getLogger(SubscriberService.class);
 
     private final SubscriberRepository subscriberRepository;
+    private final SubscriberDirectory subscriberDirectory;
 
     @Autowired
-    public SubscriberService(SubscriberRepository subscriberRepository) {
+    public SubscriberService(SubscriberRepository subscriberRepository, SubscriberDirectory subscriberDirectory) {
         this.subscriberRepository = subscriberRepository;
+        this.subscriberDirectory = subscriberDirectory;
     }
 
     /**
@@ -44,6 +46,7 @@ public class SubscriberService {
                 logger.debug("Создан абонент с номером: {}", subscriber.getMsisdn());
             }
             subscriberRepository.saveAll(subscribers);
+            subscriberDirectory.refresh();
             logger.info("Завершена инициализация списка абонентов. Создано {} абонентов", subscribers.size());
         } else {
             logger.info("Абоненты уже существуют в базе данных. Инициализация не требуется");
@@ -0,0 +1,201 @@
+package com.abarigena.calldataservice.service;
+
+import com.abarigena.calldataservice.config.CdrUdrProperties;
+import com.abarigena.calldataservice.store.entity.CdrRecord;
+import com.abarigena.calldataservice.store.repository.CdrRecordRepository;
+import com.abarigena.calldataservice.store.repository.CdrUsageSummary;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Параллельное суммирование длительности звонков всех абонентов за период.
+ * Период делится на равные по времени части, суммы каждой части считаются в базе данных
+ * отдельным запросом в своем потоке и накапливаются в массиве {@code long} по плотному индексу абонента,
+ * после чего частичные массивы складываются. Промежуточных коллекций по абонентам не создается.
+ * Количество частей задается настройкой {@code cdr.udr.parallelism}.
+ * Для постраничной выдачи группа абонентов суммируется одним запросом по диапазону номеров.
+ */
+@Component
+public class UdrAggregator {
+
+    private final CdrRecordRepository cdrRecordRepository;
+    private final int parallelism;
+    private final ThreadPoolExecutor executor;
+
+    @Autowired
+    public UdrAggregator(CdrRecordRepository cdrRecordRepository, CdrUdrProperties properties) {
+        this.cdrRecordRepository = cdrRecordRepository;
+        this.parallelism = Math.max(1, properties.getParallelism());
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "udr-aggregation-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Суммирует длительность входящих и исходящих звонков абонентов за период.
+     * Звонки номеров, не входящих в список, не учитываются.
+     *
+     * @param msisdns   номера абонентов
+     * @param startDate начало периода включительно
+     * @param endDate   окончание периода включительно
+     * @return суммы в секундах в порядке номеров {@code msisdns}
+     */
+    public Totals aggregate(List<String> msisdns, LocalDateTime startDate, LocalDateTime endDate) {
+        long[] values = toValues(msisdns);
+        long[] sorted = sortedIndex(values);
+
+        List<LocalDateTime[]> slices = split(startDate, endDate);
+        long[] seconds;
+        if (slices.size() == 1) {
+            seconds = sumSlice(sorted, startDate, endDate);
+        } else {
+            List<Future<long[]>> partials = new ArrayList<>(slices.size());
+            try {
+                for (LocalDateTime[] slice : slices) {
+                    partials.add(executor.submit(() -> sumSlice(sorted, slice[0], slice[1])));
+                }
+                seconds = new long[sorted.length * 2];
+                for (Future<long[]> partial : partials) {
+                    long[] sums = await(partial);
+                    for (int i = 0; i < seconds.length; i++) {
+                        seconds[i] += sums[i];
+                    }
+                }
+            } finally {
+                for (Future<long[]> partial : partials) {
+                    partial.cancel(true);
+                }
+            }
+        }
+        return totals(values, sorted, seconds);
+    }
+
+    /**
+     * Суммирует длительность звонков небольшой группы абонентов за период одним запросом в текущем потоке.
+     * База данных читает только звонки номеров между наименьшим и наибольшим номером группы,
+     * поэтому время и память запроса зависят от размера группы, а не от количества всех абонентов.
+     *
+     * @param msisdns   номера абонентов группы
+     * @param startDate начало периода включительно
+     * @param endDate   окончание периода включительно
+     * @return суммы в секундах в порядке номеров {@code msisdns}
+     */
+    public Totals aggregateRange(List<String> msisdns, LocalDateTime startDate, LocalDateTime endDate) {
+        long[] values = toValues(msisdns);
+        long[] sorted = sortedIndex(values);
+        long[] seconds = new long[sorted.length * 2];
+        if (sorted.length > 0) {
+            accumulate(sorted, seconds, cdrRecordRepository.sumSecondsBySubscriberRangeAndPeriod(
+                    sorted[0], sorted[sorted.length - 1], startDate, endDate));
+        }
+        return totals(values, sorted, seconds);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Делит период на {@code parallelism} частей, не пересекающихся с точностью до секунды.
+     */
+    private List<LocalDateTime[]> split(LocalDateTime startDate, LocalDateTime endDate) {
+        long start = CdrRecord.toEpochSecond(startDate);
+        long length = CdrRecord.toEpochSecond(endDate) - start + 1;
+        int count = (int) Math.max(1, Math.min(parallelism, length));
+        if (count == 1) {
+            return List.<LocalDateTime[]>of(new LocalDateTime[]{startDate, endDate});
+        }
+        List<LocalDateTime[]> slices = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long sliceStart = start + length * i / count;
+            long sliceEnd = start + length * (i + 1) / count - 1;
+            slices.add(new LocalDateTime[]{
+                    i == 0 ? startDate : CdrRecord.toLocalDateTime(sliceStart),
+                    i == count - 1 ? endDate : CdrRecord.toLocalDateTime(sliceEnd)});
+        }
+        return slices;
+    }
+
+    private long[] sumSlice(long[] sorted, LocalDateTime startDate, LocalDateTime endDate) {
+        long[] seconds = new long[sorted.length * 2];
+        accumulate(sorted, seconds, cdrRecordRepository.sumSecondsBySubscriberAndPeriod(startDate, endDate));
+        return seconds;
+    }
+
+    static long[] toValues(List<String> msisdns) {
+        long[] values = new long[msisdns.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = CdrRecord.msisdnValue(msisdns.get(i));
+        }
+        return values;
+    }
+
+    // Плотный индекс абонента - позиция его номера в отсортированном массиве чисел
+    static long[] sortedIndex(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static void accumulate(long[] sorted, long[] seconds, List<CdrUsageSummary> summaries) {
+        for (CdrUsageSummary summary : summaries) {
+            int index = Arrays.binarySearch(sorted, summary.getMsisdn());
+            if (index >= 0) {
+                seconds[index * 2 + (summary.getCallType() == CdrRecord.INCOMING ? 0 : 1)] += summary.getTotalSeconds();
+            }
+        }
+    }
+
+    // Раскладывает суммы по плотному индексу (входящие и исходящие парами) в порядок номеров запроса
+    static Totals totals(long[] values, long[] sorted, long[] seconds) {
+        long[] incoming = new long[values.length];
+        long[] outgoing = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            int index = Arrays.binarySearch(sorted, values[i]);
+            incoming[i] = seconds[index * 2];
+            outgoing[i] = seconds[index * 2 + 1];
+        }
+        return new Totals(incoming, outgoing);
+    }
+
+    private static long[] await(Future<long[]> partial) {
+        try {
+            return partial.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Суммирование длительности звонков прервано", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Суммы длительности звонков абонентов в секундах.
+     *
+     * @param incomingSeconds входящие звонки, по индексу номера в запросе
+     * @param outgoingSeconds исходящие звонки, по индексу номера в запросе
+     */
+    public record Totals(long[] incomingSeconds, long[] outgoingSeconds) {
+    }
+}
@@ -0,0 +1,161 @@
+package com.abarigena.calldataservice.service;
+
+import com.abarigena.calldataservice.dto.UdrCacheStats;
+import com.abarigena.calldataservice.store.repository.CdrRecordsChangedEvent;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Кеш сумм длительности звонков для UDR-отчетов за завершившиеся месяцы.
+ * Хранит суммы одного абонента или всех абонентов за месяц и вытесняет давно не запрошенные записи,
+ * когда превышено количество записей или их оценочный размер в памяти.
+ * Записи месяцев, затронутых изменением CDR-записей, удаляются из кеша.
+ * Методы потокобезопасны.
+ */
+public class UdrCache {
+    // Оценка памяти записи: объекты ключа и записи, а также ссылка и две суммы на каждого абонента
+    private static final long ENTRY_OVERHEAD_BYTES = 128;
+    private static final long BYTES_PER_SUBSCRIBER = 24;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private long version;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * @param maxEntries максимальное количество записей в кеше
+     * @param maxBytes   максимальный оценочный размер записей в байтах
+     */
+    public UdrCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Возвращает суммы, если они посчитаны для того же списка абонентов.
+     * Если список абонентов изменился, сохраненные суммы не подходят и считаются промахом.
+     *
+     * @param key     месяц и абонент
+     * @param msisdns номера абонентов в порядке сумм
+     * @return суммы в порядке номеров {@code msisdns} или {@code null}, если их нет в кеше
+     */
+    public synchronized UdrAggregator.Totals get(Key key, List<String> msisdns) {
+        Entry entry = entries.get(key);
+        if (entry == null || !entry.msisdns.equals(msisdns)) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.totals;
+    }
+
+    /**
+     * Версия данных, которая увеличивается при каждом изменении CDR-записей.
+     * Берется до подсчета сумм и передается в {@link #put}, чтобы не сохранить суммы,
+     * при подсчете которых данные изменились.
+     *
+     * @return текущая версия данных
+     */
+    public synchronized long version() {
+        return version;
+    }
+
+    /**
+     * Сохраняет суммы и вытесняет самые давние записи сверх ограничений.
+     * Суммы не сохраняются, если после получения {@code version} данные изменились
+     * или запись больше допустимого размера кеша.
+     *
+     * @param key     месяц и абонент
+     * @param msisdns номера абонентов в порядке сумм
+     * @param totals  суммы длительности звонков
+     * @param version версия данных до подсчета сумм
+     */
+    public synchronized void put(Key key, List<String> msisdns, UdrAggregator.Totals totals, long version) {
+        long bytes = ENTRY_OVERHEAD_BYTES + BYTES_PER_SUBSCRIBER * msisdns.size();
+        if (version != this.version || bytes > maxBytes || maxEntries <= 0) {
+            return;
+        }
+        Entry previous = entries.put(key, new Entry(msisdns, totals, bytes));
+        if (previous != null) {
+            totalBytes -= previous.bytes;
+        }
+        totalBytes += bytes;
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries || totalBytes > maxBytes) {
+            totalBytes -= eldest.next().bytes;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Удаляет записи месяцев, входящих в измененные партиции.
+     *
+     * @param event изменение CDR-записей
+     * @return количество удаленных записей
+     */
+    public synchronized int invalidate(CdrRecordsChangedEvent event) {
+        version++;
+        int removed = 0;
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Entry> entry = iterator.next();
+            int partitionKey = entry.getKey().partitionKey();
+            if (event.affects(partitionKey, partitionKey)) {
+                totalBytes -= entry.getValue().bytes;
+                iterator.remove();
+                removed++;
+            }
+        }
+        invalidations += removed;
+        return removed;
+    }
+
+    /**
+     * @return количество записей, размер и счетчики обращений к кешу
+     */
+    public synchronized UdrCacheStats getStats() {
+        UdrCacheStats stats = new UdrCacheStats();
+        stats.setEntries(entries.size());
+        stats.setMaxEntries(maxEntries);
+        stats.setSizeBytes(totalBytes);
+        stats.setMaxSizeBytes(maxBytes);
+        stats.setHits(hits);
+        stats.setMisses(misses);
+        stats.setEvictions(evictions);
+        stats.setInvalidations(invalidations);
+        return stats;
+    }
+
+    /**
+     * Ключ записи: номер абонента или {@code null} для всех абонентов и месяц.
+     */
+    public record Key(String msisdn, int year, int month) {
+
+        /**
+         * @return ключ сумм всех абонентов за месяц
+         */
+        public static Key all(int year, int month) {
+            return new Key(null, year, month);
+        }
+
+        /**
+         * @return ключ помесячной партиции месяца, {@code yyyyMM}
+         */
+        public int partitionKey() {
+            return year * 100 + month;
+        }
+    }
+
+    private record Entry(List<String> msisdns, UdrAggregator.Totals totals, long bytes) {
+    }
+}
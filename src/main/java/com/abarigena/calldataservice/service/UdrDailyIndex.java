@@ -0,0 +1,313 @@
+package com.abarigena.calldataservice.service;
+
+import com.abarigena.calldataservice.config.CdrUdrProperties;
+import com.abarigena.calldataservice.store.entity.CdrRecord;
+import com.abarigena.calldataservice.store.repository.CdrPartitionRange;
+import com.abarigena.calldataservice.store.repository.CdrRecordRepository;
+import com.abarigena.calldataservice.store.repository.CdrRecordsChangedEvent;
+import com.abarigena.calldataservice.store.repository.CdrUsageBucket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Суточный индекс длительности звонков абонентов для UDR-отчетов за произвольный период.
+ * Для каждого абонента хранит накопленные суммы секунд входящих и исходящих звонков по суткам UTC
+ * в массивах примитивов, поэтому сумма за любой диапазон целых суток - разность двух элементов массива.
+ * Абонент загружается в индекс одним запросом при первом обращении; количество абонентов ограничено
+ * {@link CdrUdrProperties#getIndexMaxSubscribers()}, давно не запрошенные абоненты вытесняются.
+ * Добавленные CDR-записи учитываются в загруженных абонентах после фиксации их транзакции,
+ * после удаления CDR-записей из индекса вытесняются абоненты, у которых есть звонки в измененных партициях.
+ * Методы потокобезопасны.
+ */
+@Component
+public class UdrDailyIndex {
+    private static final Logger logger = LoggerFactory.getLogger(UdrDailyIndex.class);
+
+    /**
+     * Длительность суток в секундах.
+     */
+    public static final long SECONDS_PER_DAY = 86_400;
+
+    // Крайние партиции, к которым приводятся границы событий всех партиций, например CdrRecordsChangedEvent.all()
+    private static final int FIRST_PARTITION = CdrPartitionRange.partitionKeyOf(YearMonth.of(1, 1));
+    private static final int LAST_PARTITION = CdrPartitionRange.partitionKeyOf(YearMonth.of(9999, 12));
+
+    private final CdrRecordRepository cdrRecordRepository;
+    private final int maxSubscribers;
+    private final LinkedHashMap<Long, SubscriberDays> subscribers = new LinkedHashMap<>(16, 0.75f, true);
+    // Увеличивается при каждом изменении CDR-записей, чтобы не сохранить абонента, загруженного во время изменения
+    private long generation;
+    // Количество изменений, транзакции которых еще не завершились
+    private int pendingChanges;
+
+    @Autowired
+    public UdrDailyIndex(CdrRecordRepository cdrRecordRepository, CdrUdrProperties properties) {
+        this.cdrRecordRepository = cdrRecordRepository;
+        this.maxSubscribers = properties.getIndexMaxSubscribers();
+    }
+
+    /**
+     * Суммирует длительность звонков абонента за сутки диапазона.
+     *
+     * @param fromDay первые сутки диапазона, номер суток от начала эпохи UTC
+     * @param toDay   последние сутки диапазона включительно
+     * @return секунды входящих и исходящих звонков: {@code {incoming, outgoing}}
+     */
+    public long[] sumDays(String msisdn, long fromDay, long toDay) {
+        return read(msisdn, days -> new long[]{
+                days.sum(days.incoming, fromDay, toDay), days.sum(days.outgoing, fromDay, toDay)});
+    }
+
+    /**
+     * Возвращает длительность звонков абонента за каждые сутки диапазона.
+     *
+     * @param fromDay первые сутки диапазона, номер суток от начала эпохи UTC
+     * @param toDay   последние сутки диапазона включительно
+     * @return секунды входящих ({@code [0]}) и исходящих ({@code [1]}) звонков по суткам, начиная с {@code fromDay}
+     */
+    public long[][] dailySeconds(String msisdn, long fromDay, long toDay) {
+        int dayCount = Math.toIntExact(toDay - fromDay + 1);
+        return read(msisdn, days -> {
+            long[][] seconds = new long[2][dayCount];
+            for (int i = 0; i < dayCount; i++) {
+                seconds[0][i] = days.sum(days.incoming, fromDay + i, fromDay + i);
+                seconds[1][i] = days.sum(days.outgoing, fromDay + i, fromDay + i);
+            }
+            return seconds;
+        });
+    }
+
+    /**
+     * @return количество абонентов в индексе
+     */
+    public synchronized int size() {
+        return subscribers.size();
+    }
+
+    /**
+     * Учитывает изменение CDR-записей. Внутри транзакции изменение откладывается до ее завершения
+     * и применяется, только если транзакция зафиксирована: добавленные записи прибавляются к суммам
+     * загруженных абонентов, а после удаления записей вытесняются абоненты со звонками в измененных партициях.
+     *
+     * @param event изменение CDR-записей
+     */
+    @EventListener
+    public void onCdrRecordsChanged(CdrRecordsChangedEvent event) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            synchronized (this) {
+                generation++;
+                apply(event);
+            }
+            return;
+        }
+
+        synchronized (this) {
+            pendingChanges++;
+            generation++;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                synchronized (UdrDailyIndex.this) {
+                    pendingChanges--;
+                    generation++;
+                    if (status == STATUS_COMMITTED) {
+                        apply(event);
+                    }
+                }
+            }
+        });
+    }
+
+    private <T> T read(String msisdn, Function<SubscriberDays, T> query) {
+        long key = CdrRecord.msisdnValue(msisdn);
+        synchronized (this) {
+            SubscriberDays days = subscribers.get(key);
+            if (days != null) {
+                return query.apply(days);
+            }
+        }
+        SubscriberDays days = load(msisdn, key);
+        synchronized (this) {
+            return query.apply(days);
+        }
+    }
+
+    /**
+     * Загружает суммы абонента по суткам и сохраняет их в индексе, если за время загрузки
+     * CDR-записи не менялись. Иначе загруженные суммы используются только для текущего запроса:
+     * изменение могло попасть в них и затем еще раз примениться к индексу.
+     */
+    private SubscriberDays load(String msisdn, long key) {
+        long startGeneration;
+        boolean stable;
+        synchronized (this) {
+            startGeneration = generation;
+            stable = pendingChanges == 0;
+        }
+
+        SubscriberDays days = SubscriberDays.of(
+                cdrRecordRepository.sumSecondsByMsisdnAndBuckets(msisdn, null, null, SECONDS_PER_DAY));
+
+        synchronized (this) {
+            if (stable && generation == startGeneration && maxSubscribers > 0) {
+                subscribers.put(key, days);
+                Iterator<SubscriberDays> eldest = subscribers.values().iterator();
+                while (subscribers.size() > maxSubscribers) {
+                    eldest.next();
+                    eldest.remove();
+                }
+                logger.debug("Абонент {} загружен в суточный индекс UDR: {} суток", msisdn, days.dayCount);
+            }
+        }
+        return days;
+    }
+
+    // Вызывается под блокировкой индекса
+    private void apply(CdrRecordsChangedEvent event) {
+        if (event.insertedRecords() == null) {
+            evict(event);
+            return;
+        }
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        for (CdrRecord record : event.insertedRecords()) {
+            // Исходящий звонок относится к звонящему, входящий - к принимающему
+            boolean outgoing = record.getCallTypeCode() == CdrRecord.OUTGOING;
+            SubscriberDays days = subscribers.get(outgoing ? record.getCallerMsisdn() : record.getReceiverMsisdn());
+            if (days != null) {
+                days.add(Math.floorDiv(record.getStartEpochSecond(), SECONDS_PER_DAY), outgoing,
+                        record.getDurationSeconds());
+            }
+        }
+    }
+
+    // Вызывается под блокировкой индекса. Абоненты без звонков в измененных партициях остаются в индексе:
+    // удаление записей партиций не меняет их суммы
+    private void evict(CdrRecordsChangedEvent event) {
+        long fromDay = CdrPartitionRange.monthOf(Math.max(event.fromPartition(), FIRST_PARTITION))
+                .atDay(1).toEpochDay();
+        long toDay = CdrPartitionRange.monthOf(Math.min(event.toPartition(), LAST_PARTITION))
+                .atEndOfMonth().toEpochDay();
+        int evicted = 0;
+        Iterator<SubscriberDays> iterator = subscribers.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().overlaps(fromDay, toDay)) {
+                iterator.remove();
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            logger.info("Из суточного индекса UDR вытеснено {} абонентов после изменения партиций {}-{}",
+                    evicted, event.fromPartition(), event.toPartition());
+        }
+    }
+
+    /**
+     * Накопленные суммы секунд звонков абонента по суткам с {@code firstDay} по {@code firstDay + dayCount - 1}.
+     * Элемент {@code i} массива - сумма за сутки до {@code firstDay + i}, поэтому элемент 0 равен нулю,
+     * а элемент {@code dayCount} - сумме за все время. Массивы могут быть длиннее {@code dayCount + 1}.
+     */
+    private static final class SubscriberDays {
+        private long firstDay;
+        private int dayCount;
+        private long[] incoming;
+        private long[] outgoing;
+
+        static SubscriberDays of(List<CdrUsageBucket> buckets) {
+            SubscriberDays days = new SubscriberDays();
+            if (buckets.isEmpty()) {
+                days.incoming = new long[1];
+                days.outgoing = new long[1];
+                return days;
+            }
+
+            long first = Long.MAX_VALUE;
+            long last = Long.MIN_VALUE;
+            for (CdrUsageBucket bucket : buckets) {
+                first = Math.min(first, bucket.getBucket());
+                last = Math.max(last, bucket.getBucket());
+            }
+            days.firstDay = first;
+            days.dayCount = Math.toIntExact(last - first + 1);
+            days.incoming = new long[days.dayCount + 1];
+            days.outgoing = new long[days.dayCount + 1];
+            for (CdrUsageBucket bucket : buckets) {
+                long[] prefix = bucket.getCallType() == CdrRecord.OUTGOING ? days.outgoing : days.incoming;
+                prefix[(int) (bucket.getBucket() - first) + 1] += bucket.getTotalSeconds();
+            }
+            for (int i = 1; i <= days.dayCount; i++) {
+                days.incoming[i] += days.incoming[i - 1];
+                days.outgoing[i] += days.outgoing[i - 1];
+            }
+            return days;
+        }
+
+        // Есть ли среди хранимых суток сутки диапазона
+        boolean overlaps(long fromDay, long toDay) {
+            return dayCount > 0 && firstDay <= toDay && fromDay < firstDay + dayCount;
+        }
+
+        long sum(long[] prefix, long fromDay, long toDay) {
+            return prefix[index(toDay + 1)] - prefix[index(fromDay)];
+        }
+
+        // Позиция накопленной суммы на начало суток, за пределами хранимых суток - крайняя позиция
+        private int index(long day) {
+            return (int) Math.max(0, Math.min(dayCount, day - firstDay));
+        }
+
+        void add(long day, boolean outgoingCall, long seconds) {
+            if (dayCount == 0) {
+                firstDay = day;
+            }
+            if (day < firstDay) {
+                growFront(Math.toIntExact(firstDay - day));
+            } else if (day >= firstDay + dayCount) {
+                growBack(Math.toIntExact(day - firstDay - dayCount + 1));
+            }
+            long[] prefix = outgoingCall ? outgoing : incoming;
+            // Звонки обычно добавляются в последние сутки, и сдвигать приходится только конец массива
+            for (int i = (int) (day - firstDay) + 1; i <= dayCount; i++) {
+                prefix[i] += seconds;
+            }
+        }
+
+        private void growBack(int days) {
+            int newCount = dayCount + days;
+            if (newCount + 1 > incoming.length) {
+                int capacity = Math.max(newCount + 1, incoming.length * 2);
+                incoming = Arrays.copyOf(incoming, capacity);
+                outgoing = Arrays.copyOf(outgoing, capacity);
+            }
+            Arrays.fill(incoming, dayCount + 1, newCount + 1, incoming[dayCount]);
+            Arrays.fill(outgoing, dayCount + 1, newCount + 1, outgoing[dayCount]);
+            dayCount = newCount;
+        }
+
+        private void growFront(int days) {
+            int newCount = dayCount + days;
+            long[] newIncoming = new long[newCount + 1];
+            long[] newOutgoing = new long[newCount + 1];
+            System.arraycopy(incoming, 0, newIncoming, days, dayCount + 1);
+            System.arraycopy(outgoing, 0, newOutgoing, days, dayCount + 1);
+            incoming = newIncoming;
+            outgoing = newOutgoing;
+            firstDay -= days;
+            dayCount = newCount;
+        }
+    }
+}
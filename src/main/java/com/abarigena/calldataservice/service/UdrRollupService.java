@@ -0,0 +1,205 @@
+package com.abarigena.calldataservice.service;
+
+import com.abarigena.calldataservice.dto.CdrPartitionInfo;
+import com.abarigena.calldataservice.store.entity.CdrRecord;
+import com.abarigena.calldataservice.store.entity.UdrMonthly;
+import com.abarigena.calldataservice.store.repository.CdrPartitionRange;
+import com.abarigena.calldataservice.store.repository.CdrPartitionSummary;
+import com.abarigena.calldataservice.store.repository.CdrPartitionTotals;
+import com.abarigena.calldataservice.store.repository.CdrRecordRepository;
+import com.abarigena.calldataservice.store.repository.CdrRecordsChangedEvent;
+import com.abarigena.calldataservice.store.repository.UdrMonthlyRepository;
+import com.abarigena.calldataservice.store.repository.UdrMonthlyWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Сервис помесячных итогов звонков абонентов для UDR-отчетов за месяц.
+ * Итоги обновляются при сохранении CDR-записей в той же транзакции, поэтому отчет абонента за месяц
+ * читается одной строкой по первичному ключу, а отчеты всех абонентов - строками одного месяца,
+ * и время ответа не зависит от количества звонков.
+ * Итоги, которые могли разойтись с CDR-записями, например в базе данных до появления итогов,
+ * пересчитываются командой {@link #rebuild(YearMonth)}. При запуске количество и длительность звонков
+ * в итогах сверяются с CDR-записями каждого месяца, и несовпадающие месяцы пересчитываются;
+ * до окончания сверки {@link #isReady()} возвращает {@code false}, и отчеты считаются по CDR-записям.
+ * Также отчеты считаются по CDR-записям во время очистки таблиц методом {@link #truncate()}.
+ */
+@Service
+public class UdrRollupService {
+    private static final Logger logger = LoggerFactory.getLogger(UdrRollupService.class);
+
+    private final UdrMonthlyRepository udrMonthlyRepository;
+    private final UdrMonthlyWriter udrMonthlyWriter;
+    private final CdrRecordRepository cdrRecordRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private volatile boolean verified;
+    private volatile boolean truncating;
+
+    @Autowired
+    public UdrRollupService(UdrMonthlyRepository udrMonthlyRepository, UdrMonthlyWriter udrMonthlyWriter,
+                            CdrRecordRepository cdrRecordRepository, ApplicationEventPublisher eventPublisher) {
+        this.udrMonthlyRepository = udrMonthlyRepository;
+        this.udrMonthlyWriter = udrMonthlyWriter;
+        this.cdrRecordRepository = cdrRecordRepository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * @return сверены ли итоги с CDR-записями после запуска и не идет ли очистка таблиц
+     */
+    public boolean isReady() {
+        return verified && !truncating;
+    }
+
+    /**
+     * Очищает CDR-записи и итоги звонков через TRUNCATE. TRUNCATE в H2 фиксирует открытую транзакцию,
+     * поэтому таблицы очищаются по очереди, и до очистки обеих {@link #isReady()} возвращает {@code false}.
+     * Итоги очищаются последними: если очистка прервется после CDR-записей, итоги остаются
+     * не готовыми до пересчета {@link #rebuild(YearMonth)} всех месяцев или сверки при следующем запуске.
+     */
+    public synchronized void truncate() {
+        truncating = true;
+        cdrRecordRepository.truncate();
+        udrMonthlyRepository.truncate();
+        truncating = false;
+    }
+
+    /**
+     * Читает итоги абонента за месяц по первичному ключу.
+     *
+     * @return секунды входящих и исходящих звонков: {@code {incoming, outgoing}}
+     */
+    public long[] sumMonth(String msisdn, YearMonth month) {
+        return udrMonthlyRepository.findById(
+                        new UdrMonthly.Key(CdrRecord.msisdnValue(msisdn), CdrPartitionRange.partitionKeyOf(month)))
+                .map(row -> new long[]{row.getIncomingSeconds(), row.getOutgoingSeconds()})
+                .orElseGet(() -> new long[2]);
+    }
+
+    /**
+     * Читает итоги всех абонентов за месяц. Итоги номеров, не входящих в список, не учитываются.
+     *
+     * @return суммы в секундах в порядке номеров {@code msisdns}
+     */
+    public UdrAggregator.Totals sumMonth(List<String> msisdns, YearMonth month) {
+        long[] values = UdrAggregator.toValues(msisdns);
+        long[] sorted = UdrAggregator.sortedIndex(values);
+        return totals(values, sorted, udrMonthlyRepository.findByPartition(CdrPartitionRange.partitionKeyOf(month)));
+    }
+
+    /**
+     * Читает итоги группы абонентов за месяц по диапазону номеров группы.
+     *
+     * @return суммы в секундах в порядке номеров {@code msisdns}
+     */
+    public UdrAggregator.Totals sumMonthRange(List<String> msisdns, YearMonth month) {
+        long[] values = UdrAggregator.toValues(msisdns);
+        long[] sorted = UdrAggregator.sortedIndex(values);
+        List<UdrMonthly> rows = sorted.length == 0 ? List.of() : udrMonthlyRepository.findByPartitionAndMsisdnRange(
+                CdrPartitionRange.partitionKeyOf(month), sorted[0], sorted[sorted.length - 1]);
+        return totals(values, sorted, rows);
+    }
+
+    /**
+     * Пересчитывает итоги месяца или всех месяцев по CDR-записям. Каждый месяц пересчитывается
+     * в отдельной транзакции, поэтому отчеты во время пересчета видят итоги месяца целиком.
+     * Итоги месяцев без CDR-записей удаляются. Пересчет всех месяцев возвращает готовность итогов,
+     * если предыдущая очистка {@link #truncate()} прервалась.
+     *
+     * @param month месяц или {@code null} для всех месяцев
+     * @return пересчитанные месяцы с количеством учтенных CDR-записей
+     */
+    public synchronized List<CdrPartitionInfo> rebuild(YearMonth month) {
+        Map<Integer, Long> records = toCounts(cdrRecordRepository.findPartitionSummaries());
+        TreeSet<Integer> partitions = new TreeSet<>(records.keySet());
+        partitions.addAll(toCounts(udrMonthlyRepository.findPartitionSummaries()).keySet());
+        if (month != null) {
+            partitions.retainAll(List.of(CdrPartitionRange.partitionKeyOf(month)));
+        }
+
+        List<CdrPartitionInfo> rebuilt = new ArrayList<>();
+        for (int partitionKey : partitions) {
+            rebuildPartition(partitionKey);
+            rebuilt.add(new CdrPartitionInfo(CdrPartitionRange.monthOf(partitionKey).toString(),
+                    records.getOrDefault(partitionKey, 0L)));
+        }
+        if (month == null) {
+            truncating = false;
+        }
+        logger.info("Пересчитаны итоги звонков за {} месяцев", rebuilt.size());
+        return rebuilt;
+    }
+
+    /**
+     * Сверяет количество и длительность звонков в итогах с CDR-записями каждого месяца после запуска
+     * и пересчитывает несовпадающие месяцы, например итоги базы данных, созданной до их появления.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void verify() {
+        Map<Integer, List<Long>> records = toTotals(cdrRecordRepository.findPartitionTotals());
+        Map<Integer, List<Long>> calls = toTotals(udrMonthlyRepository.findPartitionTotals());
+        TreeSet<Integer> partitions = new TreeSet<>(records.keySet());
+        partitions.addAll(calls.keySet());
+
+        int rebuilt = 0;
+        for (int partitionKey : partitions) {
+            if (!Objects.equals(records.get(partitionKey), calls.get(partitionKey))) {
+                logger.warn("Итоги звонков за {} не совпадают с CDR-записями: [звонков, секунд] {} вместо {}, пересчет",
+                        CdrPartitionRange.monthOf(partitionKey), calls.get(partitionKey), records.get(partitionKey));
+                rebuildPartition(partitionKey);
+                rebuilt++;
+            }
+        }
+        verified = true;
+        logger.info("Итоги звонков сверены с CDR-записями за {} месяцев, пересчитано {}", partitions.size(), rebuilt);
+    }
+
+    private void rebuildPartition(int partitionKey) {
+        int rows = udrMonthlyWriter.rebuildPartition(partitionKey);
+        // Итоги месяца могли измениться, поэтому кеши и версии отчетов месяца сбрасываются
+        eventPublisher.publishEvent(CdrRecordsChangedEvent.of(partitionKey));
+        logger.debug("Пересчитаны итоги звонков за {}: {} абонентов", CdrPartitionRange.monthOf(partitionKey), rows);
+    }
+
+    private static Map<Integer, Long> toCounts(List<CdrPartitionSummary> summaries) {
+        Map<Integer, Long> counts = new TreeMap<>();
+        for (CdrPartitionSummary summary : summaries) {
+            counts.put(summary.getPartitionKey(), summary.getRecordCount());
+        }
+        return counts;
+    }
+
+    private static Map<Integer, List<Long>> toTotals(List<CdrPartitionTotals> totals) {
+        Map<Integer, List<Long>> values = new TreeMap<>();
+        for (CdrPartitionTotals partition : totals) {
+            values.put(partition.getPartitionKey(), List.of(partition.getRecordCount(), partition.getDurationSeconds()));
+        }
+        return values;
+    }
+
+    private static UdrAggregator.Totals totals(long[] values, long[] sorted, List<UdrMonthly> rows) {
+        long[] seconds = new long[sorted.length * 2];
+        for (UdrMonthly row : rows) {
+            int index = Arrays.binarySearch(sorted, row.getMsisdn());
+            if (index >= 0) {
+                seconds[index * 2] = row.getIncomingSeconds();
+                seconds[index * 2 + 1] = row.getOutgoingSeconds();
+            }
+        }
+        return UdrAggregator.totals(values, sorted, seconds);
+    }
+}
@@ -1,38 +1,92 @@
 package com.abarigena.calldataservice.service;
 
+import com.abarigena.calldataservice.config.CdrUdrProperties;
+import com.abarigena.calldataservice.dto.CdrPartitionInfo;
+import com.abarigena.calldataservice.dto.UdrCacheStats;
+import com.abarigena.calldataservice.dto.UdrGranularity;
+import com.abarigena.calldataservice.dto.UdrRangeReport;
 import com.abarigena.calldataservice.dto.UdrReport;
+import com.abarigena.calldataservice.dto.UdrReportPage;
 import com.abarigena.calldataservice.store.entity.CdrRecord;
-import com.abarigena.calldataservice.store.entity.Subscriber;
 import com.abarigena.calldataservice.store.repository.CdrRecordRepository;
-import com.abarigena.calldataservice.store.repository.SubscriberRepository;
+import com.abarigena.calldataservice.store.repository.CdrRecordsChangedEvent;
+import com.abarigena.calldataservice.store.repository.CdrUsageBucket;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
 
-import java.time.Duration;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
 import java.time.YearMonth;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Сервис для работы с UDR-отчетами.
  * Предоставляет методы для получения и формирования отчетов об использовании услуг связи.
+ * Длительности звонков суммируются в базе данных, сервис получает только итоговые секунды по абонентам.
+ * UDR всех абонентов за месяц суммируется параллельно по частям месяца через {@link UdrAggregator}.
+ * Постраничная и потоковая выдача суммируют абонентов группами по диапазону номеров,
+ * поэтому память запроса зависит от размера страницы, а не от количества абонентов.
+ * Суммы за завершившиеся месяцы кешируются в {@link UdrCache} до изменения CDR-записей этих месяцев.
+ * Версии ответов для условных запросов берутся из {@link CdrDataVersions} без обращения к базе данных.
+ * UDR абонента за произвольный период складывается из сумм за целые сутки из {@link UdrDailyIndex}
+ * и сумм за неполные сутки на краях периода, посчитанных в базе данных.
+ * UDR за месяц читаются из помесячных итогов {@link UdrRollupService}: отчет абонента - одной строкой
+ * по первичному ключу. Пока итоги не сверены с CDR-записями после запуска, месяц суммируется по CDR-записям.
  */
 @Service
 public class UdrService {
     private static final Logger logger = LoggerFactory.getLogger(UdrService.class);
 
+    /**
+     * Максимальное количество отчетов на одной странице.
+     */
+    public static final int MAX_PAGE_SIZE = 10_000;
+
+    /**
+     * Максимальное количество интервалов в UDR-отчете за период.
+     */
+    public static final int MAX_BUCKETS = 10_000;
+
+    // Количество абонентов, суммируемых одним запросом при потоковой выдаче
+    private static final int STREAM_PAGE_SIZE = 1000;
+
+    private static final long SECONDS_PER_DAY = UdrDailyIndex.SECONDS_PER_DAY;
+    private static final long SECONDS_PER_HOUR = 3600;
+
     private final CdrRecordRepository cdrRecordRepository;
-    private final SubscriberRepository subscriberRepository;
+    private final SubscriberDirectory subscriberDirectory;
+    private final UdrAggregator udrAggregator;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter reportWriter;
+    private final UdrCache udrCache;
+    private final CdrDataVersions dataVersions;
+    private final UdrDailyIndex udrDailyIndex;
+    private final UdrRollupService udrRollupService;
 
     @Autowired
-    public UdrService(CdrRecordRepository cdrRecordRepository, SubscriberRepository subscriberRepository) {
+    public UdrService(CdrRecordRepository cdrRecordRepository, SubscriberDirectory subscriberDirectory,
+                      UdrAggregator udrAggregator, ObjectMapper objectMapper, CdrUdrProperties properties,
+                      CdrDataVersions dataVersions, UdrDailyIndex udrDailyIndex, UdrRollupService udrRollupService) {
         this.cdrRecordRepository = cdrRecordRepository;
-        this.subscriberRepository = subscriberRepository;
+        this.dataVersions = dataVersions;
+        this.udrDailyIndex = udrDailyIndex;
+        this.udrRollupService = udrRollupService;
+        this.subscriberDirectory = subscriberDirectory;
+        this.udrAggregator = udrAggregator;
+        this.objectMapper = objectMapper;
+        this.udrCache = new UdrCache(properties.getCacheMaxEntries(), properties.getCacheMaxSize().toBytes());
+        // Отчеты сбрасываются в ответ по заполнении буфера, а не после каждого объекта
+        this.reportWriter = objectMapper.writerFor(UdrReport.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
 
     /**
@@ -45,34 +99,95 @@ public class UdrService {
 
         LocalDateTime startDate = null;
         LocalDateTime endDate = null;
+        YearMonth yearMonth = null;
+        UdrCache.Key key = null;
 
         if (year != null && month != null) {
-            YearMonth yearMonth = YearMonth.of(year, month);
+            yearMonth = YearMonth.of(year, month);
             startDate = yearMonth.atDay(1).atStartOfDay();
             endDate = yearMonth.atEndOfMonth().atTime(23, 59, 59);
             logger.debug("Установлен период для отчета: с {} по {}", startDate, endDate);
+            if (isClosedMonth(yearMonth)) {
+                key = new UdrCache.Key(msisdn, year, month);
+            }
         } else {
             logger.debug("Период не указан, будет сформирован отчет за все время");
         }
 
-        List<CdrRecord> incomingCalls = cdrRecordRepository.findIncomingCallsByMsisdnAndPeriod(msisdn, startDate, endDate);
-        List<CdrRecord> outgoingCalls = cdrRecordRepository.findOutgoingCallsByMsisdnAndPeriod(msisdn, startDate, endDate);
+        List<String> subscribers = List.of(msisdn);
+        UdrAggregator.Totals totals = key != null ? udrCache.get(key, subscribers) : null;
+        if (totals == null) {
+            long version = udrCache.version();
+            long[] seconds = yearMonth != null && udrRollupService.isReady()
+                    ? udrRollupService.sumMonth(msisdn, yearMonth)
+                    : new long[]{
+                    cdrRecordRepository.sumIncomingSecondsByMsisdnAndPeriod(msisdn, startDate, endDate),
+                    cdrRecordRepository.sumOutgoingSecondsByMsisdnAndPeriod(msisdn, startDate, endDate)};
+            totals = new UdrAggregator.Totals(new long[]{seconds[0]}, new long[]{seconds[1]});
+            if (key != null) {
+                udrCache.put(key, subscribers, totals, version);
+            }
+        } else {
+            logger.debug("UDR-отчет абонента {} за {}-{} найден в кеше", msisdn, year, month);
+        }
+        long incomingSeconds = totals.incomingSeconds()[0];
+        long outgoingSeconds = totals.outgoingSeconds()[0];
+
+        UdrReport report = createReport(msisdn, incomingSeconds, outgoingSeconds);
 
-        logger.debug("Найдено {} входящих и {} исходящих звонков для абонента {}",
-                incomingCalls.size(), outgoingCalls.size(), msisdn);
+        logger.info("Сформирован UDR-отчет для абонента {}: входящие={}, исходящие={}",
+                msisdn, formatDuration(incomingSeconds), formatDuration(outgoingSeconds));
 
-        // Расчет продолжительности звонков
-        Duration incomingDuration = calculateTotalDuration(incomingCalls);
-        Duration outgoingDuration = calculateTotalDuration(outgoingCalls);
+        return report;
+    }
 
-        UdrReport report = new UdrReport();
-        report.setMsisdn(msisdn);
-        report.setIncomingCall(new UdrReport.CallInfo(formatDuration(incomingDuration)));
-        report.setOutcomingCall(new UdrReport.CallInfo(formatDuration(outgoingDuration)));
+    /**
+     * Получение UDR-отчета для одного абонента за произвольный период.
+     * Суммы за целые сутки периода берутся из суточного индекса, звонки неполных суток на краях периода
+     * суммируются в базе данных. Почасовое разбиение считается в базе данных одним запросом.
+     *
+     * @param startDate   начало периода включительно
+     * @param endDate     окончание периода включительно
+     * @param granularity разбиение периода на интервалы
+     * @return отчет с суммами за период и, при разбиении, за каждый интервал
+     * @throws IllegalArgumentException если период пуст или интервалов больше {@link #MAX_BUCKETS}
+     */
+    public UdrRangeReport getUdrForSubscriberRange(String msisdn, LocalDateTime startDate, LocalDateTime endDate,
+                                                   UdrGranularity granularity) {
+        if (endDate.isBefore(startDate)) {
+            throw new IllegalArgumentException("Окончание периода раньше его начала");
+        }
+        long from = CdrRecord.toEpochSecond(startDate);
+        long to = CdrRecord.toEpochSecond(endDate);
+        long bucketSeconds = granularity == UdrGranularity.HOUR ? SECONDS_PER_HOUR : SECONDS_PER_DAY;
+        if (granularity != UdrGranularity.NONE
+                && Math.floorDiv(to, bucketSeconds) - Math.floorDiv(from, bucketSeconds) >= MAX_BUCKETS) {
+            throw new IllegalArgumentException("Период разбивается больше чем на " + MAX_BUCKETS + " интервалов");
+        }
+        logger.info("Запрос UDR-отчета для абонента {} за период с {} по {}, разбиение {}",
+                msisdn, startDate, endDate, granularity);
 
-        logger.info("Сформирован UDR-отчет для абонента {}: входящие={}, исходящие={}",
-                msisdn, formatDuration(incomingDuration), formatDuration(outgoingDuration));
+        long[] totals;
+        List<UdrRangeReport.Bucket> buckets = null;
+        if (granularity == UdrGranularity.NONE) {
+            totals = sumPeriod(msisdn, from, to);
+        } else {
+            buckets = new ArrayList<>();
+            totals = granularity == UdrGranularity.DAY
+                    ? sumByDays(msisdn, from, to, buckets)
+                    : sumByHours(msisdn, startDate, endDate, buckets);
+        }
 
+        UdrRangeReport report = new UdrRangeReport();
+        report.setMsisdn(msisdn);
+        report.setStartDate(startDate);
+        report.setEndDate(endDate);
+        report.setIncomingCall(new UdrReport.CallInfo(formatDuration(totals[0])));
+        report.setOutcomingCall(new UdrReport.CallInfo(formatDuration(totals[1])));
+        report.setBuckets(buckets);
+
+        logger.info("Сформирован UDR-отчет для абонента {} за период: входящие={}, исходящие={}",
+                msisdn, formatDuration(totals[0]), formatDuration(totals[1]));
         return report;
     }
 
@@ -89,96 +204,309 @@ public class UdrService {
         LocalDateTime endDate = yearMonth.atEndOfMonth().atTime(23, 59, 59);
         logger.debug("Установлен период для отчетов: с {} по {}", startDate, endDate);
 
-        List<Subscriber> subscribers = subscriberRepository.findAll();
+        List<String> subscribers = subscriberDirectory.getMsisdns();
         List<UdrReport> reports = new ArrayList<>();
 
         logger.debug("Получен список из {} абонентов для формирования отчетов", subscribers.size());
 
-        List<CdrRecord> allIncomingCalls = cdrRecordRepository.findAllIncomingCallsByPeriod(startDate, endDate);
-        List<CdrRecord> allOutgoingCalls = cdrRecordRepository.findAllOutgoingCallsByPeriod(startDate, endDate);
+        UdrCache.Key key = isClosedMonth(yearMonth) ? UdrCache.Key.all(year, month) : null;
+        UdrAggregator.Totals totals = key != null ? udrCache.get(key, subscribers) : null;
+        if (totals == null) {
+            long version = udrCache.version();
+            // Без сверенных итогов длительности суммируются в базе данных параллельно по частям месяца
+            totals = udrRollupService.isReady()
+                    ? udrRollupService.sumMonth(subscribers, yearMonth)
+                    : udrAggregator.aggregate(subscribers, startDate, endDate);
+            if (key != null) {
+                udrCache.put(key, subscribers, totals, version);
+            }
+        } else {
+            logger.debug("UDR-отчеты всех абонентов за {}-{} найдены в кеше", year, month);
+        }
 
-        logger.debug("Загружено {} входящих и {} исходящих звонков за период",
-                allIncomingCalls.size(), allOutgoingCalls.size());
+        for (int i = 0; i < subscribers.size(); i++) {
+            String msisdn = subscribers.get(i);
+            long incomingSeconds = totals.incomingSeconds()[i];
+            long outgoingSeconds = totals.outgoingSeconds()[i];
 
-        // Группировка звонков по номерам абонентов
-        Map<String, List<CdrRecord>> incomingCallsByMsisdn = groupCallsByMsisdn(allIncomingCalls, false);
-        Map<String, List<CdrRecord>> outgoingCallsByMsisdn = groupCallsByMsisdn(allOutgoingCalls, true);
+            reports.add(createReport(msisdn, incomingSeconds, outgoingSeconds));
 
-        for (Subscriber subscriber : subscribers) {
-            String msisdn = subscriber.getMsisdn();
+            logger.trace("Сформирован UDR-отчет для абонента {}: входящие={}, исходящие={}",
+                    msisdn, formatDuration(incomingSeconds), formatDuration(outgoingSeconds));
+        }
 
-            // Получение звонков для текущего абонента
-            List<CdrRecord> subscriberIncomingCalls = incomingCallsByMsisdn
-                    .getOrDefault(msisdn, new ArrayList<>());
-            List<CdrRecord> subscriberOutgoingCalls = outgoingCallsByMsisdn
-                    .getOrDefault(msisdn, new ArrayList<>());
+        logger.info("Сформировано {} UDR-отчетов для всех абонентов за {}-{}", reports.size(), year, month);
 
-            Duration incomingDuration = calculateTotalDuration(subscriberIncomingCalls);
-            Duration outgoingDuration = calculateTotalDuration(subscriberOutgoingCalls);
+        return reports;
+    }
 
-            UdrReport report = new UdrReport();
-            report.setMsisdn(msisdn);
-            report.setIncomingCall(new UdrReport.CallInfo(formatDuration(incomingDuration)));
-            report.setOutcomingCall(new UdrReport.CallInfo(formatDuration(outgoingDuration)));
+    /**
+     * Получение страницы UDR-отчетов всех абонентов за указанный месяц.
+     * Абоненты упорядочены по номеру, страница начинается с абонента, следующего за {@code after}.
+     *
+     * @param after номер последнего абонента предыдущей страницы или {@code null} для первой страницы
+     * @param limit количество отчетов на странице, от 1 до {@link #MAX_PAGE_SIZE}
+     * @return страница отчетов и значение {@code after} для следующей страницы
+     * @throws IllegalArgumentException если размер страницы вне допустимого диапазона
+     */
+    public UdrReportPage getUdrPageByMonth(int year, int month, String after, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        logger.info("Запрос страницы UDR-отчетов за {}-{} после абонента {}, размер {}", year, month, after, limit);
 
-            reports.add(report);
+        YearMonth yearMonth = YearMonth.of(year, month);
+        LocalDateTime startDate = yearMonth.atDay(1).atStartOfDay();
+        LocalDateTime endDate = yearMonth.atEndOfMonth().atTime(23, 59, 59);
 
-            logger.trace("Сформирован UDR-отчет для абонента {}: входящие={}, исходящие={}",
-                    msisdn, formatDuration(incomingDuration), formatDuration(outgoingDuration));
+        // Лишний номер показывает, есть ли следующая страница
+        List<String> subscribers = subscriberDirectory.getMsisdnsAfter(after, limit + 1);
+        boolean hasNext = subscribers.size() > limit;
+        if (hasNext) {
+            subscribers = subscribers.subList(0, limit);
         }
 
-        logger.info("Сформировано {} UDR-отчетов для всех абонентов за {}-{}", reports.size(), year, month);
+        UdrAggregator.Totals totals = sumMonthRange(subscribers, yearMonth, startDate, endDate);
+        List<UdrReport> reports = new ArrayList<>(subscribers.size());
+        for (int i = 0; i < subscribers.size(); i++) {
+            reports.add(createReport(subscribers.get(i), totals.incomingSeconds()[i], totals.outgoingSeconds()[i]));
+        }
 
-        return reports;
+        String nextAfter = hasNext ? subscribers.get(subscribers.size() - 1) : null;
+        logger.info("Сформирована страница из {} UDR-отчетов за {}-{}, следующая после {}",
+                reports.size(), year, month, nextAfter);
+        return new UdrReportPage(reports, nextAfter);
     }
 
     /**
-     * Группировка звонков по номеру абонента
+     * Потоковая запись UDR-отчетов всех абонентов за указанный месяц в формате NDJSON:
+     * по одному JSON-объекту {@link UdrReport} на строку, в порядке номеров абонентов.
+     * Абоненты суммируются группами, и каждый отчет записывается генератором Jackson сразу после подсчета,
+     * без списка отчетов в памяти. Поток вывода не закрывается.
      *
-     * @param calls список звонков для группировки
-     * @param outgoing флаг типа звонков (true - исходящие, false - входящие)
-     * @return Map, где ключ - номер абонента, значение - список звонков
+     * @param output поток, в который записываются отчеты
+     * @return количество записанных отчетов
+     * @throws IOException если произошла ошибка записи
      */
-    private Map<String, List<CdrRecord>> groupCallsByMsisdn(List<CdrRecord> calls, boolean outgoing) {
-        Map<String, List<CdrRecord>> callsByMsisdn = new HashMap<>();
+    public long streamAllUdrsByMonth(int year, int month, OutputStream output) throws IOException {
+        logger.info("Потоковая выдача UDR-отчетов для всех абонентов за {}-{}", year, month);
 
-        for (CdrRecord call : calls) {
-            String msisdn = outgoing ? call.getCallerNumber() : call.getReceiverNumber();
+        YearMonth yearMonth = YearMonth.of(year, month);
+        LocalDateTime startDate = yearMonth.atDay(1).atStartOfDay();
+        LocalDateTime endDate = yearMonth.atEndOfMonth().atTime(23, 59, 59);
 
-            if (!callsByMsisdn.containsKey(msisdn)) {
-                callsByMsisdn.put(msisdn, new ArrayList<>());
-            }
-            callsByMsisdn.get(msisdn).add(call);
+        long written = 0;
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // Объекты разделяются переводом строки, который пишется после каждого объекта
+            generator.setRootValueSeparator(null);
+
+            String after = null;
+            List<String> subscribers;
+            do {
+                subscribers = subscriberDirectory.getMsisdnsAfter(after, STREAM_PAGE_SIZE);
+                if (subscribers.isEmpty()) {
+                    break;
+                }
+                UdrAggregator.Totals totals = sumMonthRange(subscribers, yearMonth, startDate, endDate);
+                for (int i = 0; i < subscribers.size(); i++) {
+                    reportWriter.writeValue(generator, createReport(subscribers.get(i),
+                            totals.incomingSeconds()[i], totals.outgoingSeconds()[i]));
+                    generator.writeRaw('\n');
+                    written++;
+                }
+                after = subscribers.get(subscribers.size() - 1);
+            } while (subscribers.size() == STREAM_PAGE_SIZE);
+        }
+
+        logger.info("Потоковая выдача завершена, записано {} UDR-отчетов за {}-{}", written, year, month);
+        return written;
+    }
+
+    /**
+     * Удаляет из кеша суммы месяцев, затронутых изменением CDR-записей.
+     * Вызывается после фиксации изменившей записи транзакции.
+     *
+     * @param event изменение CDR-записей
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCdrRecordsChanged(CdrRecordsChangedEvent event) {
+        int removed = udrCache.invalidate(event);
+        if (removed > 0) {
+            logger.info("Из кеша удалено {} UDR-отчетов после изменения партиций {}-{}",
+                    removed, event.fromPartition(), event.toPartition());
         }
+    }
+
+    /**
+     * Версия UDR-отчета абонента. Должна быть получена до формирования отчета,
+     * чтобы изменение данных во время формирования дало новую версию.
+     *
+     * @param year  год или {@code null} для отчета за все время
+     * @param month месяц или {@code null} для отчета за все время
+     * @return версия данных отчета
+     */
+    public CdrDataVersions.Version getUdrVersion(Integer year, Integer month) {
+        return year != null && month != null ? dataVersions.forMonth(year, month) : dataVersions.forAllTime();
+    }
+
+    /**
+     * Версия UDR-отчетов всех абонентов за месяц: зависит от звонков месяца и от списка абонентов.
+     * Должна быть получена до формирования отчетов.
+     *
+     * @return версия данных отчетов
+     */
+    public CdrDataVersions.Version getAllUdrsVersion(int year, int month) {
+        return dataVersions.forMonth(year, month)
+                .and(subscriberDirectory.getVersion(), subscriberDirectory.getRefreshedAt());
+    }
+
+    /**
+     * Версия UDR-отчета абонента за период: меняется при изменении звонков любого месяца периода.
+     * Должна быть получена до формирования отчета.
+     *
+     * @return версия данных отчета
+     */
+    public CdrDataVersions.Version getUdrRangeVersion(LocalDateTime startDate, LocalDateTime endDate) {
+        return dataVersions.forPeriod(startDate, endDate);
+    }
+
+    /**
+     * Пересчитывает помесячные итоги звонков по CDR-записям.
+     *
+     * @param year  год или {@code null} для всех месяцев
+     * @param month месяц или {@code null} для всех месяцев
+     * @return пересчитанные месяцы с количеством учтенных CDR-записей
+     */
+    public List<CdrPartitionInfo> rebuildMonthlyTotals(Integer year, Integer month) {
+        YearMonth yearMonth = year != null && month != null ? YearMonth.of(year, month) : null;
+        logger.info("Пересчет помесячных итогов звонков за {}", yearMonth != null ? yearMonth : "все месяцы");
+        return udrRollupService.rebuild(yearMonth);
+    }
 
-        return callsByMsisdn;
+    /**
+     * @return состояние кеша UDR-отчетов
+     */
+    public UdrCacheStats getCacheStats() {
+        return udrCache.getStats();
+    }
+
+    // Звонки завершившегося месяца меняются только генерацией, импортом или удалением, которые сбрасывают кеш
+    private static boolean isClosedMonth(YearMonth yearMonth) {
+        return yearMonth.isBefore(YearMonth.now());
+    }
+
+    // Суммы группы абонентов за месяц: из помесячных итогов или, пока они не сверены, по CDR-записям
+    private UdrAggregator.Totals sumMonthRange(List<String> subscribers, YearMonth yearMonth,
+                                               LocalDateTime startDate, LocalDateTime endDate) {
+        return udrRollupService.isReady()
+                ? udrRollupService.sumMonthRange(subscribers, yearMonth)
+                : udrAggregator.aggregateRange(subscribers, startDate, endDate);
     }
 
     /**
-     * Расчет общей продолжительности звонков
+     * Суммирует звонки за период: целые сутки - разностью накопленных сумм индекса,
+     * неполные сутки в начале и в конце периода - запросами к базе данных.
      *
-     * @param calls список звонков для расчета
-     * @return общая продолжительность в формате Duration
+     * @return секунды входящих и исходящих звонков: {@code {incoming, outgoing}}
      */
-    private Duration calculateTotalDuration(List<CdrRecord> calls) {
-        Duration totalDuration = Duration.ZERO;
+    private long[] sumPeriod(String msisdn, long from, long to) {
+        long firstFullDay = Math.floorDiv(from + SECONDS_PER_DAY - 1, SECONDS_PER_DAY);
+        long lastFullDay = Math.floorDiv(to + 1, SECONDS_PER_DAY) - 1;
+        if (firstFullDay > lastFullDay) {
+            return sumInDatabase(msisdn, from, to);
+        }
+
+        long[] totals = udrDailyIndex.sumDays(msisdn, firstFullDay, lastFullDay);
+        if (from < firstFullDay * SECONDS_PER_DAY) {
+            addTo(totals, sumInDatabase(msisdn, from, firstFullDay * SECONDS_PER_DAY - 1));
+        }
+        if (to >= (lastFullDay + 1) * SECONDS_PER_DAY) {
+            addTo(totals, sumInDatabase(msisdn, (lastFullDay + 1) * SECONDS_PER_DAY, to));
+        }
+        return totals;
+    }
+
+    // Суммы по суткам периода: целые сутки из индекса, неполные сутки на краях - из базы данных
+    private long[] sumByDays(String msisdn, long from, long to, List<UdrRangeReport.Bucket> buckets) {
+        long fromDay = Math.floorDiv(from, SECONDS_PER_DAY);
+        long toDay = Math.floorDiv(to, SECONDS_PER_DAY);
+        long[][] daily = udrDailyIndex.dailySeconds(msisdn, fromDay, toDay);
+
+        long[] totals = new long[2];
+        for (int i = 0; i <= toDay - fromDay; i++) {
+            long dayStart = (fromDay + i) * SECONDS_PER_DAY;
+            long dayEnd = dayStart + SECONDS_PER_DAY - 1;
+            long bucketStart = Math.max(from, dayStart);
+            long bucketEnd = Math.min(to, dayEnd);
+            long[] seconds = bucketStart == dayStart && bucketEnd == dayEnd
+                    ? new long[]{daily[0][i], daily[1][i]}
+                    : sumInDatabase(msisdn, bucketStart, bucketEnd);
+            addTo(totals, seconds);
+            buckets.add(createBucket(bucketStart, bucketEnd, seconds));
+        }
+        return totals;
+    }
+
+    // Суммы по часам периода одним запросом к базе данных
+    private long[] sumByHours(String msisdn, LocalDateTime startDate, LocalDateTime endDate,
+                              List<UdrRangeReport.Bucket> buckets) {
+        long from = CdrRecord.toEpochSecond(startDate);
+        long to = CdrRecord.toEpochSecond(endDate);
+        long fromHour = Math.floorDiv(from, SECONDS_PER_HOUR);
+        int hourCount = (int) (Math.floorDiv(to, SECONDS_PER_HOUR) - fromHour + 1);
+
+        long[][] hourly = new long[2][hourCount];
+        for (CdrUsageBucket bucket : cdrRecordRepository.sumSecondsByMsisdnAndBuckets(
+                msisdn, startDate, endDate, SECONDS_PER_HOUR)) {
+            int direction = bucket.getCallType() == CdrRecord.OUTGOING ? 1 : 0;
+            hourly[direction][(int) (bucket.getBucket() - fromHour)] += bucket.getTotalSeconds();
+        }
 
-        for (CdrRecord call : calls) {
-            Duration callDuration = Duration.between(call.getStartTime(), call.getEndTime());
-            totalDuration = totalDuration.plus(callDuration);
+        long[] totals = new long[2];
+        for (int i = 0; i < hourCount; i++) {
+            long hourStart = (fromHour + i) * SECONDS_PER_HOUR;
+            long[] seconds = {hourly[0][i], hourly[1][i]};
+            addTo(totals, seconds);
+            buckets.add(createBucket(Math.max(from, hourStart),
+                    Math.min(to, hourStart + SECONDS_PER_HOUR - 1), seconds));
         }
+        return totals;
+    }
 
-        return totalDuration;
+    private long[] sumInDatabase(String msisdn, long from, long to) {
+        LocalDateTime startDate = CdrRecord.toLocalDateTime(from);
+        LocalDateTime endDate = CdrRecord.toLocalDateTime(to);
+        return new long[]{
+                cdrRecordRepository.sumIncomingSecondsByMsisdnAndPeriod(msisdn, startDate, endDate),
+                cdrRecordRepository.sumOutgoingSecondsByMsisdnAndPeriod(msisdn, startDate, endDate)};
+    }
+
+    private static void addTo(long[] totals, long[] seconds) {
+        totals[0] += seconds[0];
+        totals[1] += seconds[1];
+    }
+
+    private UdrRangeReport.Bucket createBucket(long from, long to, long[] seconds) {
+        return new UdrRangeReport.Bucket(CdrRecord.toLocalDateTime(from), CdrRecord.toLocalDateTime(to),
+                new UdrReport.CallInfo(formatDuration(seconds[0])), new UdrReport.CallInfo(formatDuration(seconds[1])));
+    }
+
+    private UdrReport createReport(String msisdn, long incomingSeconds, long outgoingSeconds) {
+        UdrReport report = new UdrReport();
+        report.setMsisdn(msisdn);
+        report.setIncomingCall(new UdrReport.CallInfo(formatDuration(incomingSeconds)));
+        report.setOutcomingCall(new UdrReport.CallInfo(formatDuration(outgoingSeconds)));
+        return report;
     }
 
     /**
      * Форматирование длительности в строку "HH:MM:SS"
      *
-     * @param duration объект Duration для форматирования
+     * @param totalSeconds длительность в секундах
      * @return строка в формате "HH:MM:SS"
      */
-    private String formatDuration(Duration duration) {
-        long totalSeconds = duration.getSeconds();
+    private String formatDuration(long totalSeconds) {
         long hours = totalSeconds / 3600;
         long minutes = (totalSeconds % 3600) / 60;
         long seconds = totalSeconds % 60;
@@ -2,84 +2,234 @@ package com.abarigena.calldataservice.store.entity;
 
 import jakarta.persistence.*;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 
 /**
  * Класс сущности для хранения информации о CDR-записях.
  * Содержит данные о звонках абонентов: тип звонка, номера абонентов, время начала и окончания звонка.
+ * Записи разбиты на помесячные партиции по ключу {@code yyyyMM} месяца начала звонка,
+ * индекс по ключу партиции позволяет запросам за период читать только нужные месяцы.
+ * Индексы таблицы создаются скриптом {@code db/cdr-indexes.sql}.
+ * <p>
+ * Запись хранится в компактном виде: тип звонка - числом, номера абонентов - {@code BIGINT},
+ * время начала - секундами эпохи, окончание - длительностью звонка в секундах.
+ * Время начала и окончания звонка трактуется как время UTC с точностью до секунды.
+ * Методы со строковыми номерами и {@link LocalDateTime} преобразуют значения при каждом вызове
+ * и предназначены для границы API; внутри сервиса следует использовать числовые методы.
  */
 @Entity
 @Table(name = "cdr_records")
 public class CdrRecord {
+    /**
+     * Имя последовательности идентификаторов CDR-записей.
+     */
+    public static final String ID_SEQUENCE = "cdr_records_seq";
+
+    /**
+     * Количество идентификаторов, резервируемых одним обращением к последовательности.
+     */
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    /**
+     * Код исходящего звонка, во внешнем представлении {@code "01"}.
+     */
+    public static final byte OUTGOING = 1;
+
+    /**
+     * Код входящего звонка, во внешнем представлении {@code "02"}.
+     */
+    public static final byte INCOMING = 2;
+
+    private static final int SECONDS_PER_DAY = 86_400;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = ID_SEQUENCE)
+    @SequenceGenerator(name = ID_SEQUENCE, sequenceName = ID_SEQUENCE, allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
-    @Column(nullable = false,length = 2)
-    private String callType; // 01 , 02
+    @Column(nullable = false)
+    private byte callType; // OUTGOING, INCOMING
+
+    @Column(nullable = false)
+    private long callerNumber;
 
     @Column(nullable = false)
-    private String callerNumber;
+    private long receiverNumber;
 
     @Column(nullable = false)
-    private String receiverNumber;
+    private long startTime; // секунды эпохи UTC
 
     @Column(nullable = false)
-    private LocalDateTime startTime;
+    private int duration; // секунды
 
     @Column(nullable = false)
-    private LocalDateTime endTime;
+    private int partitionKey; // yyyyMM, вычисляется по startTime
 
     public CdrRecord() {
     }
 
     public CdrRecord(String callerNumber, Long id, String callType, String receiverNumber, LocalDateTime startTime, LocalDateTime endTime) {
-        this.callerNumber = callerNumber;
         this.id = id;
+        setCallerNumber(callerNumber);
+        setCallType(callType);
+        setReceiverNumber(receiverNumber);
+        setStartTime(startTime);
+        setEndTime(endTime);
+    }
+
+    /**
+     * @param time время начала звонка
+     * @return ключ помесячной партиции в формате {@code yyyyMM}
+     */
+    public static int partitionKeyOf(LocalDateTime time) {
+        return time.getYear() * 100 + time.getMonthValue();
+    }
+
+    /**
+     * @param epochSecond время начала звонка в секундах эпохи UTC
+     * @return ключ помесячной партиции в формате {@code yyyyMM}
+     */
+    public static int partitionKeyOf(long epochSecond) {
+        LocalDate day = LocalDate.ofEpochDay(Math.floorDiv(epochSecond, SECONDS_PER_DAY));
+        return day.getYear() * 100 + day.getMonthValue();
+    }
+
+    /**
+     * @param time время
+     * @return время в секундах эпохи UTC
+     */
+    public static long toEpochSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+     * @param epochSecond время в секундах эпохи UTC
+     * @return время
+     */
+    public static LocalDateTime toLocalDateTime(long epochSecond) {
+        return LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+    }
+
+    /**
+     * @param callType тип звонка во внешнем представлении: {@code "01"} или {@code "02"}
+     * @return код типа звонка
+     * @throws IllegalArgumentException если тип звонка неизвестен
+     */
+    public static byte callTypeCode(String callType) {
+        return switch (callType) {
+            case "01" -> OUTGOING;
+            case "02" -> INCOMING;
+            default -> throw new IllegalArgumentException("Неизвестный тип звонка: " + callType);
+        };
+    }
+
+    /**
+     * @param msisdn номер абонента
+     * @return числовое значение номера или -1, если строка не является номером
+     */
+    public static long msisdnValue(String msisdn) {
+        if (msisdn == null || msisdn.isEmpty() || msisdn.length() > 18) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < msisdn.length(); i++) {
+            int digit = msisdn.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    public byte getCallTypeCode() {
+        return callType;
+    }
+
+    public void setCallTypeCode(byte callType) {
         this.callType = callType;
+    }
+
+    public long getCallerMsisdn() {
+        return callerNumber;
+    }
+
+    public void setCallerMsisdn(long callerNumber) {
+        this.callerNumber = callerNumber;
+    }
+
+    public long getReceiverMsisdn() {
+        return receiverNumber;
+    }
+
+    public void setReceiverMsisdn(long receiverNumber) {
         this.receiverNumber = receiverNumber;
+    }
+
+    public long getStartEpochSecond() {
+        return startTime;
+    }
+
+    public void setStartEpochSecond(long startTime) {
         this.startTime = startTime;
-        this.endTime = endTime;
+        this.partitionKey = partitionKeyOf(startTime);
+    }
+
+    public int getDurationSeconds() {
+        return duration;
+    }
+
+    public void setDurationSeconds(int duration) {
+        this.duration = duration;
     }
 
     public String getCallType() {
-        return callType;
+        return callType == OUTGOING ? "01" : "02";
     }
 
     public void setCallType(String callType) {
-        this.callType = callType;
+        this.callType = callTypeCode(callType);
     }
 
     public String getCallerNumber() {
-        return callerNumber;
+        return Long.toString(callerNumber);
     }
 
     public void setCallerNumber(String callerNumber) {
-        this.callerNumber = callerNumber;
+        this.callerNumber = Long.parseLong(callerNumber);
     }
 
     public String getReceiverNumber() {
-        return receiverNumber;
+        return Long.toString(receiverNumber);
     }
 
     public void setReceiverNumber(String receiverNumber) {
-        this.receiverNumber = receiverNumber;
+        this.receiverNumber = Long.parseLong(receiverNumber);
     }
 
     public LocalDateTime getStartTime() {
-        return startTime;
+        return toLocalDateTime(startTime);
     }
 
     public void setStartTime(LocalDateTime startTime) {
-        this.startTime = startTime;
+        setStartEpochSecond(toEpochSecond(startTime));
+    }
+
+    public int getPartitionKey() {
+        return partitionKey;
     }
 
     public LocalDateTime getEndTime() {
-        return endTime;
+        return toLocalDateTime(startTime + duration);
     }
 
+    /**
+     * Задает окончание звонка через его длительность, поэтому вызывается после {@link #setStartTime}.
+     */
     public void setEndTime(LocalDateTime endTime) {
-        this.endTime = endTime;
+        this.duration = Math.toIntExact(toEpochSecond(endTime) - startTime);
     }
 
     public void setId(Long id) {
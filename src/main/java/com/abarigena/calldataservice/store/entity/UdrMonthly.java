@@ -0,0 +1,96 @@
+package com.abarigena.calldataservice.store.entity;
+
+import jakarta.persistence.*;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Класс сущности для помесячных итогов звонков абонента, по которым формируются UDR-отчеты за месяц.
+ * Содержит суммарную длительность и количество входящих и исходящих звонков абонента
+ * в одной помесячной партиции CDR-записей. Итоги обновляются в той же транзакции, что и сохранение
+ * CDR-записей, поэтому UDR-отчет за месяц читается одной строкой по первичному ключу.
+ * Как и в CDR-записях, номер абонента хранится числом, а месяц - ключом партиции {@code yyyyMM}.
+ * Индексы таблицы создаются скриптом {@code db/udr-indexes.sql}.
+ */
+@Entity
+@Table(name = "udr_monthly")
+@IdClass(UdrMonthly.Key.class)
+public class UdrMonthly {
+    @Id
+    private long msisdn;
+
+    @Id
+    private int partitionKey; // yyyyMM
+
+    @Column(nullable = false)
+    private long incomingSeconds;
+
+    @Column(nullable = false)
+    private long outgoingSeconds;
+
+    @Column(nullable = false)
+    private int incomingCalls;
+
+    @Column(nullable = false)
+    private int outgoingCalls;
+
+    public UdrMonthly() {
+    }
+
+    public long getMsisdn() {
+        return msisdn;
+    }
+
+    public int getPartitionKey() {
+        return partitionKey;
+    }
+
+    public long getIncomingSeconds() {
+        return incomingSeconds;
+    }
+
+    public long getOutgoingSeconds() {
+        return outgoingSeconds;
+    }
+
+    public int getIncomingCalls() {
+        return incomingCalls;
+    }
+
+    public int getOutgoingCalls() {
+        return outgoingCalls;
+    }
+
+    /**
+     * Первичный ключ итогов: номер абонента и ключ партиции месяца.
+     */
+    public static class Key implements Serializable {
+        private long msisdn;
+        private int partitionKey;
+
+        public Key() {
+        }
+
+        public Key(long msisdn, int partitionKey) {
+            this.msisdn = msisdn;
+            this.partitionKey = partitionKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key key)) {
+                return false;
+            }
+            return msisdn == key.msisdn && partitionKey == key.partitionKey;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(msisdn, partitionKey);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.abarigena.calldataservice.store.repository;
+
+import com.abarigena.calldataservice.config.CdrStorageProperties;
+import com.abarigena.calldataservice.store.entity.CdrRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Пакетная загрузка CDR-записей напрямую через JDBC, в обход Hibernate.
+ * Записи вставляются пакетными prepared-запросами и фиксируются частями по
+ * {@link CdrStorageProperties#getChunkSize()} записей в отдельных транзакциях.
+ * Идентификаторы резервируются блоками из последовательности {@link CdrRecord#ID_SEQUENCE}
+ * по тем же правилам, что и у pooled-оптимизатора Hibernate.
+ * В транзакции каждой части обновляются помесячные итоги звонков через {@link UdrMonthlyWriter}
+ * и публикуется {@link CdrRecordsChangedEvent} с диапазоном ее партиций и сохраненными записями.
+ */
+@Repository
+public class CdrBulkWriter {
+    private static final Logger logger = LoggerFactory.getLogger(CdrBulkWriter.class);
+
+    private static final String INSERT_SQL = "INSERT INTO cdr_records " +
+            "(id, call_type, caller_number, receiver_number, start_time, duration, partition_key) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String NEXT_ID_BLOCKS_SQL =
+            "SELECT NEXT VALUE FOR " + CdrRecord.ID_SEQUENCE + " FROM SYSTEM_RANGE(1, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CdrStorageProperties properties;
+    private final ApplicationEventPublisher eventPublisher;
+    private final UdrMonthlyWriter udrMonthlyWriter;
+
+    // Зарезервированные, но еще не выданные диапазоны идентификаторов: пары {первый, последний}
+    private final Deque<long[]> idBlocks = new ArrayDeque<>();
+
+    @Autowired
+    public CdrBulkWriter(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                         CdrStorageProperties properties, ApplicationEventPublisher eventPublisher,
+                         UdrMonthlyWriter udrMonthlyWriter) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.properties = properties;
+        this.eventPublisher = eventPublisher;
+        this.udrMonthlyWriter = udrMonthlyWriter;
+    }
+
+    /**
+     * Сохраняет записи частями, каждая часть фиксируется в отдельной транзакции.
+     * Записям присваиваются идентификаторы.
+     *
+     * @param records записи для сохранения
+     * @return количество сохраненных записей
+     */
+    public int write(List<CdrRecord> records) {
+        int chunkSize = Math.max(1, properties.getChunkSize());
+        for (int from = 0; from < records.size(); from += chunkSize) {
+            List<CdrRecord> chunk = records.subList(from, Math.min(from + chunkSize, records.size()));
+            assignIds(chunk);
+            transactionTemplate.executeWithoutResult(status -> {
+                insertChunk(chunk);
+                udrMonthlyWriter.add(chunk);
+                eventPublisher.publishEvent(CdrRecordsChangedEvent.inserted(chunk));
+            });
+        }
+        logger.debug("Пакетно сохранено {} CDR-записей", records.size());
+        return records.size();
+    }
+
+    private void insertChunk(List<CdrRecord> chunk) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                CdrRecord record = chunk.get(i);
+                ps.setLong(1, record.getId());
+                ps.setByte(2, record.getCallTypeCode());
+                ps.setLong(3, record.getCallerMsisdn());
+                ps.setLong(4, record.getReceiverMsisdn());
+                ps.setLong(5, record.getStartEpochSecond());
+                ps.setInt(6, record.getDurationSeconds());
+                ps.setInt(7, record.getPartitionKey());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return chunk.size();
+            }
+        });
+    }
+
+    /**
+     * Присваивает записям идентификаторы из зарезервированных блоков,
+     * при необходимости резервируя недостающие блоки одним запросом.
+     */
+    private synchronized void assignIds(List<CdrRecord> records) {
+        long available = idBlocks.stream().mapToLong(block -> block[1] - block[0] + 1).sum();
+        if (available < records.size()) {
+            reserveBlocks((int) ((records.size() - available + CdrRecord.ID_ALLOCATION_SIZE - 1)
+                    / CdrRecord.ID_ALLOCATION_SIZE));
+        }
+
+        for (CdrRecord record : records) {
+            long[] block = idBlocks.peekFirst();
+            record.setId(block[0]++);
+            if (block[0] > block[1]) {
+                idBlocks.pollFirst();
+            }
+        }
+    }
+
+    private void reserveBlocks(int count) {
+        List<Long> hiValues = jdbcTemplate.queryForList(NEXT_ID_BLOCKS_SQL, Long.class, count);
+        for (Long hi : hiValues) {
+            // Значение последовательности - верхняя граница блока, как у pooled-оптимизатора
+            long first = Math.max(1, hi - CdrRecord.ID_ALLOCATION_SIZE + 1);
+            idBlocks.addLast(new long[]{first, hi});
+        }
+        // Самое первое значение последовательности дает неполный блок, поэтому резервируем еще раз
+        if (hiValues.stream().anyMatch(hi -> hi < CdrRecord.ID_ALLOCATION_SIZE)) {
+            reserveBlocks(1);
+        }
+    }
+}
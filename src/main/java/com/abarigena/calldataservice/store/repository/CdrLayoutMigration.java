@@ -0,0 +1,63 @@
+package com.abarigena.calldataservice.store.repository;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * Перевод таблицы {@code cdr_records} базы данных предыдущих версий в компактный формат.
+ * В такой таблице номера и тип звонка - строки, а время начала и окончания - {@code TIMESTAMP}.
+ * Hibernate не может сам добавить обязательный столбец {@code duration} в заполненную таблицу
+ * и преобразовать {@code TIMESTAMP} в секунды эпохи, поэтому до обновления схемы Hibernate
+ * проверяется наличие столбца {@code end_time}, и если он есть, выполняется скрипт {@value #SCRIPT}.
+ * После перевода столбца {@code end_time} нет, и повторные запуски ничего не меняют.
+ */
+@Component
+public class CdrLayoutMigration {
+    private static final Logger logger = LoggerFactory.getLogger(CdrLayoutMigration.class);
+
+    private static final String SCRIPT = "db/cdr-compact-layout.sql";
+
+    private static final String LEGACY_COLUMN_SQL = "SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS " +
+            "WHERE TABLE_SCHEMA = SCHEMA() AND TABLE_NAME = 'CDR_RECORDS' AND COLUMN_NAME = 'END_TIME'";
+
+    private final DataSource dataSource;
+
+    @Autowired
+    public CdrLayoutMigration(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Переводит таблицу в компактный формат, если она создана предыдущей версией.
+     */
+    @PostConstruct
+    public void migrate() {
+        Integer legacyColumns = new JdbcTemplate(dataSource).queryForObject(LEGACY_COLUMN_SQL, Integer.class);
+        if (legacyColumns == null || legacyColumns == 0) {
+            return;
+        }
+        logger.warn("Таблица cdr_records создана предыдущей версией, начат перевод в компактный формат");
+        new ResourceDatabasePopulator(new ClassPathResource(SCRIPT)).execute(dataSource);
+        logger.info("Таблица cdr_records переведена в компактный формат");
+    }
+
+    /**
+     * Создает EntityManagerFactory, а с ней и обновляет схему Hibernate, только после перевода таблицы.
+     */
+    @Component
+    static class MigrationBeforeEntityManagerFactory extends EntityManagerFactoryDependsOnPostProcessor {
+
+        MigrationBeforeEntityManagerFactory() {
+            super(CdrLayoutMigration.class);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.abarigena.calldataservice.store.repository;
+
+import com.abarigena.calldataservice.store.entity.CdrRecord;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+
+/**
+ * Диапазон помесячных партиций CDR-записей, покрывающий период по времени начала звонка.
+ * Незаданные границы периода заменяются крайними значениями, чтобы запросы
+ * всегда ограничивались ключом партиции и не читали всю таблицу без условия.
+ *
+ * @param fromPartition первая партиция диапазона, {@code yyyyMM}
+ * @param toPartition   последняя партиция диапазона, {@code yyyyMM}
+ * @param startTime     начало периода включительно, секунды эпохи UTC
+ * @param endTime       окончание периода включительно, секунды эпохи UTC
+ */
+public record CdrPartitionRange(int fromPartition, int toPartition, long startTime, long endTime) {
+
+    private static final LocalDateTime MIN_TIME = LocalDateTime.of(1, 1, 1, 0, 0);
+    private static final LocalDateTime MAX_TIME = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    /**
+     * @param startDate начало периода включительно или {@code null}, если период не ограничен снизу
+     * @param endDate   окончание периода включительно или {@code null}, если период не ограничен сверху
+     * @return диапазон партиций для периода
+     */
+    public static CdrPartitionRange of(LocalDateTime startDate, LocalDateTime endDate) {
+        LocalDateTime start = startDate != null ? startDate : MIN_TIME;
+        LocalDateTime end = endDate != null ? endDate : MAX_TIME;
+        return new CdrPartitionRange(CdrRecord.partitionKeyOf(start), CdrRecord.partitionKeyOf(end),
+                CdrRecord.toEpochSecond(start), CdrRecord.toEpochSecond(end));
+    }
+
+    /**
+     * @param month месяц
+     * @return ключ партиции месяца в формате {@code yyyyMM}
+     */
+    public static int partitionKeyOf(YearMonth month) {
+        return month.getYear() * 100 + month.getMonthValue();
+    }
+
+    /**
+     * @param partitionKey ключ партиции в формате {@code yyyyMM}
+     * @return месяц партиции
+     */
+    public static YearMonth monthOf(int partitionKey) {
+        return YearMonth.of(partitionKey / 100, partitionKey % 100);
+    }
+}
@@ -0,0 +1,11 @@
+package com.abarigena.calldataservice.store.repository;
+
+/**
+ * Проекция с количеством CDR-записей в одной помесячной партиции.
+ */
+public interface CdrPartitionSummary {
+
+    int getPartitionKey();
+
+    long getRecordCount();
+}
@@ -0,0 +1,13 @@
+package com.abarigena.calldataservice.store.repository;
+
+/**
+ * Проекция с количеством и суммарной длительностью звонков одной помесячной партиции.
+ */
+public interface CdrPartitionTotals {
+
+    int getPartitionKey();
+
+    long getRecordCount();
+
+    long getDurationSeconds();
+}
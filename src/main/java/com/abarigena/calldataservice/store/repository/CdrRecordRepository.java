@@ -1,48 +1,323 @@
 package com.abarigena.calldataservice.store.repository;
 
 import com.abarigena.calldataservice.store.entity.CdrRecord;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Репозиторий для работы с CDR-записями.
- * Предоставляет методы для поиска звонков.
+ * Предоставляет методы для поиска и удаления звонков.
+ * Запросы за период направляются в помесячные партиции через {@link CdrPartitionRange}:
+ * условие по ключу партиции ограничивает чтение только месяцами, попадающими в период.
+ * Запросы написаны на SQL и вынесены в константы, чтобы их планы выполнения можно было проверить
+ * тестами на соответствие индексам из {@code db/cdr-indexes.sql}.
  */
 @Repository
 public interface CdrRecordRepository extends CrudRepository<CdrRecord, Long> {
 
+    String INCOMING_CALLS_SQL = "SELECT * FROM cdr_records WHERE call_type = 2 AND receiver_number = :msisdn " +
+            "AND start_time BETWEEN :startDate AND :endDate AND partition_key BETWEEN :fromPartition AND :toPartition";
+
+    String OUTGOING_CALLS_SQL = "SELECT * FROM cdr_records WHERE call_type = 1 AND caller_number = :msisdn " +
+            "AND start_time BETWEEN :startDate AND :endDate AND partition_key BETWEEN :fromPartition AND :toPartition";
+
+    String ALL_CALLS_SQL = "SELECT * FROM cdr_records WHERE call_type = :callType " +
+            "AND start_time BETWEEN :startDate AND :endDate AND partition_key BETWEEN :fromPartition AND :toPartition";
+
+    String INCOMING_SECONDS_SQL = "SELECT COALESCE(SUM(duration), 0) FROM cdr_records " +
+            "WHERE call_type = 2 AND receiver_number = :msisdn " +
+            "AND start_time BETWEEN :startDate AND :endDate AND partition_key BETWEEN :fromPartition AND :toPartition";
+
+    String OUTGOING_SECONDS_SQL = "SELECT COALESCE(SUM(duration), 0) FROM cdr_records " +
+            "WHERE call_type = 1 AND caller_number = :msisdn " +
+            "AND start_time BETWEEN :startDate AND :endDate AND partition_key BETWEEN :fromPartition AND :toPartition";
+
+    String USAGE_BY_SUBSCRIBER_SQL = "SELECT CASE WHEN call_type = 1 THEN caller_number ELSE receiver_number END " +
+            "AS msisdn, call_type AS callType, SUM(duration) AS totalSeconds FROM cdr_records " +
+            "WHERE start_time BETWEEN :startDate AND :endDate AND partition_key BETWEEN :fromPartition AND :toPartition " +
+            "GROUP BY call_type, CASE WHEN call_type = 1 THEN caller_number ELSE receiver_number END";
+
+    String USAGE_BY_SUBSCRIBER_RANGE_SQL = "SELECT caller_number AS msisdn, call_type AS callType, " +
+            "SUM(duration) AS totalSeconds FROM cdr_records " +
+            "WHERE call_type = 1 AND caller_number BETWEEN :fromMsisdn AND :toMsisdn " +
+            "AND start_time BETWEEN :startDate AND :endDate AND partition_key BETWEEN :fromPartition AND :toPartition " +
+            "GROUP BY call_type, caller_number " +
+            "UNION ALL " +
+            "SELECT receiver_number, call_type, SUM(duration) FROM cdr_records " +
+            "WHERE call_type = 2 AND receiver_number BETWEEN :fromMsisdn AND :toMsisdn " +
+            "AND start_time BETWEEN :startDate AND :endDate AND partition_key BETWEEN :fromPartition AND :toPartition " +
+            "GROUP BY call_type, receiver_number";
+
+    String USAGE_BUCKETS_SQL = "SELECT start_time / :bucketSeconds AS bucket, call_type AS callType, " +
+            "SUM(duration) AS totalSeconds FROM cdr_records " +
+            "WHERE call_type = 2 AND receiver_number = :msisdn " +
+            "AND start_time BETWEEN :startDate AND :endDate AND partition_key BETWEEN :fromPartition AND :toPartition " +
+            "GROUP BY bucket, call_type " +
+            "UNION ALL " +
+            "SELECT start_time / :bucketSeconds AS bucket, call_type, SUM(duration) FROM cdr_records " +
+            "WHERE call_type = 1 AND caller_number = :msisdn " +
+            "AND start_time BETWEEN :startDate AND :endDate AND partition_key BETWEEN :fromPartition AND :toPartition " +
+            "GROUP BY bucket, call_type";
+
+    String REPORT_ROWS_SQL = "SELECT call_type AS callType, caller_number AS callerNumber, " +
+            "receiver_number AS receiverNumber, start_time AS startTime, duration AS duration FROM cdr_records " +
+            "WHERE call_type = 2 AND receiver_number = :msisdn " +
+            "AND start_time BETWEEN :startDate AND :endDate AND partition_key BETWEEN :fromPartition AND :toPartition " +
+            "UNION ALL " +
+            "SELECT call_type, caller_number, receiver_number, start_time, duration FROM cdr_records " +
+            "WHERE call_type = 1 AND caller_number = :msisdn " +
+            "AND start_time BETWEEN :startDate AND :endDate AND partition_key BETWEEN :fromPartition AND :toPartition " +
+            "ORDER BY startTime";
+
+    String PERIOD_REPORT_ROWS_SQL = "SELECT call_type AS callType, caller_number AS callerNumber, " +
+            "receiver_number AS receiverNumber, start_time AS startTime, duration AS duration FROM cdr_records " +
+            "WHERE start_time BETWEEN :startDate AND :endDate AND partition_key BETWEEN :fromPartition AND :toPartition " +
+            "ORDER BY partition_key, start_time";
+
+    /**
+     * Количество строк отчета, получаемых из базы данных за одно обращение при потоковом чтении.
+     */
+    String REPORT_FETCH_SIZE = "1000";
+
+    String LATEST_START_SECOND_SQL = "SELECT MAX(start_time) FROM cdr_records " +
+            "WHERE partition_key = (SELECT MAX(partition_key) FROM cdr_records)";
+
+    String PARTITION_SUMMARIES_SQL = "SELECT partition_key AS partitionKey, COUNT(*) AS recordCount " +
+            "FROM cdr_records GROUP BY partition_key ORDER BY partition_key";
+
+    String PARTITION_TOTALS_SQL = "SELECT partition_key AS partitionKey, COUNT(*) AS recordCount, " +
+            "SUM(duration) AS durationSeconds FROM cdr_records GROUP BY partition_key ORDER BY partition_key";
+
+    String DELETE_PARTITION_SQL = "DELETE FROM cdr_records WHERE partition_key = :partitionKey";
+
     // Находит все входящие звонки для абонента за период
-    @Query("SELECT c FROM CdrRecord c WHERE c.callType = '02' AND c.receiverNumber = :msisdn AND " +
-            "(:startDate IS NULL OR c.startTime >= :startDate) AND (:endDate IS NULL OR c.startTime <= :endDate)")
-    List<CdrRecord> findIncomingCallsByMsisdnAndPeriod(
-            @Param("msisdn") String msisdn,
-            @Param("startDate") LocalDateTime startDate,
-            @Param("endDate") LocalDateTime endDate);
+    default List<CdrRecord> findIncomingCallsByMsisdnAndPeriod(String msisdn, LocalDateTime startDate,
+                                                               LocalDateTime endDate) {
+        CdrPartitionRange range = CdrPartitionRange.of(startDate, endDate);
+        return findIncomingCallsInPartitions(CdrRecord.msisdnValue(msisdn), range.fromPartition(), range.toPartition(),
+                range.startTime(), range.endTime());
+    }
 
     // Находит все исходящие звонки для абонента за период
-    @Query("SELECT c FROM CdrRecord c WHERE c.callType = '01' AND c.callerNumber = :msisdn AND " +
-            "(:startDate IS NULL OR c.startTime >= :startDate) AND (:endDate IS NULL OR c.startTime <= :endDate)")
-    List<CdrRecord> findOutgoingCallsByMsisdnAndPeriod(
-            @Param("msisdn") String msisdn,
-            @Param("startDate") LocalDateTime startDate,
-            @Param("endDate") LocalDateTime endDate);
+    default List<CdrRecord> findOutgoingCallsByMsisdnAndPeriod(String msisdn, LocalDateTime startDate,
+                                                               LocalDateTime endDate) {
+        CdrPartitionRange range = CdrPartitionRange.of(startDate, endDate);
+        return findOutgoingCallsInPartitions(CdrRecord.msisdnValue(msisdn), range.fromPartition(), range.toPartition(),
+                range.startTime(), range.endTime());
+    }
 
     // Находит все входящие звонки для всех абонентов за период
-    @Query("SELECT c FROM CdrRecord c WHERE c.callType = '02' AND" +
-            " c.startTime BETWEEN :startDate AND :endDate")
-    List<CdrRecord> findAllIncomingCallsByPeriod(
-            @Param("startDate") LocalDateTime startDate,
-            @Param("endDate") LocalDateTime endDate);
+    default List<CdrRecord> findAllIncomingCallsByPeriod(LocalDateTime startDate, LocalDateTime endDate) {
+        CdrPartitionRange range = CdrPartitionRange.of(startDate, endDate);
+        return findAllCallsInPartitions(CdrRecord.INCOMING, range.fromPartition(), range.toPartition(),
+                range.startTime(), range.endTime());
+    }
 
     // Находит все исходящие звонки для всех абонентов за период
-    @Query("SELECT c FROM CdrRecord c WHERE c.callType = '01' AND" +
-            " c.startTime BETWEEN :startDate AND :endDate")
-    List<CdrRecord> findAllOutgoingCallsByPeriod(
-            @Param("startDate") LocalDateTime startDate,
-            @Param("endDate") LocalDateTime endDate);
+    default List<CdrRecord> findAllOutgoingCallsByPeriod(LocalDateTime startDate, LocalDateTime endDate) {
+        CdrPartitionRange range = CdrPartitionRange.of(startDate, endDate);
+        return findAllCallsInPartitions(CdrRecord.OUTGOING, range.fromPartition(), range.toPartition(),
+                range.startTime(), range.endTime());
+    }
+
+    // Суммирует длительность входящих звонков абонента за период, в секундах
+    default long sumIncomingSecondsByMsisdnAndPeriod(String msisdn, LocalDateTime startDate, LocalDateTime endDate) {
+        CdrPartitionRange range = CdrPartitionRange.of(startDate, endDate);
+        return sumIncomingSecondsInPartitions(CdrRecord.msisdnValue(msisdn), range.fromPartition(),
+                range.toPartition(), range.startTime(), range.endTime());
+    }
+
+    // Суммирует длительность исходящих звонков абонента за период, в секундах
+    default long sumOutgoingSecondsByMsisdnAndPeriod(String msisdn, LocalDateTime startDate, LocalDateTime endDate) {
+        CdrPartitionRange range = CdrPartitionRange.of(startDate, endDate);
+        return sumOutgoingSecondsInPartitions(CdrRecord.msisdnValue(msisdn), range.fromPartition(),
+                range.toPartition(), range.startTime(), range.endTime());
+    }
+
+    // Суммирует длительность звонков за период по абонентам и направлениям
+    default List<CdrUsageSummary> sumSecondsBySubscriberAndPeriod(LocalDateTime startDate, LocalDateTime endDate) {
+        CdrPartitionRange range = CdrPartitionRange.of(startDate, endDate);
+        return sumSecondsBySubscriberInPartitions(range.fromPartition(), range.toPartition(),
+                range.startTime(), range.endTime());
+    }
+
+    /**
+     * Суммирует длительность звонков за период по абонентам и направлениям для номеров из диапазона.
+     * Читает только строки абонентов диапазона по индексам номеров, поэтому подходит для постраничной выдачи.
+     *
+     * @param fromMsisdn наименьший номер диапазона включительно
+     * @param toMsisdn   наибольший номер диапазона включительно
+     */
+    default List<CdrUsageSummary> sumSecondsBySubscriberRangeAndPeriod(long fromMsisdn, long toMsisdn,
+                                                                       LocalDateTime startDate,
+                                                                       LocalDateTime endDate) {
+        CdrPartitionRange range = CdrPartitionRange.of(startDate, endDate);
+        return sumSecondsBySubscriberRangeInPartitions(fromMsisdn, toMsisdn, range.fromPartition(),
+                range.toPartition(), range.startTime(), range.endTime());
+    }
+
+    /**
+     * Суммирует длительность входящих и исходящих звонков абонента за период по интервалам времени.
+     * Интервалы отсчитываются от начала эпохи UTC, пустые интервалы не возвращаются.
+     *
+     * @param bucketSeconds длина интервала в секундах, например 86400 для суток
+     */
+    default List<CdrUsageBucket> sumSecondsByMsisdnAndBuckets(String msisdn, LocalDateTime startDate,
+                                                             LocalDateTime endDate, long bucketSeconds) {
+        CdrPartitionRange range = CdrPartitionRange.of(startDate, endDate);
+        return sumSecondsByBucketsInPartitions(CdrRecord.msisdnValue(msisdn), bucketSeconds, range.fromPartition(),
+                range.toPartition(), range.startTime(), range.endTime());
+    }
+
+    /**
+     * Читает входящие и исходящие звонки абонента за период одним запросом, упорядоченными по времени начала.
+     * Поток должен быть закрыт и прочитан внутри транзакции.
+     */
+    default Stream<CdrReportRow> streamReportRowsByMsisdnAndPeriod(String msisdn, LocalDateTime startDate,
+                                                                   LocalDateTime endDate) {
+        CdrPartitionRange range = CdrPartitionRange.of(startDate, endDate);
+        return streamReportRowsInPartitions(CdrRecord.msisdnValue(msisdn), range.fromPartition(),
+                range.toPartition(), range.startTime(), range.endTime());
+    }
+
+    /**
+     * Читает звонки всех абонентов за период одним проходом по индексу партиций, упорядоченными по времени начала.
+     * Каждая строка относится к одному абоненту: исходящий звонок - к звонящему, входящий - к принимающему.
+     * Поток должен быть закрыт и прочитан внутри транзакции.
+     */
+    default Stream<CdrReportRow> streamReportRowsByPeriod(LocalDateTime startDate, LocalDateTime endDate) {
+        CdrPartitionRange range = CdrPartitionRange.of(startDate, endDate);
+        return streamPeriodReportRowsInPartitions(range.fromPartition(), range.toPartition(),
+                range.startTime(), range.endTime());
+    }
+
+    @Query(value = INCOMING_CALLS_SQL, nativeQuery = true)
+    List<CdrRecord> findIncomingCallsInPartitions(
+            @Param("msisdn") long msisdn,
+            @Param("fromPartition") int fromPartition,
+            @Param("toPartition") int toPartition,
+            @Param("startDate") long startDate,
+            @Param("endDate") long endDate);
+
+    @Query(value = OUTGOING_CALLS_SQL, nativeQuery = true)
+    List<CdrRecord> findOutgoingCallsInPartitions(
+            @Param("msisdn") long msisdn,
+            @Param("fromPartition") int fromPartition,
+            @Param("toPartition") int toPartition,
+            @Param("startDate") long startDate,
+            @Param("endDate") long endDate);
+
+    @Query(value = ALL_CALLS_SQL, nativeQuery = true)
+    List<CdrRecord> findAllCallsInPartitions(
+            @Param("callType") byte callType,
+            @Param("fromPartition") int fromPartition,
+            @Param("toPartition") int toPartition,
+            @Param("startDate") long startDate,
+            @Param("endDate") long endDate);
+
+    @Query(value = INCOMING_SECONDS_SQL, nativeQuery = true)
+    long sumIncomingSecondsInPartitions(
+            @Param("msisdn") long msisdn,
+            @Param("fromPartition") int fromPartition,
+            @Param("toPartition") int toPartition,
+            @Param("startDate") long startDate,
+            @Param("endDate") long endDate);
+
+    @Query(value = OUTGOING_SECONDS_SQL, nativeQuery = true)
+    long sumOutgoingSecondsInPartitions(
+            @Param("msisdn") long msisdn,
+            @Param("fromPartition") int fromPartition,
+            @Param("toPartition") int toPartition,
+            @Param("startDate") long startDate,
+            @Param("endDate") long endDate);
+
+    @Query(value = USAGE_BY_SUBSCRIBER_SQL, nativeQuery = true)
+    List<CdrUsageSummary> sumSecondsBySubscriberInPartitions(
+            @Param("fromPartition") int fromPartition,
+            @Param("toPartition") int toPartition,
+            @Param("startDate") long startDate,
+            @Param("endDate") long endDate);
+
+    @Query(value = USAGE_BY_SUBSCRIBER_RANGE_SQL, nativeQuery = true)
+    List<CdrUsageSummary> sumSecondsBySubscriberRangeInPartitions(
+            @Param("fromMsisdn") long fromMsisdn,
+            @Param("toMsisdn") long toMsisdn,
+            @Param("fromPartition") int fromPartition,
+            @Param("toPartition") int toPartition,
+            @Param("startDate") long startDate,
+            @Param("endDate") long endDate);
+
+    @Query(value = USAGE_BUCKETS_SQL, nativeQuery = true)
+    List<CdrUsageBucket> sumSecondsByBucketsInPartitions(
+            @Param("msisdn") long msisdn,
+            @Param("bucketSeconds") long bucketSeconds,
+            @Param("fromPartition") int fromPartition,
+            @Param("toPartition") int toPartition,
+            @Param("startDate") long startDate,
+            @Param("endDate") long endDate);
+
+    @Query(value = REPORT_ROWS_SQL, nativeQuery = true)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = REPORT_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    Stream<CdrReportRow> streamReportRowsInPartitions(
+            @Param("msisdn") long msisdn,
+            @Param("fromPartition") int fromPartition,
+            @Param("toPartition") int toPartition,
+            @Param("startDate") long startDate,
+            @Param("endDate") long endDate);
+
+    @Query(value = PERIOD_REPORT_ROWS_SQL, nativeQuery = true)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = REPORT_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    Stream<CdrReportRow> streamPeriodReportRowsInPartitions(
+            @Param("fromPartition") int fromPartition,
+            @Param("toPartition") int toPartition,
+            @Param("startDate") long startDate,
+            @Param("endDate") long endDate);
+
+    // Находит время начала самого позднего звонка, читая только последнюю партицию
+    default Optional<LocalDateTime> findLatestStartTime() {
+        return findLatestStartSecond().map(CdrRecord::toLocalDateTime);
+    }
+
+    @Query(value = LATEST_START_SECOND_SQL, nativeQuery = true)
+    Optional<Long> findLatestStartSecond();
+
+    // Возвращает количество звонков в каждой партиции
+    @Query(value = PARTITION_SUMMARIES_SQL, nativeQuery = true)
+    List<CdrPartitionSummary> findPartitionSummaries();
+
+    // Возвращает количество и суммарную длительность звонков в каждой партиции
+    @Query(value = PARTITION_TOTALS_SQL, nativeQuery = true)
+    List<CdrPartitionTotals> findPartitionTotals();
+
+    // Удаляет все звонки одной партиции
+    @Modifying
+    @Transactional
+    @Query(value = DELETE_PARTITION_SQL, nativeQuery = true)
+    int deletePartition(@Param("partitionKey") int partitionKey);
+
+    // Удаляет все звонки без загрузки сущностей
+    @Modifying
+    @Transactional
+    @Query(value = "TRUNCATE TABLE cdr_records", nativeQuery = true)
+    void truncate();
 }
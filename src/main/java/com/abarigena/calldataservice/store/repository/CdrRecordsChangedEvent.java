@@ -0,0 +1,60 @@
+package com.abarigena.calldataservice.store.repository;
+
+import com.abarigena.calldataservice.store.entity.CdrRecord;
+
+import java.util.List;
+
+/**
+ * Событие изменения CDR-записей в диапазоне помесячных партиций.
+ * Публикуется внутри транзакции, изменившей записи, если она есть; слушатели кешей
+ * должны обрабатывать его после фиксации транзакции.
+ * Если записи только добавлены, событие содержит их, чтобы кеши могли учесть их без перечитывания.
+ *
+ * @param fromPartition   первая измененная партиция, {@code yyyyMM}
+ * @param toPartition     последняя измененная партиция, {@code yyyyMM}
+ * @param insertedRecords добавленные записи или {@code null}, если записи удалялись
+ */
+public record CdrRecordsChangedEvent(int fromPartition, int toPartition, List<CdrRecord> insertedRecords) {
+
+    public CdrRecordsChangedEvent(int fromPartition, int toPartition) {
+        this(fromPartition, toPartition, null);
+    }
+
+    /**
+     * @return событие изменения всех партиций, например после очистки таблицы
+     */
+    public static CdrRecordsChangedEvent all() {
+        return new CdrRecordsChangedEvent(0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param partitionKey ключ партиции
+     * @return событие изменения одной партиции
+     */
+    public static CdrRecordsChangedEvent of(int partitionKey) {
+        return new CdrRecordsChangedEvent(partitionKey, partitionKey);
+    }
+
+    /**
+     * @param records добавленные записи, не пустые
+     * @return событие добавления записей в диапазон их партиций
+     */
+    public static CdrRecordsChangedEvent inserted(List<CdrRecord> records) {
+        int from = Integer.MAX_VALUE;
+        int to = Integer.MIN_VALUE;
+        for (CdrRecord record : records) {
+            from = Math.min(from, record.getPartitionKey());
+            to = Math.max(to, record.getPartitionKey());
+        }
+        return new CdrRecordsChangedEvent(from, to, List.copyOf(records));
+    }
+
+    /**
+     * @param from первая партиция диапазона, {@code yyyyMM}
+     * @param to   последняя партиция диапазона, {@code yyyyMM}
+     * @return пересекается ли диапазон с измененными партициями
+     */
+    public boolean affects(int from, int to) {
+        return from <= toPartition && fromPartition <= to;
+    }
+}
@@ -0,0 +1,24 @@
+package com.abarigena.calldataservice.store.repository;
+
+/**
+ * Проекция строки CDR-отчета: поля звонка без идентификатора и ключа партиции.
+ * Строки не попадают в контекст персистентности, поэтому их можно читать потоком без роста памяти.
+ */
+public interface CdrReportRow {
+
+    byte getCallType();
+
+    long getCallerNumber();
+
+    long getReceiverNumber();
+
+    /**
+     * @return время начала звонка в секундах эпохи UTC
+     */
+    long getStartTime();
+
+    /**
+     * @return длительность звонка в секундах
+     */
+    int getDuration();
+}
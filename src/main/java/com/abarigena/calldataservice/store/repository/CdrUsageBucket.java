@@ -0,0 +1,20 @@
+package com.abarigena.calldataservice.store.repository;
+
+/**
+ * Проекция с суммарной длительностью звонков одного направления за один интервал времени.
+ */
+public interface CdrUsageBucket {
+
+    /**
+     * @return номер интервала: время начала звонка в секундах эпохи UTC, деленное на длину интервала
+     */
+    long getBucket();
+
+    /**
+     * @return {@link com.abarigena.calldataservice.store.entity.CdrRecord#OUTGOING} или
+     * {@link com.abarigena.calldataservice.store.entity.CdrRecord#INCOMING}
+     */
+    byte getCallType();
+
+    long getTotalSeconds();
+}
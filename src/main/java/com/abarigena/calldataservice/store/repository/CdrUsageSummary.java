@@ -0,0 +1,17 @@
+package com.abarigena.calldataservice.store.repository;
+
+/**
+ * Проекция с суммарной длительностью звонков одного абонента одного направления.
+ */
+public interface CdrUsageSummary {
+
+    long getMsisdn();
+
+    /**
+     * @return {@link com.abarigena.calldataservice.store.entity.CdrRecord#OUTGOING} или
+     * {@link com.abarigena.calldataservice.store.entity.CdrRecord#INCOMING}
+     */
+    byte getCallType();
+
+    long getTotalSeconds();
+}
@@ -0,0 +1,84 @@
+package com.abarigena.calldataservice.store.repository;
+
+import com.abarigena.calldataservice.store.entity.UdrMonthly;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Репозиторий помесячных итогов звонков абонентов.
+ * Итоги одного абонента за месяц читаются по первичному ключу через {@link #findById},
+ * итоги всех абонентов месяца - по индексу ключа партиции.
+ * Добавление звонков к итогам выполняет {@link UdrMonthlyWriter}.
+ */
+@Repository
+public interface UdrMonthlyRepository extends CrudRepository<UdrMonthly, UdrMonthly.Key> {
+
+    String MONTH_SQL = "SELECT * FROM udr_monthly WHERE partition_key = :partitionKey";
+
+    String MONTH_RANGE_SQL = "SELECT * FROM udr_monthly " +
+            "WHERE partition_key = :partitionKey AND msisdn BETWEEN :fromMsisdn AND :toMsisdn";
+
+    String PARTITION_SUMMARIES_SQL = "SELECT partition_key AS partitionKey, " +
+            "SUM(incoming_calls + outgoing_calls) AS recordCount FROM udr_monthly " +
+            "GROUP BY partition_key ORDER BY partition_key";
+
+    String PARTITION_TOTALS_SQL = "SELECT partition_key AS partitionKey, " +
+            "SUM(incoming_calls + outgoing_calls) AS recordCount, " +
+            "SUM(incoming_seconds + outgoing_seconds) AS durationSeconds FROM udr_monthly " +
+            "GROUP BY partition_key ORDER BY partition_key";
+
+    // Исходящий звонок относится к звонящему, входящий - к принимающему
+    String INSERT_FROM_CDR_RECORDS_SQL = "INSERT INTO udr_monthly " +
+            "(msisdn, partition_key, incoming_seconds, outgoing_seconds, incoming_calls, outgoing_calls) " +
+            "SELECT CASE WHEN call_type = 1 THEN caller_number ELSE receiver_number END, :partitionKey, " +
+            "SUM(CASE WHEN call_type = 2 THEN duration ELSE 0 END), " +
+            "SUM(CASE WHEN call_type = 1 THEN duration ELSE 0 END), " +
+            "SUM(CASE WHEN call_type = 2 THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN call_type = 1 THEN 1 ELSE 0 END) " +
+            "FROM cdr_records WHERE partition_key = :partitionKey " +
+            "GROUP BY CASE WHEN call_type = 1 THEN caller_number ELSE receiver_number END";
+
+    String DELETE_PARTITION_SQL = "DELETE FROM udr_monthly WHERE partition_key = :partitionKey";
+
+    // Находит итоги всех абонентов за месяц
+    @Query(value = MONTH_SQL, nativeQuery = true)
+    List<UdrMonthly> findByPartition(@Param("partitionKey") int partitionKey);
+
+    // Находит итоги абонентов с номерами из диапазона за месяц
+    @Query(value = MONTH_RANGE_SQL, nativeQuery = true)
+    List<UdrMonthly> findByPartitionAndMsisdnRange(
+            @Param("partitionKey") int partitionKey,
+            @Param("fromMsisdn") long fromMsisdn,
+            @Param("toMsisdn") long toMsisdn);
+
+    // Возвращает количество учтенных в итогах звонков в каждой партиции
+    @Query(value = PARTITION_SUMMARIES_SQL, nativeQuery = true)
+    List<CdrPartitionSummary> findPartitionSummaries();
+
+    // Возвращает количество и суммарную длительность учтенных в итогах звонков в каждой партиции
+    @Query(value = PARTITION_TOTALS_SQL, nativeQuery = true)
+    List<CdrPartitionTotals> findPartitionTotals();
+
+    // Считает итоги месяца заново по CDR-записям партиции, вызывается после удаления итогов месяца
+    @Modifying
+    @Query(value = INSERT_FROM_CDR_RECORDS_SQL, nativeQuery = true)
+    int insertFromCdrRecords(@Param("partitionKey") int partitionKey);
+
+    // Удаляет итоги одного месяца
+    @Modifying
+    @Transactional
+    @Query(value = DELETE_PARTITION_SQL, nativeQuery = true)
+    int deletePartition(@Param("partitionKey") int partitionKey);
+
+    // Удаляет все итоги
+    @Modifying
+    @Transactional
+    @Query(value = "TRUNCATE TABLE udr_monthly", nativeQuery = true)
+    void truncate();
+}
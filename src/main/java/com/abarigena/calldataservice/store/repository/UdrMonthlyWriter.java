@@ -0,0 +1,154 @@
+package com.abarigena.calldataservice.store.repository;
+
+import com.abarigena.calldataservice.store.entity.CdrRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Обновление помесячных итогов звонков {@code udr_monthly} напрямую через JDBC.
+ * Звонки сохраняемой части CDR-записей складываются в памяти по абоненту и месяцу,
+ * и затронутые строки итогов обновляются MERGE в той же транзакции.
+ * Параллельные транзакции согласуются блокировками строк, которые берет MERGE: строки обновляются
+ * в порядке ключа {@code (msisdn, partition_key)}, поэтому транзакции не блокируют друг друга взаимно.
+ * Пересчет месяца исключает только транзакции, обновляющие итоги этого же месяца.
+ */
+@Repository
+public class UdrMonthlyWriter {
+
+    private static final String MERGE_SQL = "MERGE INTO udr_monthly t USING (VALUES (CAST(? AS BIGINT), " +
+            "CAST(? AS INT), CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS INT), CAST(? AS INT))) " +
+            "AS s (msisdn, partition_key, incoming_seconds, outgoing_seconds, incoming_calls, outgoing_calls) " +
+            "ON t.msisdn = s.msisdn AND t.partition_key = s.partition_key " +
+            "WHEN MATCHED THEN UPDATE SET incoming_seconds = t.incoming_seconds + s.incoming_seconds, " +
+            "outgoing_seconds = t.outgoing_seconds + s.outgoing_seconds, " +
+            "incoming_calls = t.incoming_calls + s.incoming_calls, " +
+            "outgoing_calls = t.outgoing_calls + s.outgoing_calls " +
+            "WHEN NOT MATCHED THEN INSERT " +
+            "(msisdn, partition_key, incoming_seconds, outgoing_seconds, incoming_calls, outgoing_calls) " +
+            "VALUES (s.msisdn, s.partition_key, s.incoming_seconds, s.outgoing_seconds, " +
+            "s.incoming_calls, s.outgoing_calls)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final UdrMonthlyRepository udrMonthlyRepository;
+    // Обновление итогов месяца берет блокировку чтения, пересчет месяца - блокировку записи
+    private final Map<Integer, ReentrantReadWriteLock> partitionLocks = new ConcurrentHashMap<>();
+
+    @Autowired
+    public UdrMonthlyWriter(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                            UdrMonthlyRepository udrMonthlyRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.udrMonthlyRepository = udrMonthlyRepository;
+    }
+
+    /**
+     * Добавляет звонки к итогам их абонентов и месяцев в текущей транзакции.
+     *
+     * @param records сохраняемые CDR-записи
+     * @throws IllegalStateException если метод вызван вне транзакции
+     */
+    public void add(List<CdrRecord> records) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Итоги звонков обновляются только в транзакции сохранения CDR-записей");
+        }
+
+        // Строки итогов обновляются в порядке ключа
+        Map<Usage, long[]> usages = new TreeMap<>(
+                Comparator.comparingLong(Usage::msisdn).thenComparingInt(Usage::partitionKey));
+        for (CdrRecord record : records) {
+            // Исходящий звонок относится к звонящему, входящий - к принимающему
+            boolean outgoing = record.getCallTypeCode() == CdrRecord.OUTGOING;
+            long msisdn = outgoing ? record.getCallerMsisdn() : record.getReceiverMsisdn();
+            long[] usage = usages.computeIfAbsent(new Usage(msisdn, record.getPartitionKey()), key -> new long[4]);
+            usage[outgoing ? 1 : 0] += record.getDurationSeconds();
+            usage[outgoing ? 3 : 2]++;
+        }
+        if (usages.isEmpty()) {
+            return;
+        }
+
+        // Пересчет месяца не должен удалить итоги, измененные незавершенной транзакцией
+        TreeSet<Integer> partitions = new TreeSet<>();
+        usages.keySet().forEach(usage -> partitions.add(usage.partitionKey()));
+        List<Lock> locks = new ArrayList<>();
+        for (int partitionKey : partitions) {
+            Lock lock = partitionLock(partitionKey).readLock();
+            lock.lock();
+            locks.add(lock);
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                locks.forEach(Lock::unlock);
+            }
+        });
+
+        for (Map.Entry<Usage, long[]> row : usages.entrySet()) {
+            merge(row.getKey(), row.getValue());
+        }
+    }
+
+    /**
+     * Считает итоги месяца заново по его CDR-записям в отдельной транзакции.
+     *
+     * @param partitionKey ключ партиции месяца, {@code yyyyMM}
+     * @return количество строк итогов месяца
+     * @throws IllegalStateException если текущая транзакция уже обновила итоги этого месяца
+     */
+    public int rebuildPartition(int partitionKey) {
+        ReentrantReadWriteLock partitionLock = partitionLock(partitionKey);
+        // Блокировка чтения текущей транзакции не повышается до блокировки записи
+        if (partitionLock.getReadHoldCount() > 0) {
+            throw new IllegalStateException("Итоги месяца " + partitionKey
+                    + " пересчитываются в транзакции, которая их изменила");
+        }
+        Lock lock = partitionLock.writeLock();
+        lock.lock();
+        try {
+            Integer rows = transactionTemplate.execute(status -> {
+                udrMonthlyRepository.deletePartition(partitionKey);
+                return udrMonthlyRepository.insertFromCdrRecords(partitionKey);
+            });
+            return rows != null ? rows : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Прибавляет звонки к строке итогов. Если строку одновременно вставила другая транзакция,
+     * MERGE дожидается ее завершения и завершается ошибкой уникальности; повторный MERGE
+     * уже находит строку и обновляет ее.
+     */
+    private void merge(Usage key, long[] usage) {
+        Object[] args = {key.msisdn(), key.partitionKey(), usage[0], usage[1], (int) usage[2], (int) usage[3]};
+        try {
+            jdbcTemplate.update(MERGE_SQL, args);
+        } catch (DuplicateKeyException e) {
+            jdbcTemplate.update(MERGE_SQL, args);
+        }
+    }
+
+    private ReentrantReadWriteLock partitionLock(int partitionKey) {
+        return partitionLocks.computeIfAbsent(partitionKey, key -> new ReentrantReadWriteLock());
+    }
+
+    private record Usage(long msisdn, int partitionKey) {
+    }
+}
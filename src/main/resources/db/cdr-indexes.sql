@@ -0,0 +1,12 @@
+-- Индексы таблицы cdr_records.
+-- Скрипт выполняется при каждом запуске после обновления схемы Hibernate, поэтому все операции идемпотентны.
+
+-- Звонки абонента за период: callType = ? AND callerNumber / receiverNumber = ? AND startTime BETWEEN ? AND ?
+CREATE INDEX IF NOT EXISTS idx_cdr_records_caller ON cdr_records (call_type, caller_number, start_time);
+CREATE INDEX IF NOT EXISTS idx_cdr_records_receiver ON cdr_records (call_type, receiver_number, start_time);
+
+-- Звонки всех абонентов за период: callType = ? AND startTime BETWEEN ? AND ?
+CREATE INDEX IF NOT EXISTS idx_cdr_records_type_start ON cdr_records (call_type, start_time);
+
+-- Помесячные партиции: удаление месяца, статистика партиций и поиск последнего звонка
+CREATE INDEX IF NOT EXISTS idx_cdr_records_partition ON cdr_records (partition_key, start_time);
@@ -0,0 +1,5 @@
+-- Индексы таблицы udr_monthly.
+-- Скрипт выполняется при каждом запуске после обновления схемы Hibernate, поэтому все операции идемпотентны.
+
+-- Итоги всех абонентов за месяц и страницы абонентов: partitionKey = ? AND msisdn BETWEEN ? AND ?
+CREATE INDEX IF NOT EXISTS idx_udr_monthly_partition ON udr_monthly (partition_key, msisdn);
@@ -0,0 +1,114 @@
+package com.abarigena.calldataservice.benchmark;
+
+import com.abarigena.calldataservice.service.CdrReportWriter;
+import com.abarigena.calldataservice.store.entity.CdrRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Сравнение скорости записи CDR-отчета: {@link String#format} с {@link FileWriter}
+ * и {@link CdrReportWriter}. Результат выводится в строках в секунду.
+ * Запуск: {@code mvn test -Dtest=CdrReportWriterBenchmark -Dbenchmark=true}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class CdrReportWriterBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(CdrReportWriterBenchmark.class);
+
+    private static final int ROWS = 1_000_000;
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURED_ITERATIONS = 5;
+    private static final DateTimeFormatter ISO_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    @TempDir
+    private Path directory;
+
+    private final byte[] callTypes = new byte[ROWS];
+    private final long[] callers = new long[ROWS];
+    private final long[] receivers = new long[ROWS];
+    private final long[] startTimes = new long[ROWS];
+    private final int[] durations = new int[ROWS];
+
+    @Test
+    void compareStringFormatWithReportWriter() throws IOException {
+        createRows();
+        Path formatFile = directory.resolve("format.csv");
+        Path writerFile = directory.resolve("writer.csv");
+
+        writeWithStringFormat(formatFile);
+        writeWithReportWriter(writerFile);
+        assertEquals(Files.size(formatFile), Files.size(writerFile));
+
+        double formatRowsPerSecond = measure(() -> writeWithStringFormat(formatFile));
+        double writerRowsPerSecond = measure(() -> writeWithReportWriter(writerFile));
+
+        logger.info("Запись отчета, {} строк: String.format {} строк/с, CdrReportWriter {} строк/с",
+                ROWS, String.format("%.0f", formatRowsPerSecond), String.format("%.0f", writerRowsPerSecond));
+    }
+
+    /**
+     * Прежний способ: строка собирается через {@link String#format} и пишется в {@link FileWriter}.
+     */
+    private void writeWithStringFormat(Path file) throws IOException {
+        try (FileWriter writer = new FileWriter(file.toFile())) {
+            for (int i = 0; i < ROWS; i++) {
+                writer.write(String.format("%s,%s,%s,%s,%s%n",
+                        callTypes[i] == CdrRecord.OUTGOING ? "01" : "02",
+                        Long.toString(callers[i]),
+                        Long.toString(receivers[i]),
+                        CdrRecord.toLocalDateTime(startTimes[i]).format(ISO_FORMATTER),
+                        CdrRecord.toLocalDateTime(startTimes[i] + durations[i]).format(ISO_FORMATTER)));
+            }
+        }
+    }
+
+    private void writeWithReportWriter(Path file) throws IOException {
+        try (CdrReportWriter writer = new CdrReportWriter(file)) {
+            for (int i = 0; i < ROWS; i++) {
+                writer.write(callTypes[i], callers[i], receivers[i], startTimes[i], durations[i]);
+            }
+        }
+    }
+
+    private double measure(ReportWrite write) throws IOException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            write.run();
+        }
+        long started = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            write.run();
+        }
+        double seconds = (System.nanoTime() - started) / 1_000_000_000.0;
+        return (double) ROWS * MEASURED_ITERATIONS / seconds;
+    }
+
+    private void createRows() {
+        SplittableRandom random = new SplittableRandom(42);
+        long time = CdrRecord.toEpochSecond(LocalDateTime.of(2025, 1, 1, 0, 0));
+        for (int i = 0; i < ROWS; i++) {
+            callTypes[i] = random.nextBoolean() ? CdrRecord.OUTGOING : CdrRecord.INCOMING;
+            callers[i] = 79990000000L + random.nextInt(1000);
+            receivers[i] = 79990000000L + random.nextInt(1000);
+            time += random.nextInt(1, 120); // звонки отчета упорядочены по времени начала
+            startTimes[i] = time;
+            durations[i] = random.nextInt(1, 3600);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ReportWrite {
+        void run() throws IOException;
+    }
+}
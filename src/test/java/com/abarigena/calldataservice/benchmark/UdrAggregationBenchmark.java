@@ -0,0 +1,196 @@
+package com.abarigena.calldataservice.benchmark;
+
+import com.abarigena.calldataservice.config.CdrStorageProperties;
+import com.abarigena.calldataservice.config.CdrUdrProperties;
+import com.abarigena.calldataservice.service.UdrAggregator;
+import com.abarigena.calldataservice.store.entity.CdrRecord;
+import com.abarigena.calldataservice.store.repository.CdrBulkWriter;
+import com.abarigena.calldataservice.store.repository.CdrRecordRepository;
+import com.abarigena.calldataservice.store.repository.CdrUsageSummary;
+import com.abarigena.calldataservice.store.repository.UdrMonthlyWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Сравнение двух способов получить UDR за месяц для всех абонентов:
+ * загрузка всех CDR-записей месяца с суммированием в Java и агрегация в базе данных,
+ * а также агрегация в базе данных одним запросом и параллельно по частям месяца через {@link UdrAggregator}.
+ * Запуск: {@code mvn test -Dtest=UdrAggregationBenchmark -Dbenchmark=true}.
+ */
+@DataJpaTest
+@Import({CdrBulkWriter.class, UdrMonthlyWriter.class})
+@EnableConfigurationProperties(CdrStorageProperties.class)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class UdrAggregationBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(UdrAggregationBenchmark.class);
+
+    private static final int SUBSCRIBERS = 1000;
+    private static final int CALLS_PER_SUBSCRIBER = 90;
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURED_ITERATIONS = 10;
+
+    private static final YearMonth MONTH = YearMonth.of(2025, 1);
+    private static final LocalDateTime START_DATE = MONTH.atDay(1).atStartOfDay();
+    private static final LocalDateTime END_DATE = MONTH.atEndOfMonth().atTime(23, 59, 59);
+
+    @Autowired
+    private CdrBulkWriter cdrBulkWriter;
+
+    @Autowired
+    private CdrRecordRepository cdrRecordRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Test
+    void compareEntityLoadingWithDatabaseAggregation() {
+        cdrBulkWriter.write(createMonthOfCalls());
+
+        Map<Long, long[]> expected = sumLoadedEntities();
+        assertEquals(expected.size(), sumInDatabase().size());
+
+        double entityMillis = measure(this::sumLoadedEntities);
+        double aggregateMillis = measure(this::sumInDatabase);
+        int entityRows = cdrRecordRepository.findAllIncomingCallsByPeriod(START_DATE, END_DATE).size()
+                + cdrRecordRepository.findAllOutgoingCallsByPeriod(START_DATE, END_DATE).size();
+        int aggregateRows = cdrRecordRepository.sumSecondsBySubscriberAndPeriod(START_DATE, END_DATE).size();
+
+        logger.info("UDR за месяц, {} абонентов: загрузка сущностей {} мс ({} строк), агрегация в БД {} мс ({} строк)",
+                SUBSCRIBERS, String.format("%.1f", entityMillis), entityRows,
+                String.format("%.1f", aggregateMillis), aggregateRows);
+    }
+
+    /**
+     * Части месяца читаются в разных соединениях, поэтому записи сохраняются вне тестовой транзакции
+     * и удаляются после замера.
+     */
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void compareSequentialWithParallelAggregation() {
+        cdrBulkWriter.write(createMonthOfCalls());
+        List<String> msisdns = new ArrayList<>();
+        for (int subscriber = 0; subscriber < SUBSCRIBERS; subscriber++) {
+            msisdns.add(Long.toString(79990000000L + subscriber));
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        UdrAggregator sequential = udrAggregator(1);
+        UdrAggregator parallel = udrAggregator(cores);
+        try {
+            UdrAggregator.Totals expected = sequential.aggregate(msisdns, START_DATE, END_DATE);
+            UdrAggregator.Totals actual = parallel.aggregate(msisdns, START_DATE, END_DATE);
+            assertArrayEquals(expected.incomingSeconds(), actual.incomingSeconds());
+            assertArrayEquals(expected.outgoingSeconds(), actual.outgoingSeconds());
+
+            double sequentialMillis = measure(() -> sequential.aggregate(msisdns, START_DATE, END_DATE), () -> {
+            });
+            double parallelMillis = measure(() -> parallel.aggregate(msisdns, START_DATE, END_DATE), () -> {
+            });
+
+            logger.info("UDR за месяц, {} абонентов: один запрос {} мс, {} частей параллельно {} мс",
+                    SUBSCRIBERS, String.format("%.1f", sequentialMillis), cores, String.format("%.1f", parallelMillis));
+        } finally {
+            sequential.shutdown();
+            parallel.shutdown();
+            cdrRecordRepository.deletePartition(CdrRecord.partitionKeyOf(START_DATE));
+        }
+    }
+
+    private UdrAggregator udrAggregator(int parallelism) {
+        CdrUdrProperties properties = new CdrUdrProperties();
+        properties.setParallelism(parallelism);
+        return new UdrAggregator(cdrRecordRepository, properties);
+    }
+
+    /**
+     * Прежний способ: все записи месяца загружаются как сущности и суммируются в Java.
+     */
+    private Map<Long, long[]> sumLoadedEntities() {
+        Map<Long, long[]> seconds = new HashMap<>();
+        for (CdrRecord call : cdrRecordRepository.findAllIncomingCallsByPeriod(START_DATE, END_DATE)) {
+            seconds.computeIfAbsent(call.getReceiverMsisdn(), key -> new long[2])[0] += call.getDurationSeconds();
+        }
+        for (CdrRecord call : cdrRecordRepository.findAllOutgoingCallsByPeriod(START_DATE, END_DATE)) {
+            seconds.computeIfAbsent(call.getCallerMsisdn(), key -> new long[2])[1] += call.getDurationSeconds();
+        }
+        return seconds;
+    }
+
+    private Map<Long, long[]> sumInDatabase() {
+        Map<Long, long[]> seconds = new HashMap<>();
+        for (CdrUsageSummary summary : cdrRecordRepository.sumSecondsBySubscriberAndPeriod(START_DATE, END_DATE)) {
+            seconds.computeIfAbsent(summary.getMsisdn(), key -> new long[2])
+                    [summary.getCallType() == CdrRecord.INCOMING ? 0 : 1] += summary.getTotalSeconds();
+        }
+        return seconds;
+    }
+
+    /**
+     * @return среднее время одного вызова в миллисекундах
+     */
+    private double measure(Supplier<?> action) {
+        // Сущности не должны переиспользоваться из контекста персистентности между итерациями
+        return measure(action, entityManager::clear);
+    }
+
+    /**
+     * @param afterIteration действие после каждого вызова, не входящее в замер
+     * @return среднее время одного вызова в миллисекундах
+     */
+    private double measure(Supplier<?> action, Runnable afterIteration) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            action.get();
+            afterIteration.run();
+        }
+        long total = 0;
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            long started = System.nanoTime();
+            action.get();
+            total += System.nanoTime() - started;
+            afterIteration.run();
+        }
+        return total / 1_000_000.0 / MEASURED_ITERATIONS;
+    }
+
+    private List<CdrRecord> createMonthOfCalls() {
+        SplittableRandom random = new SplittableRandom(42);
+        long monthStart = CdrRecord.toEpochSecond(START_DATE);
+        int monthSeconds = MONTH.lengthOfMonth() * 86_400;
+        List<CdrRecord> records = new ArrayList<>();
+        for (int subscriber = 0; subscriber < SUBSCRIBERS; subscriber++) {
+            for (int call = 0; call < CALLS_PER_SUBSCRIBER; call++) {
+                CdrRecord record = new CdrRecord();
+                boolean outgoing = random.nextBoolean();
+                long msisdn = 79990000000L + subscriber;
+                long other = 79990000000L + (subscriber + 1 + random.nextInt(SUBSCRIBERS - 1)) % SUBSCRIBERS;
+                record.setCallTypeCode(outgoing ? CdrRecord.OUTGOING : CdrRecord.INCOMING);
+                record.setCallerMsisdn(outgoing ? msisdn : other);
+                record.setReceiverMsisdn(outgoing ? other : msisdn);
+                record.setStartEpochSecond(monthStart + random.nextInt(monthSeconds - 600));
+                record.setDurationSeconds(random.nextInt(600) + 10);
+                records.add(record);
+            }
+        }
+        return records;
+    }
+}
@@ -0,0 +1,74 @@
+package com.abarigena.calldataservice.repositoryTest;
+
+import com.abarigena.calldataservice.config.CdrStorageProperties;
+import com.abarigena.calldataservice.store.entity.CdrRecord;
+import com.abarigena.calldataservice.store.repository.CdrBulkWriter;
+import com.abarigena.calldataservice.store.repository.CdrRecordRepository;
+import com.abarigena.calldataservice.store.repository.UdrMonthlyWriter;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = "cdr.storage.chunk-size=70")
+@Import({CdrBulkWriter.class, UdrMonthlyWriter.class})
+@EnableConfigurationProperties(CdrStorageProperties.class)
+class CdrBulkWriterTest {
+
+    @Autowired
+    private CdrBulkWriter cdrBulkWriter;
+
+    @Autowired
+    private CdrRecordRepository cdrRecordRepository;
+
+    @Test
+    void write_insertAllRecordsWithUniqueIds() {
+        List<CdrRecord> records = createRecords(250);
+
+        assertEquals(250, cdrBulkWriter.write(records));
+        cdrBulkWriter.write(createRecords(30));
+
+        assertEquals(280, cdrRecordRepository.count());
+        Set<Long> ids = new HashSet<>();
+        cdrRecordRepository.findAll().forEach(record -> ids.add(record.getId()));
+        assertEquals(280, ids.size());
+    }
+
+    @Test
+    void write_keepRecordFields() {
+        CdrRecord record = createRecords(1).get(0);
+
+        cdrBulkWriter.write(List.of(record));
+
+        CdrRecord saved = cdrRecordRepository.findById(record.getId()).orElseThrow();
+        assertEquals("01", saved.getCallType());
+        assertEquals("79990000001", saved.getCallerNumber());
+        assertEquals("79990000002", saved.getReceiverNumber());
+        assertEquals(record.getStartTime(), saved.getStartTime());
+        assertEquals(record.getEndTime(), saved.getEndTime());
+    }
+
+    private List<CdrRecord> createRecords(int count) {
+        List<CdrRecord> records = new ArrayList<>();
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 10, 0);
+        for (int i = 0; i < count; i++) {
+            CdrRecord record = new CdrRecord();
+            record.setCallType("01");
+            record.setCallerNumber("79990000001");
+            record.setReceiverNumber("79990000002");
+            record.setStartTime(start.plusMinutes(i));
+            record.setEndTime(start.plusMinutes(i).plusSeconds(90));
+            records.add(record);
+        }
+        return records;
+    }
+}
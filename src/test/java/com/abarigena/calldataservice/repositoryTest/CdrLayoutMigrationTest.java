@@ -0,0 +1,83 @@
+package com.abarigena.calldataservice.repositoryTest;
+
+import com.abarigena.calldataservice.store.entity.CdrRecord;
+import com.abarigena.calldataservice.store.repository.CdrLayoutMigration;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CdrLayoutMigrationTest {
+
+    private JdbcDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:cdr_layout_migration;DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void migrate_convertTableOfPreviousVersion() {
+        // Схема и индексы таблицы версии до компактного формата
+        jdbcTemplate.execute("CREATE TABLE cdr_records (id BIGINT NOT NULL PRIMARY KEY, " +
+                "call_type VARCHAR(2) NOT NULL, caller_number VARCHAR(255) NOT NULL, " +
+                "receiver_number VARCHAR(255) NOT NULL, start_time TIMESTAMP NOT NULL, " +
+                "end_time TIMESTAMP NOT NULL, partition_key INT NOT NULL)");
+        jdbcTemplate.execute("CREATE INDEX idx_cdr_records_caller ON cdr_records (call_type, caller_number, start_time)");
+        jdbcTemplate.update("INSERT INTO cdr_records VALUES (1, '01', '79990000001', '79990000002', " +
+                "TIMESTAMP '2025-01-31 23:59:00', TIMESTAMP '2025-02-01 00:01:30', 202501)");
+        jdbcTemplate.update("INSERT INTO cdr_records VALUES (2, '02', '79990000003', '79990000001', " +
+                "TIMESTAMP '2025-02-10 10:00:00', TIMESTAMP '2025-02-10 10:00:42', 202502)");
+
+        new CdrLayoutMigration(dataSource).migrate();
+        new ResourceDatabasePopulator(new ClassPathResource("db/cdr-indexes.sql")).execute(dataSource);
+
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT call_type, caller_number, receiver_number, start_time, duration, partition_key " +
+                        "FROM cdr_records ORDER BY id");
+        assertEquals(List.of((long) CdrRecord.OUTGOING, 79990000001L, 79990000002L,
+                        CdrRecord.toEpochSecond(LocalDateTime.of(2025, 1, 31, 23, 59)), 150L, 202501L),
+                longs(rows.get(0)));
+        assertEquals(List.of((long) CdrRecord.INCOMING, 79990000003L, 79990000001L,
+                        CdrRecord.toEpochSecond(LocalDateTime.of(2025, 2, 10, 10, 0)), 42L, 202502L),
+                longs(rows.get(1)));
+        assertEquals(List.of(), jdbcTemplate.queryForList("SELECT column_name FROM INFORMATION_SCHEMA.COLUMNS " +
+                "WHERE table_name = 'CDR_RECORDS' AND column_name = 'END_TIME'"));
+    }
+
+    @Test
+    void migrate_leaveCompactTableUnchanged() {
+        jdbcTemplate.execute("CREATE TABLE cdr_records (id BIGINT NOT NULL PRIMARY KEY, call_type TINYINT NOT NULL, " +
+                "caller_number BIGINT NOT NULL, receiver_number BIGINT NOT NULL, start_time BIGINT NOT NULL, " +
+                "duration INT NOT NULL, partition_key INT NOT NULL)");
+        jdbcTemplate.update("INSERT INTO cdr_records VALUES (1, 1, 79990000001, 79990000002, 1738367940, 150, 202501)");
+
+        CdrLayoutMigration migration = new CdrLayoutMigration(dataSource);
+        migration.migrate();
+        migration.migrate();
+
+        assertEquals(List.of(1L, 79990000001L, 1738367940L, 150L), longs(jdbcTemplate.queryForMap(
+                "SELECT call_type, caller_number, start_time, duration FROM cdr_records")));
+    }
+
+    private static List<Long> longs(Map<String, Object> row) {
+        return row.values().stream().map(value -> ((Number) value).longValue()).toList();
+    }
+}
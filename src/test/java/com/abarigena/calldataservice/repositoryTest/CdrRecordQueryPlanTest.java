@@ -0,0 +1,167 @@
+package com.abarigena.calldataservice.repositoryTest;
+
+import com.abarigena.calldataservice.config.CdrStorageProperties;
+import com.abarigena.calldataservice.store.entity.CdrRecord;
+import com.abarigena.calldataservice.store.repository.CdrBulkWriter;
+import com.abarigena.calldataservice.store.repository.CdrRecordRepository;
+import com.abarigena.calldataservice.store.repository.UdrMonthlyRepository;
+import com.abarigena.calldataservice.store.repository.UdrMonthlyWriter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Проверяет планы выполнения запросов {@link CdrRecordRepository}:
+ * каждый запрос должен использовать индекс, а не полный просмотр таблицы.
+ */
+@DataJpaTest
+@Import({CdrBulkWriter.class, UdrMonthlyWriter.class})
+@EnableConfigurationProperties(CdrStorageProperties.class)
+class CdrRecordQueryPlanTest {
+
+    private static final String TABLE_SCAN = "tableScan";
+
+    @Autowired
+    private CdrBulkWriter cdrBulkWriter;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private final Map<String, Object> parameters = Map.of(
+            "msisdn", 79990000001L,
+            "callType", CdrRecord.OUTGOING,
+            "startDate", CdrRecord.toEpochSecond(LocalDateTime.of(2025, 1, 1, 0, 0)),
+            "endDate", CdrRecord.toEpochSecond(LocalDateTime.of(2025, 1, 31, 23, 59, 59)),
+            "fromPartition", 202501,
+            "toPartition", 202501,
+            "partitionKey", 202501,
+            "fromMsisdn", 79990000010L,
+            "toMsisdn", 79990000019L,
+            "bucketSeconds", 86_400L);
+
+    @BeforeEach
+    void setUp() {
+        List<CdrRecord> records = new ArrayList<>();
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        for (int i = 0; i < 2000; i++) {
+            CdrRecord record = new CdrRecord();
+            record.setCallType(i % 2 == 0 ? "01" : "02");
+            record.setCallerNumber("7999000" + String.format("%04d", i % 100));
+            record.setReceiverNumber("7999000" + String.format("%04d", (i + 1) % 100));
+            record.setStartTime(start.plusHours(i * 7L));
+            record.setEndTime(start.plusHours(i * 7L).plusMinutes(5));
+            records.add(record);
+        }
+        cdrBulkWriter.write(records);
+    }
+
+    @Test
+    void incomingCalls_useReceiverIndex() {
+        assertUsesIndex(CdrRecordRepository.INCOMING_CALLS_SQL, "IDX_CDR_RECORDS_RECEIVER");
+    }
+
+    @Test
+    void outgoingCalls_useCallerIndex() {
+        assertUsesIndex(CdrRecordRepository.OUTGOING_CALLS_SQL, "IDX_CDR_RECORDS_CALLER");
+    }
+
+    @Test
+    void reportRows_useBothDirectionIndexes() {
+        assertUsesIndex(CdrRecordRepository.REPORT_ROWS_SQL, "IDX_CDR_RECORDS_RECEIVER");
+        assertUsesIndex(CdrRecordRepository.REPORT_ROWS_SQL, "IDX_CDR_RECORDS_CALLER");
+    }
+
+    @Test
+    void allCalls_notScanTable() {
+        assertNoTableScan(CdrRecordRepository.ALL_CALLS_SQL);
+    }
+
+    @Test
+    void incomingSeconds_useReceiverIndex() {
+        assertUsesIndex(CdrRecordRepository.INCOMING_SECONDS_SQL, "IDX_CDR_RECORDS_RECEIVER");
+    }
+
+    @Test
+    void outgoingSeconds_useCallerIndex() {
+        assertUsesIndex(CdrRecordRepository.OUTGOING_SECONDS_SQL, "IDX_CDR_RECORDS_CALLER");
+    }
+
+    @Test
+    void usageBySubscriber_notScanTable() {
+        assertNoTableScan(CdrRecordRepository.USAGE_BY_SUBSCRIBER_SQL);
+    }
+
+    @Test
+    void usageBySubscriberRange_useBothDirectionIndexes() {
+        assertUsesIndex(CdrRecordRepository.USAGE_BY_SUBSCRIBER_RANGE_SQL, "IDX_CDR_RECORDS_RECEIVER");
+        assertUsesIndex(CdrRecordRepository.USAGE_BY_SUBSCRIBER_RANGE_SQL, "IDX_CDR_RECORDS_CALLER");
+    }
+
+    @Test
+    void usageBuckets_useBothDirectionIndexes() {
+        assertUsesIndex(CdrRecordRepository.USAGE_BUCKETS_SQL, "IDX_CDR_RECORDS_RECEIVER");
+        assertUsesIndex(CdrRecordRepository.USAGE_BUCKETS_SQL, "IDX_CDR_RECORDS_CALLER");
+    }
+
+    @Test
+    void periodReportRows_usePartitionIndex() {
+        assertUsesIndex(CdrRecordRepository.PERIOD_REPORT_ROWS_SQL, "IDX_CDR_RECORDS_PARTITION");
+    }
+
+    @Test
+    void latestStartTime_notScanTable() {
+        assertNoTableScan(CdrRecordRepository.LATEST_START_SECOND_SQL);
+    }
+
+    @Test
+    void partitionSummaries_notScanTable() {
+        assertNoTableScan(CdrRecordRepository.PARTITION_SUMMARIES_SQL);
+    }
+
+    @Test
+    void deletePartition_usePartitionIndex() {
+        assertUsesIndex(CdrRecordRepository.DELETE_PARTITION_SQL, "IDX_CDR_RECORDS_PARTITION");
+    }
+
+    @Test
+    void udrMonth_useUdrPartitionIndex() {
+        assertUsesIndex(UdrMonthlyRepository.MONTH_SQL, "IDX_UDR_MONTHLY_PARTITION");
+        assertUsesIndex(UdrMonthlyRepository.MONTH_RANGE_SQL, "IDX_UDR_MONTHLY_PARTITION");
+    }
+
+    @Test
+    void udrInsertFromCdrRecords_usePartitionIndex() {
+        assertUsesIndex(UdrMonthlyRepository.INSERT_FROM_CDR_RECORDS_SQL, "IDX_CDR_RECORDS_PARTITION");
+    }
+
+    @Test
+    void explain_detectTableScanOfNotIndexedQuery() {
+        assertTrue(explain("SELECT * FROM cdr_records WHERE duration > :partitionKey").contains(TABLE_SCAN));
+    }
+
+    private void assertUsesIndex(String sql, String index) {
+        String plan = explain(sql);
+        assertFalse(plan.contains(TABLE_SCAN), plan);
+        assertTrue(plan.contains(index), plan);
+    }
+
+    private void assertNoTableScan(String sql) {
+        String plan = explain(sql);
+        assertFalse(plan.contains(TABLE_SCAN), plan);
+    }
+
+    private String explain(String sql) {
+        return String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + sql, parameters, String.class));
+    }
+}
@@ -0,0 +1,193 @@
+package com.abarigena.calldataservice.repositoryTest;
+
+import com.abarigena.calldataservice.config.CdrStorageProperties;
+import com.abarigena.calldataservice.store.entity.CdrRecord;
+import com.abarigena.calldataservice.store.repository.CdrBulkWriter;
+import com.abarigena.calldataservice.store.repository.CdrPartitionSummary;
+import com.abarigena.calldataservice.store.repository.CdrRecordRepository;
+import com.abarigena.calldataservice.store.repository.CdrReportRow;
+import com.abarigena.calldataservice.store.repository.CdrUsageBucket;
+import com.abarigena.calldataservice.store.repository.CdrUsageSummary;
+import com.abarigena.calldataservice.store.repository.UdrMonthlyWriter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import({CdrBulkWriter.class, UdrMonthlyWriter.class})
+@EnableConfigurationProperties(CdrStorageProperties.class)
+class CdrRecordRepositoryTest {
+
+    @Autowired
+    private CdrBulkWriter cdrBulkWriter;
+
+    @Autowired
+    private CdrRecordRepository cdrRecordRepository;
+
+    @BeforeEach
+    void setUp() {
+        cdrBulkWriter.write(List.of(
+                createRecord("01", LocalDateTime.of(2024, 12, 31, 23, 59, 59)),
+                createRecord("01", LocalDateTime.of(2025, 1, 1, 0, 0)),
+                createRecord("02", LocalDateTime.of(2025, 1, 15, 12, 0)),
+                createRecord("01", LocalDateTime.of(2025, 1, 31, 23, 59, 59)),
+                createRecord("02", LocalDateTime.of(2025, 2, 1, 0, 0))));
+    }
+
+    @Test
+    void findAllCallsByPeriod_returnOnlyCallsOfMonth() {
+        List<CdrRecord> outgoing = cdrRecordRepository.findAllOutgoingCallsByPeriod(
+                LocalDateTime.of(2025, 1, 1, 0, 0), LocalDateTime.of(2025, 1, 31, 23, 59, 59));
+        List<CdrRecord> incoming = cdrRecordRepository.findAllIncomingCallsByPeriod(
+                LocalDateTime.of(2025, 1, 1, 0, 0), LocalDateTime.of(2025, 1, 31, 23, 59, 59));
+
+        assertEquals(2, outgoing.size());
+        assertTrue(outgoing.stream().allMatch(record -> record.getPartitionKey() == 202501));
+        assertEquals(1, incoming.size());
+    }
+
+    @Test
+    void findCallsByMsisdnAndPeriod_searchAllPartitionsWhenPeriodNotSet() {
+        assertEquals(3, cdrRecordRepository.findOutgoingCallsByMsisdnAndPeriod("79990000001", null, null).size());
+        assertEquals(2, cdrRecordRepository.findIncomingCallsByMsisdnAndPeriod("79990000002", null, null).size());
+        assertEquals(1, cdrRecordRepository.findIncomingCallsByMsisdnAndPeriod("79990000002",
+                LocalDateTime.of(2025, 2, 1, 0, 0), null).size());
+    }
+
+    @Test
+    void sumSecondsByMsisdnAndPeriod_sumDurationsOfPeriod() {
+        LocalDateTime startDate = LocalDateTime.of(2025, 1, 1, 0, 0);
+        LocalDateTime endDate = LocalDateTime.of(2025, 1, 31, 23, 59, 59);
+
+        assertEquals(360, cdrRecordRepository.sumOutgoingSecondsByMsisdnAndPeriod("79990000001", startDate, endDate));
+        assertEquals(180, cdrRecordRepository.sumIncomingSecondsByMsisdnAndPeriod("79990000002", startDate, endDate));
+        assertEquals(0, cdrRecordRepository.sumIncomingSecondsByMsisdnAndPeriod("79990000001", startDate, endDate));
+        assertEquals(360, cdrRecordRepository.sumIncomingSecondsByMsisdnAndPeriod("79990000002", null, null));
+    }
+
+    @Test
+    void sumSecondsBySubscriberAndPeriod_groupByMsisdnAndDirection() {
+        List<CdrUsageSummary> usage = cdrRecordRepository.sumSecondsBySubscriberAndPeriod(
+                LocalDateTime.of(2025, 1, 1, 0, 0), LocalDateTime.of(2025, 1, 31, 23, 59, 59));
+
+        assertEquals(2, usage.size());
+        CdrUsageSummary outgoing = usage.stream()
+                .filter(summary -> summary.getCallType() == CdrRecord.OUTGOING).findFirst().orElseThrow();
+        assertEquals(79990000001L, outgoing.getMsisdn());
+        assertEquals(360, outgoing.getTotalSeconds());
+        CdrUsageSummary incoming = usage.stream()
+                .filter(summary -> summary.getCallType() == CdrRecord.INCOMING).findFirst().orElseThrow();
+        assertEquals(79990000002L, incoming.getMsisdn());
+        assertEquals(180, incoming.getTotalSeconds());
+    }
+
+    @Test
+    void sumSecondsBySubscriberRangeAndPeriod_sumOnlyNumbersOfRange() {
+        LocalDateTime startDate = LocalDateTime.of(2025, 1, 1, 0, 0);
+        LocalDateTime endDate = LocalDateTime.of(2025, 1, 31, 23, 59, 59);
+
+        List<CdrUsageSummary> callers = cdrRecordRepository.sumSecondsBySubscriberRangeAndPeriod(
+                79990000000L, 79990000001L, startDate, endDate);
+        assertEquals(1, callers.size());
+        assertEquals(79990000001L, callers.get(0).getMsisdn());
+        assertEquals(CdrRecord.OUTGOING, callers.get(0).getCallType());
+        assertEquals(360, callers.get(0).getTotalSeconds());
+
+        List<CdrUsageSummary> receivers = cdrRecordRepository.sumSecondsBySubscriberRangeAndPeriod(
+                79990000002L, 79990000009L, startDate, endDate);
+        assertEquals(1, receivers.size());
+        assertEquals(79990000002L, receivers.get(0).getMsisdn());
+        assertEquals(CdrRecord.INCOMING, receivers.get(0).getCallType());
+        assertEquals(180, receivers.get(0).getTotalSeconds());
+    }
+
+    @Test
+    void sumSecondsByMsisdnAndBuckets_groupByIntervalAndDirection() {
+        List<CdrUsageBucket> days = cdrRecordRepository.sumSecondsByMsisdnAndBuckets("79990000002", null, null, 86_400);
+        assertEquals(List.of(LocalDate.of(2025, 1, 15).toEpochDay(), LocalDate.of(2025, 2, 1).toEpochDay()),
+                days.stream().map(CdrUsageBucket::getBucket).sorted().toList());
+        assertTrue(days.stream().allMatch(bucket -> bucket.getCallType() == CdrRecord.INCOMING
+                && bucket.getTotalSeconds() == 180));
+
+        List<CdrUsageBucket> hours = cdrRecordRepository.sumSecondsByMsisdnAndBuckets("79990000001",
+                LocalDateTime.of(2025, 1, 1, 0, 0), LocalDateTime.of(2025, 1, 31, 23, 59, 59), 3600);
+        assertEquals(2, hours.size());
+        assertTrue(hours.stream().allMatch(bucket -> bucket.getCallType() == CdrRecord.OUTGOING));
+        assertTrue(hours.stream().anyMatch(bucket ->
+                bucket.getBucket() == CdrRecord.toEpochSecond(LocalDateTime.of(2025, 1, 31, 23, 0)) / 3600));
+    }
+
+    @Test
+    void streamReportRowsByMsisdnAndPeriod_mergeBothDirectionsOrderedByStartTime() {
+        CdrRecord incoming = createRecord("02", LocalDateTime.of(2025, 1, 10, 8, 0));
+        incoming.setCallerNumber("79990000002");
+        incoming.setReceiverNumber("79990000001");
+        cdrBulkWriter.write(List.of(incoming));
+
+        List<CdrReportRow> rows;
+        try (Stream<CdrReportRow> stream = cdrRecordRepository.streamReportRowsByMsisdnAndPeriod("79990000001",
+                LocalDateTime.of(2025, 1, 1, 0, 0), LocalDateTime.of(2025, 1, 31, 23, 59, 59))) {
+            rows = stream.toList();
+        }
+
+        assertEquals(3, rows.size());
+        assertEquals(CdrRecord.OUTGOING, rows.get(0).getCallType());
+        assertEquals(CdrRecord.INCOMING, rows.get(1).getCallType());
+        assertEquals(79990000002L, rows.get(1).getCallerNumber());
+        assertEquals(CdrRecord.toEpochSecond(LocalDateTime.of(2025, 1, 10, 8, 0)), rows.get(1).getStartTime());
+        assertEquals(180, rows.get(1).getDuration());
+        assertEquals(CdrRecord.OUTGOING, rows.get(2).getCallType());
+    }
+
+    @Test
+    void streamReportRowsByPeriod_returnCallsOfAllSubscribersOrderedByStartTime() {
+        List<CdrReportRow> rows;
+        try (Stream<CdrReportRow> stream = cdrRecordRepository.streamReportRowsByPeriod(
+                LocalDateTime.of(2024, 12, 31, 0, 0), LocalDateTime.of(2025, 1, 31, 23, 59, 59))) {
+            rows = stream.toList();
+        }
+
+        assertEquals(4, rows.size());
+        for (int i = 1; i < rows.size(); i++) {
+            assertTrue(rows.get(i - 1).getStartTime() <= rows.get(i).getStartTime());
+        }
+        assertEquals(CdrRecord.toEpochSecond(LocalDateTime.of(2024, 12, 31, 23, 59, 59)), rows.get(0).getStartTime());
+        assertEquals(CdrRecord.INCOMING, rows.get(2).getCallType());
+    }
+
+    @Test
+    void findLatestStartTime_returnLatestCallOfLastPartition() {
+        assertEquals(LocalDateTime.of(2025, 2, 1, 0, 0), cdrRecordRepository.findLatestStartTime().orElseThrow());
+    }
+
+    @Test
+    void deletePartition_removeOnlyCallsOfMonth() {
+        assertEquals(3, cdrRecordRepository.deletePartition(202501));
+
+        List<CdrPartitionSummary> partitions = cdrRecordRepository.findPartitionSummaries();
+        assertEquals(2, partitions.size());
+        assertEquals(202412, partitions.get(0).getPartitionKey());
+        assertEquals(1, partitions.get(0).getRecordCount());
+        assertEquals(202502, partitions.get(1).getPartitionKey());
+    }
+
+    private CdrRecord createRecord(String callType, LocalDateTime startTime) {
+        CdrRecord record = new CdrRecord();
+        record.setCallType(callType);
+        record.setCallerNumber("79990000001");
+        record.setReceiverNumber("79990000002");
+        record.setStartTime(startTime);
+        record.setEndTime(startTime.plusMinutes(3));
+        return record;
+    }
+}
@@ -0,0 +1,168 @@
+package com.abarigena.calldataservice.repositoryTest;
+
+import com.abarigena.calldataservice.config.CdrStorageProperties;
+import com.abarigena.calldataservice.store.entity.CdrRecord;
+import com.abarigena.calldataservice.store.entity.UdrMonthly;
+import com.abarigena.calldataservice.store.repository.CdrBulkWriter;
+import com.abarigena.calldataservice.store.repository.CdrPartitionSummary;
+import com.abarigena.calldataservice.store.repository.CdrPartitionTotals;
+import com.abarigena.calldataservice.store.repository.CdrRecordRepository;
+import com.abarigena.calldataservice.store.repository.UdrMonthlyRepository;
+import com.abarigena.calldataservice.store.repository.UdrMonthlyWriter;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = "cdr.storage.chunk-size=2")
+@Import({CdrBulkWriter.class, UdrMonthlyWriter.class})
+@EnableConfigurationProperties(CdrStorageProperties.class)
+class UdrMonthlyWriterTest {
+
+    @Autowired
+    private CdrBulkWriter cdrBulkWriter;
+
+    @Autowired
+    private UdrMonthlyWriter udrMonthlyWriter;
+
+    @Autowired
+    private UdrMonthlyRepository udrMonthlyRepository;
+
+    @Autowired
+    private CdrRecordRepository cdrRecordRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void write_addCallsToMonthlyTotalsOfOwners() {
+        writeCalls();
+
+        UdrMonthly caller = udrMonthlyRepository.findById(new UdrMonthly.Key(79990000001L, 202501)).orElseThrow();
+        assertEquals(150, caller.getOutgoingSeconds());
+        assertEquals(2, caller.getOutgoingCalls());
+        assertEquals(40, caller.getIncomingSeconds());
+        assertEquals(1, caller.getIncomingCalls());
+
+        // Абонент 79990000002 только принимал исходящие и совершал входящие звонки, их владелец - 79990000001
+        assertTrue(udrMonthlyRepository.findById(new UdrMonthly.Key(79990000002L, 202501)).isEmpty());
+        assertTrue(udrMonthlyRepository.findById(new UdrMonthly.Key(79990000001L, 202502)).isPresent());
+
+        assertEquals(1, udrMonthlyRepository.findByPartitionAndMsisdnRange(202501, 79990000001L, 79990000001L)
+                .size());
+        List<CdrPartitionSummary> summaries = udrMonthlyRepository.findPartitionSummaries();
+        assertEquals(2, summaries.size());
+        assertEquals(3, summaries.get(0).getRecordCount());
+
+        // Итоги партиции совпадают с CDR-записями и по количеству, и по длительности звонков
+        CdrPartitionTotals records = cdrRecordRepository.findPartitionTotals().get(0);
+        CdrPartitionTotals calls = udrMonthlyRepository.findPartitionTotals().get(0);
+        assertEquals(202501, calls.getPartitionKey());
+        assertEquals(records.getRecordCount(), calls.getRecordCount());
+        assertEquals(190, calls.getDurationSeconds());
+        assertEquals(records.getDurationSeconds(), calls.getDurationSeconds());
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void rebuildPartition_recountTotalsFromCdrRecords() {
+        try {
+            writeCalls();
+            udrMonthlyRepository.deletePartition(202501);
+
+            assertEquals(1, udrMonthlyWriter.rebuildPartition(202501));
+
+            UdrMonthly caller = udrMonthlyRepository.findById(new UdrMonthly.Key(79990000001L, 202501))
+                    .orElseThrow();
+            assertEquals(150, caller.getOutgoingSeconds());
+            assertEquals(40, caller.getIncomingSeconds());
+            assertEquals(3, caller.getIncomingCalls() + caller.getOutgoingCalls());
+            assertEquals(1, udrMonthlyRepository.findByPartition(202501).size());
+        } finally {
+            deleteAll();
+        }
+    }
+
+    @Test
+    void rebuildPartition_rejectMonthChangedByCurrentTransaction() {
+        writeCalls();
+
+        assertThrows(IllegalStateException.class, () -> udrMonthlyWriter.rebuildPartition(202501));
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void write_addConcurrentChunksToSameTotalsRow() throws Exception {
+        int writers = 4;
+        int chunksPerWriter = 10;
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                int writer = w;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < chunksPerWriter; i++) {
+                        // Чанки разных потоков обновляют одну и ту же строку итогов
+                        LocalDateTime start = LocalDateTime.of(2030, 6, 1 + writer, 10, i);
+                        cdrBulkWriter.write(List.of(
+                                createRecord("01", "79990000001", "79990000002", start, 10),
+                                createRecord("02", "79990000003", "79990000001", start.plusSeconds(30), 5)));
+                    }
+                    // Пересчет месяца идет параллельно с записью и не теряет звонки
+                    udrMonthlyWriter.rebuildPartition(203006);
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+
+            UdrMonthly totals = udrMonthlyRepository.findById(new UdrMonthly.Key(79990000001L, 203006))
+                    .orElseThrow();
+            assertEquals(writers * chunksPerWriter * 10L, totals.getOutgoingSeconds());
+            assertEquals(writers * chunksPerWriter * 5L, totals.getIncomingSeconds());
+            assertEquals(writers * chunksPerWriter, totals.getOutgoingCalls());
+        } finally {
+            executor.shutdownNow();
+            deleteAll();
+        }
+    }
+
+    // Записи тестов без транзакции теста фиксируются и удаляются вручную
+    private void deleteAll() {
+        jdbcTemplate.update("DELETE FROM udr_monthly");
+        jdbcTemplate.update("DELETE FROM cdr_records");
+    }
+
+    private void writeCalls() {
+        cdrBulkWriter.write(List.of(
+                createRecord("01", "79990000001", "79990000002", LocalDateTime.of(2025, 1, 5, 10, 0), 100),
+                createRecord("01", "79990000001", "79990000003", LocalDateTime.of(2025, 1, 31, 23, 59), 50),
+                createRecord("02", "79990000002", "79990000001", LocalDateTime.of(2025, 1, 6, 10, 0), 40),
+                createRecord("01", "79990000001", "79990000002", LocalDateTime.of(2025, 2, 1, 0, 0), 10)));
+    }
+
+    private static CdrRecord createRecord(String callType, String caller, String receiver,
+                                          LocalDateTime startTime, int durationSeconds) {
+        CdrRecord record = new CdrRecord();
+        record.setCallType(callType);
+        record.setCallerNumber(caller);
+        record.setReceiverNumber(receiver);
+        record.setStartTime(startTime);
+        record.setEndTime(startTime.plusSeconds(durationSeconds));
+        return record;
+    }
+}
@@ -0,0 +1,162 @@
+package com.abarigena.calldataservice.serviceTest;
+
+import com.abarigena.calldataservice.service.CdrBatchReportWriter;
+import com.abarigena.calldataservice.service.CdrReportWriter;
+import com.abarigena.calldataservice.store.entity.CdrRecord;
+import com.abarigena.calldataservice.store.repository.CdrReportRow;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CdrBatchReportWriterTest {
+
+    private static final long FIRST_MSISDN = 79990000000L;
+    private static final int SUBSCRIBERS = 40;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void write_produceSameReportsAsSingleWritersWithSmallOpenFilePool() throws IOException {
+        List<String> msisdns = new ArrayList<>();
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            msisdns.add(Long.toString(FIRST_MSISDN + i));
+        }
+        Map<Long, ByteArrayOutputStream> expectedOutputs = new HashMap<>();
+        Map<Long, CdrReportWriter> expectedWriters = new HashMap<>();
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            expectedOutputs.put(FIRST_MSISDN + i, output);
+            expectedWriters.put(FIRST_MSISDN + i, new CdrReportWriter(Channels.newChannel(output)));
+        }
+
+        SplittableRandom random = new SplittableRandom(42);
+        long startTime = CdrRecord.toEpochSecond(LocalDateTime.of(2025, 1, 1, 0, 0));
+        long skipped = 0;
+        try (CdrBatchReportWriter writer = new CdrBatchReportWriter(directory, msisdns, 256, 8, 3)) {
+            for (int i = 0; i < 20_000; i++) {
+                byte callType = random.nextBoolean() ? CdrRecord.OUTGOING : CdrRecord.INCOMING;
+                // Часть номеров не входит в пакет, и их звонки должны пропускаться
+                long caller = FIRST_MSISDN + random.nextInt(SUBSCRIBERS + 5);
+                long receiver = FIRST_MSISDN + random.nextInt(SUBSCRIBERS + 5);
+                long owner = callType == CdrRecord.OUTGOING ? caller : receiver;
+                startTime += random.nextInt(600);
+                int duration = random.nextInt(3600);
+
+                boolean written = writer.write(row(callType, caller, receiver, startTime, duration));
+
+                CdrReportWriter expected = expectedWriters.get(owner);
+                assertEquals(expected != null, written);
+                if (expected != null) {
+                    expected.write(callType, caller, receiver, startTime, duration);
+                } else {
+                    skipped++;
+                }
+            }
+            assertEquals(skipped, writer.getRowsSkipped());
+            assertTrue(writer.getFilesOpened() > SUBSCRIBERS);
+            assertEquals(8, writer.getBufferCount());
+        }
+
+        for (CdrReportWriter expected : expectedWriters.values()) {
+            expected.close();
+        }
+        for (Map.Entry<Long, ByteArrayOutputStream> entry : expectedOutputs.entrySet()) {
+            Path file = directory.resolve(CdrBatchReportWriter.fileNameOf(entry.getKey()));
+            assertArrayEquals(entry.getValue().toByteArray(), Files.readAllBytes(file), file.toString());
+        }
+    }
+
+    @Test
+    void write_keepBufferCountBoundedWithManySubscribers() throws IOException {
+        int subscribers = 5_000;
+        int maxBuffers = 16;
+        List<String> msisdns = new ArrayList<>();
+        for (int i = 0; i < subscribers; i++) {
+            msisdns.add(Long.toString(FIRST_MSISDN + i));
+        }
+
+        SplittableRandom random = new SplittableRandom(7);
+        long[] expectedLines = new long[subscribers];
+        try (CdrBatchReportWriter writer = new CdrBatchReportWriter(directory, msisdns, 1024, maxBuffers, 4)) {
+            for (int i = 0; i < 50_000; i++) {
+                int owner = random.nextInt(subscribers);
+                writer.write(row(CdrRecord.OUTGOING, FIRST_MSISDN + owner, FIRST_MSISDN + 1, i, 60));
+                expectedLines[owner]++;
+                // Память пакета не растет с количеством абонентов, у которых есть звонки
+                assertTrue(writer.getBufferCount() <= maxBuffers);
+            }
+        }
+
+        for (int i = 0; i < subscribers; i++) {
+            Path file = directory.resolve(CdrBatchReportWriter.fileNameOf(FIRST_MSISDN + i));
+            assertEquals(expectedLines[i], Files.readAllLines(file).size(), file.toString());
+        }
+    }
+
+    @Test
+    void close_createEmptyReportsForSubscribersWithoutCalls() throws IOException {
+        try (CdrBatchReportWriter writer = new CdrBatchReportWriter(directory,
+                List.of("79990000002", "79990000001"), 1024, 1, 1)) {
+            writer.write(row(CdrRecord.OUTGOING, 79990000002L, 79990000001L, 0, 60));
+            assertFalse(writer.write(row(CdrRecord.OUTGOING, 79990000003L, 79990000001L, 0, 60)));
+            assertEquals(1, writer.getRowsWritten());
+        }
+
+        assertEquals(1, Files.readAllLines(directory.resolve("79990000002.csv")).size());
+        assertEquals(0, Files.size(directory.resolve("79990000001.csv")));
+    }
+
+    @Test
+    void constructor_rejectInvalidMsisdn() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new CdrBatchReportWriter(directory, List.of("7999000000A"), 1024, 1, 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> new CdrBatchReportWriter(directory, List.of("79990000001", "79990000001"), 1024, 1, 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> new CdrBatchReportWriter(directory, List.of("79990000001"), 1024, 0, 1));
+    }
+
+    private static CdrReportRow row(
+            byte callType, long callerNumber, long receiverNumber, long startTime, int duration) {
+        return new CdrReportRow() {
+            @Override
+            public byte getCallType() {
+                return callType;
+            }
+
+            @Override
+            public long getCallerNumber() {
+                return callerNumber;
+            }
+
+            @Override
+            public long getReceiverNumber() {
+                return receiverNumber;
+            }
+
+            @Override
+            public long getStartTime() {
+                return startTime;
+            }
+
+            @Override
+            public int getDuration() {
+                return duration;
+            }
+        };
+    }
+}
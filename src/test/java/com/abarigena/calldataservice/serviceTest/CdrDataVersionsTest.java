@@ -0,0 +1,71 @@
+package com.abarigena.calldataservice.serviceTest;
+
+import com.abarigena.calldataservice.service.CdrDataVersions;
+import com.abarigena.calldataservice.store.repository.CdrRecordsChangedEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CdrDataVersionsTest {
+
+    private final CdrDataVersions dataVersions = new CdrDataVersions();
+
+    @Test
+    void onCdrRecordsChanged_changeOnlyVersionsOfAffectedMonths() {
+        CdrDataVersions.Version january = dataVersions.forMonth(2025, 1);
+        CdrDataVersions.Version february = dataVersions.forMonth(2025, 2);
+        CdrDataVersions.Version march = dataVersions.forMonth(2025, 3);
+        CdrDataVersions.Version allTime = dataVersions.forAllTime();
+
+        dataVersions.onCdrRecordsChanged(new CdrRecordsChangedEvent(202501, 202502));
+
+        assertNotEquals(january, dataVersions.forMonth(2025, 1));
+        assertNotEquals(february, dataVersions.forMonth(2025, 2));
+        assertEquals(march, dataVersions.forMonth(2025, 3));
+        assertNotEquals(allTime, dataVersions.forAllTime());
+        assertEquals(dataVersions.forMonth(2025, 1), dataVersions.forMonth(2025, 1));
+    }
+
+    @Test
+    void onCdrRecordsChanged_changeAllMonthsAfterClear() {
+        dataVersions.onCdrRecordsChanged(CdrRecordsChangedEvent.of(202501));
+        CdrDataVersions.Version january = dataVersions.forMonth(2025, 1);
+        CdrDataVersions.Version december = dataVersions.forMonth(2030, 12);
+
+        dataVersions.onCdrRecordsChanged(CdrRecordsChangedEvent.all());
+
+        assertNotEquals(january, dataVersions.forMonth(2025, 1));
+        assertNotEquals(december, dataVersions.forMonth(2030, 12));
+        assertTrue(dataVersions.forMonth(2025, 1).lastModified() >= january.lastModified());
+    }
+
+    @Test
+    void forPeriod_changeWhenAnyMonthOfPeriodChanges() {
+        LocalDateTime start = LocalDateTime.of(2025, 1, 20, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2025, 2, 10, 0, 0);
+        CdrDataVersions.Version period = dataVersions.forPeriod(start, end);
+
+        dataVersions.onCdrRecordsChanged(CdrRecordsChangedEvent.of(202503));
+        assertEquals(period, dataVersions.forPeriod(start, end));
+
+        dataVersions.onCdrRecordsChanged(CdrRecordsChangedEvent.of(202502));
+        assertNotEquals(period, dataVersions.forPeriod(start, end));
+        assertEquals(dataVersions.forMonth(2025, 2), dataVersions.forPeriod(start, end));
+    }
+
+    @Test
+    void version_combineSourcesIntoQuotedETag() {
+        CdrDataVersions.Version version = new CdrDataVersions.Version("boot-1", 1000).and(3, 2000);
+
+        assertEquals("\"boot-1-3\"", version.eTag());
+        assertEquals(2000, version.lastModified());
+    }
+
+    @Test
+    void forMonth_rejectInvalidMonth() {
+        assertThrows(DateTimeException.class, () -> dataVersions.forMonth(2025, 13));
+    }
+}
@@ -0,0 +1,169 @@
+package com.abarigena.calldataservice.serviceTest;
+
+import com.abarigena.calldataservice.dto.CdrImportResult;
+import com.abarigena.calldataservice.service.CdrFileParser;
+import com.abarigena.calldataservice.store.entity.CdrRecord;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CdrFileParserTest {
+
+    private final List<List<CdrRecord>> batches = new ArrayList<>();
+
+    @Test
+    void parse_readValidRecords() throws IOException {
+        String content = """
+                01,79990000001,79990000002,2025-01-01T10:15:30,2025-01-01T10:20:00
+                02,79990000003,79990000001,2025-01-02T23:59:00.5,2025-01-03T00:01:00
+                01,79990000001,79990000003,2025-01-03T08:00,2025-01-03T08:01:00
+                """;
+
+        CdrImportResult result = parse(content, 2);
+
+        assertEquals(3, result.getRecordsImported());
+        assertEquals(0, result.getRecordsRejected());
+        assertEquals(2, batches.size());
+
+        CdrRecord first = batches.get(0).get(0);
+        assertEquals("01", first.getCallType());
+        assertEquals("79990000001", first.getCallerNumber());
+        assertEquals("79990000002", first.getReceiverNumber());
+        assertEquals(LocalDateTime.of(2025, 1, 1, 10, 15, 30), first.getStartTime());
+        assertEquals(LocalDateTime.of(2025, 1, 1, 10, 20, 0), first.getEndTime());
+
+        CdrRecord second = batches.get(0).get(1);
+        assertEquals(LocalDateTime.of(2025, 1, 2, 23, 59, 0), second.getStartTime());
+        assertEquals(120, second.getDurationSeconds());
+        assertEquals(first.getCallerMsisdn(), second.getReceiverMsisdn());
+
+        CdrRecord third = batches.get(1).get(0);
+        assertEquals(LocalDateTime.of(2025, 1, 3, 8, 0), third.getStartTime());
+    }
+
+    @Test
+    void parse_rejectInvalidRows() throws IOException {
+        String content = "03,79990000001,79990000002,2025-01-01T10:15:30,2025-01-01T10:20:00\n" +
+                "01,7999000000A,79990000002,2025-01-01T10:15:30,2025-01-01T10:20:00\n" +
+                "01,79990000001,79990000001,2025-01-01T10:15:30,2025-01-01T10:20:00\n" +
+                "01,79990000001,79990000002,2025-02-30T10:15:30,2025-02-30T10:20:00\n" +
+                "01,79990000001,79990000002,2025-01-01T10:15:30,2025-01-01T10:10:00\n" +
+                "01,79990000001,79990000002,2025-01-01T10:15:30\n" +
+                "\n" +
+                "02,79990000002,79990000001,2025-01-01T11:00:00,2025-01-01T11:05:00\r\n";
+
+        CdrImportResult result = parse(content, 100);
+
+        assertEquals(1, result.getRecordsImported());
+        assertEquals(6, result.getRecordsRejected());
+        assertEquals(6, result.getErrors().size());
+        assertTrue(result.getErrors().get(0).startsWith("Строка 1"));
+        assertTrue(result.getErrors().get(5).startsWith("Строка 6"));
+    }
+
+    @Test
+    void parse_convertDateTimeToEpochSecondLikeLocalDateTime() throws IOException {
+        List<String> dates = List.of("1970-01-01T00:00", "1969-12-31T23:59:59", "0000-03-01T00:00:00",
+                "1600-02-29T06:30", "2000-02-29T12:00:00", "2024-02-29T23:59:59.999", "2100-03-01T00:00",
+                "9999-12-31T23:59:59");
+        StringBuilder content = new StringBuilder();
+        for (String date : dates) {
+            content.append("01,79990000001,79990000002,").append(date).append(',').append(date).append('\n');
+        }
+        // Несуществующие даты и время отклоняются
+        content.append("01,79990000001,79990000002,2100-02-29T00:00,2100-03-01T00:00\n")
+                .append("01,79990000001,79990000002,2025-13-01T00:00,2025-13-01T00:00\n")
+                .append("01,79990000001,79990000002,2025-01-01T24:00,2025-01-01T24:00\n")
+                .append("01,79990000001,79990000002,2025-01-01T10:00:60,2025-01-01T10:01:00\n");
+
+        CdrImportResult result = parse(content.toString(), 100);
+
+        assertEquals(dates.size(), result.getRecordsImported());
+        assertEquals(4, result.getRecordsRejected());
+        for (int i = 0; i < dates.size(); i++) {
+            long expected = CdrRecord.toEpochSecond(LocalDateTime.parse(dates.get(i)));
+            assertEquals(expected, batches.get(0).get(i).getStartEpochSecond(), dates.get(i));
+        }
+    }
+
+    @Test
+    void parse_handleLinesSplitBetweenReadsAndMissingTrailingNewline() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            content.append("01,7999").append(String.format("%07d", i + 1)).append(",79990000000,")
+                    .append("2025-01-01T10:15:30,2025-01-01T10:20:00\n");
+        }
+        content.append("02,79990000001,79990000002,2025-01-01T10:15:30,2025-01-01T10:20:00");
+
+        CdrImportResult result = parse(new TrickleChannel(content.toString(), 777), 1000);
+
+        assertEquals(5001, result.getRecordsImported());
+        assertEquals(0, result.getRecordsRejected());
+        assertEquals("79990005000", batches.get(4).get(999).getCallerNumber());
+    }
+
+    @Test
+    void parse_rejectTooLongLine() throws IOException {
+        String content = "01," + "1".repeat(70_000) + "\n" +
+                "01,79990000001,79990000002,2025-01-01T10:15:30,2025-01-01T10:20:00\n";
+
+        CdrImportResult result = parse(content, 100);
+
+        assertEquals(1, result.getRecordsImported());
+        assertEquals(1, result.getRecordsRejected());
+    }
+
+    private CdrImportResult parse(String content, int batchSize) throws IOException {
+        InputStream input = new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+        return new CdrFileParser(batchSize, 10).parse(Channels.newChannel(input), batches::add);
+    }
+
+    private CdrImportResult parse(ReadableByteChannel channel, int batchSize) throws IOException {
+        return new CdrFileParser(batchSize, 10).parse(channel, batches::add);
+    }
+
+    /**
+     * Канал, отдающий данные небольшими порциями, чтобы строки разрывались между чтениями.
+     */
+    private static class TrickleChannel implements ReadableByteChannel {
+        private final ByteBuffer data;
+        private final int chunkSize;
+
+        TrickleChannel(String content, int chunkSize) {
+            this.data = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public int read(ByteBuffer target) {
+            if (!data.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(Math.min(chunkSize, target.remaining()), data.remaining());
+            ByteBuffer slice = data.slice(data.position(), count);
+            target.put(slice);
+            data.position(data.position() + count);
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -1,24 +1,34 @@
 package com.abarigena.calldataservice.serviceTest;
 
+import com.abarigena.calldataservice.config.CdrGeneratorProperties;
 import com.abarigena.calldataservice.service.CdrGeneratorService;
+import com.abarigena.calldataservice.service.GenerationProgress;
+import com.abarigena.calldataservice.service.SubscriberDirectory;
+import com.abarigena.calldataservice.service.UdrRollupService;
 import com.abarigena.calldataservice.store.entity.CdrRecord;
 import com.abarigena.calldataservice.store.entity.Subscriber;
+import com.abarigena.calldataservice.store.repository.CdrBulkWriter;
 import com.abarigena.calldataservice.store.repository.CdrRecordRepository;
+import com.abarigena.calldataservice.store.repository.CdrRecordsChangedEvent;
 import com.abarigena.calldataservice.store.repository.SubscriberRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
-import org.mockito.InjectMocks;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -26,10 +36,18 @@ public class CdrGeneratorServiceTest {
     @Mock
     private CdrRecordRepository cdrRecordRepository;
 
+    @Mock
+    private CdrBulkWriter cdrBulkWriter;
+
     @Mock
     private SubscriberRepository subscriberRepository;
 
-    @InjectMocks
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private UdrRollupService udrRollupService;
+
     private CdrGeneratorService cdrGeneratorService;
 
     @Captor
@@ -39,6 +57,9 @@ public class CdrGeneratorServiceTest {
 
     @BeforeEach
     void setUp() {
+        cdrGeneratorService = new CdrGeneratorService(cdrRecordRepository, cdrBulkWriter,
+                new SubscriberDirectory(subscriberRepository), createProperties(), eventPublisher, udrRollupService);
+
         subscribers = new ArrayList<>();
         for (int i = 1; i <= 3; i++) {
             Subscriber subscriber = new Subscriber();
@@ -48,31 +69,45 @@ public class CdrGeneratorServiceTest {
     }
 
     @Test
-    void clearCdrRecords_сallDeleteAll() {
+    void clearCdrRecords_truncateRecordsAndTotalsBeforeEvent() {
         cdrGeneratorService.clearCdrRecords();
 
-        verify(cdrRecordRepository, times(1)).deleteAll();
+        InOrder inOrder = inOrder(udrRollupService, eventPublisher);
+        inOrder.verify(udrRollupService).truncate();
+        inOrder.verify(eventPublisher).publishEvent(CdrRecordsChangedEvent.all());
+        verify(cdrRecordRepository, never()).deleteAll();
+    }
+
+    @Test
+    void findFirstMissingDay_returnDayAfterLatestCall() {
+        when(cdrRecordRepository.findLatestStartTime())
+                .thenReturn(Optional.of(LocalDateTime.of(2025, 3, 10, 23, 59, 59)));
+
+        assertEquals(LocalDate.of(2025, 3, 11), cdrGeneratorService.findFirstMissingDay(LocalDate.of(2025, 1, 1)));
     }
 
     @Test
-    void generateYearCdrRecords_throwExceptionWhenNoSubscribers() {
-        when(subscriberRepository.findAll()).thenReturn(new ArrayList<>());
+    void findFirstMissingDay_returnDefaultDayWhenNoCalls() {
+        when(cdrRecordRepository.findLatestStartTime()).thenReturn(Optional.empty());
+
+        assertEquals(LocalDate.of(2025, 1, 1), cdrGeneratorService.findFirstMissingDay(LocalDate.of(2025, 1, 1)));
+    }
 
+    @Test
+    void generateCdrRecords_throwExceptionWhenNoSubscribers() {
         Exception exception = assertThrows(IllegalStateException.class,
-                () -> cdrGeneratorService.generateYearCdrRecords());
+                () -> generateYear(List.of()));
         assertEquals("Пользователи не найдены", exception.getMessage());
     }
 
     @Test
-    void generateYearCdrRecords_generateAndSaveRecords() {
+    void generateCdrRecords_generateAndSaveRecords() {
         when(subscriberRepository.findAll()).thenReturn(subscribers);
-        when(cdrRecordRepository.saveAll(any())).thenReturn(new ArrayList<>());
 
-        cdrGeneratorService.generateYearCdrRecords();
+        generateYear(msisdns());
 
-        verify(cdrRecordRepository, times(1)).deleteAll();
-
-        verify(cdrRecordRepository, atLeastOnce()).saveAll(cdrRecordsCaptor.capture());
+        verify(udrRollupService, never()).truncate();
+        verify(cdrBulkWriter, atLeastOnce()).write(cdrRecordsCaptor.capture());
 
         List<List<CdrRecord>> allSavedRecords = cdrRecordsCaptor.getAllValues();
         assertFalse(allSavedRecords.isEmpty());
@@ -89,4 +124,54 @@ public class CdrGeneratorServiceTest {
             }
         }
     }
+
+    @Test
+    void generateCdrRecords_sameSeedProducesSameRecords() {
+        when(subscriberRepository.findAll()).thenReturn(subscribers);
+
+        generateYear(msisdns());
+        generateYear(msisdns());
+
+        verify(cdrBulkWriter, atLeastOnce()).write(cdrRecordsCaptor.capture());
+        List<String> allRecords = cdrRecordsCaptor.getAllValues().stream()
+                .flatMap(List::stream)
+                .map(record -> record.getCallType() + "," + record.getCallerNumber() + ","
+                        + record.getReceiverNumber() + "," + record.getStartTime() + "," + record.getEndTime())
+                .sorted()
+                .toList();
+
+        // Каждая запись должна встречаться ровно дважды - по одной в каждом запуске
+        assertEquals(0, allRecords.size() % 2);
+        assertTrue(allRecords.stream()
+                .collect(Collectors.groupingBy(line -> line, Collectors.counting()))
+                .values().stream()
+                .allMatch(count -> count % 2 == 0));
+    }
+
+    private void generateYear(List<String> msisdns) {
+        cdrGeneratorService.generateCdrRecords(LocalDate.of(2025, 1, 1), LocalDate.of(2026, 1, 1), msisdns,
+                mock(GenerationProgress.class));
+    }
+
+    private List<String> msisdns() {
+        return subscribers.stream().map(Subscriber::getMsisdn).toList();
+    }
+
+    private static CdrGeneratorProperties createProperties() {
+        CdrGeneratorProperties properties = new CdrGeneratorProperties();
+        properties.setSeed(42L);
+        properties.setParallelism(4);
+        properties.setDaysPerShard(30);
+        properties.setBatchSize(100);
+        return properties;
+    }
+
+    @Test
+    void generateCdrRecords_loadSubscribersOnce() {
+        when(subscriberRepository.findAll()).thenReturn(subscribers);
+
+        generateYear(msisdns());
+
+        verify(subscriberRepository, times(1)).findAll();
+    }
 }
@@ -0,0 +1,63 @@
+package com.abarigena.calldataservice.serviceTest;
+
+import com.abarigena.calldataservice.dto.CdrPartitionInfo;
+import com.abarigena.calldataservice.service.CdrPartitionService;
+import com.abarigena.calldataservice.store.repository.CdrPartitionSummary;
+import com.abarigena.calldataservice.store.repository.CdrRecordRepository;
+import com.abarigena.calldataservice.store.repository.CdrRecordsChangedEvent;
+import com.abarigena.calldataservice.store.repository.UdrMonthlyRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class CdrPartitionServiceTest {
+
+    @Mock
+    private CdrRecordRepository cdrRecordRepository;
+
+    @Mock
+    private UdrMonthlyRepository udrMonthlyRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @InjectMocks
+    private CdrPartitionService cdrPartitionService;
+
+    @Test
+    void getPartitions_convertPartitionKeysToMonths() {
+        CdrPartitionSummary summary = mock(CdrPartitionSummary.class);
+        when(summary.getPartitionKey()).thenReturn(202501);
+        when(summary.getRecordCount()).thenReturn(42L);
+        when(cdrRecordRepository.findPartitionSummaries()).thenReturn(List.of(summary));
+
+        List<CdrPartitionInfo> partitions = cdrPartitionService.getPartitions();
+
+        assertEquals(1, partitions.size());
+        assertEquals("2025-01", partitions.get(0).getMonth());
+        assertEquals(42, partitions.get(0).getRecords());
+    }
+
+    @Test
+    void dropPartition_deleteCallsOfMonth() {
+        when(cdrRecordRepository.deletePartition(202412)).thenReturn(7);
+
+        CdrPartitionInfo dropped = cdrPartitionService.dropPartition(YearMonth.of(2024, 12));
+
+        assertEquals("2024-12", dropped.getMonth());
+        assertEquals(7, dropped.getRecords());
+        verify(cdrRecordRepository).deletePartition(202412);
+        verify(udrMonthlyRepository).deletePartition(202412);
+        verify(eventPublisher).publishEvent(CdrRecordsChangedEvent.of(202412));
+    }
+}
@@ -0,0 +1,75 @@
+package com.abarigena.calldataservice.serviceTest;
+
+import com.abarigena.calldataservice.service.CdrReportCache;
+import com.abarigena.calldataservice.store.repository.CdrRecordsChangedEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CdrReportCacheTest {
+
+    private final CdrReportCache.Key january = key("79990000001", 1);
+    private final CdrReportCache.Key february = key("79990000001", 2);
+    private final CdrReportCache.Key march = key("79990000002", 3);
+
+    @Test
+    void put_evictLeastRecentlyUsedWhenEntryLimitExceeded() {
+        CdrReportCache<String> cache = new CdrReportCache<>(2, 1000);
+        cache.put(january, "january", 10);
+        cache.put(february, "february", 10);
+        cache.get(january);
+
+        cache.put(march, "march", 10);
+
+        assertEquals("january", cache.get(january));
+        assertNull(cache.get(february));
+        assertEquals("march", cache.get(march));
+        assertEquals(20, cache.getTotalBytes());
+    }
+
+    @Test
+    void put_evictUntilTotalSizeFits() {
+        CdrReportCache<String> cache = new CdrReportCache<>(10, 100);
+        cache.put(january, "january", 40);
+        cache.put(february, "february", 40);
+
+        cache.put(march, "march", 70);
+
+        assertEquals(1, cache.size());
+        assertEquals("march", cache.get(march));
+        assertEquals(70, cache.getTotalBytes());
+    }
+
+    @Test
+    void put_skipReportLargerThanCache() {
+        CdrReportCache<String> cache = new CdrReportCache<>(10, 100);
+        cache.put(january, "january", 40);
+
+        cache.put(february, "february", 101);
+
+        assertNull(cache.get(february));
+        assertEquals("january", cache.get(january));
+    }
+
+    @Test
+    void invalidate_removeOnlyReportsOverlappingChangedPartitions() {
+        CdrReportCache<String> cache = new CdrReportCache<>(10, 1000);
+        cache.put(january, "january", 10);
+        cache.put(february, "february", 10);
+        cache.put(march, "march", 10);
+
+        assertEquals(1, cache.invalidate(CdrRecordsChangedEvent.of(202502)));
+        assertNull(cache.get(february));
+        assertEquals(2, cache.size());
+
+        assertEquals(2, cache.invalidate(CdrRecordsChangedEvent.all()));
+        assertEquals(0, cache.getTotalBytes());
+    }
+
+    private static CdrReportCache.Key key(String msisdn, int month) {
+        LocalDateTime start = LocalDateTime.of(2025, month, 1, 0, 0);
+        return new CdrReportCache.Key(msisdn, start, start.plusMonths(1).minusSeconds(1), false);
+    }
+}
@@ -0,0 +1,69 @@
+package com.abarigena.calldataservice.serviceTest;
+
+import com.abarigena.calldataservice.config.CdrReportProperties;
+import com.abarigena.calldataservice.service.CdrReportCompressor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CdrReportCompressorTest {
+
+    private final CdrReportCompressor compressor = new CdrReportCompressor(new CdrReportProperties());
+
+    @AfterEach
+    void tearDown() {
+        compressor.shutdown();
+    }
+
+    @Test
+    void compress_writeValidGzipAndCountSizes() throws IOException {
+        byte[] content = "01,79990000001,79990000002,2025-01-01T10:15:30,2025-01-01T10:20:00\n"
+                .repeat(5000).getBytes(StandardCharsets.US_ASCII);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CdrReportCompressor.GzipChannel channel = compressor.compress(Channels.newChannel(output));
+        // Данные передаются частями, как их сбрасывает писатель отчета
+        for (int offset = 0; offset < content.length; offset += 4096) {
+            channel.write(ByteBuffer.wrap(content, offset, Math.min(4096, content.length - offset)));
+        }
+        channel.close();
+
+        assertArrayEquals(content, decompress(output.toByteArray()));
+        assertEquals(content.length, channel.getUncompressedBytes());
+        assertEquals(output.size(), channel.getCompressedBytes());
+        assertTrue(channel.getCompressedBytes() * 10 < channel.getUncompressedBytes());
+    }
+
+    @Test
+    void compress_reuseDeflaterBetweenReports() throws IOException {
+        byte[] first = "первый отчет\n".repeat(100).getBytes(StandardCharsets.UTF_8);
+        byte[] second = "второй\n".getBytes(StandardCharsets.UTF_8);
+
+        assertArrayEquals(first, decompress(compress(first)));
+        assertArrayEquals(second, decompress(compress(second)));
+        assertArrayEquals(new byte[0], decompress(compress(new byte[0])));
+    }
+
+    private byte[] compress(byte[] content) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (CdrReportCompressor.GzipChannel channel = compressor.compress(Channels.newChannel(output))) {
+            channel.write(ByteBuffer.wrap(content));
+        }
+        return output.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] compressed) throws IOException {
+        try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return input.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.abarigena.calldataservice.serviceTest;
+
+import com.abarigena.calldataservice.config.CdrReportProperties;
+import com.abarigena.calldataservice.dto.ReportExecutorStats;
+import com.abarigena.calldataservice.dto.ReportPriority;
+import com.abarigena.calldataservice.service.CdrReportExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CdrReportExecutorTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch started = new CountDownLatch(1);
+    private CdrReportExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        CdrReportProperties properties = new CdrReportProperties();
+        properties.setParallelism(1);
+        properties.setQueueCapacity(3);
+        executor = new CdrReportExecutor(properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    void execute_runQueuedReportsByPriorityThenArrival() throws InterruptedException {
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch finished = new CountDownLatch(3);
+        blockWorker();
+
+        executor.execute(ReportPriority.LOW, () -> complete(order, "low", finished));
+        executor.execute(ReportPriority.NORMAL, () -> complete(order, "normal", finished));
+        executor.execute(ReportPriority.HIGH, () -> complete(order, "high", finished));
+        release.countDown();
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("high", "normal", "low"), order);
+    }
+
+    @Test
+    void execute_rejectWhenQueueIsFull() throws InterruptedException {
+        blockWorker();
+        for (int i = 0; i < 3; i++) {
+            executor.execute(ReportPriority.NORMAL, () -> {
+            });
+        }
+
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(ReportPriority.HIGH, () -> {
+        }));
+
+        ReportExecutorStats stats = executor.getStats();
+        assertEquals(1, stats.getParallelism());
+        assertEquals(3, stats.getQueueCapacity());
+        assertEquals(3, stats.getQueueDepth());
+        assertEquals(1, stats.getActiveJobs());
+        assertEquals(1, stats.getRejectedJobs());
+    }
+
+    /**
+     * Занимает единственный поток пула, чтобы следующие отчеты остались в очереди.
+     */
+    private void blockWorker() throws InterruptedException {
+        executor.execute(ReportPriority.NORMAL, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    private static void complete(List<String> order, String name, CountDownLatch finished) {
+        order.add(name);
+        finished.countDown();
+    }
+}
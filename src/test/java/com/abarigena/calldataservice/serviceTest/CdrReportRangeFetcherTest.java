@@ -0,0 +1,173 @@
+package com.abarigena.calldataservice.serviceTest;
+
+import com.abarigena.calldataservice.config.CdrReportProperties;
+import com.abarigena.calldataservice.service.CdrReportRangeFetcher;
+import com.abarigena.calldataservice.service.CdrReportWriter;
+import com.abarigena.calldataservice.store.entity.CdrRecord;
+import com.abarigena.calldataservice.store.repository.CdrRecordRepository;
+import com.abarigena.calldataservice.store.repository.CdrReportRow;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CdrReportRangeFetcherTest {
+
+    private static final String MSISDN = "79990000001";
+
+    @Mock
+    private CdrRecordRepository cdrRecordRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private CdrReportRangeFetcher rangeFetcher;
+
+    @BeforeEach
+    void setUp() {
+        CdrReportProperties properties = new CdrReportProperties();
+        properties.setFetchParallelism(4);
+        rangeFetcher = new CdrReportRangeFetcher(cdrRecordRepository, transactionManager, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        rangeFetcher.shutdown();
+    }
+
+    @Test
+    void splitByMonth_alignInnerRangesWithMonths() {
+        List<LocalDateTime[]> ranges = CdrReportRangeFetcher.splitByMonth(
+                LocalDateTime.of(2025, 1, 15, 10, 0), LocalDateTime.of(2025, 3, 10, 12, 0));
+
+        assertEquals(3, ranges.size());
+        assertEquals(LocalDateTime.of(2025, 1, 15, 10, 0), ranges.get(0)[0]);
+        assertEquals(LocalDateTime.of(2025, 1, 31, 23, 59, 59), ranges.get(0)[1]);
+        assertEquals(LocalDateTime.of(2025, 2, 1, 0, 0), ranges.get(1)[0]);
+        assertEquals(LocalDateTime.of(2025, 2, 28, 23, 59, 59), ranges.get(1)[1]);
+        assertEquals(LocalDateTime.of(2025, 3, 1, 0, 0), ranges.get(2)[0]);
+        assertEquals(LocalDateTime.of(2025, 3, 10, 12, 0), ranges.get(2)[1]);
+    }
+
+    @Test
+    void isSplit_onlyForBoundedPeriodLongerThanMonth() {
+        assertTrue(rangeFetcher.isSplit(LocalDateTime.of(2025, 1, 31, 0, 0), LocalDateTime.of(2025, 2, 1, 0, 0)));
+        assertFalse(rangeFetcher.isSplit(LocalDateTime.of(2025, 1, 1, 0, 0), LocalDateTime.of(2025, 1, 31, 0, 0)));
+        assertFalse(rangeFetcher.isSplit(null, LocalDateTime.of(2025, 2, 1, 0, 0)));
+        assertFalse(rangeFetcher.isSplit(LocalDateTime.of(2025, 1, 1, 0, 0), null));
+
+        CdrReportProperties properties = new CdrReportProperties();
+        properties.setFetchParallelism(1);
+        CdrReportRangeFetcher sequential = new CdrReportRangeFetcher(cdrRecordRepository, transactionManager,
+                properties);
+        assertFalse(sequential.isSplit(LocalDateTime.of(2025, 1, 1, 0, 0), LocalDateTime.of(2025, 12, 31, 0, 0)));
+        sequential.shutdown();
+    }
+
+    @Test
+    void writeRows_mergeMonthsInOrderWhenLaterMonthsFinishFirst() throws IOException {
+        LocalDateTime startDate = LocalDateTime.of(2025, 1, 1, 0, 0);
+        LocalDateTime endDate = LocalDateTime.of(2025, 12, 31, 23, 59, 59);
+        when(cdrRecordRepository.streamReportRowsByMsisdnAndPeriod(eq(MSISDN), any(), any()))
+                .thenAnswer(invocation -> {
+                    LocalDateTime monthStart = invocation.getArgument(1);
+                    // Ранние месяцы читаются дольше, чтобы части завершались не по порядку
+                    TimeUnit.MILLISECONDS.sleep(5L * (12 - monthStart.getMonthValue()));
+                    return monthRows(monthStart).stream();
+                });
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        List<Long> progress = new ArrayList<>();
+        long written;
+        try (CdrReportWriter writer = new CdrReportWriter(Channels.newChannel(actual))) {
+            written = rangeFetcher.writeRows(MSISDN, startDate, endDate, writer, progress::add);
+        }
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (CdrReportWriter writer = new CdrReportWriter(Channels.newChannel(expected))) {
+            for (int month = 1; month <= 12; month++) {
+                for (CdrReportRow row : monthRows(LocalDateTime.of(2025, month, 1, 0, 0))) {
+                    writer.write(row);
+                }
+            }
+        }
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(12 * 3, written);
+        assertEquals(12, progress.size());
+        assertEquals(written, progress.get(11));
+        verify(cdrRecordRepository, times(12)).streamReportRowsByMsisdnAndPeriod(eq(MSISDN), any(), any());
+    }
+
+    @Test
+    void writeRows_propagateReadError() {
+        when(cdrRecordRepository.streamReportRowsByMsisdnAndPeriod(eq(MSISDN), any(), any()))
+                .thenAnswer(invocation -> {
+                    LocalDateTime monthStart = invocation.getArgument(1);
+                    if (monthStart.getMonthValue() == 3) {
+                        throw new IllegalStateException("База данных недоступна");
+                    }
+                    return Stream.empty();
+                });
+
+        CdrReportWriter writer = new CdrReportWriter(Channels.newChannel(new ByteArrayOutputStream()));
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> rangeFetcher.writeRows(
+                MSISDN, LocalDateTime.of(2025, 1, 1, 0, 0), LocalDateTime.of(2025, 6, 30, 0, 0), writer, null));
+        assertEquals("База данных недоступна", error.getMessage());
+    }
+
+    private static List<CdrReportRow> monthRows(LocalDateTime monthStart) {
+        List<CdrReportRow> rows = new ArrayList<>();
+        long start = CdrRecord.toEpochSecond(monthStart);
+        for (int i = 0; i < 3; i++) {
+            long startTime = start + 86_400L * i;
+            byte callType = i % 2 == 0 ? CdrRecord.OUTGOING : CdrRecord.INCOMING;
+            rows.add(new CdrReportRow() {
+                @Override
+                public byte getCallType() {
+                    return callType;
+                }
+
+                @Override
+                public long getCallerNumber() {
+                    return 79990000001L;
+                }
+
+                @Override
+                public long getReceiverNumber() {
+                    return 79990000002L;
+                }
+
+                @Override
+                public long getStartTime() {
+                    return startTime;
+                }
+
+                @Override
+                public int getDuration() {
+                    return 60;
+                }
+            });
+        }
+        return rows;
+    }
+}
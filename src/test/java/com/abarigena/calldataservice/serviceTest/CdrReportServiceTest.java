@@ -1,24 +1,49 @@
 package com.abarigena.calldataservice.serviceTest;
 
+import com.abarigena.calldataservice.config.CdrReportProperties;
+import com.abarigena.calldataservice.dto.CdrBatchReportRequest;
 import com.abarigena.calldataservice.dto.CdrReportResponse;
+import com.abarigena.calldataservice.dto.CdrReportStatus;
 import com.abarigena.calldataservice.dto.CdrReportsRequest;
+import com.abarigena.calldataservice.dto.JobStatus;
+import com.abarigena.calldataservice.dto.ReportPriority;
+import com.abarigena.calldataservice.service.CdrReportCompressor;
+import com.abarigena.calldataservice.service.CdrReportExecutor;
+import com.abarigena.calldataservice.service.CdrReportRangeFetcher;
 import com.abarigena.calldataservice.service.CdrReportService;
+import com.abarigena.calldataservice.service.SubscriberDirectory;
 import com.abarigena.calldataservice.store.entity.CdrRecord;
 import com.abarigena.calldataservice.store.repository.CdrRecordRepository;
+import com.abarigena.calldataservice.store.repository.CdrRecordsChangedEvent;
+import com.abarigena.calldataservice.store.repository.CdrReportRow;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.FileSystemUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -28,7 +53,14 @@ class CdrReportServiceTest {
     @Mock
     private CdrRecordRepository cdrRecordRepository;
 
-    @InjectMocks
+    @Mock
+    private SubscriberDirectory subscriberDirectory;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private CdrReportExecutor cdrReportExecutor;
+    private CdrReportRangeFetcher rangeFetcher;
     private CdrReportService cdrReportService;
 
     private CdrReportsRequest validRequest;
@@ -38,6 +70,12 @@ class CdrReportServiceTest {
 
     @BeforeEach
     public void setUp() {
+        CdrReportProperties properties = new CdrReportProperties();
+        cdrReportExecutor = new CdrReportExecutor(properties);
+        rangeFetcher = new CdrReportRangeFetcher(cdrRecordRepository, transactionManager, properties);
+        cdrReportService = new CdrReportService(cdrRecordRepository, subscriberDirectory, transactionManager,
+                cdrReportExecutor, new CdrReportCompressor(properties), rangeFetcher, properties);
+
         validRequest = new CdrReportsRequest();
         validRequest.setMsisdn(testMsisdn);
         validRequest.setStartDate(startDate);
@@ -65,35 +103,282 @@ class CdrReportServiceTest {
         assertNotNull(response.getErrorMessage());
     }
 
+    @AfterEach
+    void tearDown() {
+        cdrReportExecutor.shutdown();
+        rangeFetcher.shutdown();
+    }
+
     @Test
-    void generateReport_retrieveCallsFromRepository() throws InterruptedException {
-        List<CdrRecord> incomingCalls = createTestCdrRecords(3, "02");
-        List<CdrRecord> outgoingCalls = createTestCdrRecords(2, "01");
+    void generateReport_withFullQueue_returnRejectedResponse() {
+        CdrReportProperties properties = new CdrReportProperties();
+        properties.setParallelism(1);
+        properties.setQueueCapacity(0);
+        CdrReportExecutor fullExecutor = new CdrReportExecutor(properties);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            fullExecutor.execute(ReportPriority.NORMAL, () -> awaitQuietly(release));
+            CdrReportService service = new CdrReportService(cdrRecordRepository, subscriberDirectory,
+                    transactionManager, fullExecutor, new CdrReportCompressor(properties), rangeFetcher, properties);
 
-        when(cdrRecordRepository.findIncomingCallsByMsisdnAndPeriod(eq(testMsisdn), eq(startDate), eq(endDate)))
-                .thenReturn(incomingCalls);
-        when(cdrRecordRepository.findOutgoingCallsByMsisdnAndPeriod(eq(testMsisdn), eq(startDate), eq(endDate)))
-                .thenReturn(outgoingCalls);
+            CdrReportResponse response = service.generateReport(validRequest);
+
+            assertEquals("REJECTED", response.getStatus());
+            assertNotNull(response.getErrorMessage());
+            assertEquals(1, fullExecutor.getStats().getRejectedJobs());
+        } finally {
+            release.countDown();
+            fullExecutor.shutdown();
+        }
+    }
+
+    @Test
+    void generateReport_streamCallsFromRepository() throws InterruptedException {
+        List<CdrReportRow> calls = createTestRows(5);
+
+        when(cdrRecordRepository.streamReportRowsByMsisdnAndPeriod(eq(testMsisdn), eq(startDate), eq(endDate)))
+                .thenReturn(calls.stream());
 
         cdrReportService.generateReport(validRequest);
 
         TimeUnit.MILLISECONDS.sleep(500);
 
-        verify(cdrRecordRepository).findIncomingCallsByMsisdnAndPeriod(testMsisdn, startDate, endDate);
-        verify(cdrRecordRepository).findOutgoingCallsByMsisdnAndPeriod(testMsisdn, startDate, endDate);
+        verify(cdrRecordRepository).streamReportRowsByMsisdnAndPeriod(testMsisdn, startDate, endDate);
+        verify(cdrRecordRepository, never()).findIncomingCallsByMsisdnAndPeriod(any(), any(), any());
+        verify(cdrRecordRepository, never()).findOutgoingCallsByMsisdnAndPeriod(any(), any(), any());
+    }
+
+    @Test
+    void getStatus_reportDoneWithRowCountAndFile() throws Exception {
+        when(cdrRecordRepository.streamReportRowsByMsisdnAndPeriod(eq(testMsisdn), eq(startDate), eq(endDate)))
+                .thenReturn(createTestRows(4).stream());
+
+        CdrReportResponse response = cdrReportService.generateReport(validRequest);
+        CdrReportStatus status = awaitFinished(response.getRequestId());
+
+        assertEquals(JobStatus.DONE, status.getStatus());
+        assertEquals(4, status.getRowsWritten());
+        assertNotNull(status.getRunMillis());
+        Path file = cdrReportService.getReportFile(response.getRequestId()).orElseThrow();
+        try {
+            assertEquals(Files.size(file), status.getFileSize());
+            assertEquals(status.getFileSize(), status.getUncompressedSize());
+            assertEquals(4, Files.readAllLines(file).size());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void getStatus_reportCompressedAndUncompressedSizes() throws Exception {
+        when(cdrRecordRepository.streamReportRowsByMsisdnAndPeriod(eq(testMsisdn), eq(startDate), eq(endDate)))
+                .thenReturn(createTestRows(50).stream());
+        validRequest.setCompress(true);
+
+        CdrReportResponse response = cdrReportService.generateReport(validRequest);
+        CdrReportStatus status = awaitFinished(response.getRequestId());
+
+        assertEquals(JobStatus.DONE, status.getStatus());
+        assertTrue(status.isCompressed());
+        assertTrue(status.getFileName().endsWith(".csv.gz"));
+        Path file = cdrReportService.getReportFile(response.getRequestId()).orElseThrow();
+        try (GZIPInputStream input = new GZIPInputStream(Files.newInputStream(file))) {
+            byte[] content = input.readAllBytes();
+            assertEquals(content.length, status.getUncompressedSize());
+            assertEquals(Files.size(file), status.getFileSize());
+            assertTrue(status.getFileSize() < status.getUncompressedSize());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void getStatus_reportFailedWithoutFile() throws Exception {
+        when(cdrRecordRepository.streamReportRowsByMsisdnAndPeriod(eq(testMsisdn), eq(startDate), eq(endDate)))
+                .thenThrow(new IllegalStateException("База данных недоступна"));
+
+        CdrReportResponse response = cdrReportService.generateReport(validRequest);
+        CdrReportStatus status = awaitFinished(response.getRequestId());
+
+        assertEquals(JobStatus.FAILED, status.getStatus());
+        assertEquals("База данных недоступна", status.getErrorMessage());
+        assertTrue(cdrReportService.getReportFile(response.getRequestId()).isEmpty());
+    }
+
+    @Test
+    void generateReport_coalesceIdenticalRequestsInFlight() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(cdrRecordRepository.streamReportRowsByMsisdnAndPeriod(eq(testMsisdn), eq(startDate), eq(endDate)))
+                .thenAnswer(invocation -> {
+                    release.await(5, TimeUnit.SECONDS);
+                    return createTestRows(2).stream();
+                });
+
+        CdrReportResponse first = cdrReportService.generateReport(validRequest);
+        CdrReportResponse second = cdrReportService.generateReport(validRequest);
+        release.countDown();
+
+        assertEquals(first.getRequestId(), second.getRequestId());
+        assertEquals(JobStatus.DONE, awaitFinished(first.getRequestId()).getStatus());
+        verify(cdrRecordRepository, times(1)).streamReportRowsByMsisdnAndPeriod(testMsisdn, startDate, endDate);
+        Files.deleteIfExists(cdrReportService.getReportFile(first.getRequestId()).orElseThrow());
+    }
+
+    @Test
+    void generateReport_reuseCachedReportUntilPeriodChanges() throws Exception {
+        when(cdrRecordRepository.streamReportRowsByMsisdnAndPeriod(eq(testMsisdn), eq(startDate), eq(endDate)))
+                .thenAnswer(invocation -> createTestRows(2).stream());
+
+        CdrReportResponse first = cdrReportService.generateReport(validRequest);
+        awaitFinished(first.getRequestId());
+        CdrReportResponse cached = cdrReportService.generateReport(validRequest);
+
+        assertEquals(first.getRequestId(), cached.getRequestId());
+        verify(cdrRecordRepository, times(1)).streamReportRowsByMsisdnAndPeriod(testMsisdn, startDate, endDate);
+
+        cdrReportService.onCdrRecordsChanged(CdrRecordsChangedEvent.of(202301));
+        CdrReportResponse regenerated = cdrReportService.generateReport(validRequest);
+        awaitFinished(regenerated.getRequestId());
+
+        assertNotEquals(first.getRequestId(), regenerated.getRequestId());
+        verify(cdrRecordRepository, times(2)).streamReportRowsByMsisdnAndPeriod(testMsisdn, startDate, endDate);
+        Files.deleteIfExists(cdrReportService.getReportFile(first.getRequestId()).orElseThrow());
+        Files.deleteIfExists(cdrReportService.getReportFile(regenerated.getRequestId()).orElseThrow());
     }
 
-    private List<CdrRecord> createTestCdrRecords(int count, String callType) {
-        List<CdrRecord> records = new ArrayList<>();
+    @Test
+    void generateBatchReport_writeEachCallToReportOfItsSubscriber() throws Exception {
+        String otherMsisdn = "79990000002";
+        when(subscriberDirectory.contains(any())).thenReturn(true);
+        long start = CdrRecord.toEpochSecond(startDate);
+        when(cdrRecordRepository.streamReportRowsByPeriod(startDate, endDate)).thenAnswer(invocation -> Stream.of(
+                createRow(CdrRecord.OUTGOING, 79991234567L, 79990000002L, start),
+                createRow(CdrRecord.INCOMING, 79990000003L, 79990000002L, start + 60),
+                createRow(CdrRecord.OUTGOING, 79990000003L, 79991234567L, start + 120),
+                createRow(CdrRecord.INCOMING, 79990000002L, 79991234567L, start + 180)));
+
+        CdrBatchReportRequest request = new CdrBatchReportRequest();
+        request.setMsisdns(List.of(testMsisdn, otherMsisdn));
+        request.setStartDate(startDate);
+        request.setEndDate(endDate);
+        CdrReportResponse response = cdrReportService.generateBatchReport(request);
+        CdrReportStatus status = awaitFinished(response.getRequestId());
+
+        assertEquals(JobStatus.DONE, status.getStatus());
+        assertEquals(3, status.getRowsWritten());
+        Path testFile = cdrReportService.getReportFile(response.getRequestId(), testMsisdn).orElseThrow();
+        Path otherFile = cdrReportService.getReportFile(response.getRequestId(), otherMsisdn).orElseThrow();
+        assertEquals(2, Files.readAllLines(testFile).size());
+        assertEquals(1, Files.readAllLines(otherFile).size());
+        assertEquals(Files.size(testFile) + Files.size(otherFile), status.getFileSize());
+        assertTrue(cdrReportService.getReportFile(response.getRequestId(), "79990000003").isEmpty());
+        assertTrue(cdrReportService.getReportFile(response.getRequestId(), "../" + testMsisdn).isEmpty());
+        assertTrue(cdrReportService.getReportFile(response.getRequestId()).isEmpty());
+        FileSystemUtils.deleteRecursively(testFile.getParent());
+    }
+
+    @Test
+    void generateBatchReport_withUnknownSubscriber_returnErrorResponse() {
+        when(subscriberDirectory.contains("79990000009")).thenReturn(false);
+        CdrBatchReportRequest request = new CdrBatchReportRequest();
+        request.setMsisdns(List.of("79990000009"));
+
+        CdrReportResponse response = cdrReportService.generateBatchReport(request);
+
+        assertEquals("ERROR", response.getStatus());
+        verify(cdrRecordRepository, never()).streamReportRowsByPeriod(any(), any());
+    }
+
+    @Test
+    void getStatus_returnEmptyForUnknownRequest() {
+        assertTrue(cdrReportService.getStatus(UUID.randomUUID()).isEmpty());
+    }
+
+    @Test
+    void streamReport_writeRowsToOutput() throws Exception {
+        when(cdrRecordRepository.streamReportRowsByMsisdnAndPeriod(eq(testMsisdn), eq(startDate), eq(endDate)))
+                .thenReturn(createTestRows(3).stream());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        long written = cdrReportService.streamReport(validRequest, output, false);
+
+        assertEquals(3, written);
+        String[] lines = output.toString(StandardCharsets.US_ASCII).split(System.lineSeparator());
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("02,79991000000,79992000000,"));
+    }
+
+    @Test
+    void streamReport_compressOutputWithGzip() throws Exception {
+        when(cdrRecordRepository.streamReportRowsByMsisdnAndPeriod(eq(testMsisdn), eq(startDate), eq(endDate)))
+                .thenReturn(createTestRows(3).stream(), createTestRows(3).stream());
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+        cdrReportService.streamReport(validRequest, plain, false);
+        cdrReportService.streamReport(validRequest, compressed, true);
+
+        try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            assertArrayEquals(plain.toByteArray(), input.readAllBytes());
+        }
+    }
+
+    private CdrReportStatus awaitFinished(UUID requestId) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            CdrReportStatus status = cdrReportService.getStatus(requestId).orElseThrow();
+            if (status.getStatus() == JobStatus.DONE || status.getStatus() == JobStatus.FAILED) {
+                return status;
+            }
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        fail("Генерация отчета не завершилась");
+        return null;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<CdrReportRow> createTestRows(int count) {
+        List<CdrReportRow> rows = new ArrayList<>();
+        long now = CdrRecord.toEpochSecond(LocalDateTime.now());
         for (int i = 0; i < count; i++) {
-            CdrRecord record = new CdrRecord();
-            record.setCallType(callType);
-            record.setCallerNumber("caller" + i);
-            record.setReceiverNumber("receiver" + i);
-            record.setStartTime(LocalDateTime.now().minusHours(i));
-            record.setEndTime(LocalDateTime.now().minusHours(i).plusMinutes(5));
-            records.add(record);
+            byte callType = i % 2 == 0 ? CdrRecord.INCOMING : CdrRecord.OUTGOING;
+            rows.add(createRow(callType, 79991000000L, 79992000000L, now - 3600L * (count - i)));
         }
-        return records;
+        return rows;
+    }
+
+    private static CdrReportRow createRow(byte callType, long callerNumber, long receiverNumber, long startTime) {
+        return new CdrReportRow() {
+            @Override
+            public byte getCallType() {
+                return callType;
+            }
+
+            @Override
+            public long getCallerNumber() {
+                return callerNumber;
+            }
+
+            @Override
+            public long getReceiverNumber() {
+                return receiverNumber;
+            }
+
+            @Override
+            public long getStartTime() {
+                return startTime;
+            }
+
+            @Override
+            public int getDuration() {
+                return 300;
+            }
+        };
     }
 }
@@ -0,0 +1,64 @@
+package com.abarigena.calldataservice.serviceTest;
+
+import com.abarigena.calldataservice.service.CdrReportWriter;
+import com.abarigena.calldataservice.store.entity.CdrRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CdrReportWriterTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void write_formatLinesAsIsoLocalDateTime() throws IOException {
+        Path file = directory.resolve("report.csv");
+        try (CdrReportWriter writer = new CdrReportWriter(file)) {
+            writer.write(CdrRecord.OUTGOING, 79990000001L, 79990000002L,
+                    CdrRecord.toEpochSecond(LocalDateTime.of(2024, 2, 29, 23, 59, 30)), 45);
+            writer.write(CdrRecord.INCOMING, 79990000003L, 79990000001L,
+                    CdrRecord.toEpochSecond(LocalDateTime.of(2025, 1, 1, 0, 0)), 0);
+            assertEquals(2, writer.getRowsWritten());
+        }
+
+        String separator = System.lineSeparator();
+        assertEquals("01,79990000001,79990000002,2024-02-29T23:59:30,2024-03-01T00:00:15" + separator +
+                "02,79990000003,79990000001,2025-01-01T00:00:00,2025-01-01T00:00:00" + separator,
+                Files.readString(file));
+    }
+
+    @Test
+    void write_matchStringFormatForManyRows() throws IOException {
+        Path file = directory.resolve("report.csv");
+        StringBuilder expected = new StringBuilder();
+        SplittableRandom random = new SplittableRandom(42);
+        long maxSecond = CdrRecord.toEpochSecond(LocalDateTime.of(9999, 12, 31, 0, 0));
+
+        try (CdrReportWriter writer = new CdrReportWriter(file)) {
+            for (int i = 0; i < 20_000; i++) {
+                byte callType = random.nextBoolean() ? CdrRecord.OUTGOING : CdrRecord.INCOMING;
+                long caller = random.nextLong(0, 100_000_000_000L);
+                long receiver = random.nextLong(0, 100_000_000_000L);
+                long startTime = random.nextLong(CdrRecord.toEpochSecond(LocalDateTime.of(1, 1, 1, 0, 0)), maxSecond);
+                int duration = random.nextInt(0, 86_400);
+                writer.write(callType, caller, receiver, startTime, duration);
+
+                expected.append(String.format("%s,%s,%s,%s,%s%n",
+                        callType == CdrRecord.OUTGOING ? "01" : "02", caller, receiver,
+                        CdrRecord.toLocalDateTime(startTime).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME),
+                        CdrRecord.toLocalDateTime(startTime + duration).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)));
+            }
+        }
+
+        assertEquals(expected.toString(), Files.readString(file));
+    }
+}
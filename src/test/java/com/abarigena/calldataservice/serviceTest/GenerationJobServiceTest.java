@@ -0,0 +1,179 @@
+package com.abarigena.calldataservice.serviceTest;
+
+import com.abarigena.calldataservice.dto.CdrGenerationRequest;
+import com.abarigena.calldataservice.dto.GenerationJobStatus;
+import com.abarigena.calldataservice.dto.JobStatus;
+import com.abarigena.calldataservice.service.CdrGeneratorService;
+import com.abarigena.calldataservice.service.GenerationJobService;
+import com.abarigena.calldataservice.service.GenerationProgress;
+import com.abarigena.calldataservice.service.SubscriberDirectory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class GenerationJobServiceTest {
+
+    @Mock
+    private CdrGeneratorService cdrGeneratorService;
+
+    @Mock
+    private SubscriberDirectory subscriberDirectory;
+
+    @InjectMocks
+    private GenerationJobService generationJobService;
+
+    private final List<String> subscribers = List.of("79990000001", "79990000002");
+
+    @AfterEach
+    void tearDown() {
+        generationJobService.shutdown();
+    }
+
+    @Test
+    void submit_runGenerationInBackground() throws InterruptedException {
+        when(subscriberDirectory.getMsisdns()).thenReturn(subscribers);
+        when(cdrGeneratorService.generateCdrRecords(any(), any(), eq(subscribers), any())).thenAnswer(invocation -> {
+            GenerationProgress progress = invocation.getArgument(3);
+            progress.onRecordsWritten(100);
+            return 100L;
+        });
+
+        GenerationJobStatus submitted = generationJobService.submit(new CdrGenerationRequest());
+        GenerationJobStatus finished = awaitFinished(submitted.getJobId());
+
+        assertEquals(JobStatus.DONE, finished.getStatus());
+        assertEquals(100, finished.getRecordsWritten());
+        assertNotNull(finished.getFinishedAt());
+        verify(cdrGeneratorService).clearCdrRecords();
+    }
+
+    @Test
+    void submit_useRequestedPeriodAndSubscribers() throws InterruptedException {
+        when(subscriberDirectory.contains("79990000002")).thenReturn(true);
+        CdrGenerationRequest request = new CdrGenerationRequest();
+        request.setStartDate(LocalDate.of(2025, 1, 1));
+        request.setEndDate(LocalDate.of(2025, 1, 31));
+        request.setMsisdns(List.of("79990000002"));
+        request.setAppend(true);
+
+        GenerationJobStatus submitted = generationJobService.submit(request);
+        awaitFinished(submitted.getJobId());
+
+        assertEquals(31 * 3, submitted.getEstimatedRecords());
+        verify(cdrGeneratorService).generateCdrRecords(eq(LocalDate.of(2025, 1, 1)), eq(LocalDate.of(2025, 2, 1)),
+                eq(List.of("79990000002")), any());
+        verify(cdrGeneratorService, never()).clearCdrRecords();
+    }
+
+    @Test
+    void submit_generateOnlyMissingDaysInIncrementalMode() throws InterruptedException {
+        when(subscriberDirectory.getMsisdns()).thenReturn(subscribers);
+        when(cdrGeneratorService.findFirstMissingDay(LocalDate.of(2025, 1, 1))).thenReturn(LocalDate.of(2025, 1, 20));
+        CdrGenerationRequest request = new CdrGenerationRequest();
+        request.setStartDate(LocalDate.of(2025, 1, 1));
+        request.setEndDate(LocalDate.of(2025, 1, 31));
+        request.setIncremental(true);
+
+        GenerationJobStatus finished = awaitFinished(generationJobService.submit(request).getJobId());
+
+        assertEquals(JobStatus.DONE, finished.getStatus());
+        assertEquals(12 * 2 * 3, finished.getEstimatedRecords());
+        verify(cdrGeneratorService).generateCdrRecords(eq(LocalDate.of(2025, 1, 20)), eq(LocalDate.of(2025, 2, 1)),
+                eq(subscribers), any());
+        verify(cdrGeneratorService, never()).clearCdrRecords();
+    }
+
+    @Test
+    void submit_skipGenerationWhenNoDaysAreMissing() throws InterruptedException {
+        when(subscriberDirectory.getMsisdns()).thenReturn(subscribers);
+        when(cdrGeneratorService.findFirstMissingDay(any())).thenReturn(LocalDate.now());
+        CdrGenerationRequest request = new CdrGenerationRequest();
+        request.setIncremental(true);
+
+        GenerationJobStatus finished = awaitFinished(generationJobService.submit(request).getJobId());
+
+        assertEquals(JobStatus.DONE, finished.getStatus());
+        verify(cdrGeneratorService, never()).generateCdrRecords(any(), any(), any(), any());
+    }
+
+    @Test
+    void submit_rejectUnknownSubscriber() {
+        when(subscriberDirectory.contains("70000000000")).thenReturn(false);
+        CdrGenerationRequest request = new CdrGenerationRequest();
+        request.setMsisdns(List.of("70000000000"));
+
+        assertThrows(IllegalArgumentException.class, () -> generationJobService.submit(request));
+    }
+
+    @Test
+    void submit_rejectSubscriberSubsetWithoutAppend() {
+        when(subscriberDirectory.contains("79990000002")).thenReturn(true);
+        CdrGenerationRequest request = new CdrGenerationRequest();
+        request.setMsisdns(List.of("79990000002"));
+
+        assertThrows(IllegalArgumentException.class, () -> generationJobService.submit(request));
+        verifyNoInteractions(cdrGeneratorService);
+    }
+
+    @Test
+    void submit_rejectInvertedPeriod() {
+        CdrGenerationRequest request = new CdrGenerationRequest();
+        request.setStartDate(LocalDate.of(2025, 2, 1));
+        request.setEndDate(LocalDate.of(2025, 1, 1));
+
+        assertThrows(IllegalArgumentException.class, () -> generationJobService.submit(request));
+    }
+
+    @Test
+    void cancel_stopRunningGeneration() throws InterruptedException {
+        when(subscriberDirectory.getMsisdns()).thenReturn(subscribers);
+        when(cdrGeneratorService.generateCdrRecords(any(), any(), any(), any())).thenAnswer(invocation -> {
+            GenerationProgress progress = invocation.getArgument(3);
+            while (!progress.isCancelled()) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            throw new CancellationException();
+        });
+
+        GenerationJobStatus submitted = generationJobService.submit(new CdrGenerationRequest());
+        while (generationJobService.getStatus(submitted.getJobId()).orElseThrow().getStatus() != JobStatus.RUNNING) {
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+        generationJobService.cancel(submitted.getJobId());
+
+        assertEquals(JobStatus.CANCELLED, awaitFinished(submitted.getJobId()).getStatus());
+    }
+
+    @Test
+    void getStatus_returnEmptyForUnknownJob() {
+        assertTrue(generationJobService.getStatus(UUID.randomUUID()).isEmpty());
+        assertTrue(generationJobService.cancel(UUID.randomUUID()).isEmpty());
+    }
+
+    private GenerationJobStatus awaitFinished(UUID jobId) throws InterruptedException {
+        for (int i = 0; i < 200; i++) {
+            GenerationJobStatus status = generationJobService.getStatus(jobId).orElseThrow();
+            if (status.getFinishedAt() != null) {
+                return status;
+            }
+            TimeUnit.MILLISECONDS.sleep(25);
+        }
+        fail("Задача генерации не завершилась");
+        return null;
+    }
+}
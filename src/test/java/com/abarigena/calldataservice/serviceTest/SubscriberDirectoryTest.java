@@ -0,0 +1,90 @@
+package com.abarigena.calldataservice.serviceTest;
+
+import com.abarigena.calldataservice.service.SubscriberDirectory;
+import com.abarigena.calldataservice.store.entity.Subscriber;
+import com.abarigena.calldataservice.store.repository.SubscriberRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SubscriberDirectoryTest {
+
+    @Mock
+    private SubscriberRepository subscriberRepository;
+
+    @InjectMocks
+    private SubscriberDirectory subscriberDirectory;
+
+    @Test
+    void getMsisdns_loadOnceAndSort() {
+        when(subscriberRepository.findAll()).thenReturn(List.of(
+                new Subscriber(1L, "79990000003"),
+                new Subscriber(2L, "79990000001"),
+                new Subscriber(3L, "79990000002")));
+
+        assertEquals(List.of("79990000001", "79990000002", "79990000003"), subscriberDirectory.getMsisdns());
+        assertEquals(1, subscriberDirectory.indexOf("79990000002"));
+        assertTrue(subscriberDirectory.contains("79990000003"));
+        assertFalse(subscriberDirectory.contains("79990000004"));
+
+        verify(subscriberRepository, times(1)).findAll();
+    }
+
+    @Test
+    void getMsisdnsAfter_returnPageFollowingNumber() {
+        when(subscriberRepository.findAll()).thenReturn(List.of(
+                new Subscriber(1L, "79990000001"),
+                new Subscriber(2L, "79990000002"),
+                new Subscriber(3L, "79990000004"),
+                new Subscriber(4L, "79990000005")));
+
+        assertEquals(List.of("79990000001", "79990000002"), subscriberDirectory.getMsisdnsAfter(null, 2));
+        assertEquals(List.of("79990000004", "79990000005"), subscriberDirectory.getMsisdnsAfter("79990000002", 10));
+        // Номер, которого нет в справочнике, продолжает страницы со следующего по порядку абонента
+        assertEquals(List.of("79990000004"), subscriberDirectory.getMsisdnsAfter("79990000003", 1));
+        assertEquals(List.of(), subscriberDirectory.getMsisdnsAfter("79990000005", Integer.MAX_VALUE));
+    }
+
+    @Test
+    void refresh_reloadSubscribers() {
+        when(subscriberRepository.findAll())
+                .thenReturn(List.of(new Subscriber(1L, "79990000001")))
+                .thenReturn(List.of(new Subscriber(1L, "79990000001"), new Subscriber(2L, "79990000002")));
+
+        assertEquals(1, subscriberDirectory.size());
+
+        subscriberDirectory.refresh();
+
+        assertEquals(2, subscriberDirectory.size());
+    }
+
+    @Test
+    void randomMsisdnExcluding_neverReturnExcluded() {
+        when(subscriberRepository.findAll()).thenReturn(List.of(
+                new Subscriber(1L, "79990000001"),
+                new Subscriber(2L, "79990000002"),
+                new Subscriber(3L, "79990000003")));
+        SplittableRandom random = new SplittableRandom(1);
+
+        for (int i = 0; i < 1000; i++) {
+            assertNotEquals("79990000002", subscriberDirectory.randomMsisdnExcluding("79990000002", random));
+        }
+    }
+
+    @Test
+    void randomMsisdnExcluding_throwExceptionWhenNoOtherSubscribers() {
+        when(subscriberRepository.findAll()).thenReturn(List.of(new Subscriber(1L, "79990000001")));
+
+        assertThrows(IllegalStateException.class,
+                () -> subscriberDirectory.randomMsisdnExcluding("79990000001", new SplittableRandom(1)));
+    }
+}
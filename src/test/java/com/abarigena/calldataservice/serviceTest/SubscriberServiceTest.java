@@ -1,5 +1,6 @@
 package com.abarigena.calldataservice.serviceTest;
 
+import com.abarigena.calldataservice.service.SubscriberDirectory;
 import com.abarigena.calldataservice.service.SubscriberService;
 import com.abarigena.calldataservice.store.entity.Subscriber;
 import com.abarigena.calldataservice.store.repository.SubscriberRepository;
@@ -22,6 +23,9 @@ public class SubscriberServiceTest {
     @Mock
     private SubscriberRepository subscriberRepository;
 
+    @Mock
+    private SubscriberDirectory subscriberDirectory;
+
     @InjectMocks
     private SubscriberService subscriberService;
 
@@ -37,6 +41,7 @@ public class SubscriberServiceTest {
         verify(subscriberRepository).saveAll(subscribersCaptor.capture());
         List<Subscriber> savedSubscribers = subscribersCaptor.getValue();
 
+        verify(subscriberDirectory).refresh();
         assertEquals(10, savedSubscribers.size());
         for (int i = 0; i < 10; i++) {
             String expectedMsisdn = "7999" + String.format("%07d", i + 1);
@@ -51,5 +56,6 @@ public class SubscriberServiceTest {
         subscriberService.initializeSubscribers();
 
         verify(subscriberRepository, never()).saveAll(any());
+        verify(subscriberDirectory, never()).refresh();
     }
 }
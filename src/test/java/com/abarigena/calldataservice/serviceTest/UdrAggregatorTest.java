@@ -0,0 +1,108 @@
+package com.abarigena.calldataservice.serviceTest;
+
+import com.abarigena.calldataservice.config.CdrUdrProperties;
+import com.abarigena.calldataservice.service.UdrAggregator;
+import com.abarigena.calldataservice.store.entity.CdrRecord;
+import com.abarigena.calldataservice.store.repository.CdrRecordRepository;
+import com.abarigena.calldataservice.store.repository.CdrUsageSummary;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UdrAggregatorTest {
+
+    private static final LocalDateTime START_DATE = LocalDateTime.of(2025, 1, 1, 0, 0);
+    private static final LocalDateTime END_DATE = LocalDateTime.of(2025, 1, 31, 23, 59, 59);
+
+    @Mock
+    private CdrRecordRepository cdrRecordRepository;
+
+    private UdrAggregator udrAggregator;
+
+    @BeforeEach
+    void setUp() {
+        CdrUdrProperties properties = new CdrUdrProperties();
+        properties.setParallelism(4);
+        udrAggregator = new UdrAggregator(cdrRecordRepository, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        udrAggregator.shutdown();
+    }
+
+    @Test
+    void aggregate_mergeSlicesCoveringWholePeriod() {
+        List<LocalDateTime[]> slices = Collections.synchronizedList(new ArrayList<>());
+        when(cdrRecordRepository.sumSecondsBySubscriberAndPeriod(any(), any())).thenAnswer(invocation -> {
+            slices.add(new LocalDateTime[]{invocation.getArgument(0), invocation.getArgument(1)});
+            // В каждой части у абонентов одинаковые суммы, поэтому итог - сумма, умноженная на число частей
+            return List.of(
+                    usage(79990000001L, CdrRecord.INCOMING, 60),
+                    usage(79990000001L, CdrRecord.OUTGOING, 30),
+                    usage(79990000002L, CdrRecord.OUTGOING, 10),
+                    usage(79995555555L, CdrRecord.INCOMING, 1000));
+        });
+
+        UdrAggregator.Totals totals = udrAggregator.aggregate(
+                List.of("79990000001", "79990000002", "79990000003"), START_DATE, END_DATE);
+
+        assertArrayEquals(new long[]{240, 0, 0}, totals.incomingSeconds());
+        assertArrayEquals(new long[]{120, 40, 0}, totals.outgoingSeconds());
+
+        assertEquals(4, slices.size());
+        slices.sort(Comparator.comparing(slice -> slice[0]));
+        assertEquals(START_DATE, slices.get(0)[0]);
+        assertEquals(END_DATE, slices.get(3)[1]);
+        for (int i = 1; i < slices.size(); i++) {
+            assertEquals(slices.get(i - 1)[1].plusSeconds(1), slices.get(i)[0]);
+        }
+    }
+
+    @Test
+    void aggregate_keepOrderOfRequestedNumbers() {
+        when(cdrRecordRepository.sumSecondsBySubscriberAndPeriod(any(), any())).thenReturn(List.of());
+        when(cdrRecordRepository.sumSecondsBySubscriberAndPeriod(START_DATE, CdrRecord.toLocalDateTime(
+                CdrRecord.toEpochSecond(START_DATE) + 31 * 86_400L / 4 - 1))).thenReturn(List.of(
+                usage(9L, CdrRecord.INCOMING, 9),
+                usage(10L, CdrRecord.INCOMING, 10)));
+
+        // Строковый порядок номеров отличается от числового
+        UdrAggregator.Totals totals = udrAggregator.aggregate(List.of("10", "9"), START_DATE, END_DATE);
+
+        assertArrayEquals(new long[]{10, 9}, totals.incomingSeconds());
+    }
+
+    private static CdrUsageSummary usage(long msisdn, byte callType, long totalSeconds) {
+        return new CdrUsageSummary() {
+            @Override
+            public long getMsisdn() {
+                return msisdn;
+            }
+
+            @Override
+            public byte getCallType() {
+                return callType;
+            }
+
+            @Override
+            public long getTotalSeconds() {
+                return totalSeconds;
+            }
+        };
+    }
+}
@@ -0,0 +1,92 @@
+package com.abarigena.calldataservice.serviceTest;
+
+import com.abarigena.calldataservice.dto.UdrCacheStats;
+import com.abarigena.calldataservice.service.UdrAggregator;
+import com.abarigena.calldataservice.service.UdrCache;
+import com.abarigena.calldataservice.store.repository.CdrRecordsChangedEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UdrCacheTest {
+
+    private final List<String> subscriber = List.of("79990000001");
+    private final UdrCache.Key january = new UdrCache.Key("79990000001", 2025, 1);
+    private final UdrCache.Key february = new UdrCache.Key("79990000001", 2025, 2);
+    private final UdrCache.Key march = UdrCache.Key.all(2025, 3);
+
+    @Test
+    void put_evictLeastRecentlyUsedWhenEntryLimitExceeded() {
+        UdrCache cache = new UdrCache(2, 10_000);
+        cache.put(january, subscriber, totals(1), cache.version());
+        cache.put(february, subscriber, totals(2), cache.version());
+        cache.get(january, subscriber);
+
+        cache.put(march, subscriber, totals(3), cache.version());
+
+        assertEquals(1, cache.get(january, subscriber).incomingSeconds()[0]);
+        assertNull(cache.get(february, subscriber));
+        assertEquals(3, cache.get(march, subscriber).incomingSeconds()[0]);
+
+        UdrCacheStats stats = cache.getStats();
+        assertEquals(2, stats.getEntries());
+        assertEquals(1, stats.getEvictions());
+        assertEquals(3, stats.getHits());
+        assertEquals(1, stats.getMisses());
+    }
+
+    @Test
+    void put_evictUntilEstimatedSizeFits() {
+        List<String> all = List.of("79990000001", "79990000002", "79990000003", "79990000004");
+        UdrCache cache = new UdrCache(10, 300);
+        cache.put(january, subscriber, totals(1), cache.version());
+
+        cache.put(march, all, new UdrAggregator.Totals(new long[4], new long[4]), cache.version());
+
+        assertNull(cache.get(january, subscriber));
+        assertNotNull(cache.get(march, all));
+        assertTrue(cache.getStats().getSizeBytes() <= 300);
+    }
+
+    @Test
+    void get_missWhenSubscribersChanged() {
+        UdrCache cache = new UdrCache(10, 10_000);
+        cache.put(march, List.of("79990000001"), totals(1), cache.version());
+
+        assertNull(cache.get(march, List.of("79990000001", "79990000002")));
+        assertNotNull(cache.get(march, List.of("79990000001")));
+    }
+
+    @Test
+    void put_skipTotalsComputedBeforeInvalidation() {
+        UdrCache cache = new UdrCache(10, 10_000);
+        long version = cache.version();
+
+        cache.invalidate(CdrRecordsChangedEvent.of(202501));
+        cache.put(january, subscriber, totals(1), version);
+
+        assertNull(cache.get(january, subscriber));
+    }
+
+    @Test
+    void invalidate_removeOnlyMonthsOfChangedPartitions() {
+        UdrCache cache = new UdrCache(10, 10_000);
+        cache.put(january, subscriber, totals(1), cache.version());
+        cache.put(february, subscriber, totals(2), cache.version());
+        cache.put(march, subscriber, totals(3), cache.version());
+
+        assertEquals(1, cache.invalidate(CdrRecordsChangedEvent.of(202502)));
+        assertNull(cache.get(february, subscriber));
+        assertEquals(2, cache.getStats().getEntries());
+
+        assertEquals(2, cache.invalidate(CdrRecordsChangedEvent.all()));
+        assertEquals(0, cache.getStats().getSizeBytes());
+        assertEquals(3, cache.getStats().getInvalidations());
+    }
+
+    private static UdrAggregator.Totals totals(long seconds) {
+        return new UdrAggregator.Totals(new long[]{seconds}, new long[]{seconds});
+    }
+}
@@ -0,0 +1,181 @@
+package com.abarigena.calldataservice.serviceTest;
+
+import com.abarigena.calldataservice.config.CdrUdrProperties;
+import com.abarigena.calldataservice.service.UdrDailyIndex;
+import com.abarigena.calldataservice.store.entity.CdrRecord;
+import com.abarigena.calldataservice.store.repository.CdrRecordRepository;
+import com.abarigena.calldataservice.store.repository.CdrRecordsChangedEvent;
+import com.abarigena.calldataservice.store.repository.CdrUsageBucket;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UdrDailyIndexTest {
+    @Mock
+    private CdrRecordRepository cdrRecordRepository;
+
+    private UdrDailyIndex udrDailyIndex;
+
+    private final String msisdn = "79990000001";
+    private final LocalDate firstDate = LocalDate.of(2025, 1, 10);
+    private final long firstDay = firstDate.toEpochDay();
+
+    @BeforeEach
+    void setUp() {
+        udrDailyIndex = new UdrDailyIndex(cdrRecordRepository, new CdrUdrProperties());
+    }
+
+    @Test
+    void sumDays_returnDifferenceOfCumulativeSums() {
+        stubDays(msisdn, List.of(
+                bucket(firstDay, CdrRecord.INCOMING, 100),
+                bucket(firstDay + 2, CdrRecord.OUTGOING, 50),
+                bucket(firstDay + 5, CdrRecord.INCOMING, 30)));
+
+        assertArrayEquals(new long[]{130, 50}, udrDailyIndex.sumDays(msisdn, firstDay, firstDay + 5));
+        assertArrayEquals(new long[]{0, 50}, udrDailyIndex.sumDays(msisdn, firstDay + 1, firstDay + 4));
+        assertArrayEquals(new long[]{130, 50}, udrDailyIndex.sumDays(msisdn, firstDay - 30, firstDay + 30));
+        assertArrayEquals(new long[]{0, 0}, udrDailyIndex.sumDays(msisdn, firstDay + 6, firstDay + 30));
+
+        long[][] daily = udrDailyIndex.dailySeconds(msisdn, firstDay - 1, firstDay + 2);
+        assertArrayEquals(new long[]{0, 100, 0, 0}, daily[0]);
+        assertArrayEquals(new long[]{0, 0, 0, 50}, daily[1]);
+
+        // Абонент читается из базы данных один раз
+        verify(cdrRecordRepository).sumSecondsByMsisdnAndBuckets(eq(msisdn), isNull(), isNull(), eq(86_400L));
+    }
+
+    @Test
+    void onCdrRecordsChanged_addInsertedCallsOfLoadedSubscribers() {
+        stubDays(msisdn, List.of(bucket(firstDay, CdrRecord.INCOMING, 100)));
+        udrDailyIndex.sumDays(msisdn, firstDay, firstDay);
+
+        udrDailyIndex.onCdrRecordsChanged(CdrRecordsChangedEvent.inserted(List.of(
+                createRecord("01", msisdn, "79990000002", firstDate.plusDays(3).atTime(10, 0), 60),
+                createRecord("02", "79990000002", msisdn, firstDate.minusDays(2).atTime(23, 0), 20),
+                createRecord("02", msisdn, "79990000002", firstDate.atTime(12, 0), 500),
+                createRecord("02", "79990000003", msisdn, firstDate.atTime(13, 0), 5))));
+
+        assertArrayEquals(new long[]{125, 60}, udrDailyIndex.sumDays(msisdn, firstDay - 2, firstDay + 3));
+        long[][] daily = udrDailyIndex.dailySeconds(msisdn, firstDay - 2, firstDay + 3);
+        assertArrayEquals(new long[]{20, 0, 105, 0, 0, 0}, daily[0]);
+        assertArrayEquals(new long[]{0, 0, 0, 0, 0, 60}, daily[1]);
+        assertEquals(1, udrDailyIndex.size());
+    }
+
+    @Test
+    void onCdrRecordsChanged_applyInsertedCallsOnlyAfterCommit() {
+        stubDays(msisdn, List.of(bucket(firstDay, CdrRecord.OUTGOING, 100)));
+        udrDailyIndex.sumDays(msisdn, firstDay, firstDay);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            udrDailyIndex.onCdrRecordsChanged(CdrRecordsChangedEvent.inserted(List.of(
+                    createRecord("01", msisdn, "79990000002", firstDate.atTime(10, 0), 60))));
+            udrDailyIndex.onCdrRecordsChanged(CdrRecordsChangedEvent.inserted(List.of(
+                    createRecord("01", msisdn, "79990000002", firstDate.atTime(11, 0), 7))));
+            assertArrayEquals(new long[]{0, 100}, udrDailyIndex.sumDays(msisdn, firstDay, firstDay));
+
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            synchronizations.get(0).afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            synchronizations.get(1).afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertArrayEquals(new long[]{0, 160}, udrDailyIndex.sumDays(msisdn, firstDay, firstDay));
+    }
+
+    @Test
+    void sumDays_notStoreSubscriberLoadedWhileCallsChanged() {
+        when(cdrRecordRepository.sumSecondsByMsisdnAndBuckets(eq(msisdn), isNull(), isNull(), eq(86_400L)))
+                .thenAnswer(invocation -> {
+                    // Звонок сохраняется во время чтения и может уже входить в прочитанные суммы
+                    udrDailyIndex.onCdrRecordsChanged(CdrRecordsChangedEvent.inserted(List.of(
+                            createRecord("01", msisdn, "79990000002", firstDate.atTime(10, 0), 60))));
+                    return List.of(bucket(firstDay, CdrRecord.OUTGOING, 60));
+                });
+
+        assertArrayEquals(new long[]{0, 60}, udrDailyIndex.sumDays(msisdn, firstDay, firstDay));
+        assertEquals(0, udrDailyIndex.size());
+    }
+
+    @Test
+    void onCdrRecordsChanged_evictOnlySubscribersWithCallsInChangedPartitions() {
+        long marchDay = LocalDate.of(2025, 3, 1).toEpochDay();
+        stubDays(msisdn, List.of(bucket(firstDay, CdrRecord.OUTGOING, 100), bucket(marchDay, CdrRecord.OUTGOING, 5)));
+        stubDays("79990000002", List.of(bucket(marchDay, CdrRecord.INCOMING, 40)));
+        stubDays("79990000003", List.of());
+
+        udrDailyIndex.sumDays(msisdn, firstDay, firstDay);
+        udrDailyIndex.sumDays("79990000002", marchDay, marchDay);
+        udrDailyIndex.sumDays("79990000003", firstDay, firstDay);
+        assertEquals(3, udrDailyIndex.size());
+
+        // В январе звонки есть только у первого абонента
+        udrDailyIndex.onCdrRecordsChanged(CdrRecordsChangedEvent.of(202501));
+        assertEquals(2, udrDailyIndex.size());
+
+        assertArrayEquals(new long[]{0, 100}, udrDailyIndex.sumDays(msisdn, firstDay, firstDay));
+        assertArrayEquals(new long[]{40, 0}, udrDailyIndex.sumDays("79990000002", marchDay, marchDay));
+        verify(cdrRecordRepository, times(2)).sumSecondsByMsisdnAndBuckets(eq(msisdn), isNull(), isNull(),
+                eq(86_400L));
+        verify(cdrRecordRepository, times(1)).sumSecondsByMsisdnAndBuckets(eq("79990000002"), isNull(), isNull(),
+                eq(86_400L));
+
+        udrDailyIndex.onCdrRecordsChanged(CdrRecordsChangedEvent.all());
+        assertEquals(1, udrDailyIndex.size());
+    }
+
+    private void stubDays(String subscriber, List<CdrUsageBucket> buckets) {
+        when(cdrRecordRepository.sumSecondsByMsisdnAndBuckets(eq(subscriber), isNull(), isNull(), eq(86_400L)))
+                .thenReturn(buckets);
+    }
+
+    private static CdrRecord createRecord(String callType, String caller, String receiver,
+                                          LocalDateTime startTime, int durationSeconds) {
+        CdrRecord record = new CdrRecord();
+        record.setCallType(callType);
+        record.setCallerNumber(caller);
+        record.setReceiverNumber(receiver);
+        record.setStartTime(startTime);
+        record.setEndTime(startTime.plusSeconds(durationSeconds));
+        return record;
+    }
+
+    private static CdrUsageBucket bucket(long bucket, byte callType, long totalSeconds) {
+        return new CdrUsageBucket() {
+            @Override
+            public long getBucket() {
+                return bucket;
+            }
+
+            @Override
+            public byte getCallType() {
+                return callType;
+            }
+
+            @Override
+            public long getTotalSeconds() {
+                return totalSeconds;
+            }
+        };
+    }
+}
@@ -0,0 +1,140 @@
+package com.abarigena.calldataservice.serviceTest;
+
+import com.abarigena.calldataservice.dto.CdrPartitionInfo;
+import com.abarigena.calldataservice.service.UdrRollupService;
+import com.abarigena.calldataservice.store.repository.CdrPartitionSummary;
+import com.abarigena.calldataservice.store.repository.CdrPartitionTotals;
+import com.abarigena.calldataservice.store.repository.CdrRecordRepository;
+import com.abarigena.calldataservice.store.repository.CdrRecordsChangedEvent;
+import com.abarigena.calldataservice.store.repository.UdrMonthlyRepository;
+import com.abarigena.calldataservice.store.repository.UdrMonthlyWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class UdrRollupServiceTest {
+
+    @Mock
+    private UdrMonthlyRepository udrMonthlyRepository;
+
+    @Mock
+    private UdrMonthlyWriter udrMonthlyWriter;
+
+    @Mock
+    private CdrRecordRepository cdrRecordRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @InjectMocks
+    private UdrRollupService udrRollupService;
+
+    @Test
+    void verify_rebuildOnlyMonthsNotMatchingCdrRecords() {
+        List<CdrPartitionTotals> records = List.of(totals(202501, 10, 600), totals(202502, 5, 300),
+                totals(202503, 7, 420), totals(202504, 4, 240));
+        // Февраль совпадает, в марте не хватает звонков, в апреле - секунд, январь отсутствует,
+        // за декабрь CDR-записей нет
+        List<CdrPartitionTotals> calls = List.of(totals(202412, 3, 180), totals(202502, 5, 300),
+                totals(202503, 6, 360), totals(202504, 4, 200));
+        when(cdrRecordRepository.findPartitionTotals()).thenReturn(records);
+        when(udrMonthlyRepository.findPartitionTotals()).thenReturn(calls);
+
+        assertFalse(udrRollupService.isReady());
+        udrRollupService.verify();
+
+        assertTrue(udrRollupService.isReady());
+        verify(udrMonthlyWriter).rebuildPartition(202412);
+        verify(udrMonthlyWriter).rebuildPartition(202501);
+        verify(udrMonthlyWriter).rebuildPartition(202503);
+        verify(udrMonthlyWriter).rebuildPartition(202504);
+        verify(udrMonthlyWriter, never()).rebuildPartition(202502);
+        verify(eventPublisher).publishEvent(CdrRecordsChangedEvent.of(202503));
+    }
+
+    @Test
+    void rebuild_recountRequestedMonth() {
+        List<CdrPartitionSummary> records = List.of(summary(202501, 10), summary(202502, 5));
+        when(cdrRecordRepository.findPartitionSummaries()).thenReturn(records);
+
+        List<CdrPartitionInfo> rebuilt = udrRollupService.rebuild(YearMonth.of(2025, 2));
+
+        assertEquals(1, rebuilt.size());
+        assertEquals("2025-02", rebuilt.get(0).getMonth());
+        assertEquals(5, rebuilt.get(0).getRecords());
+        verify(udrMonthlyWriter).rebuildPartition(202502);
+        verify(udrMonthlyWriter, never()).rebuildPartition(202501);
+        verify(eventPublisher).publishEvent(CdrRecordsChangedEvent.of(202502));
+    }
+
+    @Test
+    void rebuild_recountAllMonthsAndRemoveMonthsWithoutCdrRecords() {
+        List<CdrPartitionSummary> records = List.of(summary(202501, 10));
+        List<CdrPartitionSummary> calls = List.of(summary(202412, 3));
+        when(cdrRecordRepository.findPartitionSummaries()).thenReturn(records);
+        when(udrMonthlyRepository.findPartitionSummaries()).thenReturn(calls);
+
+        List<CdrPartitionInfo> rebuilt = udrRollupService.rebuild(null);
+
+        assertEquals(List.of("2024-12", "2025-01"), rebuilt.stream().map(CdrPartitionInfo::getMonth).toList());
+        assertEquals(0, rebuilt.get(0).getRecords());
+        verify(udrMonthlyWriter).rebuildPartition(202412);
+        verify(udrMonthlyWriter).rebuildPartition(202501);
+    }
+
+    @Test
+    void truncate_clearTotalsLastAndServeCdrRecordsMeanwhile() {
+        udrRollupService.verify();
+        doAnswer(invocation -> {
+            assertFalse(udrRollupService.isReady());
+            return null;
+        }).when(udrMonthlyRepository).truncate();
+
+        udrRollupService.truncate();
+
+        assertTrue(udrRollupService.isReady());
+        InOrder inOrder = inOrder(cdrRecordRepository, udrMonthlyRepository);
+        inOrder.verify(cdrRecordRepository).truncate();
+        inOrder.verify(udrMonthlyRepository).truncate();
+    }
+
+    @Test
+    void truncate_keepTotalsNotReadyUntilFullRebuildAfterFailure() {
+        udrRollupService.verify();
+        doThrow(new IllegalStateException("lock timeout")).when(udrMonthlyRepository).truncate();
+
+        assertThrows(IllegalStateException.class, () -> udrRollupService.truncate());
+        assertFalse(udrRollupService.isReady());
+
+        udrRollupService.rebuild(YearMonth.of(2025, 1));
+        assertFalse(udrRollupService.isReady());
+        udrRollupService.rebuild(null);
+        assertTrue(udrRollupService.isReady());
+    }
+
+    private static CdrPartitionTotals totals(int partitionKey, long recordCount, long durationSeconds) {
+        CdrPartitionTotals totals = mock(CdrPartitionTotals.class);
+        when(totals.getPartitionKey()).thenReturn(partitionKey);
+        lenient().when(totals.getRecordCount()).thenReturn(recordCount);
+        lenient().when(totals.getDurationSeconds()).thenReturn(durationSeconds);
+        return totals;
+    }
+
+    private static CdrPartitionSummary summary(int partitionKey, long recordCount) {
+        CdrPartitionSummary summary = mock(CdrPartitionSummary.class);
+        when(summary.getPartitionKey()).thenReturn(partitionKey);
+        lenient().when(summary.getRecordCount()).thenReturn(recordCount);
+        return summary;
+    }
+}
@@ -1,27 +1,57 @@
 package com.abarigena.calldataservice.serviceTest;
 
+import com.abarigena.calldataservice.config.CdrUdrProperties;
+import com.abarigena.calldataservice.dto.UdrGranularity;
+import com.abarigena.calldataservice.dto.UdrRangeReport;
 import com.abarigena.calldataservice.dto.UdrReport;
+import com.abarigena.calldataservice.dto.UdrReportPage;
+import com.abarigena.calldataservice.service.CdrDataVersions;
+import com.abarigena.calldataservice.service.SubscriberDirectory;
+import com.abarigena.calldataservice.service.UdrAggregator;
+import com.abarigena.calldataservice.service.UdrDailyIndex;
+import com.abarigena.calldataservice.service.UdrRollupService;
 import com.abarigena.calldataservice.service.UdrService;
 import com.abarigena.calldataservice.store.entity.CdrRecord;
 import com.abarigena.calldataservice.store.entity.Subscriber;
+import com.abarigena.calldataservice.store.entity.UdrMonthly;
 import com.abarigena.calldataservice.store.repository.CdrRecordRepository;
+import com.abarigena.calldataservice.store.repository.CdrRecordsChangedEvent;
+import com.abarigena.calldataservice.store.repository.CdrUsageBucket;
+import com.abarigena.calldataservice.store.repository.CdrUsageSummary;
 import com.abarigena.calldataservice.store.repository.SubscriberRepository;
+import com.abarigena.calldataservice.store.repository.UdrMonthlyRepository;
+import com.abarigena.calldataservice.store.repository.UdrMonthlyWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.YearMonth;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -32,55 +62,30 @@ class UdrServiceTest {
     @Mock
     private SubscriberRepository subscriberRepository;
 
-    @InjectMocks
+    @Mock
+    private UdrMonthlyRepository udrMonthlyRepository;
+
     private UdrService udrService;
+    private UdrRollupService udrRollupService;
+    private SubscriberDirectory subscriberDirectory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
     private final String msisdn = "79991234567";
-    private List<CdrRecord> incomingCalls;
-    private List<CdrRecord> outgoingCalls;
     private List<Subscriber> subscribers;
 
     @BeforeEach
     void setUp() {
-        incomingCalls = new ArrayList<>();
-        outgoingCalls = new ArrayList<>();
-
-        // Создаем два входящих звонка для первого абонента (79991234567)
-        // Первый входящий звонок - 5 минут
-        CdrRecord incomingCall1 = new CdrRecord();
-        incomingCall1.setCallType("02");
-        incomingCall1.setCallerNumber("79992222222");   // Кто звонит
-        incomingCall1.setReceiverNumber(msisdn);        // Кому звонят (наш первый абонент)
-        incomingCall1.setStartTime(LocalDateTime.now().minusHours(2));
-        incomingCall1.setEndTime(LocalDateTime.now().minusHours(2).plusMinutes(5));
-        incomingCalls.add(incomingCall1);
-
-        // Второй входящий звонок - 10 минут
-        CdrRecord incomingCall2 = new CdrRecord();
-        incomingCall2.setCallType("02");
-        incomingCall2.setCallerNumber("79993333333");   // Кто звонит
-        incomingCall2.setReceiverNumber(msisdn);        // Кому звонят (наш первый абонент)
-        incomingCall2.setStartTime(LocalDateTime.now().minusHours(1));
-        incomingCall2.setEndTime(LocalDateTime.now().minusHours(1).plusMinutes(10));
-        incomingCalls.add(incomingCall2);
-
-        // Создаем один исходящий звонок для первого абонента (79991234567) - 15 минут
-        CdrRecord outgoingCall = new CdrRecord();
-        outgoingCall.setCallType("01");
-        outgoingCall.setCallerNumber(msisdn);           // Кто звонит (наш первый абонент)
-        outgoingCall.setReceiverNumber("79994444444");  // Кому звонят
-        outgoingCall.setStartTime(LocalDateTime.now().minusMinutes(30));
-        outgoingCall.setEndTime(LocalDateTime.now().minusMinutes(30).plusMinutes(15));
-        outgoingCalls.add(outgoingCall);
-
-        // Создаем исходящий звонок для второго абонента (79992222222) - 5 минут
-        CdrRecord outgoingCallSubscriber2 = new CdrRecord();
-        outgoingCallSubscriber2.setCallType("01");
-        outgoingCallSubscriber2.setCallerNumber("79992222222");  // Кто звонит (наш второй абонент)
-        outgoingCallSubscriber2.setReceiverNumber("79995555555"); // Кому звонят
-        outgoingCallSubscriber2.setStartTime(LocalDateTime.now().minusMinutes(20));
-        outgoingCallSubscriber2.setEndTime(LocalDateTime.now().minusMinutes(20).plusMinutes(5));
-        outgoingCalls.add(outgoingCallSubscriber2);
+        CdrUdrProperties properties = new CdrUdrProperties();
+        properties.setParallelism(1);
+        subscriberDirectory = new SubscriberDirectory(subscriberRepository);
+        // Итоги не сверены, пока тест не вызовет verify(), и месяц суммируется по CDR-записям
+        udrRollupService = new UdrRollupService(udrMonthlyRepository, mock(UdrMonthlyWriter.class),
+                cdrRecordRepository, event -> {
+        });
+        udrService = new UdrService(cdrRecordRepository, subscriberDirectory,
+                new UdrAggregator(cdrRecordRepository, properties), objectMapper, properties, new CdrDataVersions(),
+                new UdrDailyIndex(cdrRecordRepository, properties), udrRollupService);
 
         subscribers = new ArrayList<>();
         Subscriber subscriber1 = new Subscriber();
@@ -94,20 +99,33 @@ class UdrServiceTest {
 
     @Test
     void getUdrForSubscriber_returnCorrectDurations() {
-        // моки - запрос UDR для одного абонента
-        when(cdrRecordRepository.findIncomingCallsByMsisdnAndPeriod(eq(msisdn), any(), any()))
-                .thenReturn(incomingCalls);
-        when(cdrRecordRepository.findOutgoingCallsByMsisdnAndPeriod(eq(msisdn), any(), any()))
-                .thenReturn(outgoingCalls.stream()
-                        .filter(call -> call.getCallerNumber().equals(msisdn))
-                        .toList()); // вернуть звонки первого абонента
+        // моки - суммы длительностей для одного абонента за все время
+        when(cdrRecordRepository.sumIncomingSecondsByMsisdnAndPeriod(eq(msisdn), isNull(), isNull()))
+                .thenReturn(15 * 60L); // 5 + 10 минут входящих
+        when(cdrRecordRepository.sumOutgoingSecondsByMsisdnAndPeriod(eq(msisdn), isNull(), isNull()))
+                .thenReturn(15 * 60L + 7); // 15 минут 7 секунд исходящих
 
         UdrReport report = udrService.getUdrForSubscriber(msisdn, null, null);
 
         assertNotNull(report);
         assertEquals(msisdn, report.getMsisdn());
-        assertEquals("00:15:00", report.getIncomingCall().getTotalTime()); // 5 + 10 минут входящих
-        assertEquals("00:15:00", report.getOutcomingCall().getTotalTime()); // 15 минут исходящих
+        assertEquals("00:15:00", report.getIncomingCall().getTotalTime());
+        assertEquals("00:15:07", report.getOutcomingCall().getTotalTime());
+    }
+
+    @Test
+    void getUdrForSubscriber_formatDurationsLongerThanDay() {
+        LocalDateTime startDate = LocalDateTime.of(2024, 3, 1, 0, 0);
+        LocalDateTime endDate = LocalDateTime.of(2024, 3, 31, 23, 59, 59);
+        when(cdrRecordRepository.sumIncomingSecondsByMsisdnAndPeriod(msisdn, startDate, endDate))
+                .thenReturn(30 * 3600L + 61);
+        when(cdrRecordRepository.sumOutgoingSecondsByMsisdnAndPeriod(msisdn, startDate, endDate))
+                .thenReturn(0L);
+
+        UdrReport report = udrService.getUdrForSubscriber(msisdn, 2024, 3);
+
+        assertEquals("30:01:01", report.getIncomingCall().getTotalTime());
+        assertEquals("00:00:00", report.getOutcomingCall().getTotalTime());
     }
 
     @Test
@@ -118,12 +136,13 @@ class UdrServiceTest {
         LocalDateTime startDate = yearMonth.atDay(1).atStartOfDay();
         LocalDateTime endDate = yearMonth.atEndOfMonth().atTime(23, 59, 59);
 
-        // моки - запрос UDR для всех абонентов
+        // моки - суммы длительностей по абонентам и направлениям
         when(subscriberRepository.findAll()).thenReturn(subscribers);
-        when(cdrRecordRepository.findAllIncomingCallsByPeriod(eq(startDate), eq(endDate)))
-                .thenReturn(incomingCalls);
-        when(cdrRecordRepository.findAllOutgoingCallsByPeriod(eq(startDate), eq(endDate)))
-                .thenReturn(outgoingCalls);
+        when(cdrRecordRepository.sumSecondsBySubscriberAndPeriod(eq(startDate), eq(endDate))).thenReturn(List.of(
+                usage(79991234567L, CdrRecord.INCOMING, 15 * 60),     // 5 + 10 минут входящих
+                usage(79991234567L, CdrRecord.OUTGOING, 15 * 60),     // 15 минут исходящих
+                usage(79992222222L, CdrRecord.OUTGOING, 5 * 60),      // 5 минут исходящих
+                usage(79995555555L, CdrRecord.INCOMING, 5 * 60)));    // не абонент сервиса
 
         List<UdrReport> reports = udrService.getAllUdrsByMonth(year, month);
 
@@ -136,8 +155,8 @@ class UdrServiceTest {
                 .findFirst()
                 .orElse(null);
         assertNotNull(report1);
-        assertEquals("00:15:00", report1.getIncomingCall().getTotalTime()); // 5 + 10 минут входящих
-        assertEquals("00:15:00", report1.getOutcomingCall().getTotalTime()); // 15 минут исходящих
+        assertEquals("00:15:00", report1.getIncomingCall().getTotalTime());
+        assertEquals("00:15:00", report1.getOutcomingCall().getTotalTime());
 
         // Проверяем отчет для второго абонента (79992222222)
         UdrReport report2 = reports.stream()
@@ -146,6 +165,292 @@ class UdrServiceTest {
                 .orElse(null);
         assertNotNull(report2);
         assertEquals("00:00:00", report2.getIncomingCall().getTotalTime()); // Нет входящих звонков
-        assertEquals("00:05:00", report2.getOutcomingCall().getTotalTime()); // 5 минут исходящих
+        assertEquals("00:05:00", report2.getOutcomingCall().getTotalTime());
+    }
+
+    @Test
+    void getUdrForSubscriber_cacheClosedMonthUntilItChanges() {
+        LocalDateTime startDate = LocalDateTime.of(2024, 3, 1, 0, 0);
+        LocalDateTime endDate = LocalDateTime.of(2024, 3, 31, 23, 59, 59);
+        when(cdrRecordRepository.sumIncomingSecondsByMsisdnAndPeriod(msisdn, startDate, endDate))
+                .thenReturn(60L, 120L);
+        when(cdrRecordRepository.sumOutgoingSecondsByMsisdnAndPeriod(msisdn, startDate, endDate))
+                .thenReturn(0L);
+
+        udrService.getUdrForSubscriber(msisdn, 2024, 3);
+        UdrReport cached = udrService.getUdrForSubscriber(msisdn, 2024, 3);
+
+        assertEquals("00:01:00", cached.getIncomingCall().getTotalTime());
+        verify(cdrRecordRepository, times(1)).sumIncomingSecondsByMsisdnAndPeriod(msisdn, startDate, endDate);
+        assertEquals(1, udrService.getCacheStats().getHits());
+
+        // Изменение другого месяца не сбрасывает кеш, изменение марта - сбрасывает
+        udrService.onCdrRecordsChanged(CdrRecordsChangedEvent.of(202404));
+        assertEquals("00:01:00", udrService.getUdrForSubscriber(msisdn, 2024, 3).getIncomingCall().getTotalTime());
+        udrService.onCdrRecordsChanged(CdrRecordsChangedEvent.of(202403));
+        assertEquals("00:02:00", udrService.getUdrForSubscriber(msisdn, 2024, 3).getIncomingCall().getTotalTime());
+    }
+
+    @Test
+    void getUdrForSubscriber_notCacheCurrentMonth() {
+        YearMonth current = YearMonth.now();
+        when(cdrRecordRepository.sumIncomingSecondsByMsisdnAndPeriod(eq(msisdn), eq(current.atDay(1).atStartOfDay()),
+                eq(current.atEndOfMonth().atTime(23, 59, 59)))).thenReturn(60L);
+
+        udrService.getUdrForSubscriber(msisdn, current.getYear(), current.getMonthValue());
+        udrService.getUdrForSubscriber(msisdn, current.getYear(), current.getMonthValue());
+
+        verify(cdrRecordRepository, times(2)).sumIncomingSecondsByMsisdnAndPeriod(eq(msisdn),
+                eq(current.atDay(1).atStartOfDay()), eq(current.atEndOfMonth().atTime(23, 59, 59)));
+        assertEquals(0, udrService.getCacheStats().getEntries());
+    }
+
+    @Test
+    void getAllUdrsByMonth_reuseCachedTotals() {
+        LocalDateTime startDate = LocalDateTime.of(2024, 3, 1, 0, 0);
+        LocalDateTime endDate = LocalDateTime.of(2024, 3, 31, 23, 59, 59);
+        when(subscriberRepository.findAll()).thenReturn(subscribers);
+        when(cdrRecordRepository.sumSecondsBySubscriberAndPeriod(startDate, endDate))
+                .thenReturn(List.of(usage(79992222222L, CdrRecord.OUTGOING, 5 * 60)));
+
+        udrService.getAllUdrsByMonth(2024, 3);
+        List<UdrReport> reports = udrService.getAllUdrsByMonth(2024, 3);
+
+        assertEquals("00:05:00", reports.get(1).getOutcomingCall().getTotalTime());
+        verify(cdrRecordRepository, times(1)).sumSecondsBySubscriberAndPeriod(startDate, endDate);
+    }
+
+    @Test
+    void getUdrForSubscriber_readMonthFromRollupByPrimaryKey() {
+        udrRollupService.verify();
+        UdrMonthly row = monthly(79991234567L, 30 * 3600L + 61, 90);
+        when(udrMonthlyRepository.findById(new UdrMonthly.Key(79991234567L, 202403))).thenReturn(Optional.of(row));
+
+        UdrReport report = udrService.getUdrForSubscriber(msisdn, 2024, 3);
+
+        assertEquals("30:01:01", report.getIncomingCall().getTotalTime());
+        assertEquals("00:01:30", report.getOutcomingCall().getTotalTime());
+        verify(cdrRecordRepository, never()).sumIncomingSecondsByMsisdnAndPeriod(any(), any(), any());
+    }
+
+    @Test
+    void getAllUdrsByMonth_readMonthFromRollup() {
+        udrRollupService.verify();
+        when(subscriberRepository.findAll()).thenReturn(subscribers);
+        UdrMonthly other = monthly(79995555555L, 60, 0); // не абонент сервиса
+        UdrMonthly second = monthly(79992222222L, 0, 5 * 60);
+        when(udrMonthlyRepository.findByPartition(202403)).thenReturn(List.of(other, second));
+        when(udrMonthlyRepository.findByPartitionAndMsisdnRange(202403, 79991234567L, 79992222222L))
+                .thenReturn(List.of(second));
+
+        List<UdrReport> reports = udrService.getAllUdrsByMonth(2024, 3);
+        UdrReportPage page = udrService.getUdrPageByMonth(2024, 3, null, 10);
+
+        assertEquals("00:00:00", reports.get(0).getOutcomingCall().getTotalTime());
+        assertEquals("00:05:00", reports.get(1).getOutcomingCall().getTotalTime());
+        assertEquals("00:05:00", page.getReports().get(1).getOutcomingCall().getTotalTime());
+        verify(cdrRecordRepository, never()).sumSecondsBySubscriberAndPeriod(any(), any());
+    }
+
+    @Test
+    void getAllUdrsVersion_changeWhenSubscribersReloaded() {
+        when(subscriberRepository.findAll()).thenReturn(subscribers);
+        CdrDataVersions.Version version = udrService.getAllUdrsVersion(2024, 3);
+
+        assertEquals(version, udrService.getAllUdrsVersion(2024, 3));
+        assertTrue(udrService.getUdrVersion(2024, 3).lastModified() <= version.lastModified());
+
+        subscriberDirectory.refresh();
+
+        assertNotEquals(version.eTag(), udrService.getAllUdrsVersion(2024, 3).eTag());
+        assertEquals(udrService.getUdrVersion(2024, 3), udrService.getUdrVersion(2024, 3));
+    }
+
+    @Test
+    void getUdrPageByMonth_returnPagesInNumberOrder() {
+        LocalDateTime startDate = LocalDateTime.of(2024, 3, 1, 0, 0);
+        LocalDateTime endDate = LocalDateTime.of(2024, 3, 31, 23, 59, 59);
+        when(subscriberRepository.findAll()).thenReturn(subscribers);
+        // Каждая страница суммируется запросом по диапазону номеров своих абонентов
+        when(cdrRecordRepository.sumSecondsBySubscriberRangeAndPeriod(79991234567L, 79991234567L, startDate, endDate))
+                .thenReturn(List.of(usage(79991234567L, CdrRecord.INCOMING, 90)));
+        when(cdrRecordRepository.sumSecondsBySubscriberRangeAndPeriod(79992222222L, 79992222222L, startDate, endDate))
+                .thenReturn(List.of(usage(79992222222L, CdrRecord.OUTGOING, 3600)));
+
+        UdrReportPage first = udrService.getUdrPageByMonth(2024, 3, null, 1);
+
+        assertEquals(1, first.getReports().size());
+        assertEquals(msisdn, first.getReports().get(0).getMsisdn());
+        assertEquals("00:01:30", first.getReports().get(0).getIncomingCall().getTotalTime());
+        assertEquals(msisdn, first.getNextAfter());
+
+        UdrReportPage second = udrService.getUdrPageByMonth(2024, 3, first.getNextAfter(), 1);
+
+        assertEquals(1, second.getReports().size());
+        assertEquals("79992222222", second.getReports().get(0).getMsisdn());
+        assertEquals("01:00:00", second.getReports().get(0).getOutcomingCall().getTotalTime());
+        assertNull(second.getNextAfter());
+    }
+
+    @Test
+    void getUdrPageByMonth_rejectInvalidLimit() {
+        assertThrows(IllegalArgumentException.class, () -> udrService.getUdrPageByMonth(2024, 3, null, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> udrService.getUdrPageByMonth(2024, 3, null, UdrService.MAX_PAGE_SIZE + 1));
+    }
+
+    @Test
+    void streamAllUdrsByMonth_writeOneJsonObjectPerLine() throws IOException {
+        LocalDateTime startDate = LocalDateTime.of(2024, 3, 1, 0, 0);
+        LocalDateTime endDate = LocalDateTime.of(2024, 3, 31, 23, 59, 59);
+        when(subscriberRepository.findAll()).thenReturn(subscribers);
+        when(cdrRecordRepository.sumSecondsBySubscriberRangeAndPeriod(79991234567L, 79992222222L, startDate, endDate))
+                .thenReturn(List.of(
+                        usage(79991234567L, CdrRecord.INCOMING, 15 * 60),
+                        usage(79992222222L, CdrRecord.OUTGOING, 5 * 60)));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        long written = udrService.streamAllUdrsByMonth(2024, 3, output);
+
+        String content = output.toString(StandardCharsets.UTF_8);
+        assertTrue(content.endsWith("\n"));
+        String[] lines = content.split("\n");
+        assertEquals(2, written);
+        assertEquals(2, lines.length);
+
+        UdrReport first = objectMapper.readValue(lines[0], UdrReport.class);
+        assertEquals(msisdn, first.getMsisdn());
+        assertEquals("00:15:00", first.getIncomingCall().getTotalTime());
+        assertEquals("00:00:00", first.getOutcomingCall().getTotalTime());
+
+        UdrReport second = objectMapper.readValue(lines[1], UdrReport.class);
+        assertEquals("79992222222", second.getMsisdn());
+        assertEquals("00:05:00", second.getOutcomingCall().getTotalTime());
+    }
+
+    @Test
+    void getUdrForSubscriberRange_sumFullDaysFromIndexAndEdgeDaysInDatabase() {
+        stubRangeDays();
+
+        UdrRangeReport report = udrService.getUdrForSubscriberRange(msisdn, LocalDateTime.of(2025, 1, 10, 12, 0),
+                LocalDateTime.of(2025, 1, 12, 6, 0), UdrGranularity.NONE);
+
+        assertEquals("00:01:51", report.getIncomingCall().getTotalTime());
+        assertEquals("00:00:22", report.getOutcomingCall().getTotalTime());
+        assertNull(report.getBuckets());
+    }
+
+    @Test
+    void getUdrForSubscriberRange_splitPeriodByDays() {
+        stubRangeDays();
+
+        UdrRangeReport report = udrService.getUdrForSubscriberRange(msisdn, LocalDateTime.of(2025, 1, 10, 12, 0),
+                LocalDateTime.of(2025, 1, 12, 6, 0), UdrGranularity.DAY);
+
+        List<UdrRangeReport.Bucket> buckets = report.getBuckets();
+        assertEquals(3, buckets.size());
+        assertEquals(LocalDateTime.of(2025, 1, 10, 12, 0), buckets.get(0).getStartDate());
+        assertEquals(LocalDateTime.of(2025, 1, 10, 23, 59, 59), buckets.get(0).getEndDate());
+        assertEquals("00:00:20", buckets.get(0).getOutcomingCall().getTotalTime());
+        assertEquals(LocalDateTime.of(2025, 1, 11, 0, 0), buckets.get(1).getStartDate());
+        assertEquals("00:01:40", buckets.get(1).getIncomingCall().getTotalTime());
+        assertEquals(LocalDateTime.of(2025, 1, 12, 6, 0), buckets.get(2).getEndDate());
+        assertEquals("00:00:01", buckets.get(2).getIncomingCall().getTotalTime());
+        assertEquals("00:01:51", report.getIncomingCall().getTotalTime());
+    }
+
+    @Test
+    void getUdrForSubscriberRange_splitPeriodByHoursInOneQuery() {
+        LocalDateTime startDate = LocalDateTime.of(2025, 1, 10, 10, 30);
+        LocalDateTime endDate = LocalDateTime.of(2025, 1, 10, 12, 15);
+        long firstHour = CdrRecord.toEpochSecond(LocalDateTime.of(2025, 1, 10, 10, 0)) / 3600;
+        when(cdrRecordRepository.sumSecondsByMsisdnAndBuckets(msisdn, startDate, endDate, 3600))
+                .thenReturn(List.of(bucket(firstHour, CdrRecord.INCOMING, 30),
+                        bucket(firstHour + 2, CdrRecord.OUTGOING, 40)));
+
+        UdrRangeReport report = udrService.getUdrForSubscriberRange(msisdn, startDate, endDate, UdrGranularity.HOUR);
+
+        List<UdrRangeReport.Bucket> buckets = report.getBuckets();
+        assertEquals(3, buckets.size());
+        assertEquals(startDate, buckets.get(0).getStartDate());
+        assertEquals("00:00:30", buckets.get(0).getIncomingCall().getTotalTime());
+        assertEquals("00:00:00", buckets.get(1).getOutcomingCall().getTotalTime());
+        assertEquals(endDate, buckets.get(2).getEndDate());
+        assertEquals("00:00:40", buckets.get(2).getOutcomingCall().getTotalTime());
+        assertEquals("00:00:40", report.getOutcomingCall().getTotalTime());
+    }
+
+    @Test
+    void getUdrForSubscriberRange_rejectEmptyPeriodAndTooManyBuckets() {
+        LocalDateTime startDate = LocalDateTime.of(2025, 1, 10, 0, 0);
+        assertThrows(IllegalArgumentException.class, () -> udrService.getUdrForSubscriberRange(msisdn,
+                startDate, startDate.minusSeconds(1), UdrGranularity.NONE));
+        assertThrows(IllegalArgumentException.class, () -> udrService.getUdrForSubscriberRange(msisdn,
+                startDate, startDate.plusYears(2), UdrGranularity.HOUR));
+    }
+
+    // Сутки 10.01 и 12.01 входят в период частично, 11.01 - целиком
+    private void stubRangeDays() {
+        long day = LocalDate.of(2025, 1, 11).toEpochDay();
+        when(cdrRecordRepository.sumSecondsByMsisdnAndBuckets(eq(msisdn), isNull(), isNull(), eq(86_400L)))
+                .thenReturn(List.of(bucket(day - 1, CdrRecord.OUTGOING, 999), bucket(day, CdrRecord.INCOMING, 100)));
+        LocalDateTime firstEdgeStart = LocalDateTime.of(2025, 1, 10, 12, 0);
+        LocalDateTime firstEdgeEnd = LocalDateTime.of(2025, 1, 10, 23, 59, 59);
+        LocalDateTime lastEdgeStart = LocalDateTime.of(2025, 1, 12, 0, 0);
+        LocalDateTime lastEdgeEnd = LocalDateTime.of(2025, 1, 12, 6, 0);
+        when(cdrRecordRepository.sumIncomingSecondsByMsisdnAndPeriod(msisdn, firstEdgeStart, firstEdgeEnd))
+                .thenReturn(10L);
+        when(cdrRecordRepository.sumOutgoingSecondsByMsisdnAndPeriod(msisdn, firstEdgeStart, firstEdgeEnd))
+                .thenReturn(20L);
+        when(cdrRecordRepository.sumIncomingSecondsByMsisdnAndPeriod(msisdn, lastEdgeStart, lastEdgeEnd))
+                .thenReturn(1L);
+        when(cdrRecordRepository.sumOutgoingSecondsByMsisdnAndPeriod(msisdn, lastEdgeStart, lastEdgeEnd))
+                .thenReturn(2L);
+    }
+
+    private static UdrMonthly monthly(long msisdn, long incomingSeconds, long outgoingSeconds) {
+        UdrMonthly row = mock(UdrMonthly.class);
+        lenient().when(row.getMsisdn()).thenReturn(msisdn);
+        lenient().when(row.getIncomingSeconds()).thenReturn(incomingSeconds);
+        lenient().when(row.getOutgoingSeconds()).thenReturn(outgoingSeconds);
+        return row;
+    }
+
+    private static CdrUsageBucket bucket(long bucket, byte callType, long totalSeconds) {
+        return new CdrUsageBucket() {
+            @Override
+            public long getBucket() {
+                return bucket;
+            }
+
+            @Override
+            public byte getCallType() {
+                return callType;
+            }
+
+            @Override
+            public long getTotalSeconds() {
+                return totalSeconds;
+            }
+        };
+    }
+
+    private static CdrUsageSummary usage(long msisdn, byte callType, long totalSeconds) {
+        return new CdrUsageSummary() {
+            @Override
+            public long getMsisdn() {
+                return msisdn;
+            }
+
+            @Override
+            public byte getCallType() {
+                return callType;
+            }
+
+            @Override
+            public long getTotalSeconds() {
+                return totalSeconds;
+            }
+        };
     }
 }